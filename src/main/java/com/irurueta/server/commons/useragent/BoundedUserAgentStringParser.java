@@ -0,0 +1,903 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import net.sf.uadetector.ReadableDeviceCategory;
+import net.sf.uadetector.ReadableUserAgent;
+import net.sf.uadetector.UserAgent;
+import net.sf.uadetector.UserAgentStringParser;
+import net.sf.uadetector.VersionNumber;
+import net.sf.uadetector.datastore.CachingXmlDataStore;
+import net.sf.uadetector.datastore.DataStore;
+import net.sf.uadetector.datastore.OnlineXmlDataStore;
+import net.sf.uadetector.datastore.RefreshableDataStore;
+import net.sf.uadetector.internal.data.Data;
+import net.sf.uadetector.internal.data.domain.Browser;
+import net.sf.uadetector.internal.data.domain.BrowserPattern;
+import net.sf.uadetector.internal.data.domain.Device;
+import net.sf.uadetector.internal.data.domain.DevicePattern;
+import net.sf.uadetector.internal.data.domain.OperatingSystemPattern;
+import net.sf.uadetector.internal.data.domain.Robot;
+import net.sf.uadetector.parser.UpdatingUserAgentStringParserImpl;
+import net.sf.uadetector.service.UADetectorServiceFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * User agent string parser that bounds the cost of parsing any user agent.
+ * This parser evaluates the same data and follows the same matching rules
+ * as uadetector parsers, but:
+ * - User agents longer than a maximum length are truncated before being
+ * parsed, keeping only their first characters (surrogate pairs are never
+ * split). Detection relies on the leading product tokens, so truncation
+ * rarely changes the result while bounding the input of every regular
+ * expression.
+ * - Each parse is given a budget of steps, where each step is a character
+ * read by the regular expression engine. Once the budget is exhausted (i.e.
+ * because of catastrophic backtracking on a pathological input), parsing is
+ * aborted and an unknown user agent is returned.
+ * Since the budget is measured in steps instead of time, results are
+ * deterministic and can be safely cached.
+ * Optionally, the cost of evaluating each pattern can be recorded by a
+ * {@link UserAgentPatternProfiler}.
+ * This class is thread safe.
+ */
+public class BoundedUserAgentStringParser implements UserAgentStringParser {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            BoundedUserAgentStringParser.class.getName());
+
+    /**
+     * Exception used to abort parsing once the budget is exhausted. It is
+     * preallocated and has no stack trace, so that aborting is cheap.
+     */
+    private static final StepBudgetExceededException BUDGET_EXCEEDED =
+            new StepBudgetExceededException();
+
+    /**
+     * Data store containing the patterns to detect user agents.
+     */
+    private final DataStore mStore;
+
+    /**
+     * Parser sharing the data store and in charge of updating it, or null if
+     * data is never updated.
+     */
+    private final UserAgentStringParser mUpdatingParser;
+
+    /**
+     * Data this parser is pinned to, or null if data is read from data store
+     * on each parse.
+     */
+    private final Data mData;
+
+    /**
+     * Data of the data store from which pinned data was obtained, which is
+     * the pinned data itself unless it was copied, or null if data is not
+     * pinned.
+     */
+    private final Data mSource;
+
+    /**
+     * Maximum number of characters of a user agent being parsed.
+     */
+    private final int mMaxLength;
+
+    /**
+     * Maximum number of steps that a single parse can take.
+     */
+    private final long mMaxSteps;
+
+    /**
+     * Number of parses aborted because their budget was exhausted.
+     */
+    private final AtomicLong mBudgetExceededCount;
+
+    /**
+     * Records cost of each evaluated pattern, or null if profiling is
+     * disabled.
+     */
+    private final UserAgentPatternProfiler mProfiler;
+
+    /**
+     * Index of robots of the data last used, which is rebuilt whenever data
+     * store is updated.
+     */
+    private volatile RobotIndex mRobotIndex;
+
+    /**
+     * Constructor.
+     * @param store data store containing the patterns to detect user agents.
+     * @param updatingParser parser sharing the data store and in charge of
+     * updating it, which is shut down along with this parser, or null if data
+     * is never updated.
+     * @param maxLength maximum number of characters of a user agent being
+     * parsed.
+     * @param maxSteps maximum number of steps that a single parse can take.
+     * @throws IllegalArgumentException if store is null or any maximum is not
+     * positive.
+     */
+    public BoundedUserAgentStringParser(final DataStore store,
+            final UserAgentStringParser updatingParser, final int maxLength,
+            final long maxSteps) {
+        this(store, updatingParser, maxLength, maxSteps, null);
+    }
+
+    /**
+     * Constructor.
+     * @param store data store containing the patterns to detect user agents.
+     * @param updatingParser parser sharing the data store and in charge of
+     * updating it, which is shut down along with this parser, or null if data
+     * is never updated.
+     * @param maxLength maximum number of characters of a user agent being
+     * parsed.
+     * @param maxSteps maximum number of steps that a single parse can take.
+     * @param profiler records cost of each evaluated pattern, or null to
+     * disable profiling.
+     * @throws IllegalArgumentException if store is null or any maximum is not
+     * positive.
+     */
+    public BoundedUserAgentStringParser(final DataStore store,
+            final UserAgentStringParser updatingParser, final int maxLength,
+            final long maxSteps, final UserAgentPatternProfiler profiler) {
+        if (store == null || maxLength <= 0 || maxSteps <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mStore = store;
+        mUpdatingParser = updatingParser;
+        mData = null;
+        mSource = null;
+        mMaxLength = maxLength;
+        mMaxSteps = maxSteps;
+        mProfiler = profiler;
+        mBudgetExceededCount = new AtomicLong();
+    }
+
+    /**
+     * Constructor of a parser pinned to provided data.
+     * @param parser parser whose settings are copied.
+     * @param source data of the data store from which pinned data was
+     * obtained.
+     * @param data data to be pinned.
+     * @param budgetExceededCount counter of parses aborted because their
+     * budget was exhausted.
+     */
+    private BoundedUserAgentStringParser(
+            final BoundedUserAgentStringParser parser, final Data source,
+            final Data data, final AtomicLong budgetExceededCount) {
+        mStore = parser.mStore;
+        mUpdatingParser = parser.mUpdatingParser;
+        mData = data;
+        mSource = source;
+        mMaxLength = parser.mMaxLength;
+        mMaxSteps = parser.mMaxSteps;
+        mProfiler = parser.mProfiler;
+        mBudgetExceededCount = budgetExceededCount;
+    }
+
+    /**
+     * Creates a parser using data cached on disk that is periodically updated
+     * from the online database, falling back to data contained in the
+     * resources module, as done by
+     * {@link UADetectorServiceFactory#getCachingAndUpdatingParser()}.
+     * All created parsers share the same data store.
+     * @param maxLength maximum number of characters of a user agent being
+     * parsed.
+     * @param maxSteps maximum number of steps that a single parse can take.
+     * @return a new parser.
+     * @throws IllegalArgumentException if any maximum is not positive.
+     */
+    public static BoundedUserAgentStringParser createCachingAndUpdating(
+            final int maxLength, final long maxSteps) {
+        return createCachingAndUpdating(maxLength, maxSteps, null);
+    }
+
+    /**
+     * Creates a parser using data cached on disk that is periodically updated
+     * from the online database, falling back to data contained in the
+     * resources module, and that optionally profiles evaluated patterns.
+     * All created parsers share the same data store.
+     * @param maxLength maximum number of characters of a user agent being
+     * parsed.
+     * @param maxSteps maximum number of steps that a single parse can take.
+     * @param profiler records cost of each evaluated pattern, or null to
+     * disable profiling.
+     * @return a new parser.
+     * @throws IllegalArgumentException if any maximum is not positive.
+     */
+    public static BoundedUserAgentStringParser createCachingAndUpdating(
+            final int maxLength, final long maxSteps,
+            final UserAgentPatternProfiler profiler) {
+        return new BoundedUserAgentStringParser(
+                CachingAndUpdatingHolder.STORE,
+                CachingAndUpdatingHolder.PARSER, maxLength, maxSteps,
+                profiler);
+    }
+
+    /**
+     * Creates a parser using the data store of provided mode.
+     * Data stores and updating parsers of each mode are shared among all
+     * parsers created using the same mode, and are lazily initialized on
+     * first use, so that only the resources of the requested mode are loaded.
+     * @param mode source of the user agent database.
+     * @param maxLength maximum number of characters of parsed user agents.
+     * @param maxSteps maximum number of characters read by regular
+     * expressions while parsing a user agent.
+     * @param profiler profiler recording cost of each pattern or null to
+     * disable pattern profiling.
+     * @return a parser.
+     * @throws IllegalArgumentException if mode is null or maximum length or
+     * steps are not positive.
+     */
+    public static BoundedUserAgentStringParser create(
+            final UserAgentParserMode mode, final int maxLength,
+            final long maxSteps, final UserAgentPatternProfiler profiler) {
+        if (mode == null) {
+            throw new IllegalArgumentException();
+        }
+        switch (mode) {
+            case RESOURCE_MODULE:
+                return new BoundedUserAgentStringParser(
+                        UADetectorServiceFactory.RESOURCE_MODULE, null,
+                        maxLength, maxSteps, profiler);
+            case ONLINE_UPDATING:
+                return new BoundedUserAgentStringParser(
+                        OnlineUpdatingHolder.STORE, OnlineUpdatingHolder.PARSER,
+                        maxLength, maxSteps, profiler);
+            case CACHING_AND_UPDATING:
+            default:
+                return createCachingAndUpdating(maxLength, maxSteps,
+                        profiler);
+        }
+    }
+
+    /**
+     * Returns maximum number of characters of a user agent being parsed.
+     * @return maximum number of characters of a user agent being parsed.
+     */
+    public int getMaxLength() {
+        return mMaxLength;
+    }
+
+    /**
+     * Returns maximum number of steps that a single parse can take.
+     * @return maximum number of steps that a single parse can take.
+     */
+    public long getMaxSteps() {
+        return mMaxSteps;
+    }
+
+    /**
+     * Returns profiler recording cost of each evaluated pattern.
+     * @return profiler or null if profiling is disabled.
+     */
+    public UserAgentPatternProfiler getProfiler() {
+        return mProfiler;
+    }
+
+    /**
+     * Returns number of parses aborted because their budget was exhausted.
+     * @return number of parses aborted because their budget was exhausted.
+     */
+    public long getBudgetExceededCount() {
+        return mBudgetExceededCount.get();
+    }
+
+    /**
+     * Returns version of data being used to parse user agents.
+     * @return version of data.
+     */
+    @Override
+    public String getDataVersion() {
+        return getData().getVersion();
+    }
+
+    /**
+     * Returns a parser sharing the settings, data store, profiler and budget
+     * counter of this parser, but pinned to the data currently contained in
+     * the data store, so that all of its parses use the same version of data
+     * even if data store is updated.
+     * @return a pinned parser.
+     */
+    public BoundedUserAgentStringParser snapshot() {
+        final Data data = mStore.getData();
+        return new BoundedUserAgentStringParser(this, data, data,
+                mBudgetExceededCount);
+    }
+
+    /**
+     * Returns a parser sharing the settings and data store of this parser,
+     * but pinned to a deep copy of the data it currently uses and having its
+     * own index of robots and budget counter, so that replicas used by
+     * distinct threads share neither patterns nor any other mutable state.
+     * Only the profiler, if any, is shared. Since it identifies patterns by
+     * value, it aggregates costs of all replicas.
+     * Data is copied by serializing it in memory, which costs about as much
+     * as loading data, so replicas should only be created when parsers are
+     * built or reloaded.
+     * @return a replica of this parser.
+     * @throws IllegalStateException if data cannot be copied.
+     */
+    public BoundedUserAgentStringParser replicate() {
+        final Data data = getData();
+        return new BoundedUserAgentStringParser(this,
+                mSource != null ? mSource : data, copy(data),
+                new AtomicLong());
+    }
+
+    /**
+     * Indicates whether this parser is pinned to data that is no longer the
+     * data contained in the data store.
+     * @return true if a newer snapshot is available, false otherwise.
+     */
+    public boolean isStale() {
+        return mSource != null && mSource != mStore.getData();
+    }
+
+    /**
+     * Synchronously updates data store, if it can be refreshed.
+     * Parsers pinned to previous data keep using it.
+     * @return true if data store could be refreshed, false otherwise.
+     */
+    public boolean refresh() {
+        if (mStore instanceof RefreshableDataStore) {
+            ((RefreshableDataStore) mStore).refresh();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Parses provided user agent string.
+     * @param userAgent user agent string to be parsed.
+     * @return parsed user agent or an unknown user agent if parsing budget
+     * was exhausted.
+     */
+    @Override
+    public ReadableUserAgent parse(final String userAgent) {
+        return parse(userAgent, UserAgentField.ALL_MASK);
+    }
+
+    /**
+     * Parses provided user agent string computing only requested fields.
+     * Browser patterns are always evaluated, as they determine family and
+     * type of user agent, and may also determine its operating system.
+     * Version extraction, operating system patterns and device patterns are
+     * skipped when their fields are not requested, in which case parsed user
+     * agent contains their default values.
+     * @param userAgent user agent string to be parsed.
+     * @param fieldMask mask of requested fields.
+     * @return parsed user agent or an unknown user agent if parsing budget
+     * was exhausted.
+     * @see UserAgentField#toMask(java.util.Set)
+     */
+    public ReadableUserAgent parse(final String userAgent,
+            final int fieldMask) {
+        final String truncated = truncate(userAgent, mMaxLength);
+        final UserAgent.Builder builder = new UserAgent.Builder(truncated);
+        final Data data = getData();
+        final BudgetedCharSequence input = new BudgetedCharSequence(truncated,
+                mMaxSteps);
+        try {
+            if (!examineAsRobot(builder, data)) {
+                examineAsBrowser(builder, data, input,
+                        UserAgentField.USER_AGENT_VERSION.isContainedIn(
+                                fieldMask));
+                if (UserAgentField.OPERATING_SYSTEM.isContainedIn(
+                        fieldMask)) {
+                    examineOperatingSystem(builder, data, input);
+                }
+            }
+            if (UserAgentField.DEVICE_CATEGORY.isContainedIn(fieldMask)) {
+                examineDeviceCategory(builder, data, input);
+            }
+        } catch (final StepBudgetExceededException e) {
+            mBudgetExceededCount.incrementAndGet();
+            LOG.log(Level.FINE, "Parsing budget of {0} steps exhausted for " +
+                    "user agent of length {1}", new Object[]{mMaxSteps,
+                    truncated.length()});
+            return new UserAgent.Builder(truncated).build();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Indicates whether provided user agent belongs to a known robot, in
+     * which case {@link #parse(String)} would return a robot.
+     * Robots are only detected when exactly matching the user agent of a
+     * robot, hence this only requires a single hash lookup and no pattern is
+     * evaluated.
+     * @param userAgent user agent string to be checked.
+     * @return true if user agent belongs to a known robot, false otherwise.
+     */
+    public boolean isRobot(final String userAgent) {
+        return userAgent != null && getRobotIndex(getData()).find(
+                truncate(userAgent, mMaxLength)) != null;
+    }
+
+    /**
+     * Shuts down the parser in charge of updating data, if any.
+     */
+    @Override
+    public void shutdown() {
+        if (mUpdatingParser != null) {
+            mUpdatingParser.shutdown();
+        }
+    }
+
+    /**
+     * Returns data used to parse user agents.
+     * @return pinned data or current data of data store.
+     */
+    Data getData() {
+        return mData != null ? mData : mStore.getData();
+    }
+
+    /**
+     * Returns index of robots of the data last used.
+     * @return index of robots or null if no robot has been looked up yet.
+     */
+    Object getLastRobotIndex() {
+        return mRobotIndex;
+    }
+
+    /**
+     * Returns a deep copy of provided data.
+     * @param data data to be copied.
+     * @return copied data.
+     * @throws IllegalStateException if data cannot be copied.
+     */
+    private static Data copy(final Data data) {
+        try {
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(data);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes.toByteArray()))) {
+                return (Data) in.readObject();
+            }
+        } catch (final IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Data could not be copied", e);
+        }
+    }
+
+    /**
+     * Truncates provided user agent to a maximum number of characters,
+     * keeping its first characters. If truncation would split a surrogate
+     * pair, the whole pair is removed.
+     * @param userAgent user agent to be truncated.
+     * @param maxLength maximum number of characters.
+     * @return truncated user agent or the same instance if no truncation is
+     * needed.
+     */
+    static String truncate(final String userAgent, final int maxLength) {
+        if (userAgent.length() <= maxLength) {
+            return userAgent;
+        }
+        int end = maxLength;
+        if (Character.isHighSurrogate(userAgent.charAt(end - 1))) {
+            end--;
+        }
+        return userAgent.substring(0, end);
+    }
+
+    /**
+     * Examines whether user agent belongs to a known robot, which happens if
+     * it exactly matches the user agent of a robot.
+     * @param builder builder containing user agent and where data is stored.
+     * @param data data to detect user agents.
+     * @return true if user agent belongs to a robot, false otherwise.
+     */
+    private boolean examineAsRobot(final UserAgent.Builder builder,
+            final Data data) {
+        if (mProfiler == null) {
+            return examineAsRobotUnprofiled(builder, data);
+        }
+
+        final long startNanos = System.nanoTime();
+        final boolean robot = examineAsRobotUnprofiled(builder, data);
+        mProfiler.counter(UserAgentPatternProfile.Kind.ROBOT,
+                0, "(exact match)", data.getRobots().size() + " robots").
+                record(robot, System.nanoTime() - startNanos, 0);
+        return robot;
+    }
+
+    /**
+     * Examines whether user agent belongs to a known robot without profiling.
+     * @param builder builder containing user agent and where data is stored.
+     * @param data data to detect user agents.
+     * @return true if user agent belongs to a robot, false otherwise.
+     */
+    private boolean examineAsRobotUnprofiled(
+            final UserAgent.Builder builder, final Data data) {
+        final Robot robot = getRobotIndex(data).find(
+                builder.getUserAgentString());
+        if (robot == null) {
+            return false;
+        }
+        robot.copyTo(builder);
+        builder.setVersionNumber(VersionNumber.parseLastVersionNumber(
+                robot.getName()));
+        return true;
+    }
+
+    /**
+     * Returns index of robots of provided data, building it if data has
+     * changed since last index was built.
+     * Concurrent callers may build the same index more than once, which is
+     * harmless.
+     * @param data data to detect user agents.
+     * @return index of robots.
+     */
+    private RobotIndex getRobotIndex(final Data data) {
+        RobotIndex index = mRobotIndex;
+        if (index == null || index.mData != data) {
+            index = new RobotIndex(data);
+            mRobotIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Examines user agent to find its browser using the first matching
+     * pattern.
+     * @param builder builder where data is stored.
+     * @param data data to detect user agents.
+     * @param input budgeted user agent.
+     * @param version true to extract version of user agent, false otherwise.
+     */
+    private void examineAsBrowser(final UserAgent.Builder builder,
+            final Data data, final BudgetedCharSequence input,
+            final boolean version) {
+        for (final Map.Entry<BrowserPattern, Browser> entry :
+                data.getPatternToBrowserMap().entrySet()) {
+            final Matcher matcher = find(entry.getKey().getPattern(),
+                    UserAgentPatternProfile.Kind.BROWSER,
+                    entry.getKey().getPosition(),
+                    entry.getValue().getFamilyName(), input);
+            if (matcher != null) {
+                entry.getValue().copyTo(builder);
+                if (!version) {
+                    return;
+                }
+
+                VersionNumber number = VersionNumber.UNKNOWN;
+                if (matcher.groupCount() > 0) {
+                    final String group = matcher.group(1);
+                    number = VersionNumber.parseVersion(group != null ?
+                            group : "");
+                }
+                builder.setVersionNumber(number);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Examines user agent to find its operating system using the first
+     * matching pattern, unless the browser already determined it.
+     * @param builder builder where data is stored.
+     * @param data data to detect user agents.
+     * @param input budgeted user agent.
+     */
+    private void examineOperatingSystem(final UserAgent.Builder builder,
+            final Data data, final BudgetedCharSequence input) {
+        if (!net.sf.uadetector.OperatingSystem.EMPTY.equals(
+                builder.getOperatingSystem())) {
+            return;
+        }
+        for (final Map.Entry<OperatingSystemPattern,
+                net.sf.uadetector.internal.data.domain.OperatingSystem> entry :
+                data.getPatternToOperatingSystemMap().entrySet()) {
+            if (find(entry.getKey().getPattern(),
+                    UserAgentPatternProfile.Kind.OPERATING_SYSTEM,
+                    entry.getKey().getPosition(), entry.getValue().getName(),
+                    input) != null) {
+                entry.getValue().copyTo(builder);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Examines user agent to find its device category, either from device
+     * patterns or inferred from the type of user agent.
+     * @param builder builder where data is stored.
+     * @param data data to detect user agents.
+     * @param input budgeted user agent.
+     */
+    private void examineDeviceCategory(final UserAgent.Builder builder,
+            final Data data, final BudgetedCharSequence input) {
+        final net.sf.uadetector.UserAgentType type = builder.getType();
+        if (type == net.sf.uadetector.UserAgentType.ROBOT) {
+            builder.setDeviceCategory(findDeviceCategory(
+                    ReadableDeviceCategory.Category.OTHER, data));
+            return;
+        }
+
+        for (final Map.Entry<DevicePattern, Device> entry :
+                data.getPatternToDeviceMap().entrySet()) {
+            if (find(entry.getKey().getPattern(),
+                    UserAgentPatternProfile.Kind.DEVICE,
+                    entry.getKey().getPosition(), entry.getValue().getName(),
+                    input) != null) {
+                builder.setDeviceCategory(findDeviceCategory(
+                        ReadableDeviceCategory.Category.evaluate(
+                                entry.getValue().getName()), data));
+                return;
+            }
+        }
+
+        if (type == net.sf.uadetector.UserAgentType.UNKNOWN) {
+            builder.setDeviceCategory(net.sf.uadetector.DeviceCategory.EMPTY);
+        } else if (type == net.sf.uadetector.UserAgentType.OTHER ||
+                type == net.sf.uadetector.UserAgentType.LIBRARY ||
+                type == net.sf.uadetector.UserAgentType.VALIDATOR ||
+                type == net.sf.uadetector.UserAgentType.USERAGENT_ANONYMIZER) {
+            builder.setDeviceCategory(findDeviceCategory(
+                    ReadableDeviceCategory.Category.OTHER, data));
+        } else if (type == net.sf.uadetector.UserAgentType.MOBILE_BROWSER ||
+                type == net.sf.uadetector.UserAgentType.WAP_BROWSER) {
+            builder.setDeviceCategory(findDeviceCategory(
+                    ReadableDeviceCategory.Category.SMARTPHONE, data));
+        } else {
+            builder.setDeviceCategory(findDeviceCategory(
+                    ReadableDeviceCategory.Category.PERSONAL_COMPUTER, data));
+        }
+    }
+
+    /**
+     * Evaluates a pattern on the user agent, recording its cost if profiling
+     * is enabled.
+     * @param pattern pattern to be evaluated.
+     * @param kind kind of pattern.
+     * @param position position of pattern within its kind.
+     * @param target name of browser, operating system or device detected by
+     * pattern.
+     * @param input budgeted user agent.
+     * @return matcher positioned at the match or null if pattern does not
+     * match.
+     * @throws StepBudgetExceededException if parsing budget is exhausted.
+     */
+    private Matcher find(final Pattern pattern,
+            final UserAgentPatternProfile.Kind kind, final int position,
+            final String target, final BudgetedCharSequence input) {
+        final Matcher matcher = pattern.matcher(input);
+        if (mProfiler == null) {
+            return matcher.find() ? matcher : null;
+        }
+
+        final long remainingSteps = input.mRemainingSteps;
+        final long startNanos = System.nanoTime();
+        boolean found = false;
+        try {
+            found = matcher.find();
+        } finally {
+            mProfiler.counter(kind, position, pattern.pattern(),
+                    target).record(found, System.nanoTime() - startNanos,
+                    remainingSteps - Math.max(input.mRemainingSteps, 0));
+        }
+        return found ? matcher : null;
+    }
+
+    /**
+     * Finds device category data for provided category.
+     * @param category category to look for.
+     * @param data data to detect user agents.
+     * @return device category or an empty one if not found.
+     */
+    private static net.sf.uadetector.DeviceCategory findDeviceCategory(
+            final ReadableDeviceCategory.Category category, final Data data) {
+        for (final Device device : data.getDevices()) {
+            if (device.getCategory() == category) {
+                return new net.sf.uadetector.DeviceCategory(category,
+                        device.getIcon(), device.getInfoUrl(),
+                        device.getName());
+            }
+        }
+        return net.sf.uadetector.DeviceCategory.EMPTY;
+    }
+
+    /**
+     * Index of the robots of some data by their user agent.
+     */
+    private static class RobotIndex {
+
+        /**
+         * Data whose robots are indexed.
+         */
+        private final Data mData;
+
+        /**
+         * Robots indexed by their user agent. When several robots share the
+         * same user agent, the first one is kept, as done when robots are
+         * sequentially evaluated.
+         */
+        private final Map<String, Robot> mRobots = new HashMap<>();
+
+        /**
+         * Constructor.
+         * @param data data whose robots are indexed.
+         */
+        RobotIndex(final Data data) {
+            mData = data;
+            for (final Robot robot : data.getRobots()) {
+                if (!mRobots.containsKey(robot.getUserAgentString())) {
+                    mRobots.put(robot.getUserAgentString(), robot);
+                }
+            }
+        }
+
+        /**
+         * Finds the robot exactly matching provided user agent.
+         * @param userAgent user agent string.
+         * @return matching robot or null if none is found.
+         */
+        Robot find(final String userAgent) {
+            return mRobots.get(userAgent);
+        }
+    }
+
+    /**
+     * Holds the data store and updating parser shared by all parsers created
+     * using {@link #createCachingAndUpdating(int, long)}, which are lazily
+     * initialized on first use.
+     */
+    private static class CachingAndUpdatingHolder {
+
+        /**
+         * Shared data store, cached on disk and falling back to resources
+         * module.
+         */
+        static final CachingXmlDataStore STORE =
+                CachingXmlDataStore.createCachingXmlDataStore(
+                        UADetectorServiceFactory.RESOURCE_MODULE);
+
+        /**
+         * Shared parser in charge of periodically updating the data store.
+         */
+        static final UserAgentStringParser PARSER =
+                new UpdatingUserAgentStringParserImpl(STORE);
+    }
+
+    /**
+     * Holds the data store and updating parser shared by all parsers created
+     * using {@link UserAgentParserMode#ONLINE_UPDATING} mode, which are
+     * lazily initialized on first use.
+     */
+    private static class OnlineUpdatingHolder {
+
+        /**
+         * Shared data store, updated online and falling back to resources
+         * module.
+         */
+        static final OnlineXmlDataStore STORE = new OnlineXmlDataStore(
+                UADetectorServiceFactory.RESOURCE_MODULE);
+
+        /**
+         * Shared parser in charge of periodically updating the data store.
+         */
+        static final UserAgentStringParser PARSER =
+                new UpdatingUserAgentStringParserImpl(STORE);
+    }
+
+    /**
+     * Character sequence wrapping a user agent that consumes a step of the
+     * parsing budget each time a character is read.
+     * Each instance is used by a single parse, hence it is not thread safe.
+     */
+    private static class BudgetedCharSequence implements CharSequence {
+
+        /**
+         * Wrapped user agent.
+         */
+        private final String mValue;
+
+        /**
+         * Remaining steps of the budget.
+         */
+        private long mRemainingSteps;
+
+        /**
+         * Constructor.
+         * @param value wrapped user agent.
+         * @param maxSteps budget of steps.
+         */
+        BudgetedCharSequence(final String value, final long maxSteps) {
+            mValue = value;
+            mRemainingSteps = maxSteps;
+        }
+
+        /**
+         * Returns length of user agent.
+         * @return length of user agent.
+         */
+        @Override
+        public int length() {
+            return mValue.length();
+        }
+
+        /**
+         * Returns character at provided position consuming a step of the
+         * budget.
+         * @param index position of character.
+         * @return character.
+         * @throws StepBudgetExceededException if budget is exhausted.
+         */
+        @Override
+        public char charAt(final int index) {
+            if (--mRemainingSteps < 0) {
+                throw BUDGET_EXCEEDED;
+            }
+            return mValue.charAt(index);
+        }
+
+        /**
+         * Returns a subsequence of user agent, which is only used to extract
+         * matched groups and consumes no budget.
+         * @param start start position, inclusive.
+         * @param end end position, exclusive.
+         * @return subsequence.
+         */
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return mValue.subSequence(start, end);
+        }
+
+        /**
+         * Returns wrapped user agent.
+         * @return wrapped user agent.
+         */
+        @Override
+        public String toString() {
+            return mValue;
+        }
+    }
+
+    /**
+     * Exception thrown when parsing budget is exhausted.
+     */
+    private static class StepBudgetExceededException extends RuntimeException {
+
+        /**
+         * Serialization version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor. Stack trace is neither filled nor suppressed exceptions
+         * are recorded, since this exception is only used for control flow.
+         */
+        StepBudgetExceededException() {
+            super("Parsing budget exhausted", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,503 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Compact and immutable representation of detected user agent data, taking
+ * three words instead of eleven references and their strings.
+ * Device category, operating system family and user agent type are packed
+ * into a single bit field, along with precomputed flags indicating whether
+ * data belongs to a desktop, mobile, tablet or smart TV client, and the user
+ * agent version whenever it is made of up to four small numbers (i.e.
+ * "99.0.4844.51"). Remaining strings, which repeat across many user agents,
+ * are stored as identifiers of a shared dictionary.
+ * The original user agent is not kept, as it is usually available wherever
+ * compact data is stored (i.e. as the key of a cache).
+ * Instances are compared by comparing their three words.
+ */
+public final class CompactUserAgentData {
+
+    /**
+     * Maximum number of distinct strings contained in compact data.
+     */
+    static final int DICTIONARY_CAPACITY = 0xFFFF;
+
+    /**
+     * Identifier stored for null strings.
+     */
+    private static final int NULL_STRING = 0xFFFF;
+
+    /**
+     * Number of bits of each string identifier.
+     */
+    private static final int STRING_BITS = 16;
+
+    /**
+     * Number of bits of device categories.
+     */
+    private static final int DEVICE_CATEGORY_BITS = 5;
+
+    /**
+     * Number of bits of operating system families.
+     */
+    private static final int OS_FAMILY_BITS = 7;
+
+    /**
+     * Number of bits of user agent types.
+     */
+    private static final int USER_AGENT_TYPE_BITS = 5;
+
+    /**
+     * Position of the operating system family within the bit field.
+     */
+    private static final int OS_FAMILY_SHIFT = DEVICE_CATEGORY_BITS;
+
+    /**
+     * Position of the user agent type within the bit field.
+     */
+    private static final int USER_AGENT_TYPE_SHIFT = OS_FAMILY_SHIFT +
+            OS_FAMILY_BITS;
+
+    /**
+     * Bit indicating a desktop client.
+     */
+    private static final long DESKTOP_BIT = 1L << (USER_AGENT_TYPE_SHIFT +
+            USER_AGENT_TYPE_BITS);
+
+    /**
+     * Bit indicating a mobile client.
+     */
+    private static final long MOBILE_BIT = DESKTOP_BIT << 1;
+
+    /**
+     * Bit indicating a tablet client.
+     */
+    private static final long TABLET_BIT = DESKTOP_BIT << 2;
+
+    /**
+     * Bit indicating a smart TV client.
+     */
+    private static final long SMART_TV_BIT = DESKTOP_BIT << 3;
+
+    /**
+     * Bit indicating that user agent version is packed into the bit field.
+     */
+    private static final long PACKED_VERSION_BIT = DESKTOP_BIT << 4;
+
+    /**
+     * Position of the number of components of packed versions minus one.
+     */
+    private static final int VERSION_COUNT_SHIFT = Long.numberOfTrailingZeros(
+            PACKED_VERSION_BIT) + 1;
+
+    /**
+     * Number of bits of each component of packed versions. Versions having
+     * larger components are stored in the dictionary.
+     */
+    private static final int[] VERSION_BITS = {9, 9, 14, 8};
+
+    /**
+     * Values of device categories.
+     */
+    private static final DeviceCategory[] DEVICE_CATEGORIES =
+            DeviceCategory.values();
+
+    /**
+     * Values of operating system families.
+     */
+    private static final OperatingSystemFamily[] OS_FAMILIES =
+            OperatingSystemFamily.values();
+
+    /**
+     * Values of user agent types.
+     */
+    private static final UserAgentType[] USER_AGENT_TYPES =
+            UserAgentType.values();
+
+    /**
+     * Dictionary of strings shared by all instances.
+     */
+    private static final UserAgentStringDictionary DICTIONARY =
+            new UserAgentStringDictionary(DICTIONARY_CAPACITY);
+
+    /**
+     * Device category, operating system family, user agent type, device
+     * flags and packed user agent version.
+     */
+    private final long mBits;
+
+    /**
+     * Identifiers of device category name, family, operating system family
+     * name and operating system producer.
+     */
+    private final long mNames;
+
+    /**
+     * Identifiers of operating system name, operating system version and
+     * user agent version when it is not packed.
+     */
+    private final long mVersions;
+
+    /**
+     * Constructor.
+     * @param bits bit field.
+     * @param names identifiers of names.
+     * @param versions identifiers of operating system name and versions.
+     */
+    private CompactUserAgentData(final long bits, final long names,
+            final long versions) {
+        mBits = bits;
+        mNames = names;
+        mVersions = versions;
+    }
+
+    /**
+     * Converts provided user agent data into its compact representation.
+     * @param data user agent data.
+     * @return compact representation or null if data contains new strings
+     * once the shared dictionary is full.
+     */
+    public static CompactUserAgentData fromUserAgentData(
+            final UserAgentData data) {
+        final UserAgentType userAgentType = data.getUserAgentType();
+        final DeviceCategory deviceCategory = data.getDeviceCategory();
+        long bits = ordinal(deviceCategory) |
+                (long) ordinal(data.getOsFamily()) << OS_FAMILY_SHIFT |
+                (long) ordinal(userAgentType) << USER_AGENT_TYPE_SHIFT;
+        if (UserAgentData.isDesktop(userAgentType, deviceCategory)) {
+            bits |= DESKTOP_BIT;
+        }
+        if (UserAgentData.isMobile(userAgentType, deviceCategory)) {
+            bits |= MOBILE_BIT;
+        }
+        if (UserAgentData.isTablet(userAgentType, deviceCategory)) {
+            bits |= TABLET_BIT;
+        }
+        if (UserAgentData.isSmartTV(userAgentType, deviceCategory)) {
+            bits |= SMART_TV_BIT;
+        }
+
+        final long packedVersion = packVersion(data.getUserAgentVersion());
+        final int userAgentVersion;
+        if (packedVersion >= 0) {
+            bits |= PACKED_VERSION_BIT | packedVersion << VERSION_COUNT_SHIFT;
+            userAgentVersion = NULL_STRING;
+        } else {
+            userAgentVersion = id(data.getUserAgentVersion());
+        }
+
+        final int[] ids = {
+                id(data.getDeviceCategoryName()), id(data.getFamily()),
+                id(data.getOsFamilyName()), id(data.getOsProducer()),
+                id(data.getOsName()), id(data.getOsVersion()),
+                userAgentVersion, NULL_STRING
+        };
+        for (final int id : ids) {
+            if (id < 0) {
+                return null;
+            }
+        }
+        final long names = pack(ids, 0);
+        final long versions = pack(ids, 4);
+        return new CompactUserAgentData(bits, names, versions);
+    }
+
+    /**
+     * Converts this instance into user agent data.
+     * @param userAgent original user agent string.
+     * @return user agent data.
+     */
+    public UserAgentData toUserAgentData(final String userAgent) {
+        return new UserAgentData(userAgent, getDeviceCategory(),
+                getDeviceCategoryName(), getFamily(), getOsFamily(),
+                getOsFamilyName(), getOsName(), getOsProducer(),
+                getOsVersion(), getUserAgentType(), getUserAgentVersion());
+    }
+
+    /**
+     * Returns device category.
+     * @return device category.
+     */
+    public DeviceCategory getDeviceCategory() {
+        return value(DEVICE_CATEGORIES, mBits, 0, DEVICE_CATEGORY_BITS);
+    }
+
+    /**
+     * Returns device category name.
+     * @return device category name.
+     */
+    public String getDeviceCategoryName() {
+        return string(mNames, 0);
+    }
+
+    /**
+     * Returns user agent family.
+     * @return user agent family.
+     */
+    public String getFamily() {
+        return string(mNames, 1);
+    }
+
+    /**
+     * Returns operating system family.
+     * @return operating system family.
+     */
+    public OperatingSystemFamily getOsFamily() {
+        return value(OS_FAMILIES, mBits, OS_FAMILY_SHIFT, OS_FAMILY_BITS);
+    }
+
+    /**
+     * Returns operating system family name.
+     * @return operating system family name.
+     */
+    public String getOsFamilyName() {
+        return string(mNames, 2);
+    }
+
+    /**
+     * Returns operating system name.
+     * @return operating system name.
+     */
+    public String getOsName() {
+        return string(mVersions, 0);
+    }
+
+    /**
+     * Returns operating system producer.
+     * @return operating system producer.
+     */
+    public String getOsProducer() {
+        return string(mNames, 3);
+    }
+
+    /**
+     * Returns operating system version.
+     * @return operating system version.
+     */
+    public String getOsVersion() {
+        return string(mVersions, 1);
+    }
+
+    /**
+     * Returns user agent type.
+     * @return user agent type.
+     */
+    public UserAgentType getUserAgentType() {
+        return value(USER_AGENT_TYPES, mBits, USER_AGENT_TYPE_SHIFT,
+                USER_AGENT_TYPE_BITS);
+    }
+
+    /**
+     * Returns user agent version. Packed versions are converted back into a
+     * new string.
+     * @return user agent version.
+     */
+    public String getUserAgentVersion() {
+        if ((mBits & PACKED_VERSION_BIT) == 0) {
+            return string(mVersions, 2);
+        }
+
+        final long packed = mBits >>> VERSION_COUNT_SHIFT;
+        final int count = (int) (packed & 0x3) + 1;
+        final StringBuilder builder = new StringBuilder();
+        int shift = 2;
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append('.');
+            }
+            builder.append((packed >>> shift) & ((1L << VERSION_BITS[i]) - 1));
+            shift += VERSION_BITS[i];
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Indicates if data corresponds to a desktop web browser or email client.
+     * @return true if data belongs to a desktop client.
+     * @see UserAgentData#isDesktop()
+     */
+    public boolean isDesktop() {
+        return (mBits & DESKTOP_BIT) != 0;
+    }
+
+    /**
+     * Indicates if data corresponds to a mobile web browser or email client.
+     * @return true if data belongs to a mobile client.
+     * @see UserAgentData#isMobile()
+     */
+    public boolean isMobile() {
+        return (mBits & MOBILE_BIT) != 0;
+    }
+
+    /**
+     * Indicates if data corresponds to a tablet web browser or email client.
+     * @return true if data belongs to a tablet client.
+     * @see UserAgentData#isTablet()
+     */
+    public boolean isTablet() {
+        return (mBits & TABLET_BIT) != 0;
+    }
+
+    /**
+     * Indicates if data corresponds to a smart TV.
+     * @return true if data belongs to a smart TV.
+     * @see UserAgentData#isSmartTV()
+     */
+    public boolean isSmartTV() {
+        return (mBits & SMART_TV_BIT) != 0;
+    }
+
+    /**
+     * Indicates whether provided object contains the same data.
+     * @param obj object to be compared.
+     * @return true if both contain the same data, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof CompactUserAgentData)) {
+            return false;
+        }
+        final CompactUserAgentData other = (CompactUserAgentData) obj;
+        return mBits == other.mBits && mNames == other.mNames &&
+                mVersions == other.mVersions;
+    }
+
+    /**
+     * Returns hash code of contained data.
+     * @return hash code.
+     */
+    @Override
+    public int hashCode() {
+        long h = mBits * 31 + mNames;
+        h = h * 31 + mVersions;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Packs a version made of up to four numbers separated by dots, as long
+     * as numbers fit in their bits and have no leading zeros, so that the
+     * same string is obtained when unpacking it.
+     * @param version version to be packed.
+     * @return packed version containing the number of components minus one
+     * in its two lowest bits followed by each component, or -1 if version
+     * cannot be packed.
+     */
+    static long packVersion(final String version) {
+        if (version == null || version.isEmpty()) {
+            return -1;
+        }
+
+        long result = 0;
+        int shift = 2;
+        int component = 0;
+        long value = 0;
+        int digits = 0;
+        for (int i = 0; i <= version.length(); i++) {
+            final char c = i < version.length() ? version.charAt(i) : '.';
+            if (c == '.') {
+                if (digits == 0) {
+                    return -1;
+                }
+                result |= value << shift;
+                shift += VERSION_BITS[component];
+                component++;
+                value = 0;
+                digits = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (component == VERSION_BITS.length ||
+                        digits == 1 && value == 0) {
+                    // too many components, or leading zeros would be lost
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                if (value >= 1L << VERSION_BITS[component]) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        return result | (component - 1);
+    }
+
+    /**
+     * Returns identifier of provided string within the shared dictionary.
+     * @param value string.
+     * @return identifier, {@link #NULL_STRING} if string is null, or -1 if
+     * dictionary is full.
+     */
+    private static int id(final String value) {
+        final int id = DICTIONARY.idOf(value);
+        if (id == UserAgentStringDictionary.NULL_ID) {
+            return NULL_STRING;
+        }
+        return id == UserAgentStringDictionary.FULL ? -1 : id;
+    }
+
+    /**
+     * Packs four string identifiers into a word.
+     * @param ids string identifiers.
+     * @param start position of first identifier to be packed.
+     * @return packed identifiers.
+     */
+    private static long pack(final int[] ids, final int start) {
+        long result = 0;
+        for (int i = 0; i < 4; i++) {
+            result |= (long) ids[start + i] << (i * STRING_BITS);
+        }
+        return result;
+    }
+
+    /**
+     * Returns a string of a word of packed identifiers.
+     * @param word packed identifiers.
+     * @param index position of identifier within word.
+     * @return string or null.
+     */
+    private static String string(final long word, final int index) {
+        final int id = (int) (word >>> (index * STRING_BITS)) & NULL_STRING;
+        return DICTIONARY.get(id == NULL_STRING ?
+                UserAgentStringDictionary.NULL_ID : id);
+    }
+
+    /**
+     * Encodes an enumerator value.
+     * @param value value or null.
+     * @return ordinal of value plus one, or zero if value is null.
+     */
+    private static int ordinal(final Enum<?> value) {
+        return value != null ? value.ordinal() + 1 : 0;
+    }
+
+    /**
+     * Decodes an enumerator value from a bit field.
+     * @param values all values of the enumerator.
+     * @param bits bit field.
+     * @param shift position of value within bit field.
+     * @param length number of bits of value.
+     * @param <T> type of enumerator.
+     * @return value or null.
+     */
+    private static <T> T value(final T[] values, final long bits,
+            final int shift, final int length) {
+        final int ordinal = (int) (bits >>> shift) & ((1 << length) - 1);
+        return ordinal != 0 ? values[ordinal - 1] : null;
+    }
+}
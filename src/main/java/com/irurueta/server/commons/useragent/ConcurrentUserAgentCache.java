@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Cache of detected data optimized for concurrent reads, evicting least
+ * recently used entries.
+ * Lookups never acquire any lock: entries are read from a concurrent hash
+ * map and accesses are recorded on striped ring buffers selected by thread.
+ * Recorded accesses are replayed on the list keeping access order in
+ * batches, once any buffer is full, by the thread that manages to acquire
+ * the eviction lock, while other threads carry on without waiting.
+ * Buffers are lossy, hence under heavy contention some accesses might not be
+ * replayed, which only makes eviction order approximate.
+ * Updates acquire the eviction lock, as they only happen after parsing a
+ * user agent, which is far more expensive.
+ * Expired entries are no longer returned and are replaced on next update or
+ * evicted once they become least recently used.
+ * This class is thread safe.
+ */
+public class ConcurrentUserAgentCache implements UserAgentCache {
+
+    /**
+     * Number of accesses each read buffer can hold. Must be a power of two.
+     */
+    static final int READ_BUFFER_SIZE = 32;
+
+    /**
+     * Maximum number of read buffers.
+     */
+    static final int MAX_READ_BUFFERS = 64;
+
+    /**
+     * Maximum number of cached user agents.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Amount of time entries are kept, expressed in nanoseconds.
+     */
+    private final long mExpirationNanos;
+
+    /**
+     * Cached entries indexed by user agent.
+     */
+    private final ConcurrentHashMap<String, Node> mMap;
+
+    /**
+     * Buffers recording accesses, selected by thread.
+     */
+    private final ReadBuffer[] mReadBuffers;
+
+    /**
+     * Mask selecting a read buffer.
+     */
+    private final int mReadBufferMask;
+
+    /**
+     * Lock protecting the list keeping access order.
+     */
+    private final ReentrantLock mEvictionLock = new ReentrantLock();
+
+    /**
+     * Sentinel of the circular list keeping access order, whose next node is
+     * the least recently used one.
+     */
+    private final Node mSentinel = new Node(null, null, 0);
+
+    /**
+     * Number of entries on the list keeping access order.
+     */
+    private int mSize;
+
+    /**
+     * Constructor using as many read buffers as available processors.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public ConcurrentUserAgentCache(final int maxSize,
+            final long expirationTime, final TimeUnit unit) {
+        this(maxSize, expirationTime, unit,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @param concurrencyLevel expected number of threads reading the cache
+     * concurrently, which determines the number of read buffers.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public ConcurrentUserAgentCache(final int maxSize,
+            final long expirationTime, final TimeUnit unit,
+            final int concurrencyLevel) {
+        if (maxSize <= 0 || expirationTime <= 0 || unit == null ||
+                concurrencyLevel <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mMaxSize = maxSize;
+        mExpirationNanos = unit.toNanos(expirationTime);
+        mMap = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 16), 0.75f,
+                concurrencyLevel);
+
+        int buffers = 1;
+        while (buffers < concurrencyLevel && buffers < MAX_READ_BUFFERS) {
+            buffers <<= 1;
+        }
+        mReadBuffers = new ReadBuffer[buffers];
+        for (int i = 0; i < buffers; i++) {
+            mReadBuffers[i] = new ReadBuffer();
+        }
+        mReadBufferMask = buffers - 1;
+        mSentinel.mPrevious = mSentinel;
+        mSentinel.mNext = mSentinel;
+    }
+
+    /**
+     * Returns number of buffers recording accesses.
+     * @return number of read buffers.
+     */
+    public int getReadBufferCount() {
+        return mReadBuffers.length;
+    }
+
+    /**
+     * Returns number of nodes on the list keeping access order, once
+     * buffered accesses are replayed, which equals the number of cached user
+     * agents unless the list is corrupted.
+     * @return number of linked nodes or -1 if list is corrupted.
+     */
+    int getLinkedSize() {
+        mEvictionLock.lock();
+        try {
+            drainReadBuffers();
+            int count = 0;
+            Node node = mSentinel.mNext;
+            while (node != mSentinel) {
+                if (node == null || node.mNext == null ||
+                        node.mNext.mPrevious != node || ++count > mSize) {
+                    return -1;
+                }
+                node = node.mNext;
+            }
+            return count == mSize ? count : -1;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    @Override
+    public UserAgentData getIfPresent(final String userAgent) {
+        final Node node = mMap.get(userAgent);
+        if (node == null ||
+                System.nanoTime() - node.mWriteNanos > mExpirationNanos) {
+            return null;
+        }
+        recordRead(node);
+        return new UserAgentData(node.mValue);
+    }
+
+    /**
+     * Caches data of provided user agent.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    @Override
+    public void put(final String userAgent, final UserAgentData data) {
+        final Node node = new Node(userAgent, data, System.nanoTime());
+        mEvictionLock.lock();
+        try {
+            drainReadBuffers();
+            final Node previous = mMap.put(userAgent, node);
+            if (previous != null) {
+                unlink(previous);
+            }
+            linkLast(node);
+            while (mSize > mMaxSize) {
+                final Node eldest = mSentinel.mNext;
+                unlink(eldest);
+                mMap.remove(eldest.mKey, eldest);
+            }
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of cached user agents, including expired ones not
+     * evicted yet.
+     * @return number of cached user agents.
+     */
+    @Override
+    public long size() {
+        return mMap.size();
+    }
+
+    /**
+     * Indicates whether the maximum number of user agents is cached, so that
+     * caching new ones evicts cached ones.
+     * @return true if cache is full, false otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        return mMap.size() >= mMaxSize;
+    }
+
+    /**
+     * Removes all cached user agents. Removed nodes are unlinked, so that
+     * accesses recorded by concurrent reads are discarded when replayed.
+     */
+    @Override
+    public void invalidateAll() {
+        mEvictionLock.lock();
+        try {
+            for (final ReadBuffer buffer : mReadBuffers) {
+                for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                    buffer.mSlots.set(i, null);
+                }
+            }
+            mMap.clear();
+            // nodes being read concurrently might still be recorded, so they
+            // are unlinked to be skipped once replayed
+            Node node = mSentinel.mNext;
+            while (node != mSentinel) {
+                final Node next = node.mNext;
+                node.mPrevious = null;
+                node.mNext = null;
+                node = next;
+            }
+            mSentinel.mPrevious = mSentinel;
+            mSentinel.mNext = mSentinel;
+            mSize = 0;
+        } finally {
+            mEvictionLock.unlock();
+        }
+    }
+
+    /**
+     * Records an access to provided node on the buffer of current thread,
+     * and replays buffered accesses if buffer becomes full and no other
+     * thread is doing so.
+     * @param node accessed node.
+     */
+    private void recordRead(final Node node) {
+        final ReadBuffer buffer = mReadBuffers[
+                (int) Thread.currentThread().getId() & mReadBufferMask];
+        final int index = buffer.mWriteCount.getAndIncrement() &
+                (READ_BUFFER_SIZE - 1);
+        buffer.mSlots.lazySet(index, node);
+        if (index == READ_BUFFER_SIZE - 1 && mEvictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                mEvictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replays buffered accesses, moving accessed nodes that are still cached
+     * to the most recently used end of the list.
+     * Must be called holding the eviction lock.
+     */
+    private void drainReadBuffers() {
+        for (final ReadBuffer buffer : mReadBuffers) {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                final Node node = buffer.mSlots.getAndSet(i, null);
+                if (node != null && node.mNext != null) {
+                    unlink(node);
+                    linkLast(node);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds provided node at the most recently used end of the list.
+     * Must be called holding the eviction lock.
+     * @param node node to be added.
+     */
+    private void linkLast(final Node node) {
+        final Node last = mSentinel.mPrevious;
+        node.mPrevious = last;
+        node.mNext = mSentinel;
+        last.mNext = node;
+        mSentinel.mPrevious = node;
+        mSize++;
+    }
+
+    /**
+     * Removes provided node from the list, if linked.
+     * Must be called holding the eviction lock.
+     * @param node node to be removed.
+     */
+    private void unlink(final Node node) {
+        if (node.mNext == null) {
+            return;
+        }
+        node.mPrevious.mNext = node.mNext;
+        node.mNext.mPrevious = node.mPrevious;
+        node.mPrevious = null;
+        node.mNext = null;
+        mSize--;
+    }
+
+    /**
+     * Cached entry, which is also a node of the list keeping access order.
+     */
+    private static class Node {
+
+        /**
+         * User agent.
+         */
+        private final String mKey;
+
+        /**
+         * Cached data, which is never modified.
+         */
+        private final UserAgentData mValue;
+
+        /**
+         * Time when entry was cached, expressed in nanoseconds.
+         */
+        private final long mWriteNanos;
+
+        /**
+         * Previous node on the list, guarded by the eviction lock.
+         */
+        private Node mPrevious;
+
+        /**
+         * Next node on the list, guarded by the eviction lock, or null if
+         * node is not linked.
+         */
+        private Node mNext;
+
+        /**
+         * Constructor.
+         * @param key user agent.
+         * @param value cached data.
+         * @param writeNanos time when entry was cached.
+         */
+        Node(final String key, final UserAgentData value,
+                final long writeNanos) {
+            mKey = key;
+            mValue = value;
+            mWriteNanos = writeNanos;
+        }
+    }
+
+    /**
+     * Lossy ring buffer recording accesses made by a subset of threads.
+     */
+    private static class ReadBuffer {
+
+        /**
+         * Recorded accesses.
+         */
+        private final AtomicReferenceArray<Node> mSlots =
+                new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+
+        /**
+         * Number of recorded accesses, whose lowest bits select the slot of
+         * the next one.
+         */
+        private final AtomicInteger mWriteCount = new AtomicInteger();
+    }
+}
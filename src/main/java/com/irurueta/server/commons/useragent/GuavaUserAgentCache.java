@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache of detected data keyed by user agent string and backed by a Guava
+ * cache evicting least recently used entries.
+ * This class is thread safe.
+ */
+public class GuavaUserAgentCache implements UserAgentCache {
+
+    /**
+     * Default concurrency level, which is the one used by Guava.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+
+    /**
+     * Cached data indexed by user agent.
+     */
+    private final Cache<String, UserAgentData> mCache;
+
+    /**
+     * Maximum number of cached user agents.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public GuavaUserAgentCache(final int maxSize, final long expirationTime,
+            final TimeUnit unit) {
+        this(maxSize, expirationTime, unit, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @param concurrencyLevel number of segments cache is split into, each
+     * one having its own lock, which limits the number of threads that can
+     * update the cache concurrently.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public GuavaUserAgentCache(final int maxSize, final long expirationTime,
+            final TimeUnit unit, final int concurrencyLevel) {
+        if (maxSize <= 0 || expirationTime <= 0 || unit == null ||
+                concurrencyLevel <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mMaxSize = maxSize;
+        mCache = CacheBuilder.newBuilder().maximumSize(maxSize).
+                expireAfterWrite(expirationTime, unit).
+                concurrencyLevel(concurrencyLevel).build();
+    }
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    @Override
+    public UserAgentData getIfPresent(final String userAgent) {
+        final UserAgentData data = mCache.getIfPresent(userAgent);
+        return data != null ? new UserAgentData(data) : null;
+    }
+
+    /**
+     * Caches data of provided user agent.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    @Override
+    public void put(final String userAgent, final UserAgentData data) {
+        mCache.put(userAgent, data);
+    }
+
+    /**
+     * Returns approximate number of cached user agents.
+     * @return number of cached user agents.
+     */
+    @Override
+    public long size() {
+        return mCache.size();
+    }
+
+    /**
+     * Indicates whether the maximum number of user agents is cached, so that
+     * caching new ones evicts cached ones.
+     * @return true if cache is full, false otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        return mCache.size() >= mMaxSize;
+    }
+
+    /**
+     * Removes all cached user agents.
+     */
+    @Override
+    public void invalidateAll() {
+        mCache.invalidateAll();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of detected data keyed by a 64 bit hash of user agents instead of
+ * the user agents themselves.
+ * Hashes are computed in a single pass over the user agent, and lookups then
+ * only hash and compare 8 byte keys, instead of computing the hash code of
+ * long user agent strings and comparing them in full within the cache.
+ * User agent strings are never kept. When verification is enabled, each
+ * entry also keeps a second independent 64 bit hash and the length of its
+ * user agent, which are compared on each hit, so that colliding user agents
+ * are detected and treated as misses for 12 extra bytes per entry instead of
+ * a full copy of the string. When disabled, data of another user agent is
+ * returned when hashes collide. Hashes are keyed by random keys generated on
+ * each execution, so that clients cannot craft colliding user agents, and
+ * probability of any collision among n cached user agents is about
+ * n^2 / 2^65 (i.e. 3e-8 for one million entries) without verification, and
+ * negligible with it, since both hashes and the length would need to match.
+ * This class is thread safe.
+ */
+public class HashedUserAgentCache implements UserAgentCache {
+
+    /**
+     * Cached data indexed by hash of user agent.
+     */
+    private final Cache<Long, UserAgentData> mCache;
+
+    /**
+     * Maximum number of cached user agents.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Indicates whether verification hashes are compared on each hit.
+     */
+    private final boolean mVerified;
+
+    /**
+     * Number of hits discarded because their user agent did not match.
+     */
+    private final AtomicLong mCollisionCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @param verified true to keep a verification hash of cached user agents
+     * and compare it on each hit, false to accept the risk of hash
+     * collisions.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public HashedUserAgentCache(final int maxSize, final long expirationTime,
+            final TimeUnit unit, final boolean verified) {
+        if (maxSize <= 0 || expirationTime <= 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        mMaxSize = maxSize;
+        mCache = CacheBuilder.newBuilder().maximumSize(maxSize).
+                expireAfterWrite(expirationTime, unit).build();
+        mVerified = verified;
+    }
+
+    /**
+     * Indicates whether verification hashes are compared on each hit.
+     * @return true if hash collisions are verified, false otherwise.
+     */
+    public boolean isVerified() {
+        return mVerified;
+    }
+
+    /**
+     * Returns number of hits discarded because their user agent did not
+     * match the cached one. Only collisions are counted when verification is
+     * enabled.
+     * @return number of detected hash collisions.
+     */
+    public long getCollisionCount() {
+        return mCollisionCount.get();
+    }
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    @Override
+    public UserAgentData getIfPresent(final String userAgent) {
+        final UserAgentData data = mCache.getIfPresent(hash(userAgent));
+        if (data == null) {
+            return null;
+        }
+        if (mVerified && !((VerifiedData) data).matches(userAgent.length(),
+                verificationHash(userAgent))) {
+            mCollisionCount.incrementAndGet();
+            return null;
+        }
+
+        final UserAgentData result = new UserAgentData(data);
+        result.setUserAgent(userAgent);
+        return result;
+    }
+
+    /**
+     * Caches data of provided user agent. Any cached data colliding with
+     * provided user agent is replaced.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    @Override
+    public void put(final String userAgent, final UserAgentData data) {
+        final UserAgentData value = mVerified ?
+                new VerifiedData(data, userAgent.length(),
+                        verificationHash(userAgent)) :
+                new UserAgentData(data);
+        value.setUserAgent(null);
+        mCache.put(hash(userAgent), value);
+    }
+
+    /**
+     * Returns approximate number of cached user agents.
+     * @return number of cached user agents.
+     */
+    @Override
+    public long size() {
+        return mCache.size();
+    }
+
+    /**
+     * Indicates whether the maximum number of user agents is cached, so that
+     * caching new ones evicts cached ones.
+     * @return true if cache is full, false otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        return mCache.size() >= mMaxSize;
+    }
+
+    /**
+     * Removes all cached user agents.
+     */
+    @Override
+    public void invalidateAll() {
+        mCache.invalidateAll();
+    }
+
+    /**
+     * Computes key of provided user agent.
+     * @param userAgent user agent.
+     * @return 64 bit hash of user agent.
+     */
+    long hash(final String userAgent) {
+        return UserAgentHashing.hash64(userAgent);
+    }
+
+    /**
+     * Computes hash of provided user agent used to verify hits.
+     * @param userAgent user agent.
+     * @return 64 bit hash of user agent independent of its key.
+     */
+    long verificationHash(final String userAgent) {
+        return UserAgentHashing.verificationHash64(userAgent);
+    }
+
+    /**
+     * Cached data along with the length and verification hash of the user
+     * agent it belongs to.
+     */
+    private static final class VerifiedData extends UserAgentData {
+
+        /**
+         * Length of user agent.
+         */
+        private final int mLength;
+
+        /**
+         * Verification hash of user agent.
+         */
+        private final long mCheck;
+
+        /**
+         * Constructor.
+         * @param data data to be copied.
+         * @param length length of user agent.
+         * @param check verification hash of user agent.
+         */
+        VerifiedData(final UserAgentData data, final int length,
+                final long check) {
+            super(data);
+            mLength = length;
+            mCheck = check;
+        }
+
+        /**
+         * Indicates whether this data belongs to a user agent having
+         * provided length and verification hash.
+         * @param length length of user agent.
+         * @param check verification hash of user agent.
+         * @return true if both values match, false otherwise.
+         */
+        boolean matches(final int length, final long check) {
+            return mLength == length && mCheck == check;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import jdk.jfr.EventType;
+
+/**
+ * Records detections as {@link UserAgentDetectionEvent} events of the JDK
+ * Flight Recorder.
+ * This class must only be loaded by reflection once JDK Flight Recorder is
+ * known to be available.
+ */
+class JfrUserAgentDetectionRecorder extends UserAgentDetectionRecorder {
+
+    /**
+     * Type of recorded events. Checked before instantiating any event, so
+     * that no garbage is produced while no recording enables them.
+     */
+    private final EventType mEventType = EventType.getEventType(
+            UserAgentDetectionEvent.class);
+
+    /**
+     * Starts timing a detection.
+     * @return a started event or null if event is disabled.
+     */
+    @Override
+    Object begin() {
+        if (!mEventType.isEnabled()) {
+            return null;
+        }
+        final UserAgentDetectionEvent event = new UserAgentDetectionEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Indicates that the user agent of a detection had to be parsed.
+     * @param event started event.
+     * @param parseNanos time spent parsing expressed in nanoseconds.
+     */
+    @Override
+    void miss(final Object event, final long parseNanos) {
+        final UserAgentDetectionEvent e = (UserAgentDetectionEvent) event;
+        e.hit = false;
+        e.parseDuration = parseNanos;
+    }
+
+    /**
+     * Finishes a detection and commits its event if it exceeds the configured
+     * threshold.
+     * @param event started event.
+     * @param userAgent user agent being detected.
+     * @param data detected data or null if detection failed.
+     * @param failure cause of failure or null if detection succeeded.
+     */
+    @Override
+    void end(final Object event, final String userAgent,
+            final UserAgentData data, final Throwable failure) {
+        final UserAgentDetectionEvent e = (UserAgentDetectionEvent) event;
+        e.end();
+        if (!e.shouldCommit()) {
+            return;
+        }
+
+        e.userAgentLength = userAgent != null ? userAgent.length() : 0;
+        if (data != null) {
+            e.deviceCategory = data.getDeviceCategory() != null ?
+                    data.getDeviceCategory().name() : null;
+            e.userAgentType = data.getUserAgentType() != null ?
+                    data.getUserAgentType().name() : null;
+        }
+        if (failure != null) {
+            e.failureCause = failure.toString();
+        }
+        e.commit();
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * User agent data whose detection is deferred until first accessed.
+ * Stored as a request attribute by {@link UserAgentDetectionFilter}, so that
+ * requests never accessing detected data do not pay for parsing user agents
+ * that are not cached.
+ * This class is thread safe, and detection is done at most once.
+ */
+public final class LazyUserAgentData {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            LazyUserAgentData.class.getName());
+
+    /**
+     * Detector used to detect data on first access, or null if data was
+     * already detected.
+     */
+    private final UserAgentDetector mDetector;
+
+    /**
+     * User agent string.
+     */
+    private final String mUserAgent;
+
+    /**
+     * Detected data or null if detection failed or it has not been done yet.
+     */
+    private volatile UserAgentData mData;
+
+    /**
+     * Indicates whether detection has been done.
+     */
+    private volatile boolean mResolved;
+
+    /**
+     * Constructor for data to be detected on first access.
+     * @param detector detector used to detect data.
+     * @param userAgent user agent string.
+     * @throws IllegalArgumentException if detector is null.
+     */
+    LazyUserAgentData(final UserAgentDetector detector,
+            final String userAgent) {
+        if (detector == null) {
+            throw new IllegalArgumentException();
+        }
+        mDetector = detector;
+        mUserAgent = userAgent;
+    }
+
+    /**
+     * Constructor for already detected data.
+     * @param userAgent user agent string.
+     * @param data detected data.
+     */
+    LazyUserAgentData(final String userAgent, final UserAgentData data) {
+        mDetector = null;
+        mUserAgent = userAgent;
+        mData = data;
+        mResolved = true;
+    }
+
+    /**
+     * Returns user agent string.
+     * @return user agent string.
+     */
+    public String getUserAgent() {
+        return mUserAgent;
+    }
+
+    /**
+     * Indicates whether data has already been detected.
+     * @return true if data has been detected, false otherwise.
+     */
+    public boolean isResolved() {
+        return mResolved;
+    }
+
+    /**
+     * Returns detected data, detecting it if this is the first access.
+     * @return detected data or null if detection failed or is disabled.
+     */
+    public UserAgentData get() {
+        if (!mResolved) {
+            synchronized (this) {
+                if (!mResolved) {
+                    try {
+                        mData = mDetector.detect(mUserAgent);
+                    } catch (final UserAgentException e) {
+                        LOG.log(Level.FINE, "User agent could not be " +
+                                "detected", e);
+                    }
+                    mResolved = true;
+                }
+            }
+        }
+        return mData;
+    }
+}
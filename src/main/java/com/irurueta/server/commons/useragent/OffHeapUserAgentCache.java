@@ -0,0 +1,788 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache of detected data stored outside the Java heap, so that caches holding
+ * millions of user agents do not increase garbage collection pauses.
+ * Cache is split into segments selected by the hash of user agents, each one
+ * having its own lock and direct memory. Each segment is a log where records
+ * containing the user agent and its data are appended as in a circular
+ * buffer, overwriting the oldest records once full (first in, first out
+ * eviction). The index of each segment is a table of buckets also stored in
+ * direct memory, pointing to the last record appended for each bucket, and
+ * records point to the previous record of their bucket. Records being
+ * overwritten do not need to be unlinked, as positions within the log only
+ * increase and any position older than the oldest retained record is known
+ * to be stale.
+ * Names contained in detected data (i.e. families or operating system names)
+ * take a small set of values and are stored as identifiers of a bounded
+ * on-heap dictionary, which is rebuilt when the cache is invalidated. Data
+ * containing new names once the dictionary is full is not cached. Versions
+ * take far more distinct values, so they are stored within records after
+ * the user agent.
+ * Memory used by all segments, including their index, never exceeds the
+ * configured amount of bytes.
+ * This class is thread safe.
+ */
+public class OffHeapUserAgentCache implements UserAgentCache {
+
+    /**
+     * Maximum number of segments.
+     */
+    static final int MAX_SEGMENTS = 16;
+
+    /**
+     * Minimum size of each segment expressed in bytes.
+     */
+    static final int MIN_SEGMENT_BYTES = 4096;
+
+    /**
+     * Maximum number of distinct names contained in cached data.
+     */
+    static final int DICTIONARY_CAPACITY = 0xFFFF;
+
+    /**
+     * Approximate number of bytes of the log per bucket of the index.
+     */
+    private static final int BYTES_PER_BUCKET = 256;
+
+    /**
+     * Minimum number of buckets of the index of each segment.
+     */
+    private static final int MIN_BUCKETS = 16;
+
+    /**
+     * Position of the size of a record.
+     */
+    private static final int SIZE_OFFSET = 0;
+
+    /**
+     * Position of the number of characters of the user agent of a record, or
+     * -1 for padding records.
+     */
+    private static final int LENGTH_OFFSET = 4;
+
+    /**
+     * Position of the hash of the user agent of a record.
+     */
+    private static final int HASH_OFFSET = 8;
+
+    /**
+     * Position of the position of the previous record of the same bucket.
+     */
+    private static final int PREVIOUS_OFFSET = 16;
+
+    /**
+     * Position of the time when a record was written.
+     */
+    private static final int TIME_OFFSET = 24;
+
+    /**
+     * Position of the flags of a record.
+     */
+    private static final int FLAGS_OFFSET = 32;
+
+    /**
+     * Position of the device category, operating system family and user
+     * agent type of a record.
+     */
+    private static final int ENUMS_OFFSET = 33;
+
+    /**
+     * Position of the generation of the data used to detect a record.
+     */
+    private static final int GENERATION_OFFSET = 36;
+
+    /**
+     * Position of the identifiers of the names of a record.
+     */
+    private static final int STRINGS_OFFSET = 40;
+
+    /**
+     * Number of names contained in each record.
+     */
+    private static final int STRING_COUNT = 5;
+
+    /**
+     * Position of the number of characters of the versions of a record.
+     */
+    private static final int VERSIONS_OFFSET = STRINGS_OFFSET +
+            2 * STRING_COUNT;
+
+    /**
+     * Number of versions contained in each record.
+     */
+    private static final int VERSION_COUNT = 2;
+
+    /**
+     * Size of the header of records, after which the user agent is stored,
+     * followed by its versions.
+     */
+    private static final int HEADER_SIZE = VERSIONS_OFFSET +
+            2 * VERSION_COUNT;
+
+    /**
+     * Alignment of records.
+     */
+    private static final int ALIGNMENT = 8;
+
+    /**
+     * Flag indicating that user agent and versions are stored using two bytes
+     * per character instead of one.
+     */
+    private static final byte WIDE_FLAG = 1;
+
+    /**
+     * Flag indicating that record has been replaced by a newer one.
+     */
+    private static final byte DEAD_FLAG = 2;
+
+    /**
+     * Length of padding records.
+     */
+    private static final int PADDING_LENGTH = -1;
+
+    /**
+     * Identifier or length stored for null strings.
+     */
+    private static final int NULL_STRING = 0xFFFF;
+
+    /**
+     * Position of empty buckets.
+     */
+    private static final long EMPTY_BUCKET = -1L;
+
+    /**
+     * Maximum value of characters stored using a single byte.
+     */
+    private static final int MAX_NARROW_CHAR = 0xFF;
+
+    /**
+     * Values of device categories.
+     */
+    private static final DeviceCategory[] DEVICE_CATEGORIES =
+            DeviceCategory.values();
+
+    /**
+     * Values of operating system families.
+     */
+    private static final OperatingSystemFamily[] OS_FAMILIES =
+            OperatingSystemFamily.values();
+
+    /**
+     * Values of user agent types.
+     */
+    private static final UserAgentType[] USER_AGENT_TYPES =
+            UserAgentType.values();
+
+    /**
+     * Maximum amount of memory used by the cache, expressed in bytes.
+     */
+    private final long mMaxBytes;
+
+    /**
+     * Amount of time records are kept, expressed in nanoseconds.
+     */
+    private final long mExpirationNanos;
+
+    /**
+     * Segments of the cache.
+     */
+    private final Segment[] mSegments;
+
+    /**
+     * Dictionary of names of cached data, which is replaced holding the locks
+     * of all segments when the cache is invalidated.
+     */
+    private volatile UserAgentStringDictionary mDictionary =
+            new UserAgentStringDictionary(DICTIONARY_CAPACITY);
+
+    /**
+     * Number of user agents that could not be cached.
+     */
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param maxBytes maximum amount of memory used by the cache, expressed
+     * in bytes.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @throws IllegalArgumentException if maximum amount of memory is smaller
+     * than {@link #MIN_SEGMENT_BYTES} or too large to be addressed, if
+     * expiration time is not positive or if unit is null.
+     */
+    public OffHeapUserAgentCache(final long maxBytes,
+            final long expirationTime, final TimeUnit unit) {
+        if (maxBytes < MIN_SEGMENT_BYTES || expirationTime <= 0 ||
+                unit == null) {
+            throw new IllegalArgumentException();
+        }
+        final int segmentCount = (int) Math.min(MAX_SEGMENTS,
+                Long.highestOneBit(maxBytes / MIN_SEGMENT_BYTES));
+        final long segmentBytes = maxBytes / segmentCount;
+        if (segmentBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException();
+        }
+
+        mMaxBytes = maxBytes;
+        mExpirationNanos = unit.toNanos(expirationTime);
+        mSegments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            mSegments[i] = new Segment((int) segmentBytes);
+        }
+    }
+
+    /**
+     * Returns maximum amount of memory used by the cache.
+     * @return maximum amount of memory expressed in bytes.
+     */
+    public long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Returns number of segments of the cache.
+     * @return number of segments.
+     */
+    public int getSegmentCount() {
+        return mSegments.length;
+    }
+
+    /**
+     * Returns number of user agents that could not be cached, either because
+     * their record is larger than a segment or because their data contains
+     * new names once the dictionary of names is full.
+     * @return number of rejected user agents.
+     */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    @Override
+    public UserAgentData getIfPresent(final String userAgent) {
+        final long hash = UserAgentHashing.hash64(userAgent);
+        final Segment segment = segmentFor(hash);
+        segment.mLock.readLock().lock();
+        try {
+            final long position = segment.find(userAgent, hash);
+            if (position < 0) {
+                return null;
+            }
+            final ByteBuffer data = segment.mData;
+            final int offset = segment.offsetOf(position);
+            if (System.nanoTime() - data.getLong(offset + TIME_OFFSET) >=
+                    mExpirationNanos) {
+                return null;
+            }
+            return decode(userAgent, data, offset);
+        } finally {
+            segment.mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Caches data of provided user agent.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    @Override
+    public void put(final String userAgent, final UserAgentData data) {
+        final UserAgentStringDictionary dictionary = mDictionary;
+        final int[] ids = {
+                dictionary.idOf(data.getDeviceCategoryName()),
+                dictionary.idOf(data.getFamily()),
+                dictionary.idOf(data.getOsFamilyName()),
+                dictionary.idOf(data.getOsName()),
+                dictionary.idOf(data.getOsProducer())
+        };
+        for (final int id : ids) {
+            if (id == UserAgentStringDictionary.FULL) {
+                mRejectedCount.incrementAndGet();
+                return;
+            }
+        }
+
+        final String[] versions = {
+                data.getOsVersion(), data.getUserAgentVersion()
+        };
+        boolean wide = !TrieUserAgentCache.isSupported(userAgent);
+        int chars = userAgent.length();
+        for (final String version : versions) {
+            if (version != null) {
+                if (version.length() >= NULL_STRING) {
+                    mRejectedCount.incrementAndGet();
+                    return;
+                }
+                wide |= !TrieUserAgentCache.isSupported(version);
+                chars += version.length();
+            }
+        }
+        final int size = align(HEADER_SIZE + (wide ? 2 * chars : chars));
+        final long hash = UserAgentHashing.hash64(userAgent);
+        final Segment segment = segmentFor(hash);
+        if (size > segment.mCapacity) {
+            mRejectedCount.incrementAndGet();
+            return;
+        }
+
+        segment.mLock.writeLock().lock();
+        try {
+            if (dictionary != mDictionary) {
+                // cache was invalidated meanwhile, so identifiers are stale
+                return;
+            }
+            final long previous = segment.find(userAgent, hash);
+            if (previous >= 0) {
+                final int offset = segment.offsetOf(previous);
+                segment.mData.put(offset + FLAGS_OFFSET, (byte) (
+                        segment.mData.get(offset + FLAGS_OFFSET) | DEAD_FLAG));
+                segment.mCount--;
+            }
+
+            final ByteBuffer buffer = segment.mData;
+            final int offset = segment.reserve(size);
+            final int bucket = segment.bucketOf(hash);
+            buffer.putInt(offset + SIZE_OFFSET, size);
+            buffer.putInt(offset + LENGTH_OFFSET, userAgent.length());
+            buffer.putLong(offset + HASH_OFFSET, hash);
+            buffer.putLong(offset + PREVIOUS_OFFSET,
+                    segment.mIndex.getLong(bucket));
+            buffer.putLong(offset + TIME_OFFSET, System.nanoTime());
+            buffer.put(offset + FLAGS_OFFSET, wide ? WIDE_FLAG : 0);
+            buffer.put(offset + ENUMS_OFFSET,
+                    ordinal(data.getDeviceCategory()));
+            buffer.put(offset + ENUMS_OFFSET + 1, ordinal(data.getOsFamily()));
+            buffer.put(offset + ENUMS_OFFSET + 2,
+                    ordinal(data.getUserAgentType()));
+            buffer.putInt(offset + GENERATION_OFFSET, data.getGeneration());
+            for (int i = 0; i < STRING_COUNT; i++) {
+                buffer.putShort(offset + STRINGS_OFFSET + 2 * i, (short) (
+                        ids[i] == UserAgentStringDictionary.NULL_ID ?
+                                NULL_STRING : ids[i]));
+            }
+            int position = putChars(buffer, offset + HEADER_SIZE, userAgent,
+                    wide);
+            for (int i = 0; i < VERSION_COUNT; i++) {
+                final String version = versions[i];
+                buffer.putChar(offset + VERSIONS_OFFSET + 2 * i,
+                        version != null ? (char) version.length() :
+                                (char) NULL_STRING);
+                if (version != null) {
+                    position = putChars(buffer, position, version, wide);
+                }
+            }
+
+            segment.mIndex.putLong(bucket, segment.mHead);
+            segment.mHead += size;
+            segment.mCount++;
+        } finally {
+            segment.mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns number of cached user agents, including expired ones not
+     * evicted yet.
+     * @return number of cached user agents.
+     */
+    @Override
+    public long size() {
+        long result = 0;
+        for (final Segment segment : mSegments) {
+            segment.mLock.readLock().lock();
+            try {
+                result += segment.mCount;
+            } finally {
+                segment.mLock.readLock().unlock();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Indicates whether the memory of any segment is exhausted, so that
+     * caching new user agents evicts cached ones. Since user agents are
+     * spread evenly among segments, all of them fill up at a similar pace.
+     * @return true if cache is full, false otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        for (final Segment segment : mSegments) {
+            if (segment.mFull) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes all cached user agents and names. Memory is kept to be reused.
+     */
+    @Override
+    public void invalidateAll() {
+        int locked = 0;
+        try {
+            for (final Segment segment : mSegments) {
+                segment.mLock.writeLock().lock();
+                locked++;
+            }
+            for (final Segment segment : mSegments) {
+                // all positions in the index become stale
+                segment.mTail = segment.mHead;
+                segment.mCount = 0;
+                segment.mFull = false;
+            }
+            mDictionary = new UserAgentStringDictionary(DICTIONARY_CAPACITY);
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                mSegments[i].mLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns number of names contained in the dictionary of names.
+     * @return number of names.
+     */
+    int getDictionarySize() {
+        return mDictionary.size();
+    }
+
+    /**
+     * Returns segment containing user agents having provided hash.
+     * @param hash hash of user agent.
+     * @return segment.
+     */
+    private Segment segmentFor(final long hash) {
+        return mSegments[(int) (hash >>> (Long.SIZE - 4)) &
+                (mSegments.length - 1)];
+    }
+
+    /**
+     * Decodes data of a record.
+     * @param userAgent user agent of the record.
+     * @param buffer buffer containing the record.
+     * @param offset position of the record within the buffer.
+     * @return decoded data.
+     */
+    private UserAgentData decode(final String userAgent,
+            final ByteBuffer buffer, final int offset) {
+        final boolean wide = (buffer.get(offset + FLAGS_OFFSET) &
+                WIDE_FLAG) != 0;
+        final int width = wide ? 2 : 1;
+        int position = offset + HEADER_SIZE +
+                width * buffer.getInt(offset + LENGTH_OFFSET);
+        final String[] versions = new String[VERSION_COUNT];
+        for (int i = 0; i < VERSION_COUNT; i++) {
+            final int length = buffer.getChar(
+                    offset + VERSIONS_OFFSET + 2 * i);
+            if (length != NULL_STRING) {
+                versions[i] = getChars(buffer, position, length, wide);
+                position += width * length;
+            }
+        }
+
+        final UserAgentData data = new UserAgentData(userAgent,
+                value(DEVICE_CATEGORIES, buffer.get(offset + ENUMS_OFFSET)),
+                string(buffer, offset, 0),
+                string(buffer, offset, 1),
+                value(OS_FAMILIES, buffer.get(offset + ENUMS_OFFSET + 1)),
+                string(buffer, offset, 2),
+                string(buffer, offset, 3),
+                string(buffer, offset, 4),
+                versions[0],
+                value(USER_AGENT_TYPES, buffer.get(offset + ENUMS_OFFSET + 2)),
+                versions[1]);
+        data.setGeneration(buffer.getInt(offset + GENERATION_OFFSET));
+        return data;
+    }
+
+    /**
+     * Decodes a name of a record.
+     * @param buffer buffer containing the record.
+     * @param offset position of the record within the buffer.
+     * @param index index of the name within the record.
+     * @return decoded name.
+     */
+    private String string(final ByteBuffer buffer, final int offset,
+            final int index) {
+        final int id = buffer.getChar(offset + STRINGS_OFFSET + 2 * index);
+        return mDictionary.get(id == NULL_STRING ?
+                UserAgentStringDictionary.NULL_ID : id);
+    }
+
+    /**
+     * Stores the characters of provided string using one or two bytes per
+     * character.
+     * @param buffer buffer where characters are stored.
+     * @param position position of the first character.
+     * @param value string to be stored.
+     * @param wide true to store two bytes per character, false to store one.
+     * @return position following the last character.
+     */
+    private static int putChars(final ByteBuffer buffer, final int position,
+            final String value, final boolean wide) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+            if (wide) {
+                buffer.putChar(position + 2 * i, value.charAt(i));
+            } else {
+                buffer.put(position + i, (byte) value.charAt(i));
+            }
+        }
+        return position + (wide ? 2 : 1) * length;
+    }
+
+    /**
+     * Reads a string stored using one or two bytes per character.
+     * @param buffer buffer containing characters.
+     * @param position position of the first character.
+     * @param length number of characters.
+     * @param wide true if two bytes per character are stored, false if only
+     * one.
+     * @return read string.
+     */
+    private static String getChars(final ByteBuffer buffer, final int position,
+            final int length, final boolean wide) {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = wide ? buffer.getChar(position + 2 * i) :
+                    (char) (buffer.get(position + i) & MAX_NARROW_CHAR);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes an enumerator value.
+     * @param value value or null.
+     * @return ordinal of value plus one, or zero if value is null.
+     */
+    private static byte ordinal(final Enum<?> value) {
+        return (byte) (value != null ? value.ordinal() + 1 : 0);
+    }
+
+    /**
+     * Decodes an enumerator value.
+     * @param values all values of the enumerator.
+     * @param ordinal encoded ordinal.
+     * @param <T> type of enumerator.
+     * @return value or null.
+     */
+    private static <T> T value(final T[] values, final byte ordinal) {
+        return ordinal != 0 ? values[(ordinal & 0xFF) - 1] : null;
+    }
+
+    /**
+     * Aligns provided size.
+     * @param size size expressed in bytes.
+     * @return aligned size.
+     */
+    private static int align(final int size) {
+        return (size + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    /**
+     * Segment of the cache.
+     */
+    private static final class Segment {
+
+        /**
+         * Direct memory containing the log of records.
+         */
+        private final ByteBuffer mData;
+
+        /**
+         * Size of the log expressed in bytes.
+         */
+        private final int mCapacity;
+
+        /**
+         * Direct memory containing the position of the last record of each
+         * bucket.
+         */
+        private final ByteBuffer mIndex;
+
+        /**
+         * Mask used to obtain buckets from hashes.
+         */
+        private final int mBucketMask;
+
+        /**
+         * Position where next record will be appended. Positions only
+         * increase and are converted into offsets within the log.
+         */
+        private long mHead;
+
+        /**
+         * Position of the oldest retained record.
+         */
+        private long mTail;
+
+        /**
+         * Number of retained records that have not been replaced.
+         */
+        private int mCount;
+
+        /**
+         * Indicates whether records have been evicted to make room for new
+         * ones since the segment was last invalidated. Written holding the
+         * lock of the segment, and read without it.
+         */
+        private volatile boolean mFull;
+
+        /**
+         * Lock protecting the segment.
+         */
+        private final ReentrantReadWriteLock mLock =
+                new ReentrantReadWriteLock();
+
+        /**
+         * Constructor.
+         * @param bytes memory used by the segment, including its index.
+         */
+        private Segment(final int bytes) {
+            final int buckets = Integer.highestOneBit(Math.max(MIN_BUCKETS,
+                    bytes / BYTES_PER_BUCKET));
+            final int indexBytes = buckets * Long.SIZE / Byte.SIZE;
+            mCapacity = (bytes - indexBytes) & -ALIGNMENT;
+            mBucketMask = buckets - 1;
+            mData = ByteBuffer.allocateDirect(mCapacity).order(
+                    ByteOrder.nativeOrder());
+            mIndex = ByteBuffer.allocateDirect(indexBytes).order(
+                    ByteOrder.nativeOrder());
+            for (int i = 0; i < buckets; i++) {
+                mIndex.putLong(i * Long.SIZE / Byte.SIZE, EMPTY_BUCKET);
+            }
+        }
+
+        /**
+         * Returns position within the index of the bucket of provided hash.
+         * @param hash hash of user agent.
+         * @return position of bucket within the index.
+         */
+        private int bucketOf(final long hash) {
+            return ((int) hash & mBucketMask) * Long.SIZE / Byte.SIZE;
+        }
+
+        /**
+         * Converts a position of the log into an offset within its memory.
+         * @param position position of the log.
+         * @return offset within memory.
+         */
+        private int offsetOf(final long position) {
+            return (int) (position % mCapacity);
+        }
+
+        /**
+         * Finds the retained record of provided user agent.
+         * @param userAgent user agent.
+         * @param hash hash of user agent.
+         * @return position of record or -1 if not found.
+         */
+        private long find(final String userAgent, final long hash) {
+            long position = mIndex.getLong(bucketOf(hash));
+            // older positions have already been overwritten
+            while (position >= mTail) {
+                final int offset = offsetOf(position);
+                if (mData.getLong(offset + HASH_OFFSET) == hash &&
+                        (mData.get(offset + FLAGS_OFFSET) & DEAD_FLAG) == 0 &&
+                        matches(offset, userAgent)) {
+                    return position;
+                }
+                position = mData.getLong(offset + PREVIOUS_OFFSET);
+            }
+            return -1;
+        }
+
+        /**
+         * Indicates whether a record contains provided user agent.
+         * @param offset offset of record.
+         * @param userAgent user agent.
+         * @return true if user agent matches, false otherwise.
+         */
+        private boolean matches(final int offset, final String userAgent) {
+            final int length = userAgent.length();
+            if (mData.getInt(offset + LENGTH_OFFSET) != length) {
+                return false;
+            }
+            final int keyOffset = offset + HEADER_SIZE;
+            final boolean wide = (mData.get(offset + FLAGS_OFFSET) &
+                    WIDE_FLAG) != 0;
+            for (int i = 0; i < length; i++) {
+                final int c = wide ? mData.getChar(keyOffset + 2 * i) :
+                        mData.get(keyOffset + i) & MAX_NARROW_CHAR;
+                if (c != userAgent.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Reserves contiguous space for a record at the head of the log,
+         * evicting the oldest records as needed. When the record does not fit
+         * before the end of memory, the remaining bytes are filled with a
+         * padding record and the record is placed at the beginning.
+         * @param size size of the record.
+         * @return offset where record must be written.
+         */
+        private int reserve(final int size) {
+            final int offset = offsetOf(mHead);
+            final int remaining = mCapacity - offset;
+            if (remaining < size) {
+                ensureFree(remaining);
+                mData.putInt(offset + SIZE_OFFSET, remaining);
+                mData.putInt(offset + LENGTH_OFFSET, PADDING_LENGTH);
+                mHead += remaining;
+            }
+            ensureFree(size);
+            return offsetOf(mHead);
+        }
+
+        /**
+         * Evicts the oldest records until provided amount of bytes are free
+         * after the head of the log.
+         * @param size amount of bytes.
+         */
+        private void ensureFree(final int size) {
+            if (mHead + size - mTail > mCapacity) {
+                mFull = true;
+            }
+            while (mHead + size - mTail > mCapacity) {
+                final int offset = offsetOf(mTail);
+                if (mData.getInt(offset + LENGTH_OFFSET) != PADDING_LENGTH &&
+                        (mData.get(offset + FLAGS_OFFSET) & DEAD_FLAG) == 0) {
+                    mCount--;
+                }
+                mTail += mData.getInt(offset + SIZE_OFFSET);
+            }
+        }
+    }
+}
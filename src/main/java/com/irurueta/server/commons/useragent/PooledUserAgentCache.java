@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache mapping user agents to the identifiers of their results within a
+ * {@link UserAgentResultPool}, so that identical results of distinct user
+ * agents are stored only once.
+ * Versions are not part of pooled results, so they are kept by each entry.
+ * Entries are kept by a Guava cache evicting least recently used entries.
+ * Results that cannot be interned because the pool is full are not cached
+ * and are counted by the pool.
+ * This class is thread safe.
+ */
+public class PooledUserAgentCache implements UserAgentCache {
+
+    /**
+     * Entries indexed by user agent.
+     */
+    private final Cache<String, Entry> mCache;
+
+    /**
+     * Maximum number of cached user agents.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Pool containing cached results.
+     */
+    private final UserAgentResultPool mPool;
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @param pool pool containing cached results.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * or pool are null.
+     */
+    public PooledUserAgentCache(final int maxSize, final long expirationTime,
+            final TimeUnit unit, final UserAgentResultPool pool) {
+        if (maxSize <= 0 || expirationTime <= 0 || unit == null ||
+                pool == null) {
+            throw new IllegalArgumentException();
+        }
+        mMaxSize = maxSize;
+        mCache = CacheBuilder.newBuilder().maximumSize(maxSize).
+                expireAfterWrite(expirationTime, unit).build();
+        mPool = pool;
+    }
+
+    /**
+     * Returns pool containing cached results.
+     * @return pool containing cached results.
+     */
+    public UserAgentResultPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * Returns identifier of the result of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return identifier of result or {@link UserAgentResultPool#NO_ID} if
+     * user agent is not cached.
+     */
+    public int getResultId(final String userAgent) {
+        final Entry entry = mCache.getIfPresent(userAgent);
+        return entry != null ? entry.mId : UserAgentResultPool.NO_ID;
+    }
+
+    /**
+     * Returns identifier of the result of provided user agent only if it was
+     * detected using provided generation of data.
+     * @param userAgent user agent to look for.
+     * @param generation generation of data.
+     * @return identifier of result or {@link UserAgentResultPool#NO_ID} if
+     * user agent is not cached or was cached using another generation.
+     */
+    int getResultId(final String userAgent, final int generation) {
+        final Entry entry = mCache.getIfPresent(userAgent);
+        return entry != null && entry.mGeneration == generation ?
+                entry.mId : UserAgentResultPool.NO_ID;
+    }
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    @Override
+    public UserAgentData getIfPresent(final String userAgent) {
+        final Entry entry = mCache.getIfPresent(userAgent);
+        if (entry == null) {
+            return null;
+        }
+        final UserAgentData data = mPool.toUserAgentData(entry.mId,
+                userAgent);
+        if (data != null) {
+            data.setOsVersion(entry.mOsVersion);
+            data.setUserAgentVersion(entry.mUserAgentVersion);
+            data.setGeneration(entry.mGeneration);
+        }
+        return data;
+    }
+
+    /**
+     * Caches data of provided user agent.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    @Override
+    public void put(final String userAgent, final UserAgentData data) {
+        final int id = mPool.intern(data);
+        if (id != UserAgentResultPool.NO_ID) {
+            mCache.put(userAgent, new Entry(id, data));
+        }
+    }
+
+    /**
+     * Returns approximate number of cached user agents.
+     * @return number of cached user agents.
+     */
+    @Override
+    public long size() {
+        return mCache.size();
+    }
+
+    /**
+     * Indicates whether the maximum number of user agents is cached, so that
+     * caching new ones evicts cached ones.
+     * @return true if cache is full, false otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        return mCache.size() >= mMaxSize;
+    }
+
+    /**
+     * Removes all cached user agents. Pooled results are kept, so that their
+     * identifiers remain valid.
+     */
+    @Override
+    public void invalidateAll() {
+        mCache.invalidateAll();
+    }
+
+    /**
+     * Cached entry.
+     */
+    private static final class Entry {
+
+        /**
+         * Identifier of pooled result.
+         */
+        private final int mId;
+
+        /**
+         * Generation of the data used to detect the result.
+         */
+        private final int mGeneration;
+
+        /**
+         * Version of operating system.
+         */
+        private final String mOsVersion;
+
+        /**
+         * Version of user agent.
+         */
+        private final String mUserAgentVersion;
+
+        /**
+         * Constructor.
+         * @param id identifier of pooled result.
+         * @param data detected data.
+         */
+        private Entry(final int id, final UserAgentData data) {
+            mId = id;
+            mGeneration = data.getGeneration();
+            mOsVersion = data.getOsVersion();
+            mUserAgentVersion = data.getUserAgentVersion();
+        }
+    }
+}
@@ -0,0 +1,525 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Cache of detected data storing user agents on a compressed (radix) trie,
+ * so that the long prefixes shared by most user agents (i.e.
+ * "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36") are kept
+ * only once instead of once per cached string.
+ * Edge labels are stored as one byte per character, and lookups walk the
+ * characters of the user agent directly along the trie without hashing it or
+ * creating any intermediate object. User agents containing characters beyond
+ * ISO-8859-1 are not cached.
+ * Once full, entries are evicted following the CLOCK algorithm, which gives a
+ * second chance to entries accessed since the last time they were visited,
+ * approximating least recently used eviction. Expired entries are no longer
+ * returned and are evicted first.
+ * This class is thread safe. Lookups can run concurrently, while updates are
+ * exclusive.
+ */
+public class TrieUserAgentCache implements UserAgentCache {
+
+    /**
+     * Maximum value of characters that can be stored on the trie.
+     */
+    private static final int MAX_CHAR = 0xFF;
+
+    /**
+     * Label of root node.
+     */
+    private static final byte[] EMPTY_LABEL = new byte[0];
+
+    /**
+     * Children of leaf nodes.
+     */
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    /**
+     * Maximum number of cached user agents.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Amount of time entries are kept, expressed in nanoseconds.
+     */
+    private final long mExpirationNanos;
+
+    /**
+     * Root of the trie. It always has an empty label.
+     */
+    private final Node mRoot = new Node(EMPTY_LABEL, null);
+
+    /**
+     * Nodes containing cached data, arranged as the circular buffer visited by
+     * the CLOCK algorithm.
+     */
+    private final Node[] mEntries;
+
+    /**
+     * Number of cached user agents.
+     */
+    private int mSize;
+
+    /**
+     * Position of the next entry visited by the CLOCK algorithm.
+     */
+    private int mHand;
+
+    /**
+     * Lock protecting the trie.
+     */
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached user agents.
+     * @param expirationTime amount of time to keep user agents cached.
+     * @param unit unit of expiration time.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public TrieUserAgentCache(final int maxSize, final long expirationTime,
+            final TimeUnit unit) {
+        if (maxSize <= 0 || expirationTime <= 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        mMaxSize = maxSize;
+        mExpirationNanos = unit.toNanos(expirationTime);
+        mEntries = new Node[maxSize];
+    }
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    @Override
+    public UserAgentData getIfPresent(final String userAgent) {
+        final UserAgentData result;
+        mLock.readLock().lock();
+        try {
+            final Node node = find(userAgent);
+            if (node == null || node.mValue == null ||
+                    isExpired(node, System.nanoTime())) {
+                return null;
+            }
+            // benign race, as the flag is only a hint for eviction
+            node.mReferenced = true;
+            result = new UserAgentData(node.mValue);
+        } finally {
+            mLock.readLock().unlock();
+        }
+        result.setUserAgent(userAgent);
+        return result;
+    }
+
+    /**
+     * Caches data of provided user agent. User agents containing characters
+     * beyond ISO-8859-1 are ignored.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    @Override
+    public void put(final String userAgent, final UserAgentData data) {
+        if (!isSupported(userAgent)) {
+            return;
+        }
+        // user agent is already kept by the trie
+        final UserAgentData value = new UserAgentData(data);
+        value.setUserAgent(null);
+
+        mLock.writeLock().lock();
+        try {
+            Node node = find(userAgent);
+            if (node == null || node.mValue == null) {
+                // evict before inserting, as removal might merge the nodes
+                // where user agent would be inserted
+                final int slot = mSize < mMaxSize ? mSize++ : evict();
+                node = insert(userAgent);
+                mEntries[slot] = node;
+                node.mReferenced = false;
+            }
+            node.mValue = value;
+            node.mWriteNanos = System.nanoTime();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns number of cached user agents, including expired ones not
+     * evicted yet.
+     * @return number of cached user agents.
+     */
+    @Override
+    public long size() {
+        mLock.readLock().lock();
+        try {
+            return mSize;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indicates whether the maximum number of user agents is cached, so that
+     * caching new ones evicts cached ones.
+     * @return true if cache is full, false otherwise.
+     */
+    @Override
+    public boolean isFull() {
+        mLock.readLock().lock();
+        try {
+            return mSize >= mMaxSize;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all cached user agents.
+     */
+    @Override
+    public void invalidateAll() {
+        mLock.writeLock().lock();
+        try {
+            mRoot.mChildren = NO_CHILDREN;
+            mRoot.mValue = null;
+            Arrays.fill(mEntries, null);
+            mSize = 0;
+            mHand = 0;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns number of nodes of the trie, excluding its root. This is
+     * mostly useful to check how well user agents share their prefixes.
+     * @return number of nodes.
+     */
+    public int getNodeCount() {
+        mLock.readLock().lock();
+        try {
+            return count(mRoot) - 1;
+        } finally {
+            mLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indicates whether provided user agent can be stored on the trie.
+     * @param userAgent user agent.
+     * @return true if all characters fit in a single byte, false otherwise.
+     */
+    static boolean isSupported(final String userAgent) {
+        final int length = userAgent.length();
+        for (int i = 0; i < length; i++) {
+            if (userAgent.charAt(i) > MAX_CHAR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the node matching provided user agent.
+     * @param userAgent user agent.
+     * @return node whose path matches the user agent, or null if none exists.
+     * Returned node might not contain any data.
+     */
+    private Node find(final String userAgent) {
+        final int length = userAgent.length();
+        Node node = mRoot;
+        int pos = 0;
+        while (pos < length) {
+            final Node child = node.child(userAgent.charAt(pos));
+            if (child == null) {
+                return null;
+            }
+            final byte[] label = child.mLabel;
+            if (length - pos < label.length) {
+                return null;
+            }
+            for (int i = 1; i < label.length; i++) {
+                if (userAgent.charAt(pos + i) != (label[i] & MAX_CHAR)) {
+                    return null;
+                }
+            }
+            pos += label.length;
+            node = child;
+        }
+        return node;
+    }
+
+    /**
+     * Finds or creates the node matching provided user agent, splitting
+     * existing edges when required.
+     * @param userAgent user agent.
+     * @return node whose path matches the user agent.
+     */
+    private Node insert(final String userAgent) {
+        final int length = userAgent.length();
+        Node node = mRoot;
+        int pos = 0;
+        while (pos < length) {
+            final Node child = node.child(userAgent.charAt(pos));
+            if (child == null) {
+                final Node leaf = new Node(toLabel(userAgent, pos, length),
+                        node);
+                node.addChild(leaf);
+                return leaf;
+            }
+
+            final byte[] label = child.mLabel;
+            int common = 1;
+            while (common < label.length && pos + common < length &&
+                    userAgent.charAt(pos + common) ==
+                            (label[common] & MAX_CHAR)) {
+                common++;
+            }
+            pos += common;
+            if (common == label.length) {
+                node = child;
+                continue;
+            }
+
+            // split edge, keeping existing child so that entries remain valid
+            final Node middle = new Node(Arrays.copyOf(label, common), node);
+            node.replaceChild(child, middle);
+            child.mLabel = Arrays.copyOfRange(label, common, label.length);
+            child.mParent = middle;
+            middle.addChild(child);
+            if (pos == length) {
+                return middle;
+            }
+
+            final Node leaf = new Node(toLabel(userAgent, pos, length),
+                    middle);
+            middle.addChild(leaf);
+            return leaf;
+        }
+        return node;
+    }
+
+    /**
+     * Evicts an entry following the CLOCK algorithm.
+     * @return slot of evicted entry, which can be reused.
+     */
+    private int evict() {
+        final long now = System.nanoTime();
+        while (true) {
+            final Node node = mEntries[mHand];
+            final int slot = mHand;
+            mHand = (mHand + 1) % mMaxSize;
+            if (node.mReferenced && !isExpired(node, now)) {
+                node.mReferenced = false;
+                continue;
+            }
+            remove(node);
+            mEntries[slot] = null;
+            return slot;
+        }
+    }
+
+    /**
+     * Removes data of provided node and simplifies the trie, removing nodes
+     * no longer needed and merging nodes having a single child.
+     * @param node node to be removed.
+     */
+    private void remove(final Node node) {
+        node.mValue = null;
+        if (node == mRoot) {
+            return;
+        }
+        if (node.mChildren.length == 0) {
+            final Node parent = node.mParent;
+            parent.removeChild(node);
+            if (parent != mRoot && parent.mValue == null &&
+                    parent.mChildren.length == 1) {
+                merge(parent);
+            }
+        } else if (node.mChildren.length == 1) {
+            merge(node);
+        }
+    }
+
+    /**
+     * Merges a node without data into its only child. Child node is kept so
+     * that entries remain valid.
+     * @param node node to be merged.
+     */
+    private static void merge(final Node node) {
+        final Node child = node.mChildren[0];
+        final byte[] label = Arrays.copyOf(node.mLabel,
+                node.mLabel.length + child.mLabel.length);
+        System.arraycopy(child.mLabel, 0, label, node.mLabel.length,
+                child.mLabel.length);
+        child.mLabel = label;
+        child.mParent = node.mParent;
+        node.mParent.replaceChild(node, child);
+    }
+
+    /**
+     * Indicates whether data of provided node has expired.
+     * @param node node containing data.
+     * @param now current time expressed in nanoseconds.
+     * @return true if data has expired, false otherwise.
+     */
+    private boolean isExpired(final Node node, final long now) {
+        return now - node.mWriteNanos >= mExpirationNanos;
+    }
+
+    /**
+     * Counts nodes of the subtree starting at provided node.
+     * @param node root of subtree.
+     * @return number of nodes, including provided one.
+     */
+    private static int count(final Node node) {
+        int result = 1;
+        for (final Node child : node.mChildren) {
+            result += count(child);
+        }
+        return result;
+    }
+
+    /**
+     * Converts a range of a user agent into a label.
+     * @param userAgent user agent.
+     * @param start position of first character (inclusive).
+     * @param end position of last character (exclusive).
+     * @return label containing one byte per character.
+     */
+    private static byte[] toLabel(final String userAgent, final int start,
+            final int end) {
+        final byte[] label = new byte[end - start];
+        for (int i = start; i < end; i++) {
+            label[i - start] = (byte) userAgent.charAt(i);
+        }
+        return label;
+    }
+
+    /**
+     * Node of the trie.
+     */
+    private static final class Node {
+
+        /**
+         * Characters of the edge leading to this node.
+         */
+        private byte[] mLabel;
+
+        /**
+         * Parent node or null for the root.
+         */
+        private Node mParent;
+
+        /**
+         * Child nodes. Labels of children never share their first character.
+         */
+        private Node[] mChildren = NO_CHILDREN;
+
+        /**
+         * Cached data or null if the path to this node is not cached.
+         */
+        private UserAgentData mValue;
+
+        /**
+         * Time when data was cached, expressed in nanoseconds.
+         */
+        private long mWriteNanos;
+
+        /**
+         * Indicates whether data has been accessed since the last time it
+         * was visited by the CLOCK algorithm.
+         */
+        private boolean mReferenced;
+
+        /**
+         * Constructor.
+         * @param label characters of the edge leading to this node.
+         * @param parent parent node.
+         */
+        private Node(final byte[] label, final Node parent) {
+            mLabel = label;
+            mParent = parent;
+        }
+
+        /**
+         * Returns child whose label starts with provided character.
+         * @param c first character of label.
+         * @return child or null if none exists.
+         */
+        private Node child(final char c) {
+            for (final Node child : mChildren) {
+                if ((child.mLabel[0] & MAX_CHAR) == c) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Adds a child.
+         * @param child child to be added.
+         */
+        private void addChild(final Node child) {
+            final Node[] children = Arrays.copyOf(mChildren,
+                    mChildren.length + 1);
+            children[mChildren.length] = child;
+            mChildren = children;
+        }
+
+        /**
+         * Replaces a child.
+         * @param child child to be replaced.
+         * @param replacement new child.
+         */
+        private void replaceChild(final Node child, final Node replacement) {
+            for (int i = 0; i < mChildren.length; i++) {
+                if (mChildren[i] == child) {
+                    mChildren[i] = replacement;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Removes a child.
+         * @param child child to be removed.
+         */
+        private void removeChild(final Node child) {
+            if (mChildren.length == 1) {
+                mChildren = NO_CHILDREN;
+                return;
+            }
+            final Node[] children = new Node[mChildren.length - 1];
+            int pos = 0;
+            for (final Node c : mChildren) {
+                if (c != child) {
+                    children[pos++] = c;
+                }
+            }
+            mChildren = children;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Cache of detected data indexed by user agent used by
+ * {@link UserAgentDetector} to avoid parsing repeated user agents.
+ * Implementations must be thread safe and bounded, evicting entries once
+ * full, and must never expose cached instances, as callers are free to modify
+ * returned data.
+ */
+public interface UserAgentCache {
+
+    /**
+     * Returns cached data of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return a new instance containing cached data or null if user agent is
+     * not cached.
+     */
+    UserAgentData getIfPresent(final String userAgent);
+
+    /**
+     * Caches data of provided user agent. Provided instance must not be
+     * modified afterwards, as implementations might keep it.
+     * @param userAgent user agent.
+     * @param data detected data of user agent.
+     */
+    void put(final String userAgent, final UserAgentData data);
+
+    /**
+     * Returns approximate number of cached user agents.
+     * @return number of cached user agents.
+     */
+    long size();
+
+    /**
+     * Indicates whether the cache is full, so that caching new user agents
+     * evicts cached ones. Bounds are specific to each implementation (i.e.
+     * number of entries or amount of memory), hence callers must rely on
+     * this method instead of comparing {@link #size()} against a maximum.
+     * @return true if cache is full, false otherwise.
+     */
+    boolean isFull();
+
+    /**
+     * Removes all cached user agents.
+     */
+    void invalidateAll();
+}
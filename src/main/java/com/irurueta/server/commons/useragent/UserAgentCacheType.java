@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Implementation of the cache of detected data used by
+ * {@link UserAgentDetector}.
+ */
+public enum UserAgentCacheType {
+    /**
+     * Guava cache keyed by user agent string. Lookups hash and compare full
+     * user agents.
+     */
+    GUAVA,
+
+    /**
+     * Guava cache keyed by a 64 bit hash of user agents computed in a single
+     * pass. Cached user agent strings are not kept, and hash collisions are
+     * verified with a second independent hash and the length of user agents.
+     * @see HashedUserAgentCache
+     */
+    HASHED,
+
+    /**
+     * Compressed trie storing prefixes shared by user agents only once.
+     * @see TrieUserAgentCache
+     */
+    TRIE,
+
+    /**
+     * Cache stored outside the Java heap, bounded by memory instead of by
+     * number of user agents, so that large caches do not increase garbage
+     * collection pauses.
+     * @see OffHeapUserAgentCache
+     */
+    OFF_HEAP,
+
+    /**
+     * Guava cache mapping user agents to identifiers of results shared by
+     * all user agents having identical results.
+     * @see PooledUserAgentCache
+     */
+    POOLED,
+
+    /**
+     * Cache keyed by user agent string whose lookups never lock, buffering
+     * accesses to amortize maintenance of eviction order.
+     * @see ConcurrentUserAgentCache
+     */
+    CONCURRENT;
+
+    /**
+     * Returns cache type matching provided name, ignoring case.
+     * @param name name of cache type.
+     * @return cache type.
+     * @throws IllegalArgumentException if name is not recognized.
+     */
+    public static UserAgentCacheType fromName(final String name) {
+        for (final UserAgentCacheType type : values()) {
+            if (type.name().equalsIgnoreCase(name)) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown cache type: " + name);
+    }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * User agent client hints (Sec-CH-UA headers) sent by Chromium based
+ * browsers.
+ * Client hints are structured, so that data can be derived from them far
+ * more cheaply than by evaluating patterns on a user agent string, and they
+ * keep being accurate as browsers freeze the content of user agent strings.
+ * Instances of this class are immutable.
+ */
+public final class UserAgentClientHints {
+
+    /**
+     * Header containing the user agent string.
+     */
+    public static final String USER_AGENT_HEADER = "User-Agent";
+
+    /**
+     * Header containing the list of brands and their major versions.
+     */
+    public static final String SEC_CH_UA_HEADER = "Sec-CH-UA";
+
+    /**
+     * Header indicating whether browser runs on a mobile device.
+     */
+    public static final String SEC_CH_UA_MOBILE_HEADER = "Sec-CH-UA-Mobile";
+
+    /**
+     * Header containing the platform (operating system).
+     */
+    public static final String SEC_CH_UA_PLATFORM_HEADER =
+            "Sec-CH-UA-Platform";
+
+    /**
+     * Header containing the version of the platform, only sent when
+     * requested by the server.
+     */
+    public static final String SEC_CH_UA_PLATFORM_VERSION_HEADER =
+            "Sec-CH-UA-Platform-Version";
+
+    /**
+     * Header containing the list of brands and their full versions, only
+     * sent when requested by the server.
+     */
+    public static final String SEC_CH_UA_FULL_VERSION_LIST_HEADER =
+            "Sec-CH-UA-Full-Version-List";
+
+    /**
+     * Brand sent by all Chromium based browsers, which is only used as
+     * family when no other brand is sent.
+     */
+    static final String CHROMIUM_BRAND = "Chromium";
+
+    /**
+     * Brands and the families reported for them, in the same way as when
+     * parsing user agent strings.
+     */
+    private static final String[][] FAMILIES = {
+            {"Google Chrome", "Chrome"},
+            {"Microsoft Edge", "Edge"},
+            {"Opera", "Opera"},
+            {"Samsung Internet", "Samsung Internet"},
+            {"Yandex", "Yandex.Browser"}
+    };
+
+    /**
+     * Value of a structured boolean header being true.
+     */
+    private static final String TRUE = "?1";
+
+    /**
+     * Separator of the values of hints when building cache keys.
+     */
+    private static final char KEY_SEPARATOR = '\n';
+
+    /**
+     * User agent string or null if not available.
+     */
+    private final String mUserAgent;
+
+    /**
+     * Brands and major versions.
+     */
+    private final String mBrands;
+
+    /**
+     * Main brand of browser.
+     */
+    private final String mBrand;
+
+    /**
+     * Version of main brand.
+     */
+    private final String mVersion;
+
+    /**
+     * Indicates whether browser runs on a mobile device.
+     */
+    private final String mMobile;
+
+    /**
+     * Platform (operating system).
+     */
+    private final String mPlatform;
+
+    /**
+     * Platform version or null if not available.
+     */
+    private final String mPlatformVersion;
+
+    /**
+     * Brands and full versions or null if not available.
+     */
+    private final String mFullVersionList;
+
+    /**
+     * Constructor.
+     * @param userAgent user agent string or null if not available.
+     * @param brands value of Sec-CH-UA header.
+     * @param brand main brand of browser and its major version.
+     * @param mobile value of Sec-CH-UA-Mobile header or null.
+     * @param platform value of Sec-CH-UA-Platform header or null.
+     * @param platformVersion value of Sec-CH-UA-Platform-Version header or
+     * null.
+     * @param fullVersionList value of Sec-CH-UA-Full-Version-List header or
+     * null.
+     */
+    private UserAgentClientHints(final String userAgent, final String brands,
+            final String[] brand, final String mobile, final String platform,
+            final String platformVersion, final String fullVersionList) {
+        mUserAgent = userAgent;
+        mBrands = brands;
+        mBrand = brand[0];
+        mVersion = findVersion(brand, fullVersionList);
+        mMobile = mobile;
+        mPlatform = platform;
+        mPlatformVersion = platformVersion;
+        mFullVersionList = fullVersionList;
+    }
+
+    /**
+     * Obtains client hints contained in provided request headers. Header
+     * names are case insensitive.
+     * @param headers request headers indexed by name.
+     * @return client hints or null if headers do not contain any brand.
+     * @throws IllegalArgumentException if headers is null.
+     */
+    public static UserAgentClientHints fromHeaders(
+            final Map<String, String> headers) {
+        if (headers == null) {
+            throw new IllegalArgumentException();
+        }
+
+        String userAgent = null;
+        String brands = null;
+        String mobile = null;
+        String platform = null;
+        String platformVersion = null;
+        String fullVersionList = null;
+        for (final Map.Entry<String, String> entry : headers.entrySet()) {
+            final String name = entry.getKey();
+            if (USER_AGENT_HEADER.equalsIgnoreCase(name)) {
+                userAgent = entry.getValue();
+            } else if (SEC_CH_UA_HEADER.equalsIgnoreCase(name)) {
+                brands = entry.getValue();
+            } else if (SEC_CH_UA_MOBILE_HEADER.equalsIgnoreCase(name)) {
+                mobile = entry.getValue();
+            } else if (SEC_CH_UA_PLATFORM_HEADER.equalsIgnoreCase(name)) {
+                platform = entry.getValue();
+            } else if (SEC_CH_UA_PLATFORM_VERSION_HEADER.equalsIgnoreCase(
+                    name)) {
+                platformVersion = entry.getValue();
+            } else if (SEC_CH_UA_FULL_VERSION_LIST_HEADER.equalsIgnoreCase(
+                    name)) {
+                fullVersionList = entry.getValue();
+            }
+        }
+
+        final String[] brand = brands != null ?
+                findBrand(parseBrands(brands)) : null;
+        if (brand == null) {
+            return null;
+        }
+        return new UserAgentClientHints(userAgent, brands, brand, mobile,
+                platform, platformVersion, fullVersionList);
+    }
+
+    /**
+     * Returns user agent string sent along with client hints.
+     * @return user agent string or null if not available.
+     */
+    public String getUserAgent() {
+        return mUserAgent;
+    }
+
+    /**
+     * Returns main brand of browser, ignoring Chromium unless it is the only
+     * brand, and brands used to prevent servers from relying on specific
+     * values (GREASE).
+     * @return main brand of browser.
+     */
+    public String getBrand() {
+        return mBrand;
+    }
+
+    /**
+     * Returns version of main brand, which is the full version when
+     * available, or its major version otherwise.
+     * @return version of main brand or an empty string if not available.
+     */
+    public String getVersion() {
+        return mVersion;
+    }
+
+    /**
+     * Indicates whether browser runs on a mobile device.
+     * @return true if browser runs on a mobile device, false otherwise.
+     */
+    public boolean isMobile() {
+        return mMobile != null && TRUE.equals(mMobile.trim());
+    }
+
+    /**
+     * Returns platform (operating system).
+     * @return platform or an empty string if not available.
+     */
+    public String getPlatform() {
+        return mPlatform != null ? unquote(mPlatform.trim()) : "";
+    }
+
+    /**
+     * Returns platform version.
+     * @return platform version or an empty string if not available.
+     */
+    public String getPlatformVersion() {
+        return mPlatformVersion != null ?
+                unquote(mPlatformVersion.trim()) : "";
+    }
+
+    /**
+     * Returns key identifying these client hints, so that data derived from
+     * them can be cached. Hints sharing the same key derive the same data,
+     * except for the user agent string.
+     * @return key of these client hints.
+     */
+    public String getKey() {
+        final StringBuilder builder = new StringBuilder(mBrands);
+        appendKey(builder, mMobile);
+        appendKey(builder, mPlatform);
+        appendKey(builder, mPlatformVersion);
+        appendKey(builder, mFullVersionList);
+        return builder.toString();
+    }
+
+    /**
+     * Derives user agent data from these client hints.
+     * Mobile browsers are reported as smartphones, except on platforms not
+     * being mobile, and non mobile browsers on Android are reported as
+     * tablets.
+     * @return derived user agent data.
+     */
+    public UserAgentData toUserAgentData() {
+        final boolean mobile = isMobile();
+        final String platform = getPlatform();
+
+        final OperatingSystemFamily osFamily;
+        final String osFamilyName;
+        final String osName;
+        final String osProducer;
+        switch (platform) {
+            case "Windows":
+                osFamily = OperatingSystemFamily.WINDOWS;
+                osFamilyName = osName = "Windows";
+                osProducer = "Microsoft Corporation.";
+                break;
+            case "macOS":
+                osFamily = OperatingSystemFamily.OS_X;
+                osFamilyName = osName = "OS X";
+                osProducer = "Apple Computer, Inc.";
+                break;
+            case "iOS":
+                osFamily = OperatingSystemFamily.IOS;
+                osFamilyName = osName = "iOS";
+                osProducer = "Apple Inc.";
+                break;
+            case "Android":
+                osFamily = OperatingSystemFamily.ANDROID;
+                osFamilyName = osName = "Android";
+                osProducer = "Google, Inc.";
+                break;
+            case "Chrome OS":
+            case "Chromium OS":
+                osFamily = OperatingSystemFamily.LINUX;
+                osFamilyName = "Linux";
+                osName = "Chrome OS";
+                osProducer = "Google Inc.";
+                break;
+            case "Linux":
+                osFamily = OperatingSystemFamily.LINUX;
+                osFamilyName = osName = "Linux";
+                osProducer = "";
+                break;
+            default:
+                osFamily = OperatingSystemFamily.UNKNOWN;
+                osFamilyName = osName = "unknown";
+                osProducer = "";
+                break;
+        }
+
+        final DeviceCategory deviceCategory;
+        final String deviceCategoryName;
+        if (mobile && osFamily != OperatingSystemFamily.WINDOWS &&
+                osFamily != OperatingSystemFamily.OS_X) {
+            deviceCategory = DeviceCategory.SMARTPHONE;
+            deviceCategoryName = "Smartphone";
+        } else if (osFamily == OperatingSystemFamily.ANDROID) {
+            deviceCategory = DeviceCategory.TABLET;
+            deviceCategoryName = "Tablet";
+        } else {
+            deviceCategory = DeviceCategory.PERSONAL_COMPUTER;
+            deviceCategoryName = "Personal computer";
+        }
+
+        String family = mBrand;
+        for (final String[] mapping : FAMILIES) {
+            if (mapping[0].equals(mBrand)) {
+                family = mapping[1];
+                break;
+            }
+        }
+        if (mobile && "Chrome".equals(family)) {
+            family = "Chrome Mobile";
+        }
+
+        return new UserAgentData(mUserAgent, deviceCategory,
+                deviceCategoryName, family, osFamily, osFamilyName, osName,
+                osProducer, getPlatformVersion(),
+                mobile ? UserAgentType.MOBILE_BROWSER : UserAgentType.BROWSER,
+                mVersion);
+    }
+
+    /**
+     * Parses a list of brands, where each brand is a quoted string followed
+     * by a version parameter, i.e: "Chromium";v="110", "Google Chrome";v="110"
+     * Malformed items are ignored.
+     * @param value value of header containing a list of brands.
+     * @return list of pairs containing brand and version.
+     */
+    static List<String[]> parseBrands(final String value) {
+        final List<String[]> brands = new ArrayList<>();
+        for (final String item : split(value, ',')) {
+            final List<String> parts = split(item, ';');
+            final String brand = unquote(parts.get(0).trim());
+            if (brand.isEmpty()) {
+                continue;
+            }
+            String version = "";
+            for (int i = 1; i < parts.size(); i++) {
+                final String parameter = parts.get(i).trim();
+                if (parameter.startsWith("v=")) {
+                    version = unquote(parameter.substring(2).trim());
+                }
+            }
+            brands.add(new String[]{brand, version});
+        }
+        return brands;
+    }
+
+    /**
+     * Finds main brand, ignoring Chromium unless it is the only brand, and
+     * brands used to prevent servers from relying on specific values, which
+     * contain "Not" and "Brand" words (i.e. "Not A(Brand").
+     * @param brands list of pairs containing brand and version.
+     * @return pair containing main brand and version, or null if none is
+     * found.
+     */
+    private static String[] findBrand(final List<String[]> brands) {
+        String[] chromium = null;
+        for (final String[] brand : brands) {
+            if (brand[0].contains("Not") && brand[0].contains("Brand")) {
+                continue;
+            }
+            if (CHROMIUM_BRAND.equals(brand[0])) {
+                chromium = brand;
+            } else {
+                return brand;
+            }
+        }
+        return chromium;
+    }
+
+    /**
+     * Finds version of provided brand, which is the full version when
+     * available, or its major version otherwise.
+     * @param brand pair containing brand and its major version.
+     * @param fullVersionList value of Sec-CH-UA-Full-Version-List header or
+     * null.
+     * @return version of brand.
+     */
+    private static String findVersion(final String[] brand,
+            final String fullVersionList) {
+        if (fullVersionList != null) {
+            for (final String[] full : parseBrands(fullVersionList)) {
+                if (full[0].equals(brand[0])) {
+                    return full[1];
+                }
+            }
+        }
+        return brand[1];
+    }
+
+    /**
+     * Splits provided value using provided separator, ignoring separators
+     * within quoted strings.
+     * @param value value to be split.
+     * @param separator separator character.
+     * @return split parts.
+     */
+    private static List<String> split(final String value,
+            final char separator) {
+        final List<String> parts = new ArrayList<>();
+        boolean quoted = false;
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '\\' && quoted) {
+                i++;
+            } else if (c == '"') {
+                quoted = !quoted;
+            } else if (c == separator && !quoted) {
+                parts.add(value.substring(start, i));
+                start = i + 1;
+            }
+        }
+        parts.add(value.substring(start));
+        return parts;
+    }
+
+    /**
+     * Removes quotes and escaping of provided structured string, if quoted.
+     * @param value value to be unquoted.
+     * @return unquoted value.
+     */
+    private static String unquote(final String value) {
+        if (value.length() < 2 || value.charAt(0) != '"' ||
+                value.charAt(value.length() - 1) != '"') {
+            return value;
+        }
+        final StringBuilder builder = new StringBuilder(value.length());
+        for (int i = 1; i < value.length() - 1; i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length() - 1) {
+                c = value.charAt(++i);
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends the value of a hint to a cache key.
+     * @param builder builder containing key.
+     * @param value value of hint or null.
+     */
+    private static void appendKey(final StringBuilder builder,
+            final String value) {
+        builder.append(KEY_SEPARATOR);
+        if (value != null) {
+            builder.append(value);
+        }
+    }
+}
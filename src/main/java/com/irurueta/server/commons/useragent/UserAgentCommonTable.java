@@ -0,0 +1,578 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Read-only table mapping the most common user agent strings to their
+ * precomputed detection results.
+ * The table is generated at build time by
+ * {@link UserAgentCommonTableGenerator} and shipped within the jar, so that
+ * the most frequent user agents never need to be parsed or cached, even on a
+ * cold JVM.
+ * User agents are located using a minimal perfect hash function (hash and
+ * displace), so that each lookup computes a single hash of the user agent and
+ * performs a single string comparison. Results are stored as compact records
+ * of enumerator ordinals and indices into a pool of distinct strings.
+ * This class is thread safe.
+ */
+public class UserAgentCommonTable {
+
+    /**
+     * Name of the resource containing the table shipped within the jar.
+     */
+    public static final String RESOURCE_NAME = "common-user-agents.bin";
+
+    /**
+     * Average number of user agents per bucket of the perfect hash function.
+     */
+    static final int BUCKET_SIZE = 4;
+
+    /**
+     * Maximum seed tried to place the user agents of a bucket.
+     */
+    static final int MAX_SEED = 1 << 24;
+
+    /**
+     * Number of string fields of each record.
+     */
+    static final int FIELD_COUNT = 7;
+
+    /**
+     * Marker identifying serialized tables ("UAT" followed by format version).
+     */
+    private static final int MAGIC = 0x55415431;
+
+    /**
+     * Value used for null enumerators and strings.
+     */
+    private static final int NULL_INDEX = -1;
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            UserAgentCommonTable.class.getName());
+
+    /**
+     * Values of device categories. Kept to avoid cloning them on every
+     * lookup.
+     */
+    private static final DeviceCategory[] DEVICE_CATEGORIES =
+            DeviceCategory.values();
+
+    /**
+     * Values of operating system families.
+     */
+    private static final OperatingSystemFamily[] OS_FAMILIES =
+            OperatingSystemFamily.values();
+
+    /**
+     * Values of user agent types.
+     */
+    private static final UserAgentType[] USER_AGENT_TYPES =
+            UserAgentType.values();
+
+    /**
+     * Version of the data used to detect stored results.
+     */
+    private final String mDataVersion;
+
+    /**
+     * Seed used by each bucket to place its user agents.
+     */
+    private final int[] mSeeds;
+
+    /**
+     * User agents indexed by slot.
+     */
+    private final String[] mKeys;
+
+    /**
+     * Ordinal of device category of each slot, or -1 if null.
+     */
+    private final byte[] mDeviceCategories;
+
+    /**
+     * Ordinal of operating system family of each slot, or -1 if null.
+     */
+    private final byte[] mOsFamilies;
+
+    /**
+     * Ordinal of user agent type of each slot, or -1 if null.
+     */
+    private final byte[] mUserAgentTypes;
+
+    /**
+     * Indices into string pool of the string fields of each slot, stored
+     * consecutively, or -1 if null.
+     */
+    private final int[] mFields;
+
+    /**
+     * Pool of distinct strings used by records.
+     */
+    private final String[] mPool;
+
+    /**
+     * Constructor.
+     * @param dataVersion version of the data used to detect stored results.
+     * @param seeds seed used by each bucket.
+     * @param keys user agents indexed by slot.
+     * @param deviceCategories ordinal of device category of each slot.
+     * @param osFamilies ordinal of operating system family of each slot.
+     * @param userAgentTypes ordinal of user agent type of each slot.
+     * @param fields indices into string pool of each slot.
+     * @param pool pool of distinct strings.
+     */
+    private UserAgentCommonTable(final String dataVersion, final int[] seeds,
+            final String[] keys, final byte[] deviceCategories,
+            final byte[] osFamilies, final byte[] userAgentTypes,
+            final int[] fields, final String[] pool) {
+        mDataVersion = dataVersion;
+        mSeeds = seeds;
+        mKeys = keys;
+        mDeviceCategories = deviceCategories;
+        mOsFamilies = osFamilies;
+        mUserAgentTypes = userAgentTypes;
+        mFields = fields;
+        mPool = pool;
+    }
+
+    /**
+     * Builds a table containing provided detection results.
+     * @param dataVersion version of the data used to detect results.
+     * @param records detection results, each one containing its user agent.
+     * @return a new table.
+     * @throws IllegalArgumentException if data version is null or a user
+     * agent is repeated.
+     * @throws IllegalStateException if no perfect hash function is found,
+     * which only happens if two user agents have the same 64 bit hash.
+     */
+    public static UserAgentCommonTable build(final String dataVersion,
+            final List<UserAgentData> records) {
+        if (dataVersion == null) {
+            throw new IllegalArgumentException();
+        }
+
+        final int n = records.size();
+        final long[] hashes = new long[n];
+        final Set<String> userAgents = new HashSet<>();
+        for (int i = 0; i < n; i++) {
+            final String userAgent = records.get(i).getUserAgent();
+            if (!userAgents.add(userAgent)) {
+                throw new IllegalArgumentException(
+                        "Repeated user agent: " + userAgent);
+            }
+            hashes[i] = UserAgentHashing.stableHash64(userAgent);
+        }
+
+        // group user agents into buckets
+        final int bucketCount = Math.max(1, (n + BUCKET_SIZE - 1) /
+                BUCKET_SIZE);
+        final List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < n; i++) {
+            buckets.get(UserAgentHashing.reduce(hashes[i], bucketCount)).
+                    add(i);
+        }
+
+        // place largest buckets first, while most slots are still free
+        final List<Integer> order = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer o1, final Integer o2) {
+                return buckets.get(o2).size() - buckets.get(o1).size();
+            }
+        });
+
+        final int[] seeds = new int[bucketCount];
+        final int[] slotOf = new int[n];
+        final boolean[] taken = new boolean[n];
+        for (final int b : order) {
+            final List<Integer> bucket = buckets.get(b);
+            if (bucket.isEmpty()) {
+                break;
+            }
+            seeds[b] = findSeed(bucket, hashes, taken, slotOf);
+        }
+
+        // build compact records
+        final Map<String, Integer> pool = new LinkedHashMap<>();
+        final String[] keys = new String[n];
+        final byte[] deviceCategories = new byte[n];
+        final byte[] osFamilies = new byte[n];
+        final byte[] userAgentTypes = new byte[n];
+        final int[] fields = new int[n * FIELD_COUNT];
+        for (int i = 0; i < n; i++) {
+            final UserAgentData data = records.get(i);
+            final int slot = slotOf[i];
+            keys[slot] = data.getUserAgent();
+            deviceCategories[slot] = ordinal(data.getDeviceCategory());
+            osFamilies[slot] = ordinal(data.getOsFamily());
+            userAgentTypes[slot] = ordinal(data.getUserAgentType());
+
+            final int offset = slot * FIELD_COUNT;
+            fields[offset] = intern(pool, data.getDeviceCategoryName());
+            fields[offset + 1] = intern(pool, data.getFamily());
+            fields[offset + 2] = intern(pool, data.getOsFamilyName());
+            fields[offset + 3] = intern(pool, data.getOsName());
+            fields[offset + 4] = intern(pool, data.getOsProducer());
+            fields[offset + 5] = intern(pool, data.getOsVersion());
+            fields[offset + 6] = intern(pool, data.getUserAgentVersion());
+        }
+
+        return new UserAgentCommonTable(dataVersion, seeds, keys,
+                deviceCategories, osFamilies, userAgentTypes, fields,
+                pool.keySet().toArray(new String[pool.size()]));
+    }
+
+    /**
+     * Loads the table shipped within the jar.
+     * @return loaded table or null if the jar contains no table or it could
+     * not be read.
+     */
+    public static UserAgentCommonTable load() {
+        final InputStream stream = UserAgentCommonTable.class.
+                getResourceAsStream(RESOURCE_NAME);
+        if (stream == null) {
+            LOG.log(Level.INFO, "No table of common user agents was found");
+            return null;
+        }
+
+        try (InputStream in = stream) {
+            return read(in);
+        } catch (final IOException e) {
+            LOG.log(Level.WARNING, "Table of common user agents could not be " +
+                    "read", e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a table from provided stream.
+     * @param stream stream to read table from. Stream is not closed.
+     * @return read table.
+     * @throws IOException if an I/O error occurs or stream does not contain a
+     * valid table.
+     */
+    public static UserAgentCommonTable read(final InputStream stream)
+            throws IOException {
+        final DataInputStream in = new DataInputStream(
+                new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a table of common user agents");
+        }
+
+        final String dataVersion = in.readUTF();
+
+        final String[] pool = new String[in.readInt()];
+        for (int i = 0; i < pool.length; i++) {
+            pool[i] = in.readUTF();
+        }
+
+        final int[] seeds = new int[in.readInt()];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = in.readInt();
+        }
+
+        final int n = in.readInt();
+        final String[] keys = new String[n];
+        final byte[] deviceCategories = new byte[n];
+        final byte[] osFamilies = new byte[n];
+        final byte[] userAgentTypes = new byte[n];
+        final int[] fields = new int[n * FIELD_COUNT];
+        for (int i = 0; i < n; i++) {
+            keys[i] = in.readUTF();
+            deviceCategories[i] = ordinal(readEnum(in, pool,
+                    DeviceCategory.class));
+            osFamilies[i] = ordinal(readEnum(in, pool,
+                    OperatingSystemFamily.class));
+            userAgentTypes[i] = ordinal(readEnum(in, pool,
+                    UserAgentType.class));
+            for (int j = 0; j < FIELD_COUNT; j++) {
+                fields[i * FIELD_COUNT + j] = readIndex(in, pool);
+            }
+        }
+
+        return new UserAgentCommonTable(dataVersion, seeds, keys,
+                deviceCategories, osFamilies, userAgentTypes, fields, pool);
+    }
+
+    /**
+     * Writes this table into provided stream.
+     * Enumerators are written by name, so that tables remain valid if
+     * enumerators are reordered.
+     * @param stream stream to write table to. Stream is not closed.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void write(final OutputStream stream) throws IOException {
+        // enumerator names are appended to the pool
+        final Map<String, Integer> pool = new LinkedHashMap<>();
+        for (final String value : mPool) {
+            intern(pool, value);
+        }
+        final int n = mKeys.length;
+        final int[] enums = new int[n * 3];
+        for (int i = 0; i < n; i++) {
+            enums[i * 3] = internEnum(pool, DEVICE_CATEGORIES,
+                    mDeviceCategories[i]);
+            enums[i * 3 + 1] = internEnum(pool, OS_FAMILIES,
+                    mOsFamilies[i]);
+            enums[i * 3 + 2] = internEnum(pool, USER_AGENT_TYPES,
+                    mUserAgentTypes[i]);
+        }
+
+        final DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream));
+        out.writeInt(MAGIC);
+        out.writeUTF(mDataVersion);
+
+        out.writeInt(pool.size());
+        for (final String value : pool.keySet()) {
+            out.writeUTF(value);
+        }
+
+        out.writeInt(mSeeds.length);
+        for (final int seed : mSeeds) {
+            out.writeInt(seed);
+        }
+
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            out.writeUTF(mKeys[i]);
+            for (int j = 0; j < 3; j++) {
+                out.writeInt(enums[i * 3 + j]);
+            }
+            for (int j = 0; j < FIELD_COUNT; j++) {
+                out.writeInt(mFields[i * FIELD_COUNT + j]);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Returns version of the data used to detect stored results.
+     * Stored results are only valid while parsers use the same data version.
+     * @return version of data.
+     */
+    public String getDataVersion() {
+        return mDataVersion;
+    }
+
+    /**
+     * Returns number of user agents contained in this table.
+     * @return number of user agents.
+     */
+    public int size() {
+        return mKeys.length;
+    }
+
+    /**
+     * Returns precomputed detection result of provided user agent.
+     * @param userAgent user agent to look for.
+     * @return detection result or null if user agent is not contained in
+     * this table.
+     */
+    public UserAgentData get(final String userAgent) {
+        final int n = mKeys.length;
+        if (n == 0 || userAgent == null) {
+            return null;
+        }
+
+        final long hash = UserAgentHashing.stableHash64(userAgent);
+        final int seed = mSeeds[UserAgentHashing.reduce(hash, mSeeds.length)];
+        final int slot = UserAgentHashing.reduce(UserAgentHashing.rehash(hash,
+                seed), n);
+        if (!userAgent.equals(mKeys[slot])) {
+            return null;
+        }
+
+        final int offset = slot * FIELD_COUNT;
+        return new UserAgentData(userAgent,
+                value(DEVICE_CATEGORIES, mDeviceCategories[slot]),
+                value(offset),
+                value(offset + 1),
+                value(OS_FAMILIES, mOsFamilies[slot]),
+                value(offset + 2),
+                value(offset + 3),
+                value(offset + 4),
+                value(offset + 5),
+                value(USER_AGENT_TYPES, mUserAgentTypes[slot]),
+                value(offset + 6));
+    }
+
+    /**
+     * Finds a seed that places all user agents of a bucket into distinct free
+     * slots, and marks those slots as taken.
+     * @param bucket positions of user agents in bucket.
+     * @param hashes hashes of all user agents.
+     * @param taken indicates which slots are already taken.
+     * @param slotOf slot assigned to each user agent.
+     * @return found seed.
+     * @throws IllegalStateException if no seed is found.
+     */
+    private static int findSeed(final List<Integer> bucket,
+            final long[] hashes, final boolean[] taken, final int[] slotOf) {
+        final int n = taken.length;
+        final int[] slots = new int[bucket.size()];
+        for (int seed = 0; seed < MAX_SEED; seed++) {
+            boolean valid = true;
+            for (int i = 0; i < slots.length && valid; i++) {
+                final int slot = UserAgentHashing.reduce(
+                        UserAgentHashing.rehash(hashes[bucket.get(i)], seed),
+                        n);
+                valid = !taken[slot];
+                for (int j = 0; j < i && valid; j++) {
+                    valid = slots[j] != slot;
+                }
+                slots[i] = slot;
+            }
+
+            if (valid) {
+                for (int i = 0; i < slots.length; i++) {
+                    taken[slots[i]] = true;
+                    slotOf[bucket.get(i)] = slots[i];
+                }
+                return seed;
+            }
+        }
+        throw new IllegalStateException("No perfect hash function found");
+    }
+
+    /**
+     * Returns string of the pool referenced by provided field.
+     * @param field position of field.
+     * @return string or null.
+     */
+    private String value(final int field) {
+        final int index = mFields[field];
+        return index != NULL_INDEX ? mPool[index] : null;
+    }
+
+    /**
+     * Returns enumerator having provided ordinal.
+     * @param values all values of enumerator.
+     * @param ordinal ordinal of value or -1 if null.
+     * @param <E> type of enumerator.
+     * @return enumerator value or null.
+     */
+    private static <E extends Enum<E>> E value(final E[] values,
+            final byte ordinal) {
+        return ordinal != NULL_INDEX ? values[ordinal] : null;
+    }
+
+    /**
+     * Returns ordinal of provided enumerator value.
+     * @param value enumerator value.
+     * @return ordinal or -1 if null.
+     */
+    private static byte ordinal(final Enum<?> value) {
+        return value != null ? (byte) value.ordinal() : NULL_INDEX;
+    }
+
+    /**
+     * Adds provided string to the pool, if not already contained.
+     * @param pool pool of strings mapped to their indices.
+     * @param value string to be added.
+     * @return index of string or -1 if null.
+     */
+    private static int intern(final Map<String, Integer> pool,
+            final String value) {
+        if (value == null) {
+            return NULL_INDEX;
+        }
+        Integer index = pool.get(value);
+        if (index == null) {
+            index = pool.size();
+            pool.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Adds name of enumerator value to the pool.
+     * @param pool pool of strings mapped to their indices.
+     * @param values all values of enumerator.
+     * @param ordinal ordinal of value or -1 if null.
+     * @return index of name or -1 if null.
+     */
+    private static int internEnum(final Map<String, Integer> pool,
+            final Enum<?>[] values, final byte ordinal) {
+        return ordinal != NULL_INDEX ? intern(pool, values[ordinal].name()) :
+                NULL_INDEX;
+    }
+
+    /**
+     * Reads an index into the pool.
+     * @param in stream to read from.
+     * @param pool pool of strings.
+     * @return read index or -1 if null.
+     * @throws IOException if an I/O error occurs or index is not valid.
+     */
+    private static int readIndex(final DataInputStream in, final String[] pool)
+            throws IOException {
+        final int index = in.readInt();
+        if (index < NULL_INDEX || index >= pool.length) {
+            throw new IOException("Invalid string index: " + index);
+        }
+        return index;
+    }
+
+    /**
+     * Reads an enumerator value stored by name.
+     * @param in stream to read from.
+     * @param pool pool of strings.
+     * @param type type of enumerator.
+     * @param <E> type of enumerator.
+     * @return read value or null.
+     * @throws IOException if an I/O error occurs or name is not valid.
+     */
+    private static <E extends Enum<E>> E readEnum(final DataInputStream in,
+            final String[] pool, final Class<E> type) throws IOException {
+        final int index = readIndex(in, pool);
+        if (index == NULL_INDEX) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, pool[index]);
+        } catch (final IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import net.sf.uadetector.service.UADetectorServiceFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the table of common user agents shipped within the jar.
+ * This tool is executed at build time. It reads a text file containing one
+ * user agent per line (empty lines and lines starting with '#' are ignored),
+ * detects each user agent using the data contained in the uadetector
+ * resources module and writes the resulting {@link UserAgentCommonTable}.
+ * Usage: UserAgentCommonTableGenerator &lt;input file&gt; &lt;output file&gt;
+ */
+public class UserAgentCommonTableGenerator {
+
+    /**
+     * Constructor. Prevents instantiation of tool.
+     */
+    private UserAgentCommonTableGenerator() { }
+
+    /**
+     * Generates the table of common user agents.
+     * @param args input file containing user agents and output file where
+     * table will be written.
+     * @throws IOException if an I/O error occurs.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: UserAgentCommonTableGenerator " +
+                    "<input file> <output file>");
+            System.exit(1);
+        }
+
+        final UserAgentCommonTable table = generate(readUserAgents(
+                new File(args[0])));
+
+        final File output = new File(args[1]);
+        final File dir = output.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create directory " + dir);
+        }
+        try (OutputStream out = new FileOutputStream(output)) {
+            table.write(out);
+        }
+        System.out.println("Table of " + table.size() +
+                " common user agents saved at " + output);
+    }
+
+    /**
+     * Detects provided user agents and builds a table containing their
+     * results.
+     * User agents longer than the default maximum length are skipped, since
+     * they would be truncated when parsed.
+     * @param userAgents user agents to be detected.
+     * @return table containing detection results.
+     */
+    public static UserAgentCommonTable generate(
+            final Iterable<String> userAgents) {
+        final BoundedUserAgentStringParser parser =
+                new BoundedUserAgentStringParser(
+                        UADetectorServiceFactory.RESOURCE_MODULE, null,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+
+        final List<UserAgentData> records = new ArrayList<>();
+        for (final String userAgent : userAgents) {
+            if (userAgent.length() <= parser.getMaxLength()) {
+                records.add(UserAgentDetector.toUserAgentData(userAgent,
+                        parser.parse(userAgent)));
+            }
+        }
+        return UserAgentCommonTable.build(parser.getDataVersion(), records);
+    }
+
+    /**
+     * Reads distinct user agents contained in provided file, preserving
+     * their order.
+     * @param file file containing one user agent per line.
+     * @return read user agents.
+     * @throws IOException if an I/O error occurs.
+     */
+    static Set<String> readUserAgents(final File file) throws IOException {
+        final Set<String> userAgents = new LinkedHashSet<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String userAgent = line.trim();
+                if (!userAgent.isEmpty() && !userAgent.startsWith("#")) {
+                    userAgents.add(userAgent);
+                }
+            }
+        }
+        return userAgents;
+    }
+}
@@ -46,4 +46,137 @@ public interface UserAgentConfiguration extends Configuration {
      * in hours.
      */
     int getUserAgentCacheExpirationTimeHours();
+
+    /**
+     * Indicates whether a frequency based admission policy (TinyLFU) is used
+     * to decide which parsed user agents are cached.
+     * When enabled and the cache is full, user agents that have not been
+     * seen recently at least a minimum number of times are not cached, so
+     * that streams of unique user agents (i.e. sent by crawlers or
+     * vulnerability scanners) do not evict frequently used ones.
+     *
+     * @return true if cache admission policy is enabled, false otherwise.
+     */
+    boolean isUserAgentCacheAdmissionEnabled();
+
+    /**
+     * Returns minimum estimated number of times that a user agent must have
+     * been recently seen to be admitted into a full cache when cache
+     * admission policy is enabled.
+     *
+     * @return minimum frequency to admit user agents into a full cache.
+     */
+    int getUserAgentCacheAdmissionMinFrequency();
+
+    /**
+     * Returns maximum number of characters of a user agent being parsed.
+     * Longer user agents are truncated keeping their first characters before
+     * being parsed, so that oversized headers cannot make parsing arbitrarily
+     * expensive.
+     *
+     * @return maximum number of characters of a user agent being parsed.
+     */
+    int getUserAgentMaxLength();
+
+    /**
+     * Returns maximum number of steps (characters read by regular
+     * expressions) that parsing a single user agent can take. When exceeded,
+     * parsing is aborted and the user agent is reported as unknown.
+     *
+     * @return maximum number of steps that parsing a user agent can take.
+     */
+    long getUserAgentParseMaxSteps();
+
+    /**
+     * Indicates whether the table of common user agents shipped within the
+     * jar is used. When enabled, precomputed results of the most common user
+     * agents are returned without parsing or caching them.
+     *
+     * @return true if table of common user agents is used, false otherwise.
+     */
+    boolean isUserAgentCommonTableEnabled();
+
+    /**
+     * Returns maximum number of user agents whose parsing failed that are
+     * cached, so that repeated malformed user agents fail without being
+     * parsed again. Zero disables negative caching.
+     *
+     * @return maximum number of cached failures.
+     */
+    int getUserAgentNegativeCacheSize();
+
+    /**
+     * Returns maximum amount of time to keep failures cached expressed in
+     * minutes.
+     *
+     * @return maximum amount of time to keep failures cached expressed in
+     * minutes.
+     */
+    int getUserAgentNegativeCacheExpirationTimeMinutes();
+
+    /**
+     * Indicates whether invocation counts and cumulative cost of each pattern
+     * of the user agent database are recorded while parsing user agents.
+     * Profiling adds overhead to every parse, hence it should only be enabled
+     * to find out which patterns are worth rewriting or reordering.
+     *
+     * @return true if pattern profiling is enabled, false otherwise.
+     */
+    boolean isUserAgentPatternProfilingEnabled();
+
+    /**
+     * Returns source of the user agent database used to parse user agents.
+     * Modes differ in how much work is done while the detector starts and in
+     * whether the database is updated in background.
+     *
+     * @return source of the user agent database.
+     */
+    UserAgentParserMode getUserAgentParserMode();
+
+    /**
+     * Returns implementation of the cache of detected user agents.
+     * Hashed caches reduce lookup cost and key memory of long user agents.
+     *
+     * @return implementation of the cache of detected user agents.
+     */
+    UserAgentCacheType getUserAgentCacheType();
+
+    /**
+     * Indicates whether hashed caches keep a second hash and the length of
+     * cached user agents to verify hash collisions. When disabled, slightly
+     * less memory is used at the risk of returning data of another user
+     * agent when 64 bit hashes collide.
+     *
+     * @return true if hash collisions are verified, false otherwise.
+     */
+    boolean isUserAgentCacheHashVerificationEnabled();
+
+    /**
+     * Returns maximum amount of memory used by off-heap caches, expressed in
+     * bytes. Off-heap caches are bounded by memory rather than by number of
+     * user agents, and their memory is reserved as soon as they are created.
+     *
+     * @return maximum amount of memory used by off-heap caches.
+     */
+    long getUserAgentCacheMaxBytes();
+
+    /**
+     * Returns maximum number of distinct results kept by the pool of results,
+     * which assigns a shared identifier to identical results of distinct
+     * user agents.
+     *
+     * @return maximum number of distinct results.
+     */
+    int getUserAgentResultPoolSize();
+
+    /**
+     * Returns number of independent parser replicas among which user agents
+     * being parsed are striped by hash, where 0 indicates one replica per
+     * available processor. Each replica keeps its own copy of user agent
+     * data. Caches scale their concurrency level to the number of available
+     * processors or replicas, whichever is greater.
+     *
+     * @return number of parser replicas.
+     */
+    int getUserAgentParserReplicas();
 }
@@ -62,7 +62,196 @@ public class UserAgentConfigurationFactory extends
      * hours.
      */
     public static final int DEFAULT_USER_AGENT_CACHE_EXPIRATION_TIME_HOURS = 2;
+
+    /**
+     * Property indicating whether a frequency based admission policy (TinyLFU)
+     * is used to decide which parsed user agents are cached.
+     */
+    public static final String USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_CACHE_ADMISSION_ENABLED";
+
+    /**
+     * Default value indicating whether cache admission policy is enabled.
+     */
+    public static final boolean DEFAULT_USER_AGENT_CACHE_ADMISSION_ENABLED =
+            false;
+
+    /**
+     * Property indicating the minimum estimated number of times that a user
+     * agent must have been recently seen to be admitted into a full cache.
+     */
+    public static final String USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY";
+
+    /**
+     * Default minimum frequency to admit user agents into a full cache, so
+     * that user agents seen only once are not admitted.
+     */
+    public static final int DEFAULT_USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY =
+            2;
+
+    /**
+     * Property indicating maximum number of characters of a user agent being
+     * parsed.
+     */
+    public static final String USER_AGENT_MAX_LENGTH_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_MAX_LENGTH";
+
+    /**
+     * Default maximum number of characters of a user agent being parsed,
+     * which is well above the length of user agents sent by real browsers.
+     */
+    public static final int DEFAULT_USER_AGENT_MAX_LENGTH = 1024;
+
+    /**
+     * Property indicating maximum number of steps that parsing a single user
+     * agent can take.
+     */
+    public static final String USER_AGENT_PARSE_MAX_STEPS_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_PARSE_MAX_STEPS";
+
+    /**
+     * Default maximum number of steps that parsing a single user agent can
+     * take. Common user agents take up to 2 million steps, hence this
+     * budget only aborts pathological inputs.
+     */
+    public static final long DEFAULT_USER_AGENT_PARSE_MAX_STEPS = 10000000L;
+
+    /**
+     * Property indicating whether the table of common user agents shipped
+     * within the jar is used.
+     */
+    public static final String USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_COMMON_TABLE_ENABLED";
+
+    /**
+     * Default value indicating whether table of common user agents is used.
+     */
+    public static final boolean DEFAULT_USER_AGENT_COMMON_TABLE_ENABLED = true;
+
+    /**
+     * Property indicating maximum number of user agents whose parsing failed
+     * that are cached.
+     */
+    public static final String USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_NEGATIVE_CACHE_SIZE";
+
+    /**
+     * Default maximum number of cached failures.
+     */
+    public static final int DEFAULT_USER_AGENT_NEGATIVE_CACHE_SIZE = 1000;
+
+    /**
+     * Property indicating maximum amount of time to keep failures cached
+     * expressed in minutes.
+     */
+    public static final String
+            USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES";
+
+    /**
+     * Default maximum amount of time to keep failures cached, which is 10
+     * minutes.
+     */
+    public static final int
+            DEFAULT_USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES = 10;
+
+    /**
+     * Property indicating whether cost of each pattern of the user agent
+     * database is recorded while parsing user agents.
+     */
+    public static final String USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_PATTERN_PROFILING_ENABLED";
+
+    /**
+     * Default value indicating whether pattern profiling is enabled.
+     */
+    public static final boolean DEFAULT_USER_AGENT_PATTERN_PROFILING_ENABLED =
+            false;
     
+    /**
+     * Property indicating source of the user agent database used to parse
+     * user agents. Accepted values are the names of
+     * {@link UserAgentParserMode} values.
+     */
+    public static final String USER_AGENT_PARSER_MODE_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_PARSER_MODE";
+
+    /**
+     * Default source of the user agent database, which caches the bundled
+     * database on disk and updates it in background.
+     */
+    public static final UserAgentParserMode DEFAULT_USER_AGENT_PARSER_MODE =
+            UserAgentParserMode.CACHING_AND_UPDATING;
+
+    /**
+     * Property indicating implementation of the cache of detected user
+     * agents. Accepted values are the names of {@link UserAgentCacheType}
+     * values.
+     */
+    public static final String USER_AGENT_CACHE_TYPE_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_CACHE_TYPE";
+
+    /**
+     * Default implementation of the cache of detected user agents, which is
+     * keyed by user agent strings and never locks on lookups.
+     */
+    public static final UserAgentCacheType DEFAULT_USER_AGENT_CACHE_TYPE =
+            UserAgentCacheType.CONCURRENT;
+
+    /**
+     * Property indicating whether hashed caches keep a second hash and the
+     * length of cached user agents to verify hash collisions.
+     */
+    public static final String USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED";
+
+    /**
+     * Default value indicating whether hashed caches verify hash collisions.
+     */
+    public static final boolean DEFAULT_USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED =
+            true;
+
+    /**
+     * Property indicating maximum amount of memory used by off-heap caches,
+     * expressed in bytes.
+     */
+    public static final String USER_AGENT_CACHE_MAX_BYTES_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_CACHE_MAX_BYTES";
+
+    /**
+     * Default maximum amount of memory used by off-heap caches (64 MiB).
+     */
+    public static final long DEFAULT_USER_AGENT_CACHE_MAX_BYTES =
+            64L * 1024L * 1024L;
+
+    /**
+     * Property indicating maximum number of distinct results kept by the pool
+     * of results.
+     */
+    public static final String USER_AGENT_RESULT_POOL_SIZE_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_RESULT_POOL_SIZE";
+
+    /**
+     * Default maximum number of distinct results kept by the pool of results.
+     */
+    public static final int DEFAULT_USER_AGENT_RESULT_POOL_SIZE =
+            65536;
+
+    /**
+     * Property indicating number of independent parser replicas among which
+     * user agents being parsed are striped, or 0 to use one replica per
+     * available processor.
+     */
+    public static final String USER_AGENT_PARSER_REPLICAS_PROPERTY =
+            "com.irurueta.server.commons.useragent.USER_AGENT_PARSER_REPLICAS";
+
+    /**
+     * Default number of parser replicas, which keeps a single shared parser.
+     */
+    public static final int DEFAULT_USER_AGENT_PARSER_REPLICAS =
+            1;
+
     /**
      * Reference to factory singleton.
      */
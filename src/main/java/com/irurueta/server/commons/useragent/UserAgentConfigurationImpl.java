@@ -40,7 +40,82 @@ public class UserAgentConfigurationImpl implements UserAgentConfiguration {
      * Maximum amount of time to keep user agents cached expressed in hours.
      */
     private int mUserAgentCacheExpirationTimeHours;
+
+    /**
+     * Indicates whether a frequency based admission policy is used to decide
+     * which parsed user agents are cached.
+     */
+    private boolean mUserAgentCacheAdmissionEnabled;
+
+    /**
+     * Minimum estimated number of times that a user agent must have been
+     * recently seen to be admitted into a full cache.
+     */
+    private int mUserAgentCacheAdmissionMinFrequency;
+
+    /**
+     * Maximum number of characters of a user agent being parsed.
+     */
+    private int mUserAgentMaxLength;
+
+    /**
+     * Maximum number of steps that parsing a single user agent can take.
+     */
+    private long mUserAgentParseMaxSteps;
+
+    /**
+     * Indicates whether the table of common user agents shipped within the
+     * jar is used.
+     */
+    private boolean mUserAgentCommonTableEnabled;
+
+    /**
+     * Maximum number of user agents whose parsing failed that are cached.
+     */
+    private int mUserAgentNegativeCacheSize;
+
+    /**
+     * Maximum amount of time to keep failures cached expressed in minutes.
+     */
+    private int mUserAgentNegativeCacheExpirationTimeMinutes;
+
+    /**
+     * Indicates whether cost of each pattern of the user agent database is
+     * recorded while parsing user agents.
+     */
+    private boolean mUserAgentPatternProfilingEnabled;
     
+    /**
+     * Source of the user agent database used to parse user agents.
+     */
+    private UserAgentParserMode mUserAgentParserMode;
+
+    /**
+     * Implementation of the cache of detected user agents.
+     */
+    private UserAgentCacheType mUserAgentCacheType;
+
+    /**
+     * Indicates whether hashed caches verify hash collisions.
+     */
+    private boolean mUserAgentCacheHashVerificationEnabled;
+
+    /**
+     * Maximum amount of memory used by off-heap caches, expressed in bytes.
+     */
+    private long mUserAgentCacheMaxBytes;
+
+    /**
+     * Maximum number of distinct results kept by the pool of results.
+     */
+    private int mUserAgentResultPoolSize;
+
+    /**
+     * Number of independent parser replicas, or 0 to use one per available
+     * processor.
+     */
+    private int mUserAgentParserReplicas;
+
     /**
      * Constructor.
      */
@@ -51,6 +126,35 @@ public class UserAgentConfigurationImpl implements UserAgentConfiguration {
                 DEFAULT_USER_AGENT_CACHE_SIZE;
         mUserAgentCacheExpirationTimeHours = UserAgentConfigurationFactory.
                 DEFAULT_USER_AGENT_CACHE_EXPIRATION_TIME_HOURS;
+        mUserAgentCacheAdmissionEnabled = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_CACHE_ADMISSION_ENABLED;
+        mUserAgentCacheAdmissionMinFrequency = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY;
+        mUserAgentMaxLength = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_MAX_LENGTH;
+        mUserAgentParseMaxSteps = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_PARSE_MAX_STEPS;
+        mUserAgentCommonTableEnabled = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_COMMON_TABLE_ENABLED;
+        mUserAgentNegativeCacheSize = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_NEGATIVE_CACHE_SIZE;
+        mUserAgentNegativeCacheExpirationTimeMinutes =
+                UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES;
+        mUserAgentPatternProfilingEnabled = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_PATTERN_PROFILING_ENABLED;
+        mUserAgentParserMode = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_PARSER_MODE;
+        mUserAgentCacheType = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_CACHE_TYPE;
+        mUserAgentCacheHashVerificationEnabled = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED;
+        mUserAgentCacheMaxBytes = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_CACHE_MAX_BYTES;
+        mUserAgentResultPoolSize = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_RESULT_POOL_SIZE;
+        mUserAgentParserReplicas = UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_PARSER_REPLICAS;
     }
     
     /**
@@ -94,6 +198,156 @@ public class UserAgentConfigurationImpl implements UserAgentConfiguration {
     public int getUserAgentCacheExpirationTimeHours() {
         return mUserAgentCacheExpirationTimeHours;
     }
+
+    /**
+     * Indicates whether a frequency based admission policy (TinyLFU) is used
+     * to decide which parsed user agents are cached.
+     * @return true if cache admission policy is enabled, false otherwise.
+     */
+    @Override
+    public boolean isUserAgentCacheAdmissionEnabled() {
+        return mUserAgentCacheAdmissionEnabled;
+    }
+
+    /**
+     * Returns minimum estimated number of times that a user agent must have
+     * been recently seen to be admitted into a full cache when cache
+     * admission policy is enabled.
+     * @return minimum frequency to admit user agents into a full cache.
+     */
+    @Override
+    public int getUserAgentCacheAdmissionMinFrequency() {
+        return mUserAgentCacheAdmissionMinFrequency;
+    }
+
+    /**
+     * Returns maximum number of characters of a user agent being parsed.
+     * Longer user agents are truncated before being parsed.
+     * @return maximum number of characters of a user agent being parsed.
+     */
+    @Override
+    public int getUserAgentMaxLength() {
+        return mUserAgentMaxLength;
+    }
+
+    /**
+     * Returns maximum number of steps that parsing a single user agent can
+     * take before being reported as unknown.
+     * @return maximum number of steps that parsing a user agent can take.
+     */
+    @Override
+    public long getUserAgentParseMaxSteps() {
+        return mUserAgentParseMaxSteps;
+    }
+
+    /**
+     * Indicates whether the table of common user agents shipped within the
+     * jar is used.
+     * @return true if table of common user agents is used, false otherwise.
+     */
+    @Override
+    public boolean isUserAgentCommonTableEnabled() {
+        return mUserAgentCommonTableEnabled;
+    }
+
+    /**
+     * Returns maximum number of user agents whose parsing failed that are
+     * cached. Zero disables negative caching.
+     * @return maximum number of cached failures.
+     */
+    @Override
+    public int getUserAgentNegativeCacheSize() {
+        return mUserAgentNegativeCacheSize;
+    }
+
+    /**
+     * Returns maximum amount of time to keep failures cached expressed in
+     * minutes.
+     * @return maximum amount of time to keep failures cached expressed in
+     * minutes.
+     */
+    @Override
+    public int getUserAgentNegativeCacheExpirationTimeMinutes() {
+        return mUserAgentNegativeCacheExpirationTimeMinutes;
+    }
+
+    /**
+     * Indicates whether cost of each pattern of the user agent database is
+     * recorded while parsing user agents.
+     * @return true if pattern profiling is enabled, false otherwise.
+     */
+    @Override
+    public boolean isUserAgentPatternProfilingEnabled() {
+        return mUserAgentPatternProfilingEnabled;
+    }
+
+    /**
+     * Returns source of the user agent database used to parse user agents.
+     * Modes differ in how much work is done while the detector starts and in
+     * whether the database is updated in background.
+     * @return source of the user agent database.
+     */
+    @Override
+    public UserAgentParserMode getUserAgentParserMode() {
+        return mUserAgentParserMode;
+    }
+
+    /**
+     * Returns implementation of the cache of detected user agents.
+     * Hashed caches reduce lookup cost and key memory of long user agents.
+     * @return implementation of the cache of detected user agents.
+     */
+    @Override
+    public UserAgentCacheType getUserAgentCacheType() {
+        return mUserAgentCacheType;
+    }
+
+    /**
+     * Indicates whether hashed caches keep a second hash and the length of
+     * cached user agents to verify hash collisions. When disabled, slightly
+     * less memory is used at the risk of returning data of another user
+     * agent when 64 bit hashes collide.
+     * @return true if hash collisions are verified, false otherwise.
+     */
+    @Override
+    public boolean isUserAgentCacheHashVerificationEnabled() {
+        return mUserAgentCacheHashVerificationEnabled;
+    }
+
+    /**
+     * Returns maximum amount of memory used by off-heap caches, expressed in
+     * bytes. Off-heap caches are bounded by memory rather than by number of
+     * user agents, and their memory is reserved as soon as they are created.
+     * @return maximum amount of memory used by off-heap caches.
+     */
+    @Override
+    public long getUserAgentCacheMaxBytes() {
+        return mUserAgentCacheMaxBytes;
+    }
+
+    /**
+     * Returns maximum number of distinct results kept by the pool of results,
+     * which assigns a shared identifier to identical results of distinct
+     * user agents.
+     * @return maximum number of distinct results.
+     */
+    @Override
+    public int getUserAgentResultPoolSize() {
+        return mUserAgentResultPoolSize;
+    }
+
+    /**
+     * Returns number of independent parser replicas among which user agents
+     * being parsed are striped by hash, where 0 indicates one replica per
+     * available processor. Each replica keeps its own copy of user agent
+     * data. Caches scale their concurrency level to the number of available
+     * processors or replicas, whichever is greater.
+     * @return number of parser replicas.
+     */
+    @Override
+    public int getUserAgentParserReplicas() {
+        return mUserAgentParserReplicas;
+    }
     
     /**
      * Loads configuration from provided properties.
@@ -131,6 +385,133 @@ public class UserAgentConfigurationImpl implements UserAgentConfiguration {
                 throw new ConfigurationException("User agent cache " + 
                         "expiration time must be positive");
             }
+
+            mUserAgentCacheAdmissionEnabled = Boolean.parseBoolean(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY,
+                    Boolean.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_CACHE_ADMISSION_ENABLED)));
+
+            mUserAgentCacheAdmissionMinFrequency = Integer.parseInt(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY,
+                    Integer.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY)));
+
+            if (mUserAgentCacheAdmissionMinFrequency <= 0 ||
+                    mUserAgentCacheAdmissionMinFrequency >
+                    UserAgentFrequencySketch.MAX_FREQUENCY) {
+                throw new ConfigurationException("User agent cache " +
+                        "admission minimum frequency must be between 1 and " +
+                        UserAgentFrequencySketch.MAX_FREQUENCY);
+            }
+
+            mUserAgentMaxLength = Integer.parseInt(properties.getProperty(
+                    UserAgentConfigurationFactory.
+                    USER_AGENT_MAX_LENGTH_PROPERTY, Integer.toString(
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_MAX_LENGTH)));
+
+            if (mUserAgentMaxLength <= 0) {
+                throw new ConfigurationException(
+                        "User agent maximum length must be positive");
+            }
+
+            mUserAgentParseMaxSteps = Long.parseLong(properties.getProperty(
+                    UserAgentConfigurationFactory.
+                    USER_AGENT_PARSE_MAX_STEPS_PROPERTY, Long.toString(
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_PARSE_MAX_STEPS)));
+
+            if (mUserAgentParseMaxSteps <= 0) {
+                throw new ConfigurationException(
+                        "User agent parse maximum steps must be positive");
+            }
+
+            mUserAgentCommonTableEnabled = Boolean.parseBoolean(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY,
+                    Boolean.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_COMMON_TABLE_ENABLED)));
+
+            mUserAgentNegativeCacheSize = Integer.parseInt(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY,
+                    Integer.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_NEGATIVE_CACHE_SIZE)));
+
+            if (mUserAgentNegativeCacheSize < 0) {
+                throw new ConfigurationException(
+                        "User agent negative cache size must be zero or " +
+                        "positive");
+            }
+
+            mUserAgentNegativeCacheExpirationTimeMinutes = Integer.parseInt(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY,
+                    Integer.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES)));
+
+            if (mUserAgentNegativeCacheExpirationTimeMinutes <= 0) {
+                throw new ConfigurationException("User agent negative " +
+                        "cache expiration time must be positive");
+            }
+
+            mUserAgentPatternProfilingEnabled = Boolean.parseBoolean(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY,
+                    Boolean.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_PATTERN_PROFILING_ENABLED)));
+
+            mUserAgentParserMode = UserAgentParserMode.fromName(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_PARSER_MODE_PROPERTY,
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_PARSER_MODE.name()));
+
+            mUserAgentCacheType = UserAgentCacheType.fromName(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_CACHE_TYPE_PROPERTY,
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_CACHE_TYPE.name()));
+
+            mUserAgentCacheHashVerificationEnabled = Boolean.parseBoolean(
+                    properties.getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY,
+                    Boolean.toString(UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED)));
+
+            mUserAgentCacheMaxBytes = Long.parseLong(properties.getProperty(
+                    UserAgentConfigurationFactory.
+                    USER_AGENT_CACHE_MAX_BYTES_PROPERTY, Long.toString(
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_CACHE_MAX_BYTES)));
+            if (mUserAgentCacheMaxBytes < OffHeapUserAgentCache.
+                    MIN_SEGMENT_BYTES) {
+                throw new ConfigurationException("User agent cache maximum " +
+                        "bytes must be at least " +
+                        OffHeapUserAgentCache.MIN_SEGMENT_BYTES);
+            }
+
+            mUserAgentResultPoolSize = Integer.parseInt(properties.
+                    getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_RESULT_POOL_SIZE_PROPERTY, Integer.toString(
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_RESULT_POOL_SIZE)));
+            if (mUserAgentResultPoolSize <= 0) {
+                throw new ConfigurationException(
+                        "User agent result pool size must be positive");
+            }
+
+            mUserAgentParserReplicas = Integer.parseInt(properties.
+                    getProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_PARSER_REPLICAS_PROPERTY, Integer.toString(
+                    UserAgentConfigurationFactory.
+                    DEFAULT_USER_AGENT_PARSER_REPLICAS)));
+            if (mUserAgentParserReplicas < 0) {
+                throw new ConfigurationException(
+                        "User agent parser replicas must not be negative");
+            }
         } catch(final ConfigurationException e) {
             throw e;
         } catch(final Exception e) {
@@ -152,6 +533,48 @@ public class UserAgentConfigurationImpl implements UserAgentConfiguration {
         properties.setProperty(UserAgentConfigurationFactory.
                 USER_AGENT_CACHE_EXPIRATION_TIME_HOURS_PROPERTY, 
                 Integer.toString(mUserAgentCacheExpirationTimeHours));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY,
+                Boolean.toString(mUserAgentCacheAdmissionEnabled));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY,
+                Integer.toString(mUserAgentCacheAdmissionMinFrequency));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_MAX_LENGTH_PROPERTY,
+                Integer.toString(mUserAgentMaxLength));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSE_MAX_STEPS_PROPERTY,
+                Long.toString(mUserAgentParseMaxSteps));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY,
+                Boolean.toString(mUserAgentCommonTableEnabled));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY,
+                Integer.toString(mUserAgentNegativeCacheSize));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY,
+                Integer.toString(mUserAgentNegativeCacheExpirationTimeMinutes));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY,
+                Boolean.toString(mUserAgentPatternProfilingEnabled));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY,
+                mUserAgentParserMode.name());
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY,
+                mUserAgentCacheType.name());
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY,
+                Boolean.toString(mUserAgentCacheHashVerificationEnabled));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY,
+                Long.toString(mUserAgentCacheMaxBytes));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_RESULT_POOL_SIZE_PROPERTY,
+                Integer.toString(mUserAgentResultPoolSize));
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY,
+                Integer.toString(mUserAgentParserReplicas));
         return properties;
     }
 }
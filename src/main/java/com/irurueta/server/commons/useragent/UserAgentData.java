@@ -75,6 +75,13 @@ public class UserAgentData {
      */
     private String mUserAgentVersion;
     
+    /**
+     * Generation of the user agent data used to detect this instance.
+     * This is used to discard cached results that were detected before user
+     * agent data was reloaded.
+     */
+    private int mGeneration;
+    
     /**
      * Constructor.
      * @param userAgent Original user agent string.
@@ -113,6 +120,20 @@ public class UserAgentData {
         mUserAgentType = userAgentType;
         mUserAgentVersion = userAgentVersion;
     }
+
+    /**
+     * Copy constructor.
+     * Only references are copied, so that copying is cheap enough to be done
+     * on every cache hit without sharing mutable instances among callers.
+     * @param data instance to be copied.
+     */
+    public UserAgentData(final UserAgentData data) {
+        this(data.mUserAgent, data.mDeviceCategory, data.mDeviceCategoryName,
+                data.mFamily, data.mOsFamily, data.mOsFamilyName, data.mOsName,
+                data.mOsProducer, data.mOsVersion, data.mUserAgentType,
+                data.mUserAgentVersion);
+        mGeneration = data.mGeneration;
+    }
     
     /**
      * Returns original user agent string.
@@ -301,6 +322,22 @@ public class UserAgentData {
         this.mUserAgentVersion = userAgentVersion;
     }
     
+    /**
+     * Returns generation of the user agent data used to detect this instance.
+     * @return generation of user agent data.
+     */
+    int getGeneration() {
+        return mGeneration;
+    }
+    
+    /**
+     * Sets generation of the user agent data used to detect this instance.
+     * @param generation generation of user agent data to be set.
+     */
+    void setGeneration(final int generation) {
+        mGeneration = generation;
+    }
+    
     /**
      * Indicates if detected user agent data corresponds to a desktop
      * web browser or email client.
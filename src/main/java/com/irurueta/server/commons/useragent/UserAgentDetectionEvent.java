@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder event emitted by {@link UserAgentDetector#detect(String)}.
+ * Event is enabled by default with a threshold, so that only slow detections
+ * are recorded in always-on recordings. Threshold can be lowered to zero
+ * in a recording configuration to record every detection.
+ * This class must only be loaded once JDK Flight Recorder is known to be
+ * available.
+ */
+@Name("com.irurueta.server.commons.useragent.Detection")
+@Label("User Agent Detection")
+@Description("Detection of the data contained in a user agent string")
+@Category({"Irurueta", "User Agent"})
+@StackTrace(false)
+@Threshold("10 ms")
+class UserAgentDetectionEvent extends Event {
+
+    /**
+     * Indicates whether the result was obtained without parsing.
+     */
+    @Label("Hit")
+    @Description("Whether the result was obtained without parsing the " +
+            "user agent")
+    boolean hit = true;
+
+    /**
+     * Time spent parsing the user agent expressed in nanoseconds.
+     */
+    @Label("Parse Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    long parseDuration;
+
+    /**
+     * Number of characters of the user agent.
+     */
+    @Label("User Agent Length")
+    int userAgentLength;
+
+    /**
+     * Detected device category.
+     */
+    @Label("Device Category")
+    String deviceCategory;
+
+    /**
+     * Detected user agent type.
+     */
+    @Label("User Agent Type")
+    String userAgentType;
+
+    /**
+     * Cause of failure, if detection failed.
+     */
+    @Label("Failure Cause")
+    String failureCause;
+}
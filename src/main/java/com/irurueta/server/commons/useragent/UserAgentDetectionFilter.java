@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Servlet filter that reads the User-Agent header of each request once and
+ * stores a {@link LazyUserAgentData} as a request attribute.
+ * Cached user agents are solved immediately, whereas detection of user agents
+ * not being cached is deferred until the attribute is first accessed, so
+ * that requests never accessing detected data do not pay for parsing.
+ * Requests can be sampled and filtered using include and exclude URL
+ * patterns (i.e. to skip static assets), in which case no attribute is
+ * stored.
+ * The following init parameters are supported:
+ * - attributeName: name of request attribute. Defaults to
+ * {@link #DEFAULT_ATTRIBUTE_NAME}.
+ * - samplingRate: ratio of requests being detected, between 0.0 and 1.0.
+ * Defaults to 1.0.
+ * - includePatterns: comma separated URL patterns of requests being
+ * detected. If not provided, all requests are detected.
+ * - excludePatterns: comma separated URL patterns of requests not being
+ * detected.
+ * URL patterns follow servlet mapping rules and are matched against the
+ * path of requests within the application: exact paths (i.e. /index.html),
+ * path prefixes (i.e. /static/*) or extensions (i.e. *.css).
+ */
+public class UserAgentDetectionFilter implements Filter {
+
+    /**
+     * Default name of the request attribute containing detected data.
+     */
+    public static final String DEFAULT_ATTRIBUTE_NAME =
+            LazyUserAgentData.class.getName();
+
+    /**
+     * Init parameter containing name of request attribute.
+     */
+    public static final String ATTRIBUTE_NAME_PARAM = "attributeName";
+
+    /**
+     * Init parameter containing ratio of requests being detected.
+     */
+    public static final String SAMPLING_RATE_PARAM = "samplingRate";
+
+    /**
+     * Init parameter containing URL patterns of requests being detected.
+     */
+    public static final String INCLUDE_PATTERNS_PARAM = "includePatterns";
+
+    /**
+     * Init parameter containing URL patterns of requests not being detected.
+     */
+    public static final String EXCLUDE_PATTERNS_PARAM = "excludePatterns";
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            UserAgentDetectionFilter.class.getName());
+
+    /**
+     * Name of request attribute.
+     */
+    private String mAttributeName = DEFAULT_ATTRIBUTE_NAME;
+
+    /**
+     * Ratio of requests being detected.
+     */
+    private double mSamplingRate = 1.0;
+
+    /**
+     * URL patterns of requests being detected, or empty if all requests are
+     * detected.
+     */
+    private List<String> mIncludePatterns = new ArrayList<>();
+
+    /**
+     * URL patterns of requests not being detected.
+     */
+    private List<String> mExcludePatterns = new ArrayList<>();
+
+    /**
+     * Detector used by last detected request, which is obtained again once
+     * it is no longer enabled (i.e. after configuration is reset), so that
+     * requests do not contend on the lock of
+     * {@link UserAgentDetector#getInstance()}.
+     */
+    private volatile UserAgentDetector mDetector;
+
+    /**
+     * Initializes this filter using provided configuration.
+     * @param filterConfig filter configuration containing init parameters.
+     * @throws ServletException if any init parameter is not valid.
+     */
+    @Override
+    public void init(final FilterConfig filterConfig) throws ServletException {
+        final String attributeName = filterConfig.getInitParameter(
+                ATTRIBUTE_NAME_PARAM);
+        if (attributeName != null && !attributeName.trim().isEmpty()) {
+            mAttributeName = attributeName.trim();
+        }
+
+        final String samplingRate = filterConfig.getInitParameter(
+                SAMPLING_RATE_PARAM);
+        if (samplingRate != null) {
+            try {
+                mSamplingRate = Double.parseDouble(samplingRate.trim());
+            } catch (final NumberFormatException e) {
+                throw new ServletException("Invalid sampling rate: " +
+                        samplingRate, e);
+            }
+            if (mSamplingRate < 0.0 || mSamplingRate > 1.0) {
+                throw new ServletException("Invalid sampling rate: " +
+                        samplingRate);
+            }
+        }
+
+        mIncludePatterns = parsePatterns(filterConfig.getInitParameter(
+                INCLUDE_PATTERNS_PARAM));
+        mExcludePatterns = parsePatterns(filterConfig.getInitParameter(
+                EXCLUDE_PATTERNS_PARAM));
+        LOG.log(Level.INFO, "User agent detection filter initialized");
+    }
+
+    /**
+     * Stores detected data of request user agent as a request attribute, if
+     * request must be detected, and continues the filter chain.
+     * @param request request being filtered.
+     * @param response response of request.
+     * @param chain filter chain.
+     * @throws IOException if an I/O error occurs along the chain.
+     * @throws ServletException if chain fails.
+     */
+    @Override
+    public void doFilter(final ServletRequest request,
+            final ServletResponse response, final FilterChain chain)
+            throws IOException, ServletException {
+        if (request instanceof HttpServletRequest) {
+            final HttpServletRequest httpRequest =
+                    (HttpServletRequest) request;
+            final LazyUserAgentData data = detect(httpRequest);
+            if (data != null) {
+                request.setAttribute(mAttributeName, data);
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    /**
+     * Destroys this filter. The detector is released but not closed, as it
+     * is shared with the rest of the application.
+     */
+    @Override
+    public void destroy() {
+        mDetector = null;
+    }
+
+    /**
+     * Returns name of request attribute containing detected data.
+     * @return name of request attribute.
+     */
+    public String getAttributeName() {
+        return mAttributeName;
+    }
+
+    /**
+     * Returns ratio of requests being detected.
+     * @return ratio of requests being detected.
+     */
+    public double getSamplingRate() {
+        return mSamplingRate;
+    }
+
+    /**
+     * Returns URL patterns of requests being detected.
+     * @return URL patterns of requests being detected, or empty if all
+     * requests are detected.
+     */
+    public List<String> getIncludePatterns() {
+        return mIncludePatterns;
+    }
+
+    /**
+     * Returns URL patterns of requests not being detected.
+     * @return URL patterns of requests not being detected.
+     */
+    public List<String> getExcludePatterns() {
+        return mExcludePatterns;
+    }
+
+    /**
+     * Returns detected data stored on provided request by a filter using the
+     * default attribute name.
+     * @param request a request.
+     * @return detected data, or null if request was not detected or
+     * detection failed.
+     */
+    public static UserAgentData getUserAgentData(
+            final ServletRequest request) {
+        return getUserAgentData(request, DEFAULT_ATTRIBUTE_NAME);
+    }
+
+    /**
+     * Returns detected data stored on provided request attribute.
+     * @param request a request.
+     * @param attributeName name of request attribute.
+     * @return detected data, or null if request was not detected or
+     * detection failed.
+     */
+    public static UserAgentData getUserAgentData(
+            final ServletRequest request, final String attributeName) {
+        final Object attribute = request.getAttribute(attributeName);
+        return attribute instanceof LazyUserAgentData ?
+                ((LazyUserAgentData) attribute).get() : null;
+    }
+
+    /**
+     * Detects user agent of provided request, if it must be detected.
+     * @param request request being filtered.
+     * @return detected data, or null if request must not be detected or has
+     * no user agent.
+     */
+    LazyUserAgentData detect(final HttpServletRequest request) {
+        if (!isSampled() || !isIncluded(getPath(request))) {
+            return null;
+        }
+
+        final UserAgentDetector detector = getDetector();
+        if (!detector.isEnabled()) {
+            return null;
+        }
+
+        final String userAgent = request.getHeader(
+                UserAgentClientHints.USER_AGENT_HEADER);
+        if (userAgent == null) {
+            return null;
+        }
+
+        try {
+            final UserAgentData cached = detector.detectIfCached(userAgent);
+            if (cached != null) {
+                return new LazyUserAgentData(userAgent, cached);
+            }
+        } catch (final UserAgentException e) {
+            LOG.log(Level.FINE, "Cached user agent could not be obtained", e);
+        }
+        return new LazyUserAgentData(detector, userAgent);
+    }
+
+    /**
+     * Returns detector used to detect requests, which is only obtained from
+     * {@link UserAgentDetector#getInstance()} when no enabled detector has
+     * been obtained yet.
+     * @return detector.
+     */
+    UserAgentDetector getDetector() {
+        UserAgentDetector detector = mDetector;
+        if (detector == null || !detector.isEnabled()) {
+            detector = UserAgentDetector.getInstance();
+            mDetector = detector;
+        }
+        return detector;
+    }
+
+    /**
+     * Indicates whether provided path must be detected according to include
+     * and exclude patterns.
+     * @param path path of request within the application.
+     * @return true if path must be detected, false otherwise.
+     */
+    boolean isIncluded(final String path) {
+        for (final String pattern : mExcludePatterns) {
+            if (matches(pattern, path)) {
+                return false;
+            }
+        }
+        if (mIncludePatterns.isEmpty()) {
+            return true;
+        }
+        for (final String pattern : mIncludePatterns) {
+            if (matches(pattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indicates whether provided path matches provided URL pattern following
+     * servlet mapping rules.
+     * @param pattern an exact path, a path prefix ending with "/*" or an
+     * extension starting with "*.".
+     * @param path path of request within the application.
+     * @return true if path matches, false otherwise.
+     */
+    static boolean matches(final String pattern, final String path) {
+        if (pattern.startsWith("*.")) {
+            return path.endsWith(pattern.substring(1));
+        }
+        if (pattern.endsWith("/*")) {
+            final String prefix = pattern.substring(0, pattern.length() - 2);
+            return path.equals(prefix) || path.startsWith(prefix + "/");
+        }
+        return path.equals(pattern);
+    }
+
+    /**
+     * Indicates whether current request is sampled.
+     * @return true if request is sampled, false otherwise.
+     */
+    private boolean isSampled() {
+        return mSamplingRate >= 1.0 ||
+                ThreadLocalRandom.current().nextDouble() < mSamplingRate;
+    }
+
+    /**
+     * Returns path of provided request within the application.
+     * @param request a request.
+     * @return path of request, excluding context path.
+     */
+    private static String getPath(final HttpServletRequest request) {
+        final String uri = request.getRequestURI();
+        final String contextPath = request.getContextPath();
+        if (uri == null) {
+            return "";
+        }
+        return contextPath != null && uri.startsWith(contextPath) ?
+                uri.substring(contextPath.length()) : uri;
+    }
+
+    /**
+     * Parses a comma separated list of URL patterns.
+     * @param value comma separated list or null.
+     * @return list of URL patterns.
+     */
+    private static List<String> parsePatterns(final String value) {
+        final List<String> patterns = new ArrayList<>();
+        if (value != null) {
+            for (final String pattern : value.split(",")) {
+                if (!pattern.trim().isEmpty()) {
+                    patterns.add(pattern.trim());
+                }
+            }
+        }
+        return patterns;
+    }
+}
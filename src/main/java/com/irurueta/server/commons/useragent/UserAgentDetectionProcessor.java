@@ -0,0 +1,643 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reactive Streams processor that maps user agent strings into detected
+ * {@link UserAgentData}, preserving the order of received elements.
+ * Cached user agents are solved as soon as they are received, whereas cache
+ * misses are grouped into batches that are parsed on provided executor.
+ * Only a limited amount of batches are parsed concurrently, and misses
+ * received meanwhile are accumulated into the next batch.
+ * The number of elements requested from upstream is bounded by the buffer
+ * size and only replenished as elements are delivered downstream, so that
+ * slow subscribers or bursts of expensive user agents never make internal
+ * queues grow unbounded.
+ * User agents that cannot be detected are emitted with unknown data, whereas
+ * disabled detection terminates the stream with a
+ * {@link UserAgentDetectionDisabledException}.
+ * Since Reactive Streams interfaces are equivalent to
+ * java.util.concurrent.Flow ones, instances can be used with Flow publishers
+ * and subscribers using org.reactivestreams.FlowAdapters on Java 9 or later.
+ * This processor supports a single subscriber.
+ */
+public class UserAgentDetectionProcessor implements
+        Processor<String, UserAgentData> {
+
+    /**
+     * Default maximum number of elements being buffered or parsed.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 256;
+
+    /**
+     * Default maximum number of cache misses parsed on a single batch.
+     */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 32;
+
+    /**
+     * Detector used to process user agents.
+     */
+    private final UserAgentDetector mDetector;
+
+    /**
+     * Executor where batches of cache misses are parsed.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Maximum number of elements being buffered or parsed.
+     */
+    private final int mBufferSize;
+
+    /**
+     * Maximum number of cache misses parsed on a single batch.
+     */
+    private final int mMaxBatchSize;
+
+    /**
+     * Maximum number of batches being parsed concurrently.
+     */
+    private final int mMaxConcurrentBatches;
+
+    /**
+     * Lock protecting the state of this processor.
+     */
+    private final Object mLock = new Object();
+
+    /**
+     * Received elements in order of arrival, either already detected or
+     * waiting to be parsed.
+     */
+    private final Deque<Slot> mSlots = new ArrayDeque<>();
+
+    /**
+     * Cache misses waiting to be submitted for parsing.
+     */
+    private final Deque<Slot> mPendingMisses = new ArrayDeque<>();
+
+    /**
+     * Counts pending requests to drain this processor, so that only one thread
+     * emits elements downstream at a time.
+     */
+    private final AtomicInteger mWip = new AtomicInteger();
+
+    /**
+     * Number of batches being parsed.
+     */
+    private int mRunningBatches;
+
+    /**
+     * Subscription to upstream publisher.
+     */
+    private Subscription mUpstream;
+
+    /**
+     * Downstream subscriber.
+     */
+    private Subscriber<? super UserAgentData> mDownstream;
+
+    /**
+     * Number of elements requested by downstream not yet delivered.
+     */
+    private long mDemand;
+
+    /**
+     * Number of elements requested from upstream not yet received.
+     */
+    private long mOutstanding;
+
+    /**
+     * Indicates whether upstream has finished, either successfully or with
+     * an error.
+     */
+    private boolean mUpstreamDone;
+
+    /**
+     * Error notified by upstream, delivered after buffered elements.
+     */
+    private Throwable mUpstreamError;
+
+    /**
+     * Error that immediately terminates the stream.
+     */
+    private Throwable mFatalError;
+
+    /**
+     * Indicates whether downstream has cancelled or the stream has been
+     * terminated.
+     */
+    private boolean mTerminated;
+
+    /**
+     * Constructor using default buffer size, batch size and a maximum number
+     * of concurrent batches equal to the number of available processors.
+     * @param detector detector used to process user agents.
+     * @param executor executor where batches of cache misses are parsed.
+     * @throws IllegalArgumentException if any parameter is null.
+     */
+    public UserAgentDetectionProcessor(final UserAgentDetector detector,
+            final Executor executor) {
+        this(detector, executor, DEFAULT_BUFFER_SIZE, DEFAULT_MAX_BATCH_SIZE,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor.
+     * @param detector detector used to process user agents.
+     * @param executor executor where batches of cache misses are parsed.
+     * @param bufferSize maximum number of elements being buffered or parsed.
+     * @param maxBatchSize maximum number of cache misses parsed on a single
+     * batch.
+     * @param maxConcurrentBatches maximum number of batches being parsed
+     * concurrently.
+     * @throws IllegalArgumentException if detector or executor are null or
+     * any size is not positive.
+     */
+    public UserAgentDetectionProcessor(final UserAgentDetector detector,
+            final Executor executor, final int bufferSize,
+            final int maxBatchSize, final int maxConcurrentBatches) {
+        if (detector == null || executor == null || bufferSize <= 0 ||
+                maxBatchSize <= 0 || maxConcurrentBatches <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mDetector = detector;
+        mExecutor = executor;
+        mBufferSize = bufferSize;
+        mMaxBatchSize = maxBatchSize;
+        mMaxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    /**
+     * Returns maximum number of elements being buffered or parsed.
+     * @return maximum number of elements being buffered or parsed.
+     */
+    public int getBufferSize() {
+        return mBufferSize;
+    }
+
+    /**
+     * Returns maximum number of cache misses parsed on a single batch.
+     * @return maximum number of cache misses parsed on a single batch.
+     */
+    public int getMaxBatchSize() {
+        return mMaxBatchSize;
+    }
+
+    /**
+     * Returns maximum number of batches being parsed concurrently.
+     * @return maximum number of batches being parsed concurrently.
+     */
+    public int getMaxConcurrentBatches() {
+        return mMaxConcurrentBatches;
+    }
+
+    /**
+     * Subscribes provided subscriber to receive detected data.
+     * Only one subscriber is supported, any other one is notified with an
+     * IllegalStateException.
+     * @param subscriber subscriber to be notified.
+     * @throws NullPointerException if subscriber is null.
+     */
+    @Override
+    public void subscribe(final Subscriber<? super UserAgentData> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+
+        final boolean accepted;
+        synchronized (mLock) {
+            accepted = mDownstream == null;
+            if (accepted) {
+                mDownstream = subscriber;
+            }
+        }
+
+        if (!accepted) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(final long n) {
+                    // no elements will ever be delivered
+                }
+
+                @Override
+                public void cancel() {
+                    // nothing to be cancelled
+                }
+            });
+            subscriber.onError(new IllegalStateException(
+                    "Only one subscriber is supported"));
+            return;
+        }
+
+        subscriber.onSubscribe(new DownstreamSubscription());
+        drain();
+    }
+
+    /**
+     * Called when subscribed to upstream publisher.
+     * @param subscription subscription to upstream publisher.
+     * @throws NullPointerException if subscription is null.
+     */
+    @Override
+    public void onSubscribe(final Subscription subscription) {
+        if (subscription == null) {
+            throw new NullPointerException();
+        }
+
+        final boolean accepted;
+        synchronized (mLock) {
+            accepted = mUpstream == null && !mTerminated;
+            if (accepted) {
+                mUpstream = subscription;
+                mOutstanding = mBufferSize;
+            }
+        }
+
+        if (accepted) {
+            subscription.request(mBufferSize);
+        } else {
+            subscription.cancel();
+        }
+    }
+
+    /**
+     * Called when a user agent is received from upstream.
+     * @param userAgent received user agent.
+     * @throws NullPointerException if user agent is null.
+     */
+    @Override
+    public void onNext(final String userAgent) {
+        if (userAgent == null) {
+            throw new NullPointerException();
+        }
+
+        final Slot slot = new Slot(userAgent);
+        Throwable error = null;
+        try {
+            slot.mData = mDetector.detectIfCached(userAgent);
+        } catch (final UserAgentDetectionDisabledException e) {
+            error = e;
+        } catch (final UserAgentException e) {
+            slot.mData = unknown(userAgent);
+        }
+
+        List<List<Slot>> batches = null;
+        Subscription cancelled = null;
+        synchronized (mLock) {
+            if (mTerminated) {
+                return;
+            }
+            if (error != null) {
+                cancelled = fail(error);
+            } else {
+                mOutstanding--;
+                mSlots.addLast(slot);
+                if (slot.mData == null) {
+                    mPendingMisses.addLast(slot);
+                }
+                batches = takeBatches();
+            }
+        }
+
+        cancel(cancelled);
+        submit(batches);
+        drain();
+    }
+
+    /**
+     * Called when upstream fails.
+     * Buffered elements are delivered before notifying the error downstream.
+     * @param throwable notified error.
+     * @throws NullPointerException if throwable is null.
+     */
+    @Override
+    public void onError(final Throwable throwable) {
+        if (throwable == null) {
+            throw new NullPointerException();
+        }
+        synchronized (mLock) {
+            mUpstreamDone = true;
+            mUpstreamError = throwable;
+        }
+        drain();
+    }
+
+    /**
+     * Called when upstream finishes.
+     * Buffered elements are delivered before notifying completion downstream.
+     */
+    @Override
+    public void onComplete() {
+        synchronized (mLock) {
+            mUpstreamDone = true;
+        }
+        drain();
+    }
+
+    /**
+     * Takes batches of pending cache misses that can be parsed without
+     * exceeding the maximum number of concurrent batches.
+     * Must be called while holding the lock.
+     * @return batches to be submitted or null if none.
+     */
+    private List<List<Slot>> takeBatches() {
+        List<List<Slot>> batches = null;
+        while (mRunningBatches < mMaxConcurrentBatches &&
+                !mPendingMisses.isEmpty()) {
+            final int size = Math.min(mMaxBatchSize, mPendingMisses.size());
+            final List<Slot> batch = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                batch.add(mPendingMisses.removeFirst());
+            }
+            if (batches == null) {
+                batches = new ArrayList<>();
+            }
+            batches.add(batch);
+            mRunningBatches++;
+        }
+        return batches;
+    }
+
+    /**
+     * Submits provided batches to be parsed on the executor.
+     * @param batches batches to be submitted or null if none.
+     */
+    private void submit(final List<List<Slot>> batches) {
+        if (batches == null) {
+            return;
+        }
+        for (final List<Slot> batch : batches) {
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        parse(batch);
+                    }
+                });
+            } catch (final RejectedExecutionException e) {
+                final Subscription cancelled;
+                synchronized (mLock) {
+                    cancelled = fail(e);
+                }
+                cancel(cancelled);
+                drain();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parses a batch of cache misses.
+     * @param batch batch to be parsed.
+     */
+    private void parse(final List<Slot> batch) {
+        final UserAgentData[] results = new UserAgentData[batch.size()];
+        Throwable error = null;
+        for (int i = 0; i < results.length && error == null; i++) {
+            final String userAgent = batch.get(i).mUserAgent;
+            try {
+                results[i] = mDetector.detect(userAgent);
+            } catch (final UserAgentDetectionDisabledException e) {
+                error = e;
+            } catch (final UserAgentException e) {
+                results[i] = unknown(userAgent);
+            }
+        }
+
+        List<List<Slot>> batches = null;
+        Subscription cancelled = null;
+        synchronized (mLock) {
+            mRunningBatches--;
+            if (error != null) {
+                cancelled = fail(error);
+            } else {
+                for (int i = 0; i < results.length; i++) {
+                    batch.get(i).mData = results[i];
+                }
+                batches = mTerminated ? null : takeBatches();
+            }
+        }
+
+        cancel(cancelled);
+        submit(batches);
+        drain();
+    }
+
+    /**
+     * Delivers detected elements downstream as long as there is demand,
+     * notifies termination when required and replenishes upstream requests.
+     * Only one thread drains at a time, so that downstream signals are
+     * serialized.
+     */
+    private void drain() {
+        if (mWip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        final List<UserAgentData> ready = new ArrayList<>();
+        while (true) {
+            Subscriber<? super UserAgentData> downstream = null;
+            Subscription upstream = null;
+            Throwable error = null;
+            boolean complete = false;
+            long request = 0;
+
+            synchronized (mLock) {
+                if (mDownstream != null && !mTerminated) {
+                    downstream = mDownstream;
+                    if (mFatalError != null) {
+                        error = mFatalError;
+                        terminate();
+                    } else {
+                        while (mDemand > 0 && !mSlots.isEmpty() &&
+                                mSlots.peekFirst().mData != null) {
+                            ready.add(mSlots.removeFirst().mData);
+                            if (mDemand != Long.MAX_VALUE) {
+                                mDemand--;
+                            }
+                        }
+
+                        if (mUpstreamDone && mSlots.isEmpty()) {
+                            error = mUpstreamError;
+                            complete = error == null;
+                            terminate();
+                        } else if (!mUpstreamDone && mUpstream != null) {
+                            // replenish upstream once half of the buffer is
+                            // available to reduce the number of requests
+                            final long available = mBufferSize -
+                                    mSlots.size() - mOutstanding;
+                            if (available >= Math.max(1, mBufferSize / 2)) {
+                                request = available;
+                                mOutstanding += available;
+                                upstream = mUpstream;
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (downstream != null) {
+                for (final UserAgentData data : ready) {
+                    downstream.onNext(data);
+                }
+                ready.clear();
+                if (error != null) {
+                    downstream.onError(error);
+                } else if (complete) {
+                    downstream.onComplete();
+                }
+            }
+            if (upstream != null) {
+                upstream.request(request);
+            }
+
+            missed = mWip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Terminates the stream with provided error.
+     * Must be called while holding the lock. Returned subscription must be
+     * cancelled once the lock is released.
+     * @param error error to be notified downstream.
+     * @return upstream subscription to be cancelled or null if none.
+     */
+    private Subscription fail(final Throwable error) {
+        Subscription upstream = null;
+        if (mFatalError == null && !mTerminated) {
+            mFatalError = error;
+            if (!mUpstreamDone) {
+                upstream = mUpstream;
+            }
+            mUpstreamDone = true;
+        }
+        return upstream;
+    }
+
+    /**
+     * Cancels provided upstream subscription, if any.
+     * @param upstream subscription to be cancelled or null.
+     */
+    private static void cancel(final Subscription upstream) {
+        if (upstream != null) {
+            upstream.cancel();
+        }
+    }
+
+    /**
+     * Marks the stream as terminated and releases buffered elements.
+     * Must be called while holding the lock.
+     */
+    private void terminate() {
+        mTerminated = true;
+        mSlots.clear();
+        mPendingMisses.clear();
+    }
+
+    /**
+     * Creates data for a user agent that could not be detected.
+     * @param userAgent user agent.
+     * @return data containing unknown values.
+     */
+    private static UserAgentData unknown(final String userAgent) {
+        return new UserAgentData(userAgent, DeviceCategory.UNKNOWN, null,
+                null, OperatingSystemFamily.UNKNOWN, null, null, null, null,
+                UserAgentType.UNKNOWN, null);
+    }
+
+    /**
+     * Subscription given to downstream subscriber.
+     */
+    private class DownstreamSubscription implements Subscription {
+
+        /**
+         * Requests provided number of elements.
+         * @param n number of elements. Must be positive, otherwise stream is
+         * terminated with an IllegalArgumentException.
+         */
+        @Override
+        public void request(final long n) {
+            Subscription cancelled = null;
+            synchronized (mLock) {
+                if (n <= 0) {
+                    cancelled = fail(new IllegalArgumentException(
+                            "Requested amount must be positive"));
+                } else {
+                    mDemand = mDemand + n < 0 ? Long.MAX_VALUE : mDemand + n;
+                }
+            }
+            UserAgentDetectionProcessor.cancel(cancelled);
+            drain();
+        }
+
+        /**
+         * Cancels the stream, cancelling upstream and releasing buffered
+         * elements.
+         */
+        @Override
+        public void cancel() {
+            final Subscription upstream;
+            synchronized (mLock) {
+                upstream = !mTerminated && !mUpstreamDone ? mUpstream : null;
+                mUpstreamDone = true;
+                terminate();
+            }
+            UserAgentDetectionProcessor.cancel(upstream);
+        }
+    }
+
+    /**
+     * Element received from upstream.
+     */
+    private static class Slot {
+
+        /**
+         * Received user agent.
+         */
+        private final String mUserAgent;
+
+        /**
+         * Detected data or null if not detected yet. Accessed while holding the
+         * lock of the processor, except when solved as a cache hit before
+         * being shared.
+         */
+        private UserAgentData mData;
+
+        /**
+         * Constructor.
+         * @param userAgent received user agent.
+         */
+        Slot(final String userAgent) {
+            mUserAgent = userAgent;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records detections as events of the JDK Flight Recorder, when available.
+ * JDK Flight Recorder classes are only referenced by
+ * {@link JfrUserAgentDetectionRecorder}, which is loaded by reflection, so
+ * that this library keeps working on JVMs lacking JDK Flight Recorder, where
+ * a recorder doing nothing is used instead.
+ */
+abstract class UserAgentDetectionRecorder {
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            UserAgentDetectionRecorder.class.getName());
+
+    /**
+     * Name of class implementing a recorder based on JDK Flight Recorder.
+     */
+    private static final String JFR_RECORDER_CLASS =
+            "com.irurueta.server.commons.useragent.JfrUserAgentDetectionRecorder";
+
+    /**
+     * Recorder doing nothing.
+     */
+    static final UserAgentDetectionRecorder NO_OP =
+            new UserAgentDetectionRecorder() {
+                @Override
+                Object begin() {
+                    return null;
+                }
+
+                @Override
+                void miss(final Object event, final long parseNanos) { }
+
+                @Override
+                void end(final Object event, final String userAgent,
+                        final UserAgentData data, final Throwable failure) { }
+            };
+
+    /**
+     * Creates a recorder based on JDK Flight Recorder if available, or a
+     * recorder doing nothing otherwise.
+     * @return a recorder.
+     */
+    static UserAgentDetectionRecorder create() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (UserAgentDetectionRecorder) Class.forName(
+                    JFR_RECORDER_CLASS).getDeclaredConstructor().newInstance();
+        } catch (final ClassNotFoundException | LinkageError e) {
+            LOG.log(Level.FINE, "JDK Flight Recorder is not available", e);
+        } catch (final ReflectiveOperationException e) {
+            LOG.log(Level.WARNING, "JDK Flight Recorder events could not be " +
+                    "enabled", e);
+        }
+        return NO_OP;
+    }
+
+    /**
+     * Starts timing a detection.
+     * @return an event to be passed to the remaining methods, or null if no
+     * event is being recorded, in which case remaining methods must not be
+     * called.
+     */
+    abstract Object begin();
+
+    /**
+     * Indicates that the user agent of a detection had to be parsed.
+     * @param event event returned by {@link #begin()}.
+     * @param parseNanos time spent parsing expressed in nanoseconds.
+     */
+    abstract void miss(final Object event, final long parseNanos);
+
+    /**
+     * Finishes a detection and commits its event if it must be recorded (i.e.
+     * if it took longer than the configured threshold).
+     * @param event event returned by {@link #begin()}.
+     * @param userAgent user agent being detected.
+     * @param data detected data or null if detection failed.
+     * @param failure cause of failure or null if detection succeeded.
+     */
+    abstract void end(final Object event, final String userAgent,
+            final UserAgentData data, final Throwable failure);
+}
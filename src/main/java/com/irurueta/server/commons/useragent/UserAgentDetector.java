@@ -16,19 +16,24 @@
 
 package com.irurueta.server.commons.useragent;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.CacheStats;
 
 import java.io.Closeable;
 import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.sf.uadetector.ReadableDeviceCategory;
 import net.sf.uadetector.ReadableUserAgent;
-import net.sf.uadetector.UserAgentStringParser;
-import net.sf.uadetector.service.UADetectorServiceFactory;
 
 /**
  * Class to parse and process a user agent from a web browser, web crawler, bot, email client, RESt library, etc. This class will detect
@@ -48,9 +53,10 @@ public class UserAgentDetector implements Closeable {
     private static SoftReference<UserAgentDetector> mReference;
 
     /**
-     * Indicates whether user agent detection is enabled or not.
+     * Indicates whether user agent detection is enabled or not. Volatile, so
+     * that holders of this instance notice when it is closed.
      */
-    private boolean mEnabled;
+    private volatile boolean mEnabled;
 
     /**
      * Amount of user agents that are cached.
@@ -63,14 +69,121 @@ public class UserAgentDetector implements Closeable {
     private int mCacheExpirationTime;
 
     /**
-     * Internal user agent string parser.
+     * Internal user agent string parser, pinned to a single version of data
+     * and replaced on reload.
      */
-    private UserAgentStringParser mParser;
+    private volatile BoundedUserAgentStringParser mParser;
 
     /**
-     * Cache to hold instantiated instances of radable user agents.
+     * Independent replicas of the parser among which user agents being
+     * parsed are striped by hash. The first replica is the parser itself.
      */
-    private Cache<String, ReadableUserAgent> mCache;
+    private volatile BoundedUserAgentStringParser[] mReplicas;
+
+    /**
+     * Number of parses aborted by replicas that have been replaced on reload,
+     * as each replica has its own counter.
+     */
+    private final AtomicLong mRetiredBudgetExceededCount = new AtomicLong();
+
+    /**
+     * Generation of data used by the parser, which is increased each time
+     * parser is reloaded. Cached data keeps the generation it was detected
+     * with, so that entries detected using previous data are no longer
+     * returned and are eventually replaced or evicted, instead of flushing
+     * caches at once.
+     */
+    private volatile int mGeneration;
+
+    /**
+     * Task reloading the parser in background, or null if parser has never
+     * been reloaded.
+     */
+    private FutureTask<String> mReloadTask;
+
+    /**
+     * Source of the user agent database used by the parser.
+     */
+    private UserAgentParserMode mParserMode;
+
+    /**
+     * Implementation of the cache of detected user agents.
+     */
+    private UserAgentCacheType mCacheType;
+
+    /**
+     * Cache holding detected data indexed by user agent string. Cached
+     * instances are copied before being returned to callers.
+     */
+    private UserAgentCache mCache;
+
+    /**
+     * Pool of distinct results identified by integers.
+     */
+    private UserAgentResultPool mResultPool;
+
+    /**
+     * Caches of projected data keyed by user agent, indexed by the mask of
+     * requested fields and lazily created for each requested mask.
+     */
+    private AtomicReferenceArray<UserAgentCache> mProjectionCaches;
+
+    /**
+     * Number of buffers recording reads of caches created on demand.
+     */
+    private int mReadConcurrencyLevel;
+
+    /**
+     * Cache of data derived from client hints, keyed by the values of the
+     * hints.
+     */
+    private UserAgentCache mClientHintsCache;
+
+    /**
+     * Collects statistics of cache hits, misses and parsing time.
+     */
+    private final AbstractCache.StatsCounter mStatsCounter =
+            new AbstractCache.SimpleStatsCounter();
+
+    /**
+     * Number of parsed user agents that were not admitted into the cache.
+     */
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /**
+     * Sketch estimating frequency of user agents to decide whether they are
+     * admitted into the cache, or null if cache admission policy is disabled.
+     */
+    private UserAgentFrequencySketch mFrequencySketch;
+
+    /**
+     * Minimum estimated frequency required to admit a user agent into a full
+     * cache.
+     */
+    private int mCacheAdmissionMinFrequency;
+
+    /**
+     * Table of precomputed results of common user agents, or null if not
+     * used.
+     */
+    private UserAgentCommonTable mCommonTable;
+
+    /**
+     * Number of user agents solved using the table of common user agents.
+     */
+    private final AtomicLong mCommonTableHitCount = new AtomicLong();
+
+    /**
+     * Cache of user agents whose parsing failed, or null if negative caching
+     * is disabled.
+     */
+    private UserAgentNegativeCache mNegativeCache;
+
+    /**
+     * Records detections as JDK Flight Recorder events, when available.
+     */
+    private final UserAgentDetectionRecorder mRecorder =
+            UserAgentDetectionRecorder.create();
 
     /**
      * Constructor. Creates and configures a UserAgentDetector instance.
@@ -86,10 +199,39 @@ public class UserAgentDetector implements Closeable {
                 mCacheExpirationTime =
                         cfg.getUserAgentCacheExpirationTimeHours();
 
-                mParser = UADetectorServiceFactory.getCachingAndUpdatingParser();
-                mCache = CacheBuilder.newBuilder().maximumSize(mCacheSize).
-                        expireAfterWrite(mCacheExpirationTime, TimeUnit.HOURS).
-                        build();
+                mParserMode = cfg.getUserAgentParserMode();
+                mParser = BoundedUserAgentStringParser.create(mParserMode,
+                        cfg.getUserAgentMaxLength(),
+                        cfg.getUserAgentParseMaxSteps(),
+                        cfg.isUserAgentPatternProfilingEnabled() ?
+                                new UserAgentPatternProfiler() : null).
+                        snapshot();
+                mReplicas = replicate(mParser, getReplicaCount(cfg));
+                mCacheType = cfg.getUserAgentCacheType();
+                mResultPool = new UserAgentResultPool(
+                        cfg.getUserAgentResultPoolSize());
+                mCache = createCache(mCacheType, cfg, mResultPool);
+                mReadConcurrencyLevel = getReadConcurrencyLevel(cfg);
+                mProjectionCaches = new AtomicReferenceArray<>(
+                        UserAgentField.ALL_MASK);
+                mClientHintsCache = new ConcurrentUserAgentCache(mCacheSize,
+                        mCacheExpirationTime, TimeUnit.HOURS,
+                        getReadConcurrencyLevel(cfg));
+                if (cfg.isUserAgentCacheAdmissionEnabled()) {
+                    mFrequencySketch = new UserAgentFrequencySketch(
+                            mCacheSize);
+                    mCacheAdmissionMinFrequency =
+                            cfg.getUserAgentCacheAdmissionMinFrequency();
+                }
+                if (cfg.getUserAgentNegativeCacheSize() > 0) {
+                    mNegativeCache = new UserAgentNegativeCache(
+                            cfg.getUserAgentNegativeCacheSize(),
+                            cfg.getUserAgentNegativeCacheExpirationTimeMinutes(),
+                            TimeUnit.MINUTES);
+                }
+                if (cfg.isUserAgentCommonTableEnabled()) {
+                    mCommonTable = UserAgentCommonTable.load();
+                }
                 LOG.log(Level.INFO, "User agent detection is enabled");
             } else {
                 LOG.log(Level.INFO, "User agent detection is disabled");
@@ -125,6 +267,25 @@ public class UserAgentDetector implements Closeable {
         return mEnabled;
     }
 
+    /**
+     * Returns source of the user agent database used to parse user agents.
+     *
+     * @return source of the user agent database or null if detection is
+     * disabled.
+     */
+    public UserAgentParserMode getParserMode() {
+        return mParserMode;
+    }
+
+    /**
+     * Returns implementation of the cache of detected user agents.
+     *
+     * @return implementation of the cache or null if detection is disabled.
+     */
+    public UserAgentCacheType getCacheType() {
+        return mCacheType;
+    }
+
     /**
      * Amount of user agents that are cached. A cache of user agents is used to speed up the parsing process when user agents get repeated,
      * which can happen if a user makes several requests to the server, or multiple users have the same user agent
@@ -144,6 +305,198 @@ public class UserAgentDetector implements Closeable {
         return mCacheExpirationTime;
     }
 
+    /**
+     * Indicates whether a frequency based admission policy (TinyLFU) is used
+     * to decide which parsed user agents are cached.
+     *
+     * @return true if cache admission policy is enabled, false otherwise.
+     */
+    public boolean isCacheAdmissionEnabled() {
+        return mFrequencySketch != null;
+    }
+
+    /**
+     * Returns minimum estimated number of times that a user agent must have
+     * been recently seen to be admitted into a full cache.
+     *
+     * @return minimum frequency to admit user agents into a full cache or
+     * zero if cache admission policy is disabled.
+     */
+    public int getCacheAdmissionMinFrequency() {
+        return mCacheAdmissionMinFrequency;
+    }
+
+    /**
+     * Returns maximum number of characters of a user agent being parsed.
+     * Longer user agents are truncated before being parsed.
+     *
+     * @return maximum number of characters of a user agent being parsed or
+     * zero if detection is disabled.
+     */
+    public int getMaxLength() {
+        return mParser != null ? mParser.getMaxLength() : 0;
+    }
+
+    /**
+     * Returns maximum number of steps that parsing a single user agent can
+     * take before being reported as unknown.
+     *
+     * @return maximum number of steps that parsing a user agent can take or
+     * zero if detection is disabled.
+     */
+    public long getParseMaxSteps() {
+        return mParser != null ? mParser.getMaxSteps() : 0;
+    }
+
+    /**
+     * Returns number of parses aborted because their budget of steps was
+     * exhausted.
+     *
+     * @return number of aborted parses.
+     */
+    public long getParseBudgetExceededCount() {
+        final BoundedUserAgentStringParser[] replicas = mReplicas;
+        if (replicas == null) {
+            return 0;
+        }
+        // snapshots of the first replica keep its counter on reload
+        long result = mRetiredBudgetExceededCount.get();
+        for (final BoundedUserAgentStringParser replica : replicas) {
+            result += replica.getBudgetExceededCount();
+        }
+        return result;
+    }
+
+    /**
+     * Indicates whether the table of common user agents shipped within the
+     * jar is used.
+     *
+     * @return true if table of common user agents is used, false otherwise.
+     */
+    public boolean isCommonTableEnabled() {
+        return mCommonTable != null;
+    }
+
+    /**
+     * Returns number of user agents contained in the table of common user
+     * agents.
+     *
+     * @return number of common user agents or zero if table is not used.
+     */
+    public int getCommonTableSize() {
+        return mCommonTable != null ? mCommonTable.size() : 0;
+    }
+
+    /**
+     * Returns number of user agents solved using the table of common user
+     * agents, which are neither parsed nor cached and hence are not included
+     * in cache statistics.
+     *
+     * @return number of user agents solved using the table.
+     */
+    public long getCommonTableHitCount() {
+        return mCommonTableHitCount.get();
+    }
+
+    /**
+     * Returns maximum number of user agents whose parsing failed that are
+     * cached.
+     *
+     * @return maximum number of cached failures or zero if negative caching
+     * is disabled.
+     */
+    public int getNegativeCacheSize() {
+        return mNegativeCache != null ? mNegativeCache.getMaxSize() : 0;
+    }
+
+    /**
+     * Returns number of user agents that failed immediately because their
+     * parsing had already failed before. These user agents are not parsed
+     * and hence are not included in cache statistics.
+     *
+     * @return number of negative cache hits.
+     */
+    public long getNegativeCacheHitCount() {
+        return mNegativeCache != null ? mNegativeCache.getHitCount() : 0;
+    }
+
+    /**
+     * Returns profiler recording invocation counts and cumulative cost of each
+     * pattern of the user agent database evaluated on cache misses.
+     *
+     * @return profiler or null if pattern profiling is disabled.
+     */
+    public UserAgentPatternProfiler getPatternProfiler() {
+        return mParser != null ? mParser.getProfiler() : null;
+    }
+
+    /**
+     * Returns statistics collected by this detector since it was created.
+     * Statistics include the amount of cache hits and misses, failed
+     * detections and time spent parsing user agent strings.
+     *
+     * @return statistics collected by this detector.
+     */
+    public UserAgentDetectorStats getStats() {
+        final CacheStats stats = mStatsCounter.snapshot();
+        return new UserAgentDetectorStats(stats.hitCount(), stats.missCount(),
+                stats.loadExceptionCount(), stats.totalLoadTime(),
+                mRejectedCount.get());
+    }
+
+    /**
+     * Returns number of independent parser replicas among which user agents
+     * being parsed are striped.
+     *
+     * @return number of parser replicas or 0 if detection is disabled.
+     */
+    public int getParserReplicas() {
+        final BoundedUserAgentStringParser[] replicas = mReplicas;
+        return replicas != null ? replicas.length : 0;
+    }
+
+    /**
+     * Returns version of data used to detect user agents.
+     *
+     * @return version of data or null if detection is disabled.
+     */
+    public String getDataVersion() {
+        final BoundedUserAgentStringParser parser = mParser;
+        return parser != null ? parser.getDataVersion() : null;
+    }
+
+    /**
+     * Returns generation of data used to detect user agents, which is
+     * increased each time data is reloaded.
+     *
+     * @return generation of data.
+     * @see #reload()
+     */
+    public int getDataGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Reloads data used to detect user agents without blocking detection.
+     * Data store is refreshed, when its mode allows it, and a new parser is
+     * built in background and atomically swapped in once ready. Meanwhile,
+     * user agents keep being detected using previous data.
+     * Once swapped, entries cached using previous data are ignored and
+     * eventually evicted, rather than flushing caches at once.
+     * Parsers are also reloaded in background, without refreshing data
+     * store, when the data store is updated by uadetector.
+     * If a reload is already in progress, its future is returned.
+     *
+     * @return future returning version of data once reloaded.
+     * @throws UserAgentDetectionDisabledException if user agent detection is disabled.
+     */
+    public Future<String> reload() throws UserAgentDetectionDisabledException {
+        if (!mEnabled) {
+            throw new UserAgentDetectionDisabledException();
+        }
+        return reload(true);
+    }
+
     /**
      * Detects data on provided user agent string. Detected data can be operating system, user agent type (browser, mail client, etc), user
      * agent family, type of device, etc.
@@ -159,33 +512,395 @@ public class UserAgentDetector implements Closeable {
             throw new UserAgentDetectionDisabledException();
         }
 
+        final Object event = mRecorder.begin();
+        if (event == null) {
+            return detectInternal(userAgentString, null);
+        }
+
+        UserAgentData data = null;
+        Throwable failure = null;
         try {
-            ReadableUserAgent result = mCache.getIfPresent(userAgentString);
-            if (result == null) {
-                result = mParser.parse(userAgentString);
-                mCache.put(userAgentString, result);
+            data = detectInternal(userAgentString, event);
+            return data;
+        } catch (final UserAgentException e) {
+            failure = e.getCause() != null ? e.getCause() : e;
+            throw e;
+        } finally {
+            mRecorder.end(event, userAgentString, data, failure);
+        }
+    }
+
+    /**
+     * Detects data on provided user agent string.
+     *
+     * @param userAgentString original user agent string being parsed.
+     * @param event event recording this detection or null if detection is
+     *              not being recorded.
+     * @return detected user agent data.
+     * @throws UserAgentException if detection fails.
+     */
+    private UserAgentData detectInternal(final String userAgentString,
+            final Object event) throws UserAgentException {
+        try {
+            final UserAgentData common = lookupCommonTable(userAgentString);
+            if (common != null) {
+                return common;
+            }
+
+            final int generation = mGeneration;
+            final BoundedUserAgentStringParser parser = replicaFor(
+                    userAgentString);
+            final UserAgentData cached = current(
+                    mCache.getIfPresent(userAgentString), generation);
+            if (cached != null) {
+                mStatsCounter.recordHits(1);
+                recordAccess(userAgentString);
+                return cached;
+            }
+
+            final ReadableUserAgent result = parse(parser, userAgentString,
+                    UserAgentField.ALL_MASK, event);
+
+            // cached instances are never returned, as callers may modify them
+            final UserAgentData data = convert(userAgentString, result);
+            data.setGeneration(generation);
+            if (admit(userAgentString)) {
+                mCache.put(userAgentString, data);
+                return new UserAgentData(data);
+            }
+            mRejectedCount.incrementAndGet();
+            return data;
+        } catch (final UserAgentException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new UserAgentException(e);
+        }
+    }
+
+    /**
+     * Detects only requested fields on provided user agent string, so that
+     * classification only callers avoid the cost of extracting versions or
+     * evaluating operating system and device patterns.
+     * Fields not being requested are null on returned data. Notice that
+     * {@link UserAgentData#isDesktop()}, {@link UserAgentData#isMobile()},
+     * {@link UserAgentData#isTablet()} and {@link UserAgentData#isSmartTV()}
+     * require both {@link UserAgentField#USER_AGENT_TYPE} and
+     * {@link UserAgentField#DEVICE_CATEGORY}.
+     * Data already cached or found on the table of common user agents is
+     * returned in full. Otherwise projected data is cached separately from
+     * complete data, on a cache for each combination of requested fields.
+     * Misses are parsed like complete detections, failing immediately for
+     * user agents that previously failed and reloading stale data.
+     *
+     * @param userAgentString original user agent string being parsed.
+     * @param fields fields to be detected.
+     * @return detected user agent data.
+     * @throws IllegalArgumentException            if fields is null.
+     * @throws UserAgentDetectionDisabledException if user agent detection is disabled.
+     * @throws UserAgentException                  if anything else fails.
+     */
+    public UserAgentData detect(final String userAgentString,
+            final Set<UserAgentField> fields) throws
+            UserAgentDetectionDisabledException, UserAgentException {
+        final int mask = UserAgentField.toMask(fields);
+        if (mask == UserAgentField.ALL_MASK) {
+            return detect(userAgentString);
+        }
+        if (!mEnabled) {
+            throw new UserAgentDetectionDisabledException();
+        }
+
+        try {
+            final UserAgentData common = lookupCommonTable(userAgentString);
+            if (common != null) {
+                return common;
             }
 
-            final DeviceCategory deviceCategory = toDeviceCategory(
-                    result.getDeviceCategory().getCategory());
-            final String deviceCategoryName = result.getDeviceCategory().getName();
-            final String family = result.getFamily().getName();
-            final OperatingSystemFamily osFamily = toOsFamily(result.getOperatingSystem().getFamily());
-            final String osFamilyName = result.getOperatingSystem().getFamilyName();
-            final String osName = result.getOperatingSystem().getName();
-            final String osProducer = result.getOperatingSystem().getProducer();
-            final String osVersion = result.getOperatingSystem().getVersionNumber().toVersionString();
-            final UserAgentType userAgentType = toUserAgentType(result.getType());
-            final String userAgentVersion = result.getVersionNumber().toVersionString();
-
-            return new UserAgentData(userAgentString, deviceCategory,
-                    deviceCategoryName, family, osFamily, osFamilyName, osName,
-                    osProducer, osVersion, userAgentType, userAgentVersion);
+            final int generation = mGeneration;
+            final BoundedUserAgentStringParser parser = replicaFor(
+                    userAgentString);
+            final UserAgentData cached = current(
+                    mCache.getIfPresent(userAgentString), generation);
+            if (cached != null) {
+                mStatsCounter.recordHits(1);
+                recordAccess(userAgentString);
+                return cached;
+            }
+
+            final UserAgentCache projectionCache = projectionCacheFor(mask);
+            final UserAgentData projected = current(
+                    projectionCache.getIfPresent(userAgentString), generation);
+            if (projected != null) {
+                mStatsCounter.recordHits(1);
+                return projected;
+            }
+
+            final ReadableUserAgent result = parse(parser, userAgentString,
+                    mask, null);
+            final UserAgentData data = project(
+                    convert(userAgentString, result), mask);
+            data.setGeneration(generation);
+            projectionCache.put(userAgentString, data);
+            return new UserAgentData(data);
+        } catch (final UserAgentException e) {
+            throw e;
         } catch (final Exception e) {
             throw new UserAgentException(e);
         }
     }
 
+    /**
+     * Parses a user agent that was not found on any cache.
+     * User agents that previously failed fail immediately, data is reloaded
+     * if it is stale, and parsing failures are recorded on the negative
+     * cache.
+     *
+     * @param parser parser to be used.
+     * @param userAgentString user agent to be parsed.
+     * @param mask mask of fields to be detected.
+     * @param event event recording this detection or null if detection is
+     *              not being recorded.
+     * @return parsed user agent.
+     * @throws UserAgentException if user agent previously failed.
+     */
+    private ReadableUserAgent parse(final BoundedUserAgentStringParser parser,
+            final String userAgentString, final int mask, final Object event)
+            throws UserAgentException {
+        final RuntimeException failure = mNegativeCache != null ?
+                mNegativeCache.getIfPresent(userAgentString) : null;
+        if (failure != null) {
+            throw new UserAgentException(
+                    "User agent previously failed to be parsed", failure);
+        }
+
+        if (parser.isStale()) {
+            reload(false);
+        }
+
+        mStatsCounter.recordMisses(1);
+        final long startNanos = System.nanoTime();
+        final ReadableUserAgent result;
+        try {
+            result = parser.parse(userAgentString, mask);
+        } catch (final RuntimeException e) {
+            final long parseNanos = System.nanoTime() - startNanos;
+            mStatsCounter.recordLoadException(parseNanos);
+            if (event != null) {
+                mRecorder.miss(event, parseNanos);
+            }
+            if (mNegativeCache != null) {
+                mNegativeCache.put(userAgentString, e);
+            }
+            throw e;
+        }
+        final long parseNanos = System.nanoTime() - startNanos;
+        mStatsCounter.recordLoadSuccess(parseNanos);
+        if (event != null) {
+            mRecorder.miss(event, parseNanos);
+        }
+        return result;
+    }
+
+    /**
+     * Returns cache of data projected to provided mask of fields, creating
+     * it if needed.
+     *
+     * @param mask mask of requested fields.
+     * @return cache of projected data.
+     */
+    private UserAgentCache projectionCacheFor(final int mask) {
+        final UserAgentCache cache = mProjectionCaches.get(mask);
+        if (cache != null) {
+            return cache;
+        }
+        mProjectionCaches.compareAndSet(mask, null,
+                new ConcurrentUserAgentCache(mCacheSize, mCacheExpirationTime,
+                        TimeUnit.HOURS, mReadConcurrencyLevel));
+        return mProjectionCaches.get(mask);
+    }
+
+    /**
+     * Detects data on the headers of a request.
+     * When headers contain user agent client hints (Sec-CH-UA headers sent
+     * by Chromium based browsers), data is derived from them, which is
+     * cheaper than parsing the user agent string and remains accurate as
+     * browsers freeze the content of their user agent strings. Derived data
+     * is cached keyed by the values of the hints.
+     * Otherwise, data is detected on the User-Agent header.
+     * Header names are case insensitive.
+     *
+     * @param headers request headers indexed by name.
+     * @return detected user agent data.
+     * @throws IllegalArgumentException            if headers is null.
+     * @throws UserAgentDetectionDisabledException if user agent detection is disabled.
+     * @throws UserAgentException                  if headers contain neither
+     *                                             client hints nor user agent,
+     *                                             or anything else fails.
+     * @see UserAgentClientHints
+     */
+    public UserAgentData detectFromHeaders(final Map<String, String> headers)
+            throws UserAgentDetectionDisabledException, UserAgentException {
+        if (!mEnabled) {
+            throw new UserAgentDetectionDisabledException();
+        }
+
+        final UserAgentClientHints hints =
+                UserAgentClientHints.fromHeaders(headers);
+        if (hints == null) {
+            String userAgent = null;
+            for (final Map.Entry<String, String> entry : headers.entrySet()) {
+                if (UserAgentClientHints.USER_AGENT_HEADER.equalsIgnoreCase(
+                        entry.getKey())) {
+                    userAgent = entry.getValue();
+                    break;
+                }
+            }
+            if (userAgent == null) {
+                throw new UserAgentException(
+                        "Neither client hints nor user agent found");
+            }
+            return detect(userAgent);
+        }
+
+        try {
+            final String key = hints.getKey();
+            final UserAgentData cached = mClientHintsCache.getIfPresent(key);
+            if (cached != null) {
+                mStatsCounter.recordHits(1);
+                cached.setUserAgent(hints.getUserAgent());
+                return cached;
+            }
+
+            mStatsCounter.recordMisses(1);
+            final long startNanos = System.nanoTime();
+            final UserAgentData data = hints.toUserAgentData();
+            mStatsCounter.recordLoadSuccess(System.nanoTime() - startNanos);
+            mClientHintsCache.put(key, data);
+            return new UserAgentData(data);
+        } catch (final Exception e) {
+            throw new UserAgentException(e);
+        }
+    }
+
+    /**
+     * Returns detected data on provided user agent string only if it is
+     * already cached, so that no parsing is required.
+     * This is useful to quickly solve cache hits in the calling thread while
+     * deferring misses to be parsed elsewhere.
+     *
+     * @param userAgentString original user agent string.
+     * @return detected user agent data or null if user agent is not cached.
+     * @throws UserAgentDetectionDisabledException if user agent detection is disabled.
+     * @throws UserAgentException                  if anything else fails.
+     */
+    public UserAgentData detectIfCached(final String userAgentString) throws
+            UserAgentDetectionDisabledException, UserAgentException {
+        if (!mEnabled) {
+            throw new UserAgentDetectionDisabledException();
+        }
+
+        try {
+            final UserAgentData common = lookupCommonTable(userAgentString);
+            if (common != null) {
+                return common;
+            }
+
+            final UserAgentData cached = current(
+                    mCache.getIfPresent(userAgentString), mGeneration);
+            if (cached == null) {
+                return null;
+            }
+            mStatsCounter.recordHits(1);
+            recordAccess(userAgentString);
+            return cached;
+        } catch (final Exception e) {
+            throw new UserAgentException(e);
+        }
+    }
+
+    /**
+     * Indicates whether provided user agent string belongs to a robot (i.e.
+     * detected data would have {@link UserAgentType#ROBOT} type), without
+     * parsing it.
+     * Data found on the table of common user agents or already cached is
+     * used when available. Otherwise user agent is looked up on an index of
+     * the user agents of known robots, as robots are only detected when
+     * exactly matching one of them.
+     *
+     * @param userAgentString original user agent string.
+     * @return true if user agent belongs to a robot, false otherwise.
+     * @throws UserAgentDetectionDisabledException if user agent detection is disabled.
+     * @throws UserAgentException                  if anything else fails.
+     */
+    public boolean isRobot(final String userAgentString) throws
+            UserAgentDetectionDisabledException, UserAgentException {
+        if (!mEnabled) {
+            throw new UserAgentDetectionDisabledException();
+        }
+
+        try {
+            final UserAgentData common = lookupCommonTable(userAgentString);
+            if (common != null) {
+                return common.getUserAgentType() == UserAgentType.ROBOT;
+            }
+
+            final UserAgentData cached = current(
+                    mCache.getIfPresent(userAgentString), mGeneration);
+            if (cached != null) {
+                mStatsCounter.recordHits(1);
+                recordAccess(userAgentString);
+                return cached.getUserAgentType() == UserAgentType.ROBOT;
+            }
+
+            return replicaFor(userAgentString).isRobot(userAgentString);
+        } catch (final Exception e) {
+            throw new UserAgentException(e);
+        }
+    }
+
+    /**
+     * Detects provided user agent string and returns the identifier of its
+     * result within the pool of results, so that results can be grouped or
+     * compared by identifier. Distinct user agents having identical results
+     * obtain the same identifier, as versions are not part of results.
+     * When the cache is of {@link UserAgentCacheType#POOLED} type, cached
+     * identifiers are returned without building any result.
+     *
+     * @param userAgentString original user agent string.
+     * @return identifier of result or {@link UserAgentResultPool#NO_ID} if
+     * pool is full.
+     * @throws UserAgentDetectionDisabledException if user agent detection is disabled.
+     * @throws UserAgentException                  if anything else fails.
+     * @see #getResultPool()
+     */
+    public int detectResultId(final String userAgentString) throws
+            UserAgentDetectionDisabledException, UserAgentException {
+        if (!mEnabled) {
+            throw new UserAgentDetectionDisabledException();
+        }
+
+        if (mCache instanceof PooledUserAgentCache) {
+            final int id = ((PooledUserAgentCache) mCache).getResultId(
+                    userAgentString, mGeneration);
+            if (id != UserAgentResultPool.NO_ID) {
+                mStatsCounter.recordHits(1);
+                recordAccess(userAgentString);
+                return id;
+            }
+        }
+        return mResultPool.intern(detect(userAgentString));
+    }
+
+    /**
+     * Returns pool containing results whose identifiers are returned by
+     * {@link #detectResultId(String)}.
+     *
+     * @return pool of results or null if detection is disabled.
+     */
+    public UserAgentResultPool getResultPool() {
+        return mResultPool;
+    }
+
     /**
      * Stops internal user agent parser. Once closed, user agent detection will no longer be available.
      */
@@ -197,6 +912,20 @@ public class UserAgentDetector implements Closeable {
         if (mCache != null) {
             mCache.invalidateAll();
         }
+        if (mProjectionCaches != null) {
+            for (int i = 0; i < mProjectionCaches.length(); i++) {
+                final UserAgentCache cache = mProjectionCaches.get(i);
+                if (cache != null) {
+                    cache.invalidateAll();
+                }
+            }
+        }
+        if (mClientHintsCache != null) {
+            mClientHintsCache.invalidateAll();
+        }
+        if (mNegativeCache != null) {
+            mNegativeCache.invalidateAll();
+        }
         mEnabled = false;
         LOG.log(Level.INFO, "User agent detection has been shutdown");
     }
@@ -227,6 +956,335 @@ public class UserAgentDetector implements Closeable {
         }
     }
 
+    /**
+     * Looks for provided user agent in the table of common user agents.
+     * Table is only used while parser data has the same version as the one
+     * used to generate the table, and for user agents that would not be
+     * truncated, so that results are the same as the ones obtained by
+     * parsing.
+     *
+     * @param userAgentString user agent to look for.
+     * @return precomputed result or null if not found.
+     */
+    private UserAgentData lookupCommonTable(final String userAgentString) {
+        if (mCommonTable == null ||
+                userAgentString.length() > mParser.getMaxLength() ||
+                !mCommonTable.getDataVersion().equals(
+                        mParser.getDataVersion())) {
+            return null;
+        }
+
+        final UserAgentData result = mCommonTable.get(userAgentString);
+        if (result != null) {
+            mCommonTableHitCount.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Returns provided cached data only if it was detected using provided
+     * generation of data, so that data cached before a reload is treated as
+     * a miss and replaced once detected again.
+     *
+     * @param cached cached data or null if not cached.
+     * @param generation current generation of data.
+     * @return cached data or null if missing or stale.
+     */
+    private static UserAgentData current(final UserAgentData cached,
+            final int generation) {
+        return cached != null && cached.getGeneration() == generation ?
+                cached : null;
+    }
+
+    /**
+     * Reloads parser in background, unless a reload is already in progress.
+     *
+     * @param refresh true to refresh data store before building the new
+     *                parser, false to use data currently in the data store.
+     * @return future returning version of data once reloaded.
+     */
+    private synchronized Future<String> reload(final boolean refresh) {
+        if (mReloadTask != null && !mReloadTask.isDone()) {
+            return mReloadTask;
+        }
+
+        final BoundedUserAgentStringParser parser = mParser;
+        final FutureTask<String> task = new FutureTask<>(
+                new Callable<String>() {
+                    @Override
+                    public String call() {
+                        if (refresh) {
+                            parser.refresh();
+                        }
+                        final BoundedUserAgentStringParser[] next =
+                                replicate(parser.snapshot(),
+                                        mReplicas.length);
+                        // builds indices of robots before being swapped in
+                        for (final BoundedUserAgentStringParser replica :
+                                next) {
+                            replica.isRobot("");
+                        }
+                        swap(next);
+                        return next[0].getDataVersion();
+                    }
+                });
+        final Thread thread = new Thread(task, "user-agent-reload");
+        thread.setDaemon(true);
+        mReloadTask = task;
+        thread.start();
+        return task;
+    }
+
+    /**
+     * Atomically replaces the parser and its replicas and increases
+     * generation of data.
+     *
+     * @param replicas new replicas, being the first one the new parser.
+     */
+    private synchronized void swap(
+            final BoundedUserAgentStringParser[] replicas) {
+        mParser = replicas[0];
+        for (int i = 1; i < mReplicas.length; i++) {
+            mRetiredBudgetExceededCount.addAndGet(
+                    mReplicas[i].getBudgetExceededCount());
+        }
+        mReplicas = replicas;
+        mGeneration++;
+        // failures are not tagged with a generation, so they are discarded
+        if (mNegativeCache != null) {
+            mNegativeCache.invalidateAll();
+        }
+        LOG.log(Level.INFO, "User agent data reloaded to version {0}",
+                replicas[0].getDataVersion());
+    }
+
+    /**
+     * Returns parser replica in charge of provided user agent.
+     *
+     * @param userAgentString user agent string.
+     * @return parser replica.
+     */
+    private BoundedUserAgentStringParser replicaFor(
+            final String userAgentString) {
+        final BoundedUserAgentStringParser[] replicas = mReplicas;
+        return replicas.length == 1 ? replicas[0] :
+                replicas[(userAgentString.hashCode() & Integer.MAX_VALUE) %
+                        replicas.length];
+    }
+
+    /**
+     * Creates replicas of provided parser.
+     *
+     * @param parser parser to be replicated, which becomes the first replica.
+     * @param count number of replicas.
+     * @return replicas.
+     */
+    private static BoundedUserAgentStringParser[] replicate(
+            final BoundedUserAgentStringParser parser, final int count) {
+        final BoundedUserAgentStringParser[] replicas =
+                new BoundedUserAgentStringParser[count];
+        replicas[0] = parser;
+        for (int i = 1; i < count; i++) {
+            replicas[i] = parser.replicate();
+        }
+        return replicas;
+    }
+
+    /**
+     * Returns number of parser replicas of provided configuration.
+     *
+     * @param cfg user agent configuration.
+     * @return number of parser replicas, being the number of available
+     * processors if configuration indicates 0 replicas.
+     */
+    static int getReplicaCount(final UserAgentConfiguration cfg) {
+        final int replicas = cfg.getUserAgentParserReplicas();
+        return replicas > 0 ? replicas :
+                Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns concurrency level of caches of provided configuration, which
+     * scales with the number of available processors and parser replicas.
+     *
+     * @param cfg user agent configuration.
+     * @return concurrency level of caches.
+     */
+    static int getConcurrencyLevel(final UserAgentConfiguration cfg) {
+        return Math.max(GuavaUserAgentCache.DEFAULT_CONCURRENCY_LEVEL,
+                getReadConcurrencyLevel(cfg));
+    }
+
+    /**
+     * Returns expected number of threads reading caches of provided
+     * configuration, which is at least the number of available processors.
+     *
+     * @param cfg user agent configuration.
+     * @return concurrency level of caches optimized for reads.
+     */
+    static int getReadConcurrencyLevel(final UserAgentConfiguration cfg) {
+        return Math.max(getReplicaCount(cfg),
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Records an access to provided user agent on the frequency sketch, if
+     * cache admission policy is enabled.
+     *
+     * @param userAgentString accessed user agent string.
+     */
+    private void recordAccess(final String userAgentString) {
+        if (mFrequencySketch != null) {
+            mFrequencySketch.increment(userAgentString);
+        }
+    }
+
+    /**
+     * Creates a cache of detected user agents.
+     *
+     * @param type implementation of the cache.
+     * @param cfg user agent configuration containing cache settings.
+     * @param pool pool of results used by pooled caches.
+     * @return cache of detected user agents.
+     */
+    static UserAgentCache createCache(final UserAgentCacheType type,
+            final UserAgentConfiguration cfg, final UserAgentResultPool pool) {
+        final int size = cfg.getUserAgentCacheSize();
+        final int expirationTime = cfg.getUserAgentCacheExpirationTimeHours();
+        switch (type) {
+            case HASHED:
+                return new HashedUserAgentCache(size, expirationTime,
+                        TimeUnit.HOURS,
+                        cfg.isUserAgentCacheHashVerificationEnabled());
+            case TRIE:
+                return new TrieUserAgentCache(size, expirationTime,
+                        TimeUnit.HOURS);
+            case POOLED:
+                return new PooledUserAgentCache(size, expirationTime,
+                        TimeUnit.HOURS, pool);
+            case OFF_HEAP:
+                return new OffHeapUserAgentCache(
+                        cfg.getUserAgentCacheMaxBytes(), expirationTime,
+                        TimeUnit.HOURS);
+            case CONCURRENT:
+                return new ConcurrentUserAgentCache(size, expirationTime,
+                        TimeUnit.HOURS, getReadConcurrencyLevel(cfg));
+            case GUAVA:
+            default:
+                return new GuavaUserAgentCache(size, expirationTime,
+                        TimeUnit.HOURS, getConcurrencyLevel(cfg));
+        }
+    }
+
+    /**
+     * Indicates whether a parsed user agent must be admitted into the cache.
+     * Access is recorded and, while the cache reports it is not full, all
+     * user agents are admitted. Once full, only user agents that have been seen recently
+     * at least the minimum frequency are admitted, so that one-hit wonders do
+     * not evict frequently used entries.
+     *
+     * @param userAgentString parsed user agent string.
+     * @return true if user agent must be cached, false otherwise.
+     */
+    private boolean admit(final String userAgentString) {
+        if (mFrequencySketch == null) {
+            return true;
+        }
+        mFrequencySketch.increment(userAgentString);
+        return !mCache.isFull() || mFrequencySketch.frequency(
+                userAgentString) >= mCacheAdmissionMinFrequency;
+    }
+
+    /**
+     * Clears fields of provided data not contained in provided mask.
+     *
+     * @param data data to be projected.
+     * @param mask mask of requested fields.
+     * @return provided data instance.
+     */
+    static UserAgentData project(final UserAgentData data, final int mask) {
+        if (!UserAgentField.DEVICE_CATEGORY.isContainedIn(mask)) {
+            data.setDeviceCategory(null);
+            data.setDeviceCategoryName(null);
+        }
+        if (!UserAgentField.FAMILY.isContainedIn(mask)) {
+            data.setFamily(null);
+        }
+        if (!UserAgentField.OPERATING_SYSTEM.isContainedIn(mask)) {
+            data.setOsFamily(null);
+            data.setOsFamilyName(null);
+            data.setOsName(null);
+            data.setOsProducer(null);
+            data.setOsVersion(null);
+        }
+        if (!UserAgentField.USER_AGENT_TYPE.isContainedIn(mask)) {
+            data.setUserAgentType(null);
+        }
+        if (!UserAgentField.USER_AGENT_VERSION.isContainedIn(mask)) {
+            data.setUserAgentVersion(null);
+        }
+        return data;
+    }
+
+    /**
+     * Converts data parsed by uadetector into user agent data, using
+     * conversions of enumerators of this instance, which can be overridden.
+     *
+     * @param userAgentString original user agent string.
+     * @param result data parsed by uadetector.
+     * @return user agent data.
+     */
+    private UserAgentData convert(final String userAgentString,
+            final ReadableUserAgent result) {
+        return toUserAgentData(userAgentString, result,
+                toDeviceCategory(result.getDeviceCategory().getCategory()),
+                toOsFamily(result.getOperatingSystem().getFamily()),
+                toUserAgentType(result.getType()));
+    }
+
+    /**
+     * Converts data parsed by uadetector into user agent data, using default
+     * conversions of enumerators, so that no detector instance is needed.
+     *
+     * @param userAgentString original user agent string.
+     * @param result data parsed by uadetector.
+     * @return user agent data.
+     */
+    static UserAgentData toUserAgentData(final String userAgentString,
+            final ReadableUserAgent result) {
+        return toUserAgentData(userAgentString, result,
+                deviceCategoryOf(result.getDeviceCategory().getCategory()),
+                osFamilyOf(result.getOperatingSystem().getFamily()),
+                userAgentTypeOf(result.getType()));
+    }
+
+    /**
+     * Converts data parsed by uadetector into user agent data.
+     *
+     * @param userAgentString original user agent string.
+     * @param result data parsed by uadetector.
+     * @param deviceCategory converted device category.
+     * @param osFamily converted operating system family.
+     * @param userAgentType converted user agent type.
+     * @return user agent data.
+     */
+    private static UserAgentData toUserAgentData(final String userAgentString,
+            final ReadableUserAgent result, final DeviceCategory deviceCategory,
+            final OperatingSystemFamily osFamily,
+            final UserAgentType userAgentType) {
+        final String deviceCategoryName = result.getDeviceCategory().getName();
+        final String family = result.getFamily().getName();
+        final String osFamilyName = result.getOperatingSystem().getFamilyName();
+        final String osName = result.getOperatingSystem().getName();
+        final String osProducer = result.getOperatingSystem().getProducer();
+        final String osVersion = result.getOperatingSystem().getVersionNumber().toVersionString();
+        final String userAgentVersion = result.getVersionNumber().toVersionString();
+
+        return new UserAgentData(userAgentString, deviceCategory,
+                deviceCategoryName, family, osFamily, osFamilyName, osName,
+                osProducer, osVersion, userAgentType, userAgentVersion);
+    }
+
     /**
      * Converts an internal device category enumerator into a DeviceCategory enumerator used by this package.
      *
@@ -235,6 +1293,39 @@ public class UserAgentDetector implements Closeable {
      */
     protected DeviceCategory toDeviceCategory(
             ReadableDeviceCategory.Category category) {
+        return deviceCategoryOf(category);
+    }
+
+    /**
+     * Converts an internal OS family enumerator into an OperatingSystemFamily. enumerator used by this package.
+     *
+     * @param family internal Os family to be converted.
+     * @return an OS family.
+     */
+    protected OperatingSystemFamily toOsFamily(
+            net.sf.uadetector.OperatingSystemFamily family) {
+        return osFamilyOf(family);
+    }
+
+    /**
+     * Converts an internal user agent type enumerator into a UserAgentType enumerator used by this package.
+     *
+     * @param type internal user agent type to be converted.
+     * @return a user agent type.
+     */
+    protected UserAgentType toUserAgentType(
+            final net.sf.uadetector.UserAgentType type) {
+        return userAgentTypeOf(type);
+    }
+
+    /**
+     * Converts an internal device category enumerator into a DeviceCategory enumerator used by this package.
+     *
+     * @param category internal category to be converted.
+     * @return a device category.
+     */
+    private static DeviceCategory deviceCategoryOf(
+            final ReadableDeviceCategory.Category category) {
         if (category != null) {
             switch (category) {
                 case GAME_CONSOLE:
@@ -268,8 +1359,8 @@ public class UserAgentDetector implements Closeable {
      * @param family internal Os family to be converted.
      * @return an OS family.
      */
-    protected OperatingSystemFamily toOsFamily(
-            net.sf.uadetector.OperatingSystemFamily family) {
+    private static OperatingSystemFamily osFamilyOf(
+            final net.sf.uadetector.OperatingSystemFamily family) {
         if (family != null) {
             switch (family) {
                 case AIX:
@@ -365,7 +1456,7 @@ public class UserAgentDetector implements Closeable {
      * @param type internal user agent type to be converted.
      * @return a user agent type.
      */
-    protected UserAgentType toUserAgentType(
+    private static UserAgentType userAgentTypeOf(
             final net.sf.uadetector.UserAgentType type) {
         if (type != null) {
             switch (type) {
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Immutable snapshot of the statistics collected by a UserAgentDetector.
+ * Statistics are cumulative since the detector was created, hence the
+ * difference between two snapshots can be obtained using
+ * {@link #minus(UserAgentDetectorStats)}.
+ */
+public class UserAgentDetectorStats {
+
+    /**
+     * Number of detections that were solved using cached data.
+     */
+    private final long mHitCount;
+
+    /**
+     * Number of detections that required parsing the user agent string.
+     */
+    private final long mMissCount;
+
+    /**
+     * Number of user agent strings that failed to be parsed.
+     */
+    private final long mFailureCount;
+
+    /**
+     * Total amount of time spent parsing user agent strings expressed in
+     * nanoseconds.
+     */
+    private final long mTotalParseTimeNanos;
+
+    /**
+     * Number of parsed user agents that were not admitted into the cache by
+     * the cache admission policy.
+     */
+    private final long mRejectedCount;
+
+    /**
+     * Constructor.
+     * @param hitCount number of detections that were solved using cached
+     * data.
+     * @param missCount number of detections that required parsing the user
+     * agent string.
+     * @param failureCount number of user agent strings that failed to be
+     * parsed.
+     * @param totalParseTimeNanos total amount of time spent parsing user agent
+     * strings expressed in nanoseconds.
+     * @param rejectedCount number of parsed user agents that were not
+     * admitted into the cache.
+     * @throws IllegalArgumentException if any value is negative.
+     */
+    public UserAgentDetectorStats(final long hitCount, final long missCount,
+            final long failureCount, final long totalParseTimeNanos,
+            final long rejectedCount) {
+        if (hitCount < 0 || missCount < 0 || failureCount < 0 ||
+                totalParseTimeNanos < 0 || rejectedCount < 0) {
+            throw new IllegalArgumentException(
+                    "statistics values must be non negative");
+        }
+        mHitCount = hitCount;
+        mMissCount = missCount;
+        mFailureCount = failureCount;
+        mTotalParseTimeNanos = totalParseTimeNanos;
+        mRejectedCount = rejectedCount;
+    }
+
+    /**
+     * Returns number of detections that were solved using cached data.
+     * @return number of detections that were solved using cached data.
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns number of detections that required parsing the user agent
+     * string.
+     * @return number of detections that required parsing the user agent
+     * string.
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Returns number of user agent strings that failed to be parsed.
+     * @return number of user agent strings that failed to be parsed.
+     */
+    public long getFailureCount() {
+        return mFailureCount;
+    }
+
+    /**
+     * Returns total amount of time spent parsing user agent strings expressed
+     * in nanoseconds.
+     * @return total amount of time spent parsing user agent strings.
+     */
+    public long getTotalParseTimeNanos() {
+        return mTotalParseTimeNanos;
+    }
+
+    /**
+     * Returns number of parsed user agents that were not admitted into the
+     * cache by the cache admission policy.
+     * @return number of parsed user agents not admitted into the cache.
+     */
+    public long getRejectedCount() {
+        return mRejectedCount;
+    }
+
+    /**
+     * Returns total number of detections that have been requested.
+     * @return total number of detections.
+     */
+    public long getRequestCount() {
+        return mHitCount + mMissCount;
+    }
+
+    /**
+     * Returns ratio of detections that were solved using cached data.
+     * If no detection has been requested yet, 1.0 is returned.
+     * @return ratio of detections solved using cached data.
+     */
+    public double getHitRate() {
+        final long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) mHitCount / requestCount;
+    }
+
+    /**
+     * Returns ratio of detections that required parsing the user agent string.
+     * If no detection has been requested yet, 0.0 is returned.
+     * @return ratio of detections that required parsing.
+     */
+    public double getMissRate() {
+        final long requestCount = getRequestCount();
+        return requestCount == 0 ? 0.0 : (double) mMissCount / requestCount;
+    }
+
+    /**
+     * Returns average amount of time spent parsing a user agent string
+     * expressed in nanoseconds.
+     * If no user agent has been parsed yet, 0.0 is returned.
+     * @return average parsing time.
+     */
+    public double getAverageParseTimeNanos() {
+        return mMissCount == 0 ? 0.0 :
+                (double) mTotalParseTimeNanos / mMissCount;
+    }
+
+    /**
+     * Returns statistics containing the difference between this instance and
+     * provided one. Negative differences are clamped to zero.
+     * @param other statistics to be subtracted.
+     * @return difference between this instance and provided one.
+     */
+    public UserAgentDetectorStats minus(final UserAgentDetectorStats other) {
+        return new UserAgentDetectorStats(
+                Math.max(0, mHitCount - other.mHitCount),
+                Math.max(0, mMissCount - other.mMissCount),
+                Math.max(0, mFailureCount - other.mFailureCount),
+                Math.max(0, mTotalParseTimeNanos -
+                        other.mTotalParseTimeNanos),
+                Math.max(0, mRejectedCount - other.mRejectedCount));
+    }
+
+    /**
+     * Returns a textual representation of these statistics.
+     * @return textual representation of these statistics.
+     */
+    @Override
+    public String toString() {
+        return "UserAgentDetectorStats{hitCount=" + mHitCount +
+                ", missCount=" + mMissCount +
+                ", failureCount=" + mFailureCount +
+                ", totalParseTimeNanos=" + mTotalParseTimeNanos +
+                ", rejectedCount=" + mRejectedCount + "}";
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Class of device of a user agent, as used to decide the layout of a
+ * responsive user interface. Device classes are mutually exclusive and match
+ * {@link UserAgentData#isDesktop()}, {@link UserAgentData#isMobile()},
+ * {@link UserAgentData#isTablet()} and {@link UserAgentData#isSmartTV()}.
+ * @see UserAgentDeviceClassifier
+ */
+public enum UserAgentDeviceClass {
+    /**
+     * Desktop web browser or email client, or any user agent not being a
+     * mobile, tablet or smart TV browser (i.e. robots or libraries).
+     */
+    DESKTOP,
+
+    /**
+     * Mobile web browser or email client on a small screen device.
+     */
+    MOBILE,
+
+    /**
+     * Tablet web browser or email client.
+     */
+    TABLET,
+
+    /**
+     * Smart TV web browser.
+     */
+    SMART_TV;
+
+    /**
+     * Returns device class of provided detected data.
+     * @param data detected user agent data.
+     * @return device class.
+     * @throws IllegalArgumentException if data is null.
+     */
+    public static UserAgentDeviceClass fromData(final UserAgentData data) {
+        if (data == null) {
+            throw new IllegalArgumentException();
+        }
+        if (data.isMobile()) {
+            return MOBILE;
+        }
+        if (data.isTablet()) {
+            return TABLET;
+        }
+        if (data.isSmartTV()) {
+            return SMART_TV;
+        }
+        return DESKTOP;
+    }
+}
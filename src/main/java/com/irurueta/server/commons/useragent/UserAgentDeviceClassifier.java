@@ -0,0 +1,330 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Decides only the class of device of user agents (desktop, mobile, tablet or
+ * smart TV) without parsing them.
+ * User agents are scanned once using a precompiled automaton (Aho-Corasick)
+ * matching case insensitive keywords derived from device, browser and robot
+ * patterns of the user agent database, so that each character requires a
+ * single table lookup, no regular expression is evaluated and no memory is
+ * allocated.
+ * Classification is heuristic, hence it might disagree with
+ * {@link UserAgentDetector} on rare user agents. It is meant for high volume
+ * decisions such as choosing a responsive layout, whereas
+ * {@link UserAgentDetector} should be used when exact data is required.
+ * This class is thread safe.
+ */
+public final class UserAgentDeviceClassifier {
+
+    /**
+     * Flag of keywords found on mobile robots and game consoles, which are
+     * always classified as desktop.
+     */
+    static final int NOT_BROWSER = 1;
+
+    /**
+     * Flag of keywords found on smart TVs.
+     */
+    static final int SMART_TV = 1 << 1;
+
+    /**
+     * Flag of keywords found on tablets.
+     */
+    static final int TABLET = 1 << 2;
+
+    /**
+     * Flag of keywords found on mobile browsers.
+     */
+    static final int MOBILE = 1 << 3;
+
+    /**
+     * Keywords indicating that user agent is not a browser. Generic robot
+     * keywords are not included, as robots are only detected when exactly
+     * matching known robots, so that unknown robots impersonating mobile
+     * browsers are classified as mobile.
+     */
+    private static final String[] NOT_BROWSER_KEYWORDS = {
+            "playstation", "nintendo", "xbox", "googlebot-mobile",
+            "adsbot-google", "yeti-mobile", "botmobi", "screenshot-generator"
+    };
+
+    /**
+     * Keywords indicating a smart TV.
+     */
+    private static final String[] SMART_TV_KEYWORDS = {
+            "smart-tv", "smarttv", "smarthub", "hbbtv", "googletv",
+            "appletv", "roku/", "netcast", "nettv/", "inettvbrowser",
+            "webtv", "opera tv", "maple ", "viera", "espial", "kylo/",
+            "gtv100", "pov_tv-hdmi", "ihd92 stb"
+    };
+
+    /**
+     * Keywords indicating a tablet.
+     */
+    private static final String[] TABLET_KEYWORDS = {
+            "ipad", "tablet", "kindle", "silk", "playbook", "xoom",
+            "transformer", "nexus 7", "nexus 10", "surftab", "ideatab",
+            "smarttab", "mediapad", "touchpad", "viewpad 10", "nook",
+            "bntv", "tvpad", "tv pad", "hp slate", "tegranote", "qmv7a",
+            "kfjw", "kfsowi", "kfth", "kfap", "kftt", "kfot", "sgpt12",
+            "sgp311", "sgp321", "a80ksc", "gt-p", "gt-n80", "sch-i915",
+            "sch-i925", "sph-p500", "shw-m", "shv-e140", "shv-e230",
+            "sgh-i957", "sgh-i497", "sgh-i467", "lg-f200", "l-06c build",
+            "hudl ht7s3", "surfpad"
+    };
+
+    /**
+     * Keywords indicating a mobile browser.
+     */
+    private static final String[] MOBILE_KEYWORDS = {
+            "mobile", "iphone", "ipod", "linux; android", "(android",
+            "windows phone",
+            "windows ce", "opera mini", "opera mobi", "blackberry", "bb10",
+            "j2me", "midp", "symbian", "series60", "bada/", "tizen", "palm",
+            "webos", "fennec", "minimo", "nokia", "sonyericsson",
+            "up.browser", "netfront", "obigo", "teleca", "ucweb",
+            "ucbrowser", "maemo", "meego"
+    };
+
+    /**
+     * Number of ASCII characters. Other characters never match keywords.
+     */
+    private static final int ASCII = 128;
+
+    /**
+     * Number of bits of each transition used to store flags of keywords
+     * matched when following it.
+     */
+    private static final int FLAG_BITS = 4;
+
+    /**
+     * Mask to obtain flags stored on a transition.
+     */
+    private static final int FLAG_MASK = (1 << FLAG_BITS) - 1;
+
+    /**
+     * Maps ASCII characters into the symbols of the automaton. Letters are
+     * case folded and characters not found on any keyword are mapped to
+     * symbol 0.
+     */
+    private static final byte[] SYMBOLS = new byte[ASCII];
+
+    /**
+     * Number of symbols of the automaton.
+     */
+    private static final int SYMBOL_COUNT;
+
+    /**
+     * Transitions of the automaton (Aho-Corasick) indexed by offset of
+     * current state plus symbol. Each transition contains the offset of next
+     * state (state times number of symbols) shifted by {@link #FLAG_BITS},
+     * and the flags of keywords matched when reaching next state, so that a
+     * single lookup is required for each character.
+     */
+    private static final int[] TRANSITIONS;
+
+    static {
+        final String[][] groups = {NOT_BROWSER_KEYWORDS, SMART_TV_KEYWORDS,
+                TABLET_KEYWORDS, MOBILE_KEYWORDS};
+        final int[] flags = {NOT_BROWSER, SMART_TV, TABLET, MOBILE};
+
+        int symbolCount = 1;
+        for (final String[] group : groups) {
+            for (final String keyword : group) {
+                for (int i = 0; i < keyword.length(); i++) {
+                    final char c = keyword.charAt(i);
+                    if (SYMBOLS[c] == 0) {
+                        SYMBOLS[c] = (byte) symbolCount;
+                        SYMBOLS[Character.toUpperCase(c)] = (byte) symbolCount;
+                        symbolCount++;
+                    }
+                }
+            }
+        }
+        SYMBOL_COUNT = symbolCount;
+
+        // build trie of keywords
+        final List<int[]> gotos = new ArrayList<>();
+        final List<Integer> outputs = new ArrayList<>();
+        gotos.add(newState());
+        outputs.add(0);
+        for (int g = 0; g < groups.length; g++) {
+            for (final String keyword : groups[g]) {
+                int state = 0;
+                for (int i = 0; i < keyword.length(); i++) {
+                    final int symbol = SYMBOLS[keyword.charAt(i)];
+                    if (gotos.get(state)[symbol] < 0) {
+                        gotos.get(state)[symbol] = gotos.size();
+                        gotos.add(newState());
+                        outputs.add(0);
+                    }
+                    state = gotos.get(state)[symbol];
+                }
+                outputs.set(state, outputs.get(state) | flags[g]);
+            }
+        }
+
+        // follow failure links breadth first to obtain transitions and
+        // outputs of a deterministic automaton
+        final int stateCount = gotos.size();
+        final int[] nextStates = new int[stateCount * SYMBOL_COUNT];
+        final int[] stateOutputs = new int[stateCount];
+        final int[] failures = new int[stateCount];
+        final Queue<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++) {
+            final int next = gotos.get(0)[symbol];
+            if (next > 0) {
+                nextStates[symbol] = next;
+                queue.add(next);
+            }
+        }
+        stateOutputs[0] = outputs.get(0);
+        while (!queue.isEmpty()) {
+            final int state = queue.remove();
+            stateOutputs[state] = outputs.get(state) |
+                    stateOutputs[failures[state]];
+            for (int symbol = 0; symbol < SYMBOL_COUNT; symbol++) {
+                final int next = gotos.get(state)[symbol];
+                final int fallback = nextStates[failures[state] *
+                        SYMBOL_COUNT + symbol];
+                if (next > 0) {
+                    failures[next] = fallback;
+                    nextStates[state * SYMBOL_COUNT + symbol] = next;
+                    queue.add(next);
+                } else {
+                    nextStates[state * SYMBOL_COUNT + symbol] = fallback;
+                }
+            }
+        }
+
+        // pack offset and outputs of next state into each transition
+        TRANSITIONS = new int[nextStates.length];
+        for (int i = 0; i < nextStates.length; i++) {
+            final int next = nextStates[i];
+            TRANSITIONS[i] = ((next * SYMBOL_COUNT) << FLAG_BITS) |
+                    stateOutputs[next];
+        }
+    }
+
+    /**
+     * Constructor. Prevents instantiation.
+     */
+    private UserAgentDeviceClassifier() { }
+
+    /**
+     * Classifies provided user agent.
+     * @param userAgent user agent string.
+     * @return class of device. Null or empty user agents are classified as
+     * desktop.
+     */
+    public static UserAgentDeviceClass classify(final CharSequence userAgent) {
+        final int flags = scan(userAgent);
+        if ((flags & NOT_BROWSER) != 0) {
+            return UserAgentDeviceClass.DESKTOP;
+        }
+        if ((flags & SMART_TV) != 0) {
+            return UserAgentDeviceClass.SMART_TV;
+        }
+        if ((flags & TABLET) != 0) {
+            return UserAgentDeviceClass.TABLET;
+        }
+        if ((flags & MOBILE) != 0) {
+            return UserAgentDeviceClass.MOBILE;
+        }
+        return UserAgentDeviceClass.DESKTOP;
+    }
+
+    /**
+     * Indicates whether provided user agent is classified as desktop.
+     * @param userAgent user agent string.
+     * @return true if user agent is classified as desktop.
+     */
+    public static boolean isDesktop(final CharSequence userAgent) {
+        return classify(userAgent) == UserAgentDeviceClass.DESKTOP;
+    }
+
+    /**
+     * Indicates whether provided user agent is classified as mobile.
+     * @param userAgent user agent string.
+     * @return true if user agent is classified as mobile.
+     */
+    public static boolean isMobile(final CharSequence userAgent) {
+        return classify(userAgent) == UserAgentDeviceClass.MOBILE;
+    }
+
+    /**
+     * Indicates whether provided user agent is classified as tablet.
+     * @param userAgent user agent string.
+     * @return true if user agent is classified as tablet.
+     */
+    public static boolean isTablet(final CharSequence userAgent) {
+        return classify(userAgent) == UserAgentDeviceClass.TABLET;
+    }
+
+    /**
+     * Indicates whether provided user agent is classified as smart TV.
+     * @param userAgent user agent string.
+     * @return true if user agent is classified as smart TV.
+     */
+    public static boolean isSmartTV(final CharSequence userAgent) {
+        return classify(userAgent) == UserAgentDeviceClass.SMART_TV;
+    }
+
+    /**
+     * Scans provided user agent once and returns flags of all matched
+     * keywords. Scanning stops as soon as a keyword of a user agent not being
+     * a browser is found, as no other flag can change its class.
+     * @param userAgent user agent string.
+     * @return flags of matched keywords.
+     */
+    static int scan(final CharSequence userAgent) {
+        if (userAgent == null) {
+            return 0;
+        }
+        final int length = userAgent.length();
+        int offset = 0;
+        int flags = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = userAgent.charAt(i);
+            final int transition = TRANSITIONS[offset +
+                    (c < ASCII ? SYMBOLS[c] : 0)];
+            offset = transition >>> FLAG_BITS;
+            flags |= transition & FLAG_MASK;
+            if ((flags & NOT_BROWSER) != 0) {
+                break;
+            }
+        }
+        return flags;
+    }
+
+    /**
+     * Creates a state of the trie having no transitions.
+     * @return transitions of new state.
+     */
+    private static int[] newState() {
+        final int[] transitions = new int[SYMBOL_COUNT];
+        Arrays.fill(transitions, -1);
+        return transitions;
+    }
+}
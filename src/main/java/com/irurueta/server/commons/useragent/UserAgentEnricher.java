@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.List;
+
+/**
+ * Enriches input lines with the data detected on the user agents they
+ * contain.
+ * Instances of this class are stateless and can be shared among threads as
+ * long as provided detector is thread safe.
+ */
+public class UserAgentEnricher {
+
+    /**
+     * Detector used to process user agents.
+     */
+    private final UserAgentDetector mDetector;
+
+    /**
+     * Format of input lines.
+     */
+    private final UserAgentInputFormat mInputFormat;
+
+    /**
+     * Format of output records.
+     */
+    private final UserAgentOutputFormat mOutputFormat;
+
+    /**
+     * Indicates whether aggregated counts are computed instead of one record
+     * per line.
+     */
+    private final boolean mCountsOnly;
+
+    /**
+     * Constructor.
+     * @param detector detector used to process user agents.
+     * @param inputFormat format of input lines.
+     * @param outputFormat format of output records.
+     * @param countsOnly true to compute aggregated counts instead of one record
+     * per line.
+     * @throws IllegalArgumentException if any parameter is null.
+     */
+    public UserAgentEnricher(final UserAgentDetector detector,
+            final UserAgentInputFormat inputFormat,
+            final UserAgentOutputFormat outputFormat,
+            final boolean countsOnly) {
+        if (detector == null || inputFormat == null || outputFormat == null) {
+            throw new IllegalArgumentException();
+        }
+        mDetector = detector;
+        mInputFormat = inputFormat;
+        mOutputFormat = outputFormat;
+        mCountsOnly = countsOnly;
+    }
+
+    /**
+     * Returns format of input lines.
+     * @return format of input lines.
+     */
+    public UserAgentInputFormat getInputFormat() {
+        return mInputFormat;
+    }
+
+    /**
+     * Returns format of output records.
+     * @return format of output records.
+     */
+    public UserAgentOutputFormat getOutputFormat() {
+        return mOutputFormat;
+    }
+
+    /**
+     * Indicates whether aggregated counts are computed instead of one record
+     * per line.
+     * @return true if aggregated counts are computed, false otherwise.
+     */
+    public boolean isCountsOnly() {
+        return mCountsOnly;
+    }
+
+    /**
+     * Processes provided lines.
+     * @param lines lines to be processed.
+     * @return result of processing lines.
+     * @throws UserAgentDetectionDisabledException if user agent detection is
+     * disabled.
+     */
+    public UserAgentEnrichmentResult process(final List<String> lines)
+            throws UserAgentDetectionDisabledException {
+        final UserAgentEnrichmentResult result =
+                new UserAgentEnrichmentResult();
+        for (final String line : lines) {
+            process(line, result);
+        }
+        return result;
+    }
+
+    /**
+     * Processes a single line and stores its outcome into provided result.
+     * @param line line to be processed.
+     * @param result result where outcome will be stored.
+     * @throws UserAgentDetectionDisabledException if user agent detection is
+     * disabled.
+     */
+    public void process(final String line,
+            final UserAgentEnrichmentResult result)
+            throws UserAgentDetectionDisabledException {
+        final String userAgent = mInputFormat.extractUserAgent(line);
+        if (userAgent == null) {
+            result.recordSkipped();
+            return;
+        }
+
+        UserAgentData data;
+        try {
+            data = mDetector.detect(userAgent);
+        } catch (final UserAgentDetectionDisabledException e) {
+            throw e;
+        } catch (final UserAgentException e) {
+            data = null;
+        }
+
+        if (data != null) {
+            result.recordDetected();
+        } else {
+            result.recordFailed();
+        }
+
+        if (mCountsOnly) {
+            if (data != null) {
+                result.addCount(mOutputFormat.buildCountKey(data), 1);
+            }
+        } else {
+            mOutputFormat.appendRecord(result.getRecords(), userAgent, data);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Contains the result of enriching a chunk of input lines.
+ * Results of consecutive chunks can be merged so that records keep the same
+ * order as input lines and aggregated counts are added up.
+ * This class is not thread safe.
+ */
+public class UserAgentEnrichmentResult {
+
+    /**
+     * Formatted enriched records, one per line.
+     */
+    private final StringBuilder mRecords = new StringBuilder();
+
+    /**
+     * Aggregated counts indexed by formatted key.
+     */
+    private final Map<String, Long> mCounts = new HashMap<>();
+
+    /**
+     * Number of processed lines.
+     */
+    private long mLineCount;
+
+    /**
+     * Number of lines whose user agent was successfully detected.
+     */
+    private long mDetectedCount;
+
+    /**
+     * Number of lines whose user agent could not be detected.
+     */
+    private long mFailedCount;
+
+    /**
+     * Number of lines not containing any user agent.
+     */
+    private long mSkippedCount;
+
+    /**
+     * Returns formatted enriched records.
+     * @return formatted enriched records.
+     */
+    public StringBuilder getRecords() {
+        return mRecords;
+    }
+
+    /**
+     * Returns aggregated counts indexed by formatted key.
+     * @return aggregated counts.
+     */
+    public Map<String, Long> getCounts() {
+        return Collections.unmodifiableMap(mCounts);
+    }
+
+    /**
+     * Returns number of processed lines.
+     * @return number of processed lines.
+     */
+    public long getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * Returns number of lines whose user agent was successfully detected.
+     * @return number of detected lines.
+     */
+    public long getDetectedCount() {
+        return mDetectedCount;
+    }
+
+    /**
+     * Returns number of lines whose user agent could not be detected.
+     * @return number of failed lines.
+     */
+    public long getFailedCount() {
+        return mFailedCount;
+    }
+
+    /**
+     * Returns number of lines not containing any user agent.
+     * @return number of skipped lines.
+     */
+    public long getSkippedCount() {
+        return mSkippedCount;
+    }
+
+    /**
+     * Merges provided result after the data of this instance.
+     * @param other result to be merged.
+     * @return this instance so that calls can be chained.
+     */
+    public UserAgentEnrichmentResult merge(
+            final UserAgentEnrichmentResult other) {
+        mRecords.append(other.mRecords);
+        for (final Map.Entry<String, Long> entry : other.mCounts.entrySet()) {
+            addCount(entry.getKey(), entry.getValue());
+        }
+        mLineCount += other.mLineCount;
+        mDetectedCount += other.mDetectedCount;
+        mFailedCount += other.mFailedCount;
+        mSkippedCount += other.mSkippedCount;
+        return this;
+    }
+
+    /**
+     * Appends aggregated counts into provided builder sorted by descending
+     * count and then by key, so that output is deterministic.
+     * @param builder builder where counts will be appended.
+     * @param format output format.
+     */
+    public void appendCounts(final StringBuilder builder,
+            final UserAgentOutputFormat format) {
+        final List<Map.Entry<String, Long>> entries =
+                new ArrayList<>(mCounts.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            @Override
+            public int compare(final Map.Entry<String, Long> o1,
+                    final Map.Entry<String, Long> o2) {
+                final int result = o2.getValue().compareTo(o1.getValue());
+                return result != 0 ? result : o1.getKey().compareTo(
+                        o2.getKey());
+            }
+        });
+
+        format.appendCountHeader(builder);
+        for (final Map.Entry<String, Long> entry : entries) {
+            format.appendCount(builder, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Records a line whose user agent was successfully detected.
+     */
+    void recordDetected() {
+        mLineCount++;
+        mDetectedCount++;
+    }
+
+    /**
+     * Records a line whose user agent could not be detected.
+     */
+    void recordFailed() {
+        mLineCount++;
+        mFailedCount++;
+    }
+
+    /**
+     * Records a line not containing any user agent.
+     */
+    void recordSkipped() {
+        mLineCount++;
+        mSkippedCount++;
+    }
+
+    /**
+     * Increments count of provided key.
+     * @param key formatted key.
+     * @param count amount to be added.
+     */
+    void addCount(final String key, final long count) {
+        final Long previous = mCounts.get(key);
+        mCounts.put(key, previous != null ? previous + count : count);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that enriches the lines contained in a list of ranges of a
+ * log file.
+ * Ranges are recursively split in halves until a single range remains, which
+ * is read using positional reads so that all tasks can share the same file
+ * channel. Results are merged preserving the order of ranges, hence the
+ * result is the same as if the file was processed sequentially, no matter
+ * how many threads are used.
+ * All tasks share the same enricher, and consequently, the cache of its
+ * detector.
+ */
+public class UserAgentEnrichmentTask extends
+        RecursiveTask<UserAgentEnrichmentResult> {
+
+    /**
+     * Serialization version.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Charset of log files.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Size of buffer used to read lines.
+     */
+    private static final int READ_BUFFER_SIZE = 65536;
+
+    /**
+     * Enricher used to process lines.
+     */
+    private final transient UserAgentEnricher mEnricher;
+
+    /**
+     * Channel to read log file.
+     */
+    private final transient FileChannel mChannel;
+
+    /**
+     * Ranges to be processed.
+     */
+    private final transient List<UserAgentLogFileRange> mRanges;
+
+    /**
+     * Constructor.
+     * @param enricher enricher used to process lines.
+     * @param channel channel to read log file.
+     * @param ranges ranges to be processed.
+     * @throws IllegalArgumentException if any parameter is null.
+     */
+    public UserAgentEnrichmentTask(final UserAgentEnricher enricher,
+            final FileChannel channel,
+            final List<UserAgentLogFileRange> ranges) {
+        if (enricher == null || channel == null || ranges == null) {
+            throw new IllegalArgumentException();
+        }
+        mEnricher = enricher;
+        mChannel = channel;
+        mRanges = ranges;
+    }
+
+    /**
+     * Processes ranges of this task.
+     * @return result of processing all ranges in order.
+     * @throws IllegalStateException if file cannot be read or user agent
+     * detection is disabled.
+     */
+    @Override
+    protected UserAgentEnrichmentResult compute() {
+        final int size = mRanges.size();
+        if (size == 0) {
+            return new UserAgentEnrichmentResult();
+        }
+        if (size == 1) {
+            return process(mRanges.get(0));
+        }
+
+        final int middle = size / 2;
+        final UserAgentEnrichmentTask first = new UserAgentEnrichmentTask(
+                mEnricher, mChannel, mRanges.subList(0, middle));
+        final UserAgentEnrichmentTask second = new UserAgentEnrichmentTask(
+                mEnricher, mChannel, mRanges.subList(middle, size));
+        first.fork();
+        final UserAgentEnrichmentResult secondResult = second.compute();
+        return first.join().merge(secondResult);
+    }
+
+    /**
+     * Processes lines contained in a single range.
+     * @param range range to be processed.
+     * @return result of processing range.
+     * @throws IllegalStateException if file cannot be read or user agent
+     * detection is disabled.
+     */
+    private UserAgentEnrichmentResult process(
+            final UserAgentLogFileRange range) {
+        final UserAgentEnrichmentResult result =
+                new UserAgentEnrichmentResult();
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new RangeInputStream(mChannel, range),
+                        CHARSET), READ_BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                mEnricher.process(line, result);
+            }
+        } catch (final IOException | UserAgentDetectionDisabledException e) {
+            throw new IllegalStateException("Failed to process range " +
+                    range, e);
+        }
+        return result;
+    }
+
+    /**
+     * Input stream reading a range of a file using positional reads, so that
+     * the channel position is never modified and can be shared among threads.
+     */
+    private static class RangeInputStream extends InputStream {
+
+        /**
+         * Channel to read file.
+         */
+        private final FileChannel mChannel;
+
+        /**
+         * Current position.
+         */
+        private long mPosition;
+
+        /**
+         * Position after last byte to be read.
+         */
+        private final long mEnd;
+
+        /**
+         * Constructor.
+         * @param channel channel to read file.
+         * @param range range to be read.
+         */
+        RangeInputStream(final FileChannel channel,
+                final UserAgentLogFileRange range) {
+            mChannel = channel;
+            mPosition = range.getStart();
+            mEnd = range.getEnd();
+        }
+
+        /**
+         * Reads a single byte.
+         * @return read byte or -1 if end of range is reached.
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        /**
+         * Reads up to provided number of bytes.
+         * @param b buffer where data is stored.
+         * @param off offset where data is stored.
+         * @param len maximum number of bytes to be read.
+         * @return number of read bytes or -1 if end of range is reached.
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+                throws IOException {
+            if (mPosition >= mEnd) {
+                return -1;
+            }
+            final int n = (int) Math.min(len, mEnd - mPosition);
+            final int read = mChannel.read(ByteBuffer.wrap(b, off, n),
+                    mPosition);
+            if (read < 0) {
+                return -1;
+            }
+            mPosition += read;
+            return read;
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Command line tool to enrich lists of user agents or access logs with the
+ * data detected by {@link UserAgentDetector}.
+ * Input files can be plain or gzip compressed, and are processed using all
+ * available cores while output records keep the order of input lines.
+ * Uncompressed files are split into byte ranges aligned to line boundaries
+ * that are processed as fork/join tasks, whereas compressed files and
+ * standard input are read sequentially and processed in batches.
+ * Once finished, throughput and cache statistics are printed on the standard
+ * error, along with a ranked report of the most expensive patterns of the
+ * user agent database when pattern profiling is enabled in the
+ * configuration.
+ * Usage:
+ * <pre>
+ * java com.irurueta.server.commons.useragent.UserAgentEnrichmentTool
+ *     [--input ua|log] [--output csv|tsv] [--counts] [--threads n]
+ *     [--batch-size n] [--range-size bytes] [--out file] [file ...]
+ * </pre>
+ * When no file (or "-") is provided, standard input is read.
+ */
+public final class UserAgentEnrichmentTool {
+
+    /**
+     * Exit code when processing succeeds.
+     */
+    public static final int EXIT_SUCCESS = 0;
+
+    /**
+     * Exit code when provided arguments are not valid.
+     */
+    public static final int EXIT_USAGE = 1;
+
+    /**
+     * Exit code when processing fails.
+     */
+    public static final int EXIT_FAILURE = 2;
+
+    /**
+     * Default number of lines processed on each batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * Name used to refer to standard input.
+     */
+    private static final String STDIN = "-";
+
+    /**
+     * Charset used to read and write data.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Number of batches that can be pending per worker thread. Limits memory
+     * usage when input is read faster than it can be processed.
+     */
+    private static final int PENDING_BATCHES_PER_THREAD = 2;
+
+    /**
+     * First byte of gzip magic number.
+     */
+    private static final int GZIP_MAGIC_FIRST = 0x1f;
+
+    /**
+     * Second byte of gzip magic number.
+     */
+    private static final int GZIP_MAGIC_SECOND = 0x8b;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICROSECOND = 1e3;
+
+    /**
+     * Number of patterns included in the pattern profiling report.
+     */
+    private static final int PATTERN_REPORT_SIZE = 20;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: UserAgentEnrichmentTool " +
+            "[--input ua|log] [--output csv|tsv] [--counts] [--threads n] " +
+            "[--batch-size n] [--range-size bytes] [--out file] [file ...]";
+
+    /**
+     * Format of input lines.
+     */
+    private UserAgentInputFormat mInputFormat = UserAgentInputFormat.USER_AGENT;
+
+    /**
+     * Format of output records.
+     */
+    private UserAgentOutputFormat mOutputFormat = UserAgentOutputFormat.CSV;
+
+    /**
+     * Indicates whether aggregated counts are written instead of one record
+     * per line.
+     */
+    private boolean mCountsOnly;
+
+    /**
+     * Number of worker threads.
+     */
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Number of lines processed on each batch.
+     */
+    private int mBatchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Approximate size of byte ranges in which uncompressed files are split.
+     */
+    private long mRangeSize = UserAgentLogFileSplitter.DEFAULT_RANGE_SIZE;
+
+    /**
+     * Output file or null to use standard output.
+     */
+    private String mOutputFile;
+
+    /**
+     * Input files.
+     */
+    private final List<String> mInputFiles = new ArrayList<>();
+
+    /**
+     * Entry point of the tool.
+     * @param args command line arguments.
+     */
+    public static void main(final String[] args) {
+        System.exit(new UserAgentEnrichmentTool().run(args, System.in,
+                System.out, System.err));
+    }
+
+    /**
+     * Runs the tool.
+     * @param args command line arguments.
+     * @param in stream used as standard input.
+     * @param out stream used as standard output.
+     * @param err stream where errors and statistics are printed.
+     * @return exit code.
+     */
+    public int run(final String[] args, final InputStream in,
+            final OutputStream out, final PrintStream err) {
+        try {
+            parseArguments(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        }
+
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        if (!detector.isEnabled()) {
+            err.println("User agent detection is disabled");
+            return EXIT_FAILURE;
+        }
+
+        final UserAgentEnricher enricher = new UserAgentEnricher(detector,
+                mInputFormat, mOutputFormat, mCountsOnly);
+        final UserAgentDetectorStats statsBefore = detector.getStats();
+        final long startNanos = System.nanoTime();
+
+        final UserAgentEnrichmentResult total;
+        try (final Writer writer = openWriter(out)) {
+            total = process(enricher, in, writer);
+            writer.flush();
+        } catch (final IOException | ExecutionException e) {
+            err.println("Enrichment failed: " + e.getMessage());
+            return EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Enrichment interrupted");
+            return EXIT_FAILURE;
+        }
+
+        printStatistics(err, total, System.nanoTime() - startNanos,
+                detector.getStats().minus(statsBefore));
+
+        final UserAgentPatternProfiler profiler =
+                detector.getPatternProfiler();
+        if (profiler != null) {
+            err.println("Most expensive patterns:");
+            try {
+                profiler.appendReport(err, PATTERN_REPORT_SIZE);
+            } catch (final IOException e) {
+                err.println("Pattern report failed: " + e.getMessage());
+            }
+        }
+        return EXIT_SUCCESS;
+    }
+
+    /**
+     * Parses command line arguments.
+     * @param args command line arguments.
+     * @throws IllegalArgumentException if any argument is not valid.
+     */
+    void parseArguments(final String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            switch (arg) {
+                case "--input":
+                    mInputFormat = UserAgentInputFormat.fromName(
+                            requireValue(args, ++i, arg));
+                    break;
+                case "--output":
+                    mOutputFormat = UserAgentOutputFormat.fromName(
+                            requireValue(args, ++i, arg));
+                    break;
+                case "--counts":
+                    mCountsOnly = true;
+                    break;
+                case "--threads":
+                    mThreads = parsePositive(requireValue(args, ++i, arg), arg);
+                    break;
+                case "--batch-size":
+                    mBatchSize = parsePositive(requireValue(args, ++i, arg),
+                            arg);
+                    break;
+                case "--range-size":
+                    mRangeSize = parsePositive(requireValue(args, ++i, arg),
+                            arg);
+                    break;
+                case "--out":
+                    mOutputFile = requireValue(args, ++i, arg);
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw new IllegalArgumentException(
+                                "Unknown option: " + arg);
+                    }
+                    mInputFiles.add(arg);
+                    break;
+            }
+        }
+
+        if (mInputFiles.isEmpty()) {
+            mInputFiles.add(STDIN);
+        }
+    }
+
+    /**
+     * Processes all input files.
+     * @param enricher enricher used to process lines.
+     * @param in stream used as standard input.
+     * @param writer writer where output is written.
+     * @return result containing aggregated counts and counters of processed
+     * lines.
+     * @throws IOException if an I/O error occurs.
+     * @throws ExecutionException if processing of a batch fails.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    private UserAgentEnrichmentResult process(
+            final UserAgentEnricher enricher, final InputStream in,
+            final Writer writer) throws IOException, ExecutionException,
+            InterruptedException {
+        final UserAgentEnrichmentResult total = new UserAgentEnrichmentResult();
+        if (!mCountsOnly) {
+            final StringBuilder header = new StringBuilder();
+            mOutputFormat.appendRecordHeader(header);
+            writer.append(header);
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(mThreads);
+        try {
+            final Deque<Future<UserAgentEnrichmentResult>> pending =
+                    new ArrayDeque<>();
+            for (final String inputFile : mInputFiles) {
+                if (isSplittable(inputFile)) {
+                    // keep output order of previous inputs
+                    while (!pending.isEmpty()) {
+                        complete(pending.removeFirst(), total, writer);
+                    }
+                    processSplit(pool, enricher, inputFile, total, writer);
+                    continue;
+                }
+
+                try (final BufferedReader reader = openReader(inputFile, in)) {
+                    List<String> batch = new ArrayList<>(mBatchSize);
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        batch.add(line);
+                        if (batch.size() == mBatchSize) {
+                            submit(pool, enricher, batch, pending, total,
+                                    writer);
+                            batch = new ArrayList<>(mBatchSize);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        submit(pool, enricher, batch, pending, total,
+                                writer);
+                    }
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                complete(pending.removeFirst(), total, writer);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        if (mCountsOnly) {
+            final StringBuilder counts = new StringBuilder();
+            total.appendCounts(counts, mOutputFormat);
+            writer.append(counts);
+        }
+        return total;
+    }
+
+    /**
+     * Processes an uncompressed file by splitting it into byte ranges that are
+     * processed as fork/join tasks.
+     * Ranges are processed in groups, so that records of each group can be
+     * written before processing the next one and memory usage is bounded no
+     * matter the size of the file.
+     * @param pool pool where tasks are executed.
+     * @param enricher enricher used to process lines.
+     * @param inputFile file to be processed.
+     * @param total result where results of each group are merged.
+     * @param writer writer where records are written.
+     * @throws IOException if an I/O error occurs.
+     * @throws ExecutionException if processing of a range fails.
+     */
+    private void processSplit(final ForkJoinPool pool,
+            final UserAgentEnricher enricher, final String inputFile,
+            final UserAgentEnrichmentResult total, final Writer writer)
+            throws IOException, ExecutionException {
+        try (final RandomAccessFile file = new RandomAccessFile(inputFile,
+                "r")) {
+            final FileChannel channel = file.getChannel();
+            final List<UserAgentLogFileRange> ranges =
+                    new UserAgentLogFileSplitter(mRangeSize).split(channel);
+            final int groupSize = mThreads * PENDING_BATCHES_PER_THREAD;
+            for (int i = 0; i < ranges.size(); i += groupSize) {
+                final UserAgentEnrichmentResult result;
+                try {
+                    result = pool.invoke(new UserAgentEnrichmentTask(enricher,
+                            channel, ranges.subList(i, Math.min(i + groupSize,
+                            ranges.size()))));
+                } catch (final IllegalStateException e) {
+                    throw new ExecutionException(e.getMessage(), e);
+                }
+                write(result, total, writer);
+            }
+        }
+    }
+
+    /**
+     * Submits a batch of lines to be processed. If too many batches are
+     * pending, the oldest ones are completed first.
+     * @param executor executor where batch is processed.
+     * @param enricher enricher used to process lines.
+     * @param batch lines to be processed.
+     * @param pending batches pending to be completed in submission order.
+     * @param total result where completed batches are merged.
+     * @param writer writer where records of completed batches are written.
+     * @throws IOException if an I/O error occurs.
+     * @throws ExecutionException if processing of a batch fails.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    private void submit(final ExecutorService executor,
+            final UserAgentEnricher enricher, final List<String> batch,
+            final Deque<Future<UserAgentEnrichmentResult>> pending,
+            final UserAgentEnrichmentResult total, final Writer writer)
+            throws IOException, ExecutionException, InterruptedException {
+        while (pending.size() >= mThreads * PENDING_BATCHES_PER_THREAD) {
+            complete(pending.removeFirst(), total, writer);
+        }
+        pending.addLast(executor.submit(
+                new Callable<UserAgentEnrichmentResult>() {
+                    @Override
+                    public UserAgentEnrichmentResult call() throws Exception {
+                        return enricher.process(batch);
+                    }
+                }));
+    }
+
+    /**
+     * Waits for a batch to finish, writes its records and merges its counts.
+     * @param future future of batch being completed.
+     * @param total result where batch is merged.
+     * @param writer writer where records are written.
+     * @throws IOException if an I/O error occurs.
+     * @throws ExecutionException if processing of batch failed.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    private static void complete(final Future<UserAgentEnrichmentResult> future,
+            final UserAgentEnrichmentResult total, final Writer writer)
+            throws IOException, ExecutionException, InterruptedException {
+        write(future.get(), total, writer);
+    }
+
+    /**
+     * Writes records of provided result and merges its counts.
+     * @param result result to be written.
+     * @param total result where provided one is merged.
+     * @param writer writer where records are written.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void write(final UserAgentEnrichmentResult result,
+            final UserAgentEnrichmentResult total, final Writer writer)
+            throws IOException {
+        final StringBuilder records = result.getRecords();
+        writer.append(records);
+        // records are already written, only counts and counters are kept
+        records.setLength(0);
+        total.merge(result);
+    }
+
+    /**
+     * Indicates whether provided input can be split into byte ranges, which
+     * only happens for uncompressed files.
+     * @param inputFile input file or "-" for standard input.
+     * @return true if input can be split, false otherwise.
+     * @throws IOException if file cannot be read.
+     */
+    static boolean isSplittable(final String inputFile) throws IOException {
+        if (STDIN.equals(inputFile)) {
+            return false;
+        }
+        try (final InputStream stream = new FileInputStream(inputFile)) {
+            return !isGzip(stream.read(), stream.read());
+        }
+    }
+
+    /**
+     * Opens a reader for provided input file, transparently decompressing it
+     * if it is gzip compressed.
+     * @param inputFile input file or "-" for standard input.
+     * @param in stream used as standard input.
+     * @return a reader.
+     * @throws IOException if file cannot be opened.
+     */
+    static BufferedReader openReader(final String inputFile,
+            final InputStream in) throws IOException {
+        InputStream stream = STDIN.equals(inputFile) ?
+                new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                        // standard input is not closed
+                    }
+                } : new FileInputStream(inputFile);
+        stream = new BufferedInputStream(stream);
+
+        stream.mark(2);
+        final int first = stream.read();
+        final int second = stream.read();
+        stream.reset();
+        if (isGzip(first, second)) {
+            stream = new GZIPInputStream(stream);
+        }
+        return new BufferedReader(new InputStreamReader(stream, CHARSET));
+    }
+
+    /**
+     * Indicates whether provided first bytes of a stream match gzip magic
+     * number.
+     * @param first first byte.
+     * @param second second byte.
+     * @return true if stream is gzip compressed, false otherwise.
+     */
+    private static boolean isGzip(final int first, final int second) {
+        return first == GZIP_MAGIC_FIRST && second == GZIP_MAGIC_SECOND;
+    }
+
+    /**
+     * Opens the writer where output is written.
+     * @param out stream used as standard output.
+     * @return a writer.
+     * @throws IOException if output file cannot be opened.
+     */
+    private Writer openWriter(final OutputStream out) throws IOException {
+        final OutputStream stream = mOutputFile != null ?
+                new FileOutputStream(mOutputFile) :
+                new NonClosingOutputStream(out);
+        return new BufferedWriter(new OutputStreamWriter(stream, CHARSET));
+    }
+
+    /**
+     * Prints throughput and cache statistics.
+     * @param err stream where statistics are printed.
+     * @param total result containing counters of processed lines.
+     * @param elapsedNanos elapsed time expressed in nanoseconds.
+     * @param stats detector statistics collected while processing.
+     */
+    private static void printStatistics(final PrintStream err,
+            final UserAgentEnrichmentResult total, final long elapsedNanos,
+            final UserAgentDetectorStats stats) {
+        final double seconds = elapsedNanos / NANOS_PER_SECOND;
+        err.println(String.format(Locale.ENGLISH,
+                "Processed %d lines (%d detected, %d failed, %d skipped) " +
+                        "in %.3f s", total.getLineCount(),
+                total.getDetectedCount(), total.getFailedCount(),
+                total.getSkippedCount(), seconds));
+        err.println(String.format(Locale.ENGLISH, "Throughput: %.1f lines/s",
+                seconds > 0.0 ? total.getLineCount() / seconds : 0.0));
+        err.println(String.format(Locale.ENGLISH,
+                "Cache hit ratio: %.2f %% (%d hits, %d misses, " +
+                        "%d not admitted)", stats.getHitRate() * 100.0,
+                stats.getHitCount(), stats.getMissCount(),
+                stats.getRejectedCount()));
+        err.println(String.format(Locale.ENGLISH,
+                "Average parse time: %.1f us",
+                stats.getAverageParseTimeNanos() / NANOS_PER_MICROSECOND));
+    }
+
+    /**
+     * Returns the value following an option.
+     * @param args command line arguments.
+     * @param index position of value.
+     * @param option option requiring the value.
+     * @return value of option.
+     * @throws IllegalArgumentException if value is missing.
+     */
+    private static String requireValue(final String[] args, final int index,
+            final String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a positive integer value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a positive integer.
+     */
+    private static int parsePositive(final String value, final String option) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return result;
+    }
+
+    /**
+     * Output stream wrapper that flushes but never closes the wrapped stream,
+     * so that standard output remains usable after the tool finishes.
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+
+        /**
+         * Constructor.
+         * @param out wrapped stream.
+         */
+        NonClosingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        /**
+         * Writes provided bytes directly into wrapped stream.
+         * @param b bytes to be written.
+         * @param off offset of first byte.
+         * @param len number of bytes.
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+            out.write(b, off, len);
+        }
+
+        /**
+         * Flushes wrapped stream without closing it.
+         * @throws IOException if an I/O error occurs.
+         */
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
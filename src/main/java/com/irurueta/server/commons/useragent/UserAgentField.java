@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.Set;
+
+/**
+ * Fields of detected user agent data that can be requested to
+ * {@link UserAgentDetector#detect(String, Set)}, so that data not being
+ * requested is not computed.
+ */
+public enum UserAgentField {
+    /**
+     * Device category and its name. Requires evaluating device patterns.
+     */
+    DEVICE_CATEGORY,
+
+    /**
+     * Family of user agent (i.e. browser name).
+     */
+    FAMILY,
+
+    /**
+     * Operating system family, family name, name, producer and version.
+     * Requires evaluating operating system patterns unless the browser
+     * already determines the operating system.
+     */
+    OPERATING_SYSTEM,
+
+    /**
+     * Type of user agent (i.e. browser, mobile browser, robot, etc).
+     */
+    USER_AGENT_TYPE,
+
+    /**
+     * Version of user agent. Requires extracting version from the user agent.
+     */
+    USER_AGENT_VERSION;
+
+    /**
+     * Mask containing all fields.
+     */
+    public static final int ALL_MASK = (1 << values().length) - 1;
+
+    /**
+     * Returns bit of this field within a mask of fields.
+     * @return bit of this field.
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * Indicates whether this field is contained in provided mask.
+     * @param mask mask of fields.
+     * @return true if field is contained, false otherwise.
+     */
+    public boolean isContainedIn(final int mask) {
+        return (mask & getMask()) != 0;
+    }
+
+    /**
+     * Builds the mask of provided fields.
+     * @param fields fields to be contained in mask.
+     * @return mask of fields.
+     * @throws IllegalArgumentException if fields is null.
+     */
+    public static int toMask(final Set<UserAgentField> fields) {
+        if (fields == null) {
+            throw new IllegalArgumentException();
+        }
+        int mask = 0;
+        for (final UserAgentField field : fields) {
+            mask |= field.getMask();
+        }
+        return mask;
+    }
+}
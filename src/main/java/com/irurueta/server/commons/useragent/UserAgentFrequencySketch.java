@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Probabilistic sketch estimating how often user agents have been seen
+ * recently, used to implement a TinyLFU admission policy on the user agent
+ * cache.
+ * This is a count-min sketch using four 4-bit counters per user agent packed
+ * into longs, so that memory usage is small and fixed regardless of the
+ * number of distinct user agents. Estimations never underestimate the real
+ * frequency, though hash collisions might overestimate it.
+ * To keep estimations representative of recent traffic, all counters are
+ * halved once a number of increments equal to the sample size is reached.
+ * This class is not synchronized. Concurrent updates might occasionally be
+ * lost, which is acceptable since estimations are approximate anyway.
+ */
+public class UserAgentFrequencySketch {
+
+    /**
+     * Maximum value of a counter.
+     */
+    public static final int MAX_FREQUENCY = 15;
+
+    /**
+     * Number of counters per long.
+     */
+    private static final int COUNTERS_PER_LONG = 16;
+
+    /**
+     * Minimum number of longs of the table.
+     */
+    private static final int MIN_TABLE_SIZE = 64;
+
+    /**
+     * Factor to obtain sample size from maximum number of cached entries.
+     */
+    private static final int SAMPLE_SIZE_FACTOR = 10;
+
+    /**
+     * Mask to halve all counters packed into a long.
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * Seeds used to derive the four counters of each user agent.
+     */
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    /**
+     * Table of packed counters.
+     */
+    private final long[] mTable;
+
+    /**
+     * Number of increments after which all counters are halved.
+     */
+    private final int mSampleSize;
+
+    /**
+     * Number of increments since last reset.
+     */
+    private int mSize;
+
+    /**
+     * Constructor.
+     * @param maximumSize maximum number of entries of the cache whose
+     * admission is being controlled.
+     * @throws IllegalArgumentException if maximum size is not positive.
+     */
+    public UserAgentFrequencySketch(final int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException(
+                    "maximum size must be positive");
+        }
+        final int tableSize = Math.max(MIN_TABLE_SIZE, Integer.highestOneBit(
+                Math.min(maximumSize, 1 << 30) - 1) << 1);
+        mTable = new long[tableSize];
+        mSampleSize = (int) Math.min(Integer.MAX_VALUE,
+                (long) SAMPLE_SIZE_FACTOR * Math.max(maximumSize,
+                        MIN_TABLE_SIZE));
+    }
+
+    /**
+     * Returns number of increments after which all counters are halved.
+     * @return sample size.
+     */
+    public int getSampleSize() {
+        return mSampleSize;
+    }
+
+    /**
+     * Returns estimated number of times provided user agent has been seen
+     * recently.
+     * @param userAgent user agent.
+     * @return estimated frequency, between 0 and {@link #MAX_FREQUENCY}.
+     */
+    public int frequency(final String userAgent) {
+        final int hash = spread(userAgent.hashCode());
+        int frequency = MAX_FREQUENCY;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long index = indexOf(hash, i);
+            final int tableIndex = (int) index;
+            final int offset = (int) (index >>> 32);
+            frequency = Math.min(frequency,
+                    (int) ((mTable[tableIndex] >>> offset) & MAX_FREQUENCY));
+        }
+        return frequency;
+    }
+
+    /**
+     * Increments estimated frequency of provided user agent.
+     * @param userAgent user agent.
+     */
+    public void increment(final String userAgent) {
+        final int hash = spread(userAgent.hashCode());
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            final long index = indexOf(hash, i);
+            final int tableIndex = (int) index;
+            final int offset = (int) (index >>> 32);
+            final long mask = (long) MAX_FREQUENCY << offset;
+            final long value = mTable[tableIndex];
+            if ((value & mask) != mask) {
+                mTable[tableIndex] = value + (1L << offset);
+                added = true;
+            }
+        }
+
+        if (added && ++mSize >= mSampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Halves all counters so that old accesses are progressively forgotten.
+     */
+    void reset() {
+        for (int i = 0; i < mTable.length; i++) {
+            mTable[i] = (mTable[i] >>> 1) & RESET_MASK;
+        }
+        mSize /= 2;
+    }
+
+    /**
+     * Returns position of the counter of provided hash for given function.
+     * @param hash spread hash of user agent.
+     * @param i index of hash function.
+     * @return index within the table in the lower 32 bits and bit offset
+     * within the long in the upper 32 bits.
+     */
+    private long indexOf(final int hash, final int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        final int tableIndex = (int) h & (mTable.length - 1);
+        final int offset = (int) ((h >>> 40) & (COUNTERS_PER_LONG - 1)) << 2;
+        return ((long) offset << 32) | tableIndex;
+    }
+
+    /**
+     * Applies a supplementary hash function to protect against poor quality
+     * hash codes.
+     * @param hashCode hash code to be spread.
+     * @return spread hash.
+     */
+    private static int spread(final int hashCode) {
+        int h = hashCode;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        h = ((h >>> 16) ^ h) * 0x45d9f3b;
+        return (h >>> 16) ^ h;
+    }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.security.SecureRandom;
+
+/**
+ * Hashing utilities for user agent strings.
+ * Hashes used by runtime caches are computed using SipHash-2-4 keyed by
+ * random keys generated on each JVM execution, so that clients cannot craft
+ * user agents colliding with other user agents. Only hashes computed by
+ * {@link #stableHash64(CharSequence)} are stable across JVM executions and
+ * platforms, so that they can be stored in artifacts generated at build
+ * time.
+ */
+final class UserAgentHashing {
+
+    /**
+     * FNV-1a 64 bit offset basis.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a 64 bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Golden ratio constant used to derive independent hashes from a seed.
+     */
+    private static final long GOLDEN_RATIO = 0x9e3779b97f4a7c15L;
+
+    /**
+     * Initialization constant of state 0 of SipHash.
+     */
+    private static final long SIP_V0 = 0x736f6d6570736575L;
+
+    /**
+     * Initialization constant of state 1 of SipHash.
+     */
+    private static final long SIP_V1 = 0x646f72616e646f6dL;
+
+    /**
+     * Initialization constant of state 2 of SipHash.
+     */
+    private static final long SIP_V2 = 0x6c7967656e657261L;
+
+    /**
+     * Initialization constant of state 3 of SipHash.
+     */
+    private static final long SIP_V3 = 0x7465646279746573L;
+
+    /**
+     * Number of SipHash rounds applied to each block.
+     */
+    private static final int COMPRESSION_ROUNDS = 2;
+
+    /**
+     * Number of SipHash rounds applied once all blocks are processed.
+     */
+    private static final int FINALIZATION_ROUNDS = 4;
+
+    /**
+     * Value mixed into SipHash state before finalization rounds.
+     */
+    private static final long FINALIZATION_MASK = 0xff;
+
+    /**
+     * Number of characters contained in each block of SipHash, which
+     * processes 8 bytes at once.
+     */
+    private static final int CHARS_PER_BLOCK = 4;
+
+    /**
+     * Random keys of hashes of runtime caches, generated once per JVM
+     * execution.
+     */
+    private static final long[] KEYS = createKeys();
+
+    /**
+     * Constructor. Prevents instantiation of utility class.
+     */
+    private UserAgentHashing() { }
+
+    /**
+     * Computes 64 bit hash of provided user agent to be used as a key of
+     * runtime caches.
+     * Hash is keyed by a random key of the current JVM execution, so that
+     * the probability of any collision among n user agents is about
+     * n^2 / 2^65 even if user agents are chosen by an attacker, as long as
+     * hashes are not disclosed.
+     * @param userAgent user agent to be hashed.
+     * @return 64 bit hash.
+     */
+    static long hash64(final CharSequence userAgent) {
+        return sipHash24(userAgent, KEYS[0], KEYS[1]);
+    }
+
+    /**
+     * Computes a 64 bit hash of provided user agent that is independent of
+     * {@link #hash64(CharSequence)}, as it uses another random key, so that
+     * user agents colliding on one of them are not expected to collide on
+     * the other.
+     * @param userAgent user agent to be hashed.
+     * @return 64 bit verification hash.
+     */
+    static long verificationHash64(final CharSequence userAgent) {
+        return sipHash24(userAgent, KEYS[2], KEYS[3]);
+    }
+
+    /**
+     * Computes 64 bit hash of provided user agent that is stable across JVM
+     * executions and platforms.
+     * Characters are combined using FNV-1a and the result is finalized
+     * using an avalanche mix so that all bits depend on all characters.
+     * Collisions of FNV-1a can be crafted, hence these hashes must only be
+     * used for non-adversarial input or when user agents are verified (i.e.
+     * by tables of common user agents generated at build time).
+     * @param userAgent user agent to be hashed.
+     * @return 64 bit hash.
+     */
+    static long stableHash64(final CharSequence userAgent) {
+        long h = FNV_OFFSET_BASIS;
+        final int length = userAgent.length();
+        for (int i = 0; i < length; i++) {
+            h = (h ^ userAgent.charAt(i)) * FNV_PRIME;
+        }
+        return mix64(h ^ length);
+    }
+
+    /**
+     * Computes SipHash-2-4 of provided user agent using provided key.
+     * Characters are hashed as their UTF-16LE encoding, processing four
+     * characters per block, so that results match the reference
+     * implementation applied to the encoded bytes.
+     * @param userAgent user agent to be hashed.
+     * @param k0 first half of the key.
+     * @param k1 second half of the key.
+     * @return 64 bit hash.
+     */
+    static long sipHash24(final CharSequence userAgent, final long k0,
+            final long k1) {
+        long v0 = k0 ^ SIP_V0;
+        long v1 = k1 ^ SIP_V1;
+        long v2 = k0 ^ SIP_V2;
+        long v3 = k1 ^ SIP_V3;
+
+        final int length = userAgent.length();
+        final int end = length - length % CHARS_PER_BLOCK;
+        for (int i = 0; ; i += CHARS_PER_BLOCK) {
+            // blocks are compressed using 2 rounds and finalized using 4
+            final boolean finalization = i > end;
+            long m = 0;
+            if (finalization) {
+                v2 ^= FINALIZATION_MASK;
+            } else if (i < end) {
+                m = (long) userAgent.charAt(i) |
+                        (long) userAgent.charAt(i + 1) << 16 |
+                        (long) userAgent.charAt(i + 2) << 32 |
+                        (long) userAgent.charAt(i + 3) << 48;
+            } else {
+                // last block contains remaining characters and byte length
+                m = (long) (2 * length) << 56;
+                for (int j = end; j < length; j++) {
+                    m |= (long) userAgent.charAt(j) << (16 * (j - end));
+                }
+            }
+
+            v3 ^= m;
+            final int rounds = finalization ? FINALIZATION_ROUNDS :
+                    COMPRESSION_ROUNDS;
+            for (int r = 0; r < rounds; r++) {
+                v0 += v1;
+                v1 = Long.rotateLeft(v1, 13);
+                v1 ^= v0;
+                v0 = Long.rotateLeft(v0, 32);
+                v2 += v3;
+                v3 = Long.rotateLeft(v3, 16);
+                v3 ^= v2;
+                v0 += v3;
+                v3 = Long.rotateLeft(v3, 21);
+                v3 ^= v0;
+                v2 += v1;
+                v1 = Long.rotateLeft(v1, 17);
+                v1 ^= v2;
+                v2 = Long.rotateLeft(v2, 32);
+            }
+            if (finalization) {
+                break;
+            }
+            v0 ^= m;
+        }
+        return v0 ^ v1 ^ v2 ^ v3;
+    }
+
+    /**
+     * Derives a new hash from provided hash and seed, so that different seeds
+     * produce independent hashes of the same value.
+     * @param hash hash to be derived.
+     * @param seed seed.
+     * @return derived 64 bit hash.
+     */
+    static long rehash(final long hash, final int seed) {
+        return mix64(hash + (seed + 1) * GOLDEN_RATIO);
+    }
+
+    /**
+     * Maps provided hash into a range between zero (inclusive) and provided
+     * size (exclusive) without using slow modulo operations.
+     * @param hash hash to be mapped.
+     * @param size size of range.
+     * @return value within range.
+     */
+    static int reduce(final long hash, final int size) {
+        return (int) (((hash >>> 32) * size) >>> 32);
+    }
+
+    /**
+     * Finalization mix of MurmurHash3, which makes all bits of the result
+     * depend on all bits of the input.
+     * @param value value to be mixed.
+     * @return mixed value.
+     */
+    static long mix64(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    /**
+     * Generates random keys of hashes of runtime caches.
+     * @return two keys of two halves each.
+     */
+    private static long[] createKeys() {
+        final SecureRandom random = new SecureRandom();
+        final long[] keys = new long[4];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+        return keys;
+    }
+}
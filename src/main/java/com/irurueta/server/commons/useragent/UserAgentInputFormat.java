@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Format of the lines being processed by the bulk enrichment tool.
+ */
+public enum UserAgentInputFormat {
+    /**
+     * Each line contains a raw user agent string.
+     */
+    USER_AGENT,
+
+    /**
+     * Each line is an access log entry using the combined log format, where
+     * the user agent is the last double quoted field (i.e. Apache or Nginx
+     * combined logs).
+     */
+    ACCESS_LOG;
+
+    /**
+     * Extracts the user agent string contained in provided line.
+     * @param line a line of input data.
+     * @return extracted user agent or null if line does not contain any user
+     * agent.
+     */
+    public String extractUserAgent(final String line) {
+        if (line == null) {
+            return null;
+        }
+
+        switch (this) {
+            case ACCESS_LOG:
+                return extractLastQuotedField(line);
+            case USER_AGENT:
+            default:
+                final String userAgent = line.trim();
+                return userAgent.isEmpty() ? null : userAgent;
+        }
+    }
+
+    /**
+     * Returns input format matching provided name, ignoring case.
+     * Accepted names are "ua" or "user_agent" for raw user agents and "log"
+     * or "access_log" for combined access logs.
+     * @param name name of input format.
+     * @return input format.
+     * @throws IllegalArgumentException if name is not recognized.
+     */
+    public static UserAgentInputFormat fromName(final String name) {
+        if ("ua".equalsIgnoreCase(name) ||
+                "user_agent".equalsIgnoreCase(name)) {
+            return USER_AGENT;
+        }
+        if ("log".equalsIgnoreCase(name) ||
+                "access_log".equalsIgnoreCase(name)) {
+            return ACCESS_LOG;
+        }
+        throw new IllegalArgumentException("Unknown input format: " + name);
+    }
+
+    /**
+     * Extracts the last double quoted field of a log line. Escaped quotes
+     * (preceded by a backslash) are kept as part of the field.
+     * @param line a log line.
+     * @return content of last quoted field, or null if none is found or it is
+     * empty or a dash.
+     */
+    private static String extractLastQuotedField(final String line) {
+        int end = line.lastIndexOf('"');
+        while (end > 0 && line.charAt(end - 1) == '\\') {
+            end = line.lastIndexOf('"', end - 1);
+        }
+        if (end <= 0) {
+            return null;
+        }
+
+        int start = line.lastIndexOf('"', end - 1);
+        while (start > 0 && line.charAt(start - 1) == '\\') {
+            start = line.lastIndexOf('"', start - 1);
+        }
+        if (start < 0) {
+            return null;
+        }
+
+        final String userAgent = line.substring(start + 1, end).
+                replace("\\\"", "\"");
+        return userAgent.isEmpty() || "-".equals(userAgent) ? null : userAgent;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Range of bytes of a log file containing complete lines.
+ * Ranges are obtained using {@link UserAgentLogFileSplitter}, so that they
+ * always start at the beginning of a line and end right after a line break
+ * (or at the end of the file).
+ */
+public class UserAgentLogFileRange {
+
+    /**
+     * Position of first byte of the range.
+     */
+    private final long mStart;
+
+    /**
+     * Position after last byte of the range.
+     */
+    private final long mEnd;
+
+    /**
+     * Constructor.
+     * @param start position of first byte of the range.
+     * @param end position after last byte of the range.
+     * @throws IllegalArgumentException if start is negative or end is smaller
+     * than start.
+     */
+    public UserAgentLogFileRange(final long start, final long end) {
+        if (start < 0 || end < start) {
+            throw new IllegalArgumentException();
+        }
+        mStart = start;
+        mEnd = end;
+    }
+
+    /**
+     * Returns position of first byte of the range.
+     * @return position of first byte of the range.
+     */
+    public long getStart() {
+        return mStart;
+    }
+
+    /**
+     * Returns position after last byte of the range.
+     * @return position after last byte of the range.
+     */
+    public long getEnd() {
+        return mEnd;
+    }
+
+    /**
+     * Returns number of bytes of the range.
+     * @return number of bytes of the range.
+     */
+    public long getLength() {
+        return mEnd - mStart;
+    }
+
+    /**
+     * Indicates whether provided object is equal to this instance.
+     * @param obj object to be compared.
+     * @return true if both objects are equal, false otherwise.
+     */
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof UserAgentLogFileRange)) {
+            return false;
+        }
+        final UserAgentLogFileRange other = (UserAgentLogFileRange) obj;
+        return mStart == other.mStart && mEnd == other.mEnd;
+    }
+
+    /**
+     * Returns hash code of this instance.
+     * @return hash code.
+     */
+    @Override
+    public int hashCode() {
+        return 31 * (int) (mStart ^ (mStart >>> 32)) +
+                (int) (mEnd ^ (mEnd >>> 32));
+    }
+
+    /**
+     * Returns a textual representation of this range.
+     * @return textual representation of this range.
+     */
+    @Override
+    public String toString() {
+        return "[" + mStart + ", " + mEnd + ")";
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits log files into byte ranges aligned to line boundaries, so that each
+ * range can be processed independently (i.e. by a
+ * {@link UserAgentEnrichmentTask}).
+ * Ranges are aligned to '\n' bytes, which never appear within multi-byte
+ * UTF-8 sequences, hence no line or character is ever split among ranges.
+ */
+public class UserAgentLogFileSplitter {
+
+    /**
+     * Default approximate size of ranges expressed in bytes (8 MB).
+     */
+    public static final long DEFAULT_RANGE_SIZE = 8L * 1024L * 1024L;
+
+    /**
+     * Size of buffer used to look for line breaks.
+     */
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    /**
+     * Approximate size of ranges expressed in bytes.
+     */
+    private final long mRangeSize;
+
+    /**
+     * Constructor using default range size.
+     */
+    public UserAgentLogFileSplitter() {
+        this(DEFAULT_RANGE_SIZE);
+    }
+
+    /**
+     * Constructor.
+     * @param rangeSize approximate size of ranges expressed in bytes. Actual
+     * ranges are extended up to the next line break.
+     * @throws IllegalArgumentException if range size is not positive.
+     */
+    public UserAgentLogFileSplitter(final long rangeSize) {
+        if (rangeSize <= 0) {
+            throw new IllegalArgumentException(
+                    "range size must be positive");
+        }
+        mRangeSize = rangeSize;
+    }
+
+    /**
+     * Returns approximate size of ranges expressed in bytes.
+     * @return approximate size of ranges.
+     */
+    public long getRangeSize() {
+        return mRangeSize;
+    }
+
+    /**
+     * Splits provided file into ranges.
+     * @param file file to be split.
+     * @return consecutive ranges covering the whole file.
+     * @throws IOException if file cannot be read.
+     */
+    public List<UserAgentLogFileRange> split(final File file)
+            throws IOException {
+        try (final RandomAccessFile randomAccessFile =
+                     new RandomAccessFile(file, "r")) {
+            return split(randomAccessFile.getChannel());
+        }
+    }
+
+    /**
+     * Splits the file accessed through provided channel into ranges.
+     * Position of channel is not modified.
+     * @param channel channel to read file.
+     * @return consecutive ranges covering the whole file.
+     * @throws IOException if file cannot be read.
+     */
+    public List<UserAgentLogFileRange> split(final FileChannel channel)
+            throws IOException {
+        final long size = channel.size();
+        final List<UserAgentLogFileRange> ranges = new ArrayList<>(
+                (int) Math.min(Integer.MAX_VALUE, size / mRangeSize + 1));
+        final ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+        long start = 0;
+        while (start < size) {
+            final long end = start + mRangeSize >= size ? size :
+                    findLineEnd(channel, start + mRangeSize - 1, size, buffer);
+            ranges.add(new UserAgentLogFileRange(start, end));
+            start = end;
+        }
+        return ranges;
+    }
+
+    /**
+     * Finds the position right after the first line break found at provided
+     * position or after it.
+     * @param channel channel to read file.
+     * @param position position where search starts.
+     * @param size size of file.
+     * @param buffer buffer used to read file.
+     * @return position after next line break or size of file if no line break
+     * is found.
+     * @throws IOException if file cannot be read.
+     */
+    private static long findLineEnd(final FileChannel channel,
+            final long position, final long size, final ByteBuffer buffer)
+            throws IOException {
+        long current = position;
+        while (current < size) {
+            buffer.clear();
+            final int read = channel.read(buffer, current);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of user agents whose parsing failed, so that repeated malformed
+ * inputs (i.e. sent by misbehaving clients) fail immediately instead of being
+ * parsed again on every request.
+ * Entries are keyed by a 64 bit hash of the user agent instead of the user
+ * agent itself, so that memory used by each entry is small and bounded
+ * regardless of the length of malformed inputs.
+ * This class is thread safe.
+ */
+public class UserAgentNegativeCache {
+
+    /**
+     * Failures indexed by hash of user agent.
+     */
+    private final Cache<Long, RuntimeException> mCache;
+
+    /**
+     * Maximum number of cached failures.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Number of user agents found to have failed before.
+     */
+    private final AtomicLong mHitCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param maxSize maximum number of cached failures.
+     * @param expirationTime amount of time to keep failures cached.
+     * @param unit unit of expiration time.
+     * @throws IllegalArgumentException if any value is not positive or unit
+     * is null.
+     */
+    public UserAgentNegativeCache(final int maxSize, final long expirationTime,
+            final TimeUnit unit) {
+        if (maxSize <= 0 || expirationTime <= 0 || unit == null) {
+            throw new IllegalArgumentException();
+        }
+        mMaxSize = maxSize;
+        mCache = CacheBuilder.newBuilder().maximumSize(maxSize).
+                expireAfterWrite(expirationTime, unit).build();
+    }
+
+    /**
+     * Returns maximum number of cached failures.
+     * @return maximum number of cached failures.
+     */
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns approximate number of cached failures.
+     * @return number of cached failures.
+     */
+    public long size() {
+        return mCache.size();
+    }
+
+    /**
+     * Returns number of user agents found to have failed before.
+     * @return number of hits.
+     */
+    public long getHitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns failure of provided user agent if it previously failed.
+     * @param userAgent user agent to look for.
+     * @return exception that caused user agent to fail or null if not found.
+     */
+    public RuntimeException getIfPresent(final String userAgent) {
+        final RuntimeException failure = mCache.getIfPresent(
+                UserAgentHashing.hash64(userAgent));
+        if (failure != null) {
+            mHitCount.incrementAndGet();
+        }
+        return failure;
+    }
+
+    /**
+     * Records failure of provided user agent.
+     * @param userAgent user agent whose parsing failed.
+     * @param failure exception that caused user agent to fail.
+     */
+    public void put(final String userAgent, final RuntimeException failure) {
+        mCache.put(UserAgentHashing.hash64(userAgent), failure);
+    }
+
+    /**
+     * Removes all cached failures.
+     */
+    public void invalidateAll() {
+        mCache.invalidateAll();
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Format of the records written by the bulk enrichment tool.
+ */
+public enum UserAgentOutputFormat {
+    /**
+     * Comma separated values. Fields containing commas, quotes or line breaks
+     * are quoted as described in RFC 4180.
+     */
+    CSV(','),
+
+    /**
+     * Tab separated values. Tabs and line breaks within fields are replaced
+     * by spaces.
+     */
+    TSV('\t');
+
+    /**
+     * Names of the columns of enriched records.
+     */
+    static final String[] RECORD_COLUMNS = {
+            "user_agent", "device_category", "device_category_name",
+            "family", "os_family", "os_family_name", "os_name", "os_producer",
+            "os_version", "user_agent_type", "user_agent_version", "desktop",
+            "mobile", "tablet", "smart_tv"
+    };
+
+    /**
+     * Names of the columns of aggregated counts.
+     */
+    static final String[] COUNT_COLUMNS = {
+            "user_agent_type", "device_category", "family", "os_family",
+            "count"
+    };
+
+    /**
+     * Character used to separate fields.
+     */
+    private final char mSeparator;
+
+    /**
+     * Constructor.
+     * @param separator character used to separate fields.
+     */
+    UserAgentOutputFormat(final char separator) {
+        mSeparator = separator;
+    }
+
+    /**
+     * Returns character used to separate fields.
+     * @return character used to separate fields.
+     */
+    public char getSeparator() {
+        return mSeparator;
+    }
+
+    /**
+     * Appends header line of enriched records into provided builder.
+     * @param builder builder where header will be appended.
+     */
+    public void appendRecordHeader(final StringBuilder builder) {
+        appendLine(builder, RECORD_COLUMNS);
+    }
+
+    /**
+     * Appends header line of aggregated counts into provided builder.
+     * @param builder builder where header will be appended.
+     */
+    public void appendCountHeader(final StringBuilder builder) {
+        appendLine(builder, COUNT_COLUMNS);
+    }
+
+    /**
+     * Appends an enriched record into provided builder.
+     * @param builder builder where record will be appended.
+     * @param userAgent original user agent string.
+     * @param data detected data or null if detection failed, in which case
+     * only the user agent column is filled.
+     */
+    public void appendRecord(final StringBuilder builder,
+            final String userAgent, final UserAgentData data) {
+        if (data == null) {
+            appendLine(builder, new String[]{userAgent});
+            return;
+        }
+        appendLine(builder, new String[]{
+                userAgent,
+                toString(data.getDeviceCategory()),
+                data.getDeviceCategoryName(),
+                data.getFamily(),
+                toString(data.getOsFamily()),
+                data.getOsFamilyName(),
+                data.getOsName(),
+                data.getOsProducer(),
+                data.getOsVersion(),
+                toString(data.getUserAgentType()),
+                data.getUserAgentVersion(),
+                Boolean.toString(data.isDesktop()),
+                Boolean.toString(data.isMobile()),
+                Boolean.toString(data.isTablet()),
+                Boolean.toString(data.isSmartTV())
+        });
+    }
+
+    /**
+     * Builds the key used to aggregate counts of provided detected data.
+     * Keys are already formatted, so that they can be written followed by
+     * their count.
+     * @param data detected data.
+     * @return formatted key used to aggregate counts.
+     */
+    public String buildCountKey(final UserAgentData data) {
+        final StringBuilder builder = new StringBuilder();
+        appendField(builder, toString(data.getUserAgentType()));
+        builder.append(mSeparator);
+        appendField(builder, toString(data.getDeviceCategory()));
+        builder.append(mSeparator);
+        appendField(builder, data.getFamily());
+        builder.append(mSeparator);
+        appendField(builder, toString(data.getOsFamily()));
+        return builder.toString();
+    }
+
+    /**
+     * Appends an aggregated count into provided builder.
+     * @param builder builder where count will be appended.
+     * @param key formatted key obtained using
+     * {@link #buildCountKey(UserAgentData)}.
+     * @param count number of times key was found.
+     */
+    public void appendCount(final StringBuilder builder, final String key,
+            final long count) {
+        builder.append(key).append(mSeparator).append(count).append('\n');
+    }
+
+    /**
+     * Returns output format matching provided name, ignoring case.
+     * @param name name of output format (either "csv" or "tsv").
+     * @return output format.
+     * @throws IllegalArgumentException if name is not recognized.
+     */
+    public static UserAgentOutputFormat fromName(final String name) {
+        for (final UserAgentOutputFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown output format: " + name);
+    }
+
+    /**
+     * Appends provided fields as a single line.
+     * @param builder builder where line will be appended.
+     * @param fields fields to be appended.
+     */
+    private void appendLine(final StringBuilder builder,
+            final String[] fields) {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                builder.append(mSeparator);
+            }
+            appendField(builder, fields[i]);
+        }
+        builder.append('\n');
+    }
+
+    /**
+     * Appends a single field escaping it as required by this format.
+     * @param builder builder where field will be appended.
+     * @param field field to be appended. Null fields are written empty.
+     */
+    private void appendField(final StringBuilder builder, final String field) {
+        if (field == null) {
+            return;
+        }
+
+        if (this == TSV) {
+            for (int i = 0; i < field.length(); i++) {
+                final char c = field.charAt(i);
+                builder.append(c == '\t' || c == '\n' || c == '\r' ? ' ' : c);
+            }
+            return;
+        }
+
+        boolean quote = false;
+        for (int i = 0; i < field.length() && !quote; i++) {
+            final char c = field.charAt(i);
+            quote = c == mSeparator || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            builder.append(field);
+            return;
+        }
+
+        builder.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            final char c = field.charAt(i);
+            if (c == '"') {
+                builder.append('"');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    /**
+     * Converts provided enumerator into a string.
+     * @param value value to be converted.
+     * @return name of value or null.
+     */
+    private static String toString(final Enum<?> value) {
+        return value != null ? value.name() : null;
+    }
+}
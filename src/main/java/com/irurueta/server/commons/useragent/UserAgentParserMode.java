@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Source of the user agent database used by {@link UserAgentDetector}.
+ * Modes differ in how much work is done synchronously while the detector is
+ * created and in whether the database is kept up to date.
+ */
+public enum UserAgentParserMode {
+    /**
+     * Database bundled in the resources module is used and never updated.
+     * This is the cheapest mode to start, as no file is written and no
+     * background task is scheduled.
+     */
+    RESOURCE_MODULE,
+
+    /**
+     * Database bundled in the resources module is cached on a temporary file
+     * and periodically updated online in background. Cached file is reused
+     * on later starts, so that updates survive restarts.
+     */
+    CACHING_AND_UPDATING,
+
+    /**
+     * Database bundled in the resources module is periodically updated
+     * online in background, without caching updates on disk.
+     */
+    ONLINE_UPDATING;
+
+    /**
+     * Returns parser mode matching provided name, ignoring case.
+     * @param name name of parser mode.
+     * @return parser mode.
+     * @throws IllegalArgumentException if name is not recognized.
+     */
+    public static UserAgentParserMode fromName(final String name) {
+        for (final UserAgentParserMode mode : values()) {
+            if (mode.name().equalsIgnoreCase(name)) {
+                return mode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown parser mode: " + name);
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+/**
+ * Immutable snapshot of the cost of evaluating a pattern of the user agent
+ * database, as recorded by {@link UserAgentPatternProfiler}.
+ */
+public class UserAgentPatternProfile {
+
+    /**
+     * Kinds of patterns of the user agent database.
+     */
+    public enum Kind {
+        /**
+         * User agents of robots, which are exactly compared against the
+         * whole user agent.
+         */
+        ROBOT,
+
+        /**
+         * Pattern detecting a browser.
+         */
+        BROWSER,
+
+        /**
+         * Pattern detecting an operating system.
+         */
+        OPERATING_SYSTEM,
+
+        /**
+         * Pattern detecting a device.
+         */
+        DEVICE
+    }
+
+    /**
+     * Kind of pattern.
+     */
+    private final Kind mKind;
+
+    /**
+     * Position of pattern within its kind, which determines evaluation order.
+     */
+    private final int mPosition;
+
+    /**
+     * Regular expression of pattern.
+     */
+    private final String mPattern;
+
+    /**
+     * Name of browser, operating system or device detected by pattern.
+     */
+    private final String mTarget;
+
+    /**
+     * Number of times pattern was evaluated.
+     */
+    private final long mInvocationCount;
+
+    /**
+     * Number of times pattern matched.
+     */
+    private final long mMatchCount;
+
+    /**
+     * Total time spent evaluating pattern expressed in nanoseconds.
+     */
+    private final long mTotalTimeNanos;
+
+    /**
+     * Total number of characters read while evaluating pattern.
+     */
+    private final long mTotalSteps;
+
+    /**
+     * Constructor.
+     * @param kind kind of pattern.
+     * @param position position of pattern within its kind.
+     * @param pattern regular expression of pattern.
+     * @param target name of browser, operating system or device detected by
+     * pattern.
+     * @param invocationCount number of times pattern was evaluated.
+     * @param matchCount number of times pattern matched.
+     * @param totalTimeNanos total time spent evaluating pattern expressed in
+     * nanoseconds.
+     * @param totalSteps total number of characters read while evaluating
+     * pattern.
+     */
+    public UserAgentPatternProfile(final Kind kind, final int position,
+            final String pattern, final String target,
+            final long invocationCount, final long matchCount,
+            final long totalTimeNanos, final long totalSteps) {
+        mKind = kind;
+        mPosition = position;
+        mPattern = pattern;
+        mTarget = target;
+        mInvocationCount = invocationCount;
+        mMatchCount = matchCount;
+        mTotalTimeNanos = totalTimeNanos;
+        mTotalSteps = totalSteps;
+    }
+
+    /**
+     * Returns kind of pattern.
+     * @return kind of pattern.
+     */
+    public Kind getKind() {
+        return mKind;
+    }
+
+    /**
+     * Returns position of pattern within its kind, which determines
+     * evaluation order.
+     * @return position of pattern.
+     */
+    public int getPosition() {
+        return mPosition;
+    }
+
+    /**
+     * Returns regular expression of pattern.
+     * @return regular expression of pattern.
+     */
+    public String getPattern() {
+        return mPattern;
+    }
+
+    /**
+     * Returns name of browser, operating system or device detected by
+     * pattern.
+     * @return name of detected target.
+     */
+    public String getTarget() {
+        return mTarget;
+    }
+
+    /**
+     * Returns number of times pattern was evaluated.
+     * @return number of invocations.
+     */
+    public long getInvocationCount() {
+        return mInvocationCount;
+    }
+
+    /**
+     * Returns number of times pattern matched.
+     * @return number of matches.
+     */
+    public long getMatchCount() {
+        return mMatchCount;
+    }
+
+    /**
+     * Returns total time spent evaluating pattern expressed in nanoseconds.
+     * @return total time expressed in nanoseconds.
+     */
+    public long getTotalTimeNanos() {
+        return mTotalTimeNanos;
+    }
+
+    /**
+     * Returns total number of characters read while evaluating pattern.
+     * Unlike time, steps do not depend on machine load, hence they are a
+     * stable measure of the cost of a pattern.
+     * @return total number of steps.
+     */
+    public long getTotalSteps() {
+        return mTotalSteps;
+    }
+
+    /**
+     * Returns average time spent on each evaluation expressed in nanoseconds.
+     * @return average time expressed in nanoseconds or zero if pattern was
+     * never evaluated.
+     */
+    public double getAverageTimeNanos() {
+        return mInvocationCount > 0 ?
+                (double) mTotalTimeNanos / mInvocationCount : 0.0;
+    }
+}
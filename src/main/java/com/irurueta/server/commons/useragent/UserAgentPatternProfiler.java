@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records invocation counts, matches and cumulative cost of each pattern of
+ * the user agent database evaluated while parsing user agents.
+ * Profiling is opt-in because measuring each pattern adds overhead to every
+ * parse. Ranked reports show which patterns account for most of the parsing
+ * time for the observed traffic, and hence which ones are worth rewriting or
+ * reordering.
+ * This class is thread safe.
+ */
+public class UserAgentPatternProfiler {
+
+    /**
+     * Counters of each pattern indexed by its kind, position and regular
+     * expression, so that equal patterns of distinct copies of the database
+     * (i.e. parser replicas or reloaded data) share their counters.
+     */
+    private final ConcurrentMap<Key, Counter> mCounters =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Returns counter of provided pattern, creating it if needed.
+     * @param kind kind of pattern.
+     * @param position position of pattern within its kind.
+     * @param pattern regular expression of pattern.
+     * @param target name of browser, operating system or device detected by
+     * pattern.
+     * @return counter of pattern.
+     */
+    Counter counter(final UserAgentPatternProfile.Kind kind,
+            final int position, final String pattern, final String target) {
+        final Key key = new Key(kind, position, pattern);
+        Counter counter = mCounters.get(key);
+        if (counter == null) {
+            final Counter newCounter = new Counter(kind, position, pattern,
+                    target);
+            counter = mCounters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Returns profiles of all evaluated patterns, ranked by descending total
+     * time.
+     * @return ranked profiles.
+     */
+    public List<UserAgentPatternProfile> getProfiles() {
+        final List<UserAgentPatternProfile> profiles = new ArrayList<>(
+                mCounters.size());
+        for (final Counter counter : mCounters.values()) {
+            profiles.add(counter.snapshot());
+        }
+        Collections.sort(profiles, new Comparator<UserAgentPatternProfile>() {
+            @Override
+            public int compare(final UserAgentPatternProfile o1,
+                    final UserAgentPatternProfile o2) {
+                final int result = Long.compare(o2.getTotalTimeNanos(),
+                        o1.getTotalTimeNanos());
+                return result != 0 ? result : Long.compare(
+                        o2.getTotalSteps(), o1.getTotalSteps());
+            }
+        });
+        return profiles;
+    }
+
+    /**
+     * Removes all recorded data.
+     */
+    public void reset() {
+        mCounters.clear();
+    }
+
+    /**
+     * Appends a report of the most expensive patterns, ranked by descending
+     * total time, including the share of the total time of each pattern.
+     * @param out where report will be appended.
+     * @param limit maximum number of patterns to include.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void appendReport(final Appendable out, final int limit)
+            throws IOException {
+        final List<UserAgentPatternProfile> profiles = getProfiles();
+        long totalNanos = 0;
+        for (final UserAgentPatternProfile profile : profiles) {
+            totalNanos += profile.getTotalTimeNanos();
+        }
+
+        out.append(String.format(Locale.ENGLISH,
+                "%4s %-16s %5s %12s %10s %7s %10s %9s %14s  %s%n", "rank",
+                "kind", "pos", "invocations", "matches", "time%",
+                "total ms", "avg ns", "steps", "target / pattern"));
+        final int n = Math.min(limit, profiles.size());
+        for (int i = 0; i < n; i++) {
+            final UserAgentPatternProfile profile = profiles.get(i);
+            out.append(String.format(Locale.ENGLISH,
+                    "%4d %-16s %5d %12d %10d %6.2f%% %10.3f %9.0f %14d  " +
+                            "%s / %s%n", i + 1, profile.getKind(),
+                    profile.getPosition(), profile.getInvocationCount(),
+                    profile.getMatchCount(), totalNanos > 0 ?
+                            100.0 * profile.getTotalTimeNanos() / totalNanos :
+                            0.0, profile.getTotalTimeNanos() / 1e6,
+                    profile.getAverageTimeNanos(), profile.getTotalSteps(),
+                    profile.getTarget(), profile.getPattern()));
+        }
+    }
+
+    /**
+     * Identifies a pattern by value.
+     */
+    private static final class Key {
+
+        /**
+         * Kind of pattern.
+         */
+        private final UserAgentPatternProfile.Kind mKind;
+
+        /**
+         * Position of pattern within its kind.
+         */
+        private final int mPosition;
+
+        /**
+         * Regular expression of pattern.
+         */
+        private final String mPattern;
+
+        /**
+         * Constructor.
+         * @param kind kind of pattern.
+         * @param position position of pattern within its kind.
+         * @param pattern regular expression of pattern.
+         */
+        private Key(final UserAgentPatternProfile.Kind kind,
+                final int position, final String pattern) {
+            mKind = kind;
+            mPosition = position;
+            mPattern = pattern;
+        }
+
+        /**
+         * Indicates whether provided object identifies the same pattern.
+         * @param obj object to compare.
+         * @return true if both identify the same pattern, false otherwise.
+         */
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return mKind == other.mKind && mPosition == other.mPosition &&
+                    mPattern.equals(other.mPattern);
+        }
+
+        /**
+         * Returns hash code of this key.
+         * @return hash code.
+         */
+        @Override
+        public int hashCode() {
+            return (mKind.hashCode() * 31 + mPosition) * 31 +
+                    mPattern.hashCode();
+        }
+    }
+
+    /**
+     * Counters of a single pattern.
+     */
+    static class Counter {
+
+        /**
+         * Kind of pattern.
+         */
+        private final UserAgentPatternProfile.Kind mKind;
+
+        /**
+         * Position of pattern within its kind.
+         */
+        private final int mPosition;
+
+        /**
+         * Regular expression of pattern.
+         */
+        private final String mPattern;
+
+        /**
+         * Name of browser, operating system or device detected by pattern.
+         */
+        private final String mTarget;
+
+        /**
+         * Number of times pattern was evaluated.
+         */
+        private final AtomicLong mInvocationCount = new AtomicLong();
+
+        /**
+         * Number of times pattern matched.
+         */
+        private final AtomicLong mMatchCount = new AtomicLong();
+
+        /**
+         * Total time spent evaluating pattern expressed in nanoseconds.
+         */
+        private final AtomicLong mTotalTimeNanos = new AtomicLong();
+
+        /**
+         * Total number of characters read while evaluating pattern.
+         */
+        private final AtomicLong mTotalSteps = new AtomicLong();
+
+        /**
+         * Constructor.
+         * @param kind kind of pattern.
+         * @param position position of pattern within its kind.
+         * @param pattern regular expression of pattern.
+         * @param target name of detected browser, operating system or device.
+         */
+        Counter(final UserAgentPatternProfile.Kind kind, final int position,
+                final String pattern, final String target) {
+            mKind = kind;
+            mPosition = position;
+            mPattern = pattern;
+            mTarget = target;
+        }
+
+        /**
+         * Records an evaluation of the pattern.
+         * @param matched true if pattern matched.
+         * @param nanos time spent expressed in nanoseconds.
+         * @param steps number of characters read.
+         */
+        void record(final boolean matched, final long nanos, final long steps) {
+            mInvocationCount.incrementAndGet();
+            if (matched) {
+                mMatchCount.incrementAndGet();
+            }
+            mTotalTimeNanos.addAndGet(nanos);
+            mTotalSteps.addAndGet(steps);
+        }
+
+        /**
+         * Takes a snapshot of current values.
+         * @return snapshot of current values.
+         */
+        UserAgentPatternProfile snapshot() {
+            return new UserAgentPatternProfile(mKind, mPosition, mPattern,
+                    mTarget, mInvocationCount.get(), mMatchCount.get(),
+                    mTotalTimeNanos.get(), mTotalSteps.get());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of distinct detection results, each one identified by a small integer.
+ * Millions of distinct user agents collapse into a few thousand distinct
+ * results, hence storing the identifier of a result instead of the result
+ * itself allows identical results to be stored only once, and allows results
+ * to be grouped or compared by their identifier instead of field by field.
+ * Versions of operating system and user agent are not part of results, as
+ * they take far more distinct values than any other field and would make
+ * the number of distinct results grow with every release of a browser or
+ * operating system.
+ * Results are kept using their compact representation and are never removed,
+ * so that identifiers remain valid for the lifetime of the pool. Once the
+ * pool is full, new results cannot be interned, which is logged and counted.
+ * This class is thread safe. Interning known results and obtaining results by
+ * identifier do not lock.
+ */
+public class UserAgentResultPool {
+
+    /**
+     * Identifier returned when a result cannot be interned.
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * Logger for this class.
+     */
+    private static final Logger LOG = Logger.getLogger(
+            UserAgentResultPool.class.getName());
+
+    /**
+     * Identifiers indexed by result.
+     */
+    private final Map<CompactUserAgentData, Integer> mIds =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Results indexed by identifier.
+     */
+    private final AtomicReferenceArray<CompactUserAgentData> mResults;
+
+    /**
+     * Number of interned results.
+     */
+    private volatile int mSize;
+
+    /**
+     * Number of results that could not be interned.
+     */
+    private final AtomicLong mRejectedCount = new AtomicLong();
+
+    /**
+     * Constructor.
+     * @param capacity maximum number of distinct results.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    public UserAgentResultPool(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mResults = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Returns maximum number of distinct results.
+     * @return maximum number of distinct results.
+     */
+    public int getCapacity() {
+        return mResults.length();
+    }
+
+    /**
+     * Returns number of interned results.
+     * @return number of interned results.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns number of results that could not be interned, either because
+     * pool was full or because they could not be represented in compact form.
+     * @return number of rejected results.
+     */
+    public long getRejectedCount() {
+        return mRejectedCount.get();
+    }
+
+    /**
+     * Returns identifier of the result contained in provided data, adding
+     * it to the pool if needed. The user agent and versions of provided data
+     * are ignored.
+     * @param data detected data.
+     * @return identifier of result or {@link #NO_ID} if pool is full or
+     * result cannot be represented in compact form.
+     */
+    public int intern(final UserAgentData data) {
+        final UserAgentData outcome = new UserAgentData(data);
+        outcome.setOsVersion(null);
+        outcome.setUserAgentVersion(null);
+        final CompactUserAgentData result =
+                CompactUserAgentData.fromUserAgentData(outcome);
+        if (result == null) {
+            reject();
+            return NO_ID;
+        }
+        final Integer id = mIds.get(result);
+        return id != null ? id : add(result);
+    }
+
+    /**
+     * Returns result having provided identifier.
+     * @param id identifier of result.
+     * @return result or null if no result has provided identifier.
+     */
+    public CompactUserAgentData get(final int id) {
+        return id >= 0 && id < mResults.length() ? mResults.get(id) : null;
+    }
+
+    /**
+     * Converts result having provided identifier into user agent data, whose
+     * versions are null.
+     * @param id identifier of result.
+     * @param userAgent original user agent string.
+     * @return user agent data or null if no result has provided identifier.
+     */
+    public UserAgentData toUserAgentData(final int id,
+            final String userAgent) {
+        final CompactUserAgentData result = get(id);
+        return result != null ? result.toUserAgentData(userAgent) : null;
+    }
+
+    /**
+     * Adds provided result unless another thread already did.
+     * @param result result to be added.
+     * @return identifier of result or {@link #NO_ID} if pool is full.
+     */
+    private synchronized int add(final CompactUserAgentData result) {
+        final Integer id = mIds.get(result);
+        if (id != null) {
+            return id;
+        }
+        final int size = mSize;
+        if (size == mResults.length()) {
+            reject();
+            return NO_ID;
+        }
+        mResults.set(size, result);
+        mIds.put(result, size);
+        mSize = size + 1;
+        return size;
+    }
+
+    /**
+     * Counts a result that could not be interned, logging the first one.
+     */
+    private void reject() {
+        if (mRejectedCount.getAndIncrement() == 0) {
+            LOG.log(Level.WARNING, "User agent result could not be " +
+                    "interned, as pool of {0} results or dictionary of " +
+                    "strings is full", mResults.length());
+        }
+    }
+}
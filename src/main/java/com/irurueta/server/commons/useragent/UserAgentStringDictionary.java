@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded dictionary assigning small numeric identifiers to the strings
+ * contained in detected data (i.e. families, operating system names or
+ * versions), which take a small set of values repeated across many user
+ * agents. Identifiers are never reassigned, so that they can be stored
+ * outside the heap or packed into compact representations.
+ * Identifiers of known strings are obtained without locking, while assigning
+ * new identifiers is synchronized. Strings of identifiers can be read
+ * concurrently by any thread that obtained the identifier from a structure
+ * safely published after the identifier was assigned.
+ */
+final class UserAgentStringDictionary {
+
+    /**
+     * Identifier representing null strings.
+     */
+    static final int NULL_ID = -1;
+
+    /**
+     * Value returned when a string cannot be added because the dictionary is
+     * full.
+     */
+    static final int FULL = -2;
+
+    /**
+     * Identifiers indexed by string.
+     */
+    private final Map<String, Integer> mIds = new ConcurrentHashMap<>();
+
+    /**
+     * Strings indexed by identifier.
+     */
+    private final String[] mValues;
+
+    /**
+     * Number of assigned identifiers.
+     */
+    private int mSize;
+
+    /**
+     * Constructor.
+     * @param capacity maximum number of strings.
+     * @throws IllegalArgumentException if capacity is not positive.
+     */
+    UserAgentStringDictionary(final int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mValues = new String[capacity];
+    }
+
+    /**
+     * Returns maximum number of strings.
+     * @return maximum number of strings.
+     */
+    int getCapacity() {
+        return mValues.length;
+    }
+
+    /**
+     * Returns number of strings contained in the dictionary.
+     * @return number of strings.
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Returns identifier of provided string, adding it if needed.
+     * @param value string.
+     * @return identifier of string, {@link #NULL_ID} if string is null, or
+     * {@link #FULL} if string is not contained and cannot be added.
+     */
+    int idOf(final String value) {
+        if (value == null) {
+            return NULL_ID;
+        }
+        final Integer id = mIds.get(value);
+        return id != null ? id : add(value);
+    }
+
+    /**
+     * Adds provided string unless another thread already did.
+     * @param value string.
+     * @return identifier of string or {@link #FULL} if dictionary is full.
+     */
+    private synchronized int add(final String value) {
+        final Integer id = mIds.get(value);
+        if (id != null) {
+            return id;
+        }
+        if (mSize == mValues.length) {
+            return FULL;
+        }
+        // value is stored before publishing its identifier
+        mValues[mSize] = value;
+        mIds.put(value, mSize);
+        return mSize++;
+    }
+
+    /**
+     * Returns string of provided identifier.
+     * @param id identifier obtained using {@link #idOf(String)}.
+     * @return string or null if identifier is {@link #NULL_ID}.
+     */
+    String get(final int id) {
+        return id == NULL_ID ? null : mValues[id];
+    }
+}
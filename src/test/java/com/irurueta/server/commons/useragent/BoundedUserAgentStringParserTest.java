@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import net.sf.uadetector.ReadableUserAgent;
+import net.sf.uadetector.UserAgentStringParser;
+import net.sf.uadetector.internal.data.Data;
+import net.sf.uadetector.internal.data.domain.BrowserPattern;
+import net.sf.uadetector.service.UADetectorServiceFactory;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BoundedUserAgentStringParserTest {
+
+    private static final String[] USER_AGENTS = new String[]{
+            "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.1; SV1; " +
+                    ".NET CLR 1.1.4322)",
+            "Mozilla/5.0 (Windows NT 6.1; WOW64; rv:40.0) Gecko/20100101 " +
+                    "Firefox/40.1",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_10_1) " +
+                    "AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/41.0.2227.1 Safari/537.36",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 8_0 like Mac OS X) " +
+                    "AppleWebKit/600.1.4 (KHTML, like Gecko) Version/8.0 " +
+                    "Mobile/12A365 Safari/600.1.4",
+            "Mozilla/5.0 (Linux; Android 4.4.2; Nexus 7 Build/KOT49H) " +
+                    "AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/34.0.1847.114 Safari/537.36",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; " +
+                    "+http://www.google.com/bot.html)",
+            "curl/7.35.0",
+            "Unknown/1.0",
+            ""
+    };
+
+    @Test
+    public void testConstructor() {
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(100,
+                        1000L);
+        assertEquals(parser.getMaxLength(), 100);
+        assertEquals(parser.getMaxSteps(), 1000L);
+        assertEquals(parser.getBudgetExceededCount(), 0);
+        assertNotNull(parser.getDataVersion());
+
+        // Force IllegalArgumentException
+        try {
+            new BoundedUserAgentStringParser(null, null, 100, 1000L);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            BoundedUserAgentStringParser.createCachingAndUpdating(0, 1000L);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            BoundedUserAgentStringParser.createCachingAndUpdating(100, 0L);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testCreate() {
+        final UserAgentStringParser reference =
+                UADetectorServiceFactory.getResourceModuleParser();
+        for (final UserAgentParserMode mode : UserAgentParserMode.values()) {
+            final BoundedUserAgentStringParser parser =
+                    BoundedUserAgentStringParser.create(mode, 100, 1000000000L,
+                            null);
+            assertEquals(parser.getMaxLength(), 100);
+            assertEquals(parser.getMaxSteps(), 1000000000L);
+            assertNull(parser.getProfiler());
+            assertNotNull(parser.getDataVersion());
+            assertEquals(parser.parse(USER_AGENTS[0]).toString(),
+                    reference.parse(USER_AGENTS[0]).toString());
+        }
+
+        // Force IllegalArgumentException
+        try {
+            BoundedUserAgentStringParser.create(null, 100, 1000L, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testParseMatchesUnboundedParser() {
+        final UserAgentStringParser reference =
+                UADetectorServiceFactory.getResourceModuleParser();
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+
+        for (final String userAgent : USER_AGENTS) {
+            assertEquals(parser.parse(userAgent).toString(),
+                    reference.parse(userAgent).toString());
+        }
+        assertEquals(parser.getBudgetExceededCount(), 0);
+    }
+
+    @Test
+    public void testParseWithFieldMask() {
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+
+        for (final String userAgent : USER_AGENTS) {
+            final ReadableUserAgent full = parser.parse(userAgent);
+            assertEquals(parser.parse(userAgent,
+                    UserAgentField.ALL_MASK).toString(), full.toString());
+
+            // browser is always matched, whereas version, operating system
+            // and device are skipped
+            final ReadableUserAgent projected = parser.parse(userAgent,
+                    UserAgentField.USER_AGENT_TYPE.getMask());
+            assertEquals(projected.getName(), full.getName());
+            assertEquals(projected.getType(), full.getType());
+
+            final ReadableUserAgent versioned = parser.parse(userAgent,
+                    UserAgentField.USER_AGENT_VERSION.getMask());
+            assertEquals(versioned.getVersionNumber(),
+                    full.getVersionNumber());
+
+            final ReadableUserAgent os = parser.parse(userAgent,
+                    UserAgentField.OPERATING_SYSTEM.getMask());
+            assertEquals(os.getOperatingSystem(), full.getOperatingSystem());
+
+            final ReadableUserAgent device = parser.parse(userAgent,
+                    UserAgentField.DEVICE_CATEGORY.getMask());
+            assertEquals(device.getDeviceCategory(), full.getDeviceCategory());
+        }
+
+        final ReadableUserAgent chrome = parser.parse(USER_AGENTS[2],
+                UserAgentField.USER_AGENT_TYPE.getMask());
+        assertEquals(chrome.getVersionNumber().toVersionString(), "");
+        assertEquals(chrome.getOperatingSystem(),
+                net.sf.uadetector.OperatingSystem.EMPTY);
+        assertEquals(chrome.getDeviceCategory(),
+                net.sf.uadetector.DeviceCategory.EMPTY);
+    }
+
+    @Test
+    public void testIsRobot() {
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+
+        for (final String userAgent : USER_AGENTS) {
+            assertEquals(parser.isRobot(userAgent),
+                    parser.parse(userAgent).getType() ==
+                            net.sf.uadetector.UserAgentType.ROBOT);
+        }
+        assertTrue(parser.isRobot(USER_AGENTS[5]));
+        assertFalse(parser.isRobot(USER_AGENTS[2]));
+        assertFalse(parser.isRobot(null));
+
+        // robots must match exactly
+        assertFalse(parser.isRobot(USER_AGENTS[5] + " "));
+    }
+
+    @Test
+    public void testSnapshot() {
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.create(
+                        UserAgentParserMode.RESOURCE_MODULE,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS, null);
+        final BoundedUserAgentStringParser snapshot = parser.snapshot();
+
+        assertNotSame(snapshot, parser);
+        assertEquals(snapshot.getDataVersion(), parser.getDataVersion());
+        assertEquals(snapshot.getMaxLength(), parser.getMaxLength());
+        assertEquals(snapshot.getMaxSteps(), parser.getMaxSteps());
+        assertFalse(parser.isStale());
+        assertFalse(snapshot.isStale());
+        for (final String userAgent : USER_AGENTS) {
+            assertEquals(snapshot.parse(userAgent).toString(),
+                    parser.parse(userAgent).toString());
+        }
+
+        // data bundled in resources module cannot be refreshed
+        assertFalse(snapshot.refresh());
+    }
+
+    @Test
+    public void testReplicateSharesNoMutableState() {
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.create(
+                        UserAgentParserMode.RESOURCE_MODULE,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH, 100L, null)
+                        .snapshot();
+        final BoundedUserAgentStringParser replica = parser.replicate();
+
+        assertNotSame(replica, parser);
+        assertEquals(replica.getDataVersion(), parser.getDataVersion());
+        assertEquals(replica.getMaxLength(), parser.getMaxLength());
+        assertEquals(replica.getMaxSteps(), parser.getMaxSteps());
+        assertFalse(replica.isStale());
+
+        // data is copied, including its patterns
+        final Data data = parser.getData();
+        final Data replicaData = replica.getData();
+        assertNotSame(replicaData, data);
+        assertEquals(replicaData, data);
+        final BrowserPattern pattern = data.getPatternToBrowserMap()
+                .firstKey();
+        final BrowserPattern replicaPattern = replicaData
+                .getPatternToBrowserMap().firstKey();
+        assertEquals(replicaPattern, pattern);
+        assertNotSame(replicaPattern.getPattern(), pattern.getPattern());
+
+        // robots are indexed separately
+        assertTrue(parser.isRobot(USER_AGENTS[5]));
+        assertTrue(replica.isRobot(USER_AGENTS[5]));
+        assertNotNull(parser.getLastRobotIndex());
+        assertNotSame(replica.getLastRobotIndex(),
+                parser.getLastRobotIndex());
+
+        // budget counters are separate
+        replica.parse(USER_AGENTS[2]);
+        assertEquals(replica.getBudgetExceededCount(), 1);
+        assertEquals(parser.getBudgetExceededCount(), 0);
+
+        // results are identical
+        final BoundedUserAgentStringParser other =
+                BoundedUserAgentStringParser.create(
+                        UserAgentParserMode.RESOURCE_MODULE,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS, null);
+        final BoundedUserAgentStringParser otherReplica =
+                other.replicate();
+        for (final String userAgent : USER_AGENTS) {
+            assertEquals(otherReplica.parse(userAgent).toString(),
+                    other.parse(userAgent).toString());
+        }
+    }
+
+    @Test
+    public void testParseTruncatesLongUserAgents() {
+        final StringBuilder builder = new StringBuilder(USER_AGENTS[1]);
+        while (builder.length() < 10000) {
+            builder.append(" Extension/1.0");
+        }
+        final String longUserAgent = builder.toString();
+
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        USER_AGENTS[1].length(),
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+
+        final ReadableUserAgent result = parser.parse(longUserAgent);
+        assertEquals(result.toString(),
+                parser.parse(USER_AGENTS[1]).toString());
+        assertEquals(result.getFamily(),
+                net.sf.uadetector.UserAgentFamily.FIREFOX);
+    }
+
+    @Test
+    public void testParseWithExhaustedBudget() {
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH, 100L);
+
+        final ReadableUserAgent result = parser.parse(USER_AGENTS[2]);
+        assertEquals(result.getType(),
+                net.sf.uadetector.UserAgentType.UNKNOWN);
+        assertEquals(result.getFamily(),
+                net.sf.uadetector.UserAgentFamily.UNKNOWN);
+        assertEquals(parser.getBudgetExceededCount(), 1);
+
+        // robots are matched exactly without consuming budget
+        assertEquals(parser.parse(USER_AGENTS[5]).getType(),
+                net.sf.uadetector.UserAgentType.ROBOT);
+        assertEquals(parser.getBudgetExceededCount(), 1);
+    }
+
+    @Test
+    public void testTruncate() {
+        assertSame(BoundedUserAgentStringParser.truncate("abc", 3), "abc");
+        assertEquals(BoundedUserAgentStringParser.truncate("abcdef", 3),
+                "abc");
+
+        // surrogate pairs are never split
+        final String emoji = "ab😀c";
+        assertEquals(BoundedUserAgentStringParser.truncate(emoji, 3), "ab");
+        assertEquals(BoundedUserAgentStringParser.truncate(emoji, 4),
+                "ab😀");
+    }
+
+    @Test
+    public void testParseWithProfiler() {
+        final UserAgentPatternProfiler profiler =
+                new UserAgentPatternProfiler();
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS, profiler);
+        assertSame(parser.getProfiler(), profiler);
+
+        final BoundedUserAgentStringParser unprofiled =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+        assertNull(unprofiled.getProfiler());
+
+        // profiling does not change results
+        for (final String userAgent : USER_AGENTS) {
+            assertEquals(parser.parse(userAgent).toString(),
+                    unprofiled.parse(userAgent).toString());
+        }
+
+        final List<UserAgentPatternProfile> profiles = profiler.getProfiles();
+        assertFalse(profiles.isEmpty());
+
+        long robotInvocations = 0;
+        long matches = 0;
+        long steps = 0;
+        for (final UserAgentPatternProfile profile : profiles) {
+            if (profile.getKind() == UserAgentPatternProfile.Kind.ROBOT) {
+                robotInvocations += profile.getInvocationCount();
+            }
+            matches += profile.getMatchCount();
+            steps += profile.getTotalSteps();
+            assertTrue(profile.getMatchCount() <=
+                    profile.getInvocationCount());
+        }
+        assertEquals(robotInvocations, USER_AGENTS.length);
+        assertTrue(matches > USER_AGENTS.length);
+        assertTrue(steps > 0);
+    }
+
+    @Test
+    public void testReplicasShareProfiles() {
+        final UserAgentPatternProfiler profiler =
+                new UserAgentPatternProfiler();
+        final BoundedUserAgentStringParser parser =
+                BoundedUserAgentStringParser.createCachingAndUpdating(
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_MAX_LENGTH,
+                        UserAgentConfigurationFactory.
+                                DEFAULT_USER_AGENT_PARSE_MAX_STEPS, profiler);
+        final BoundedUserAgentStringParser snapshot = parser.snapshot();
+        final BoundedUserAgentStringParser replica = parser.replicate();
+
+        snapshot.parse(USER_AGENTS[2]);
+        final List<UserAgentPatternProfile> single = profiler.getProfiles();
+
+        // replica has its own copies of patterns, which share counters
+        replica.parse(USER_AGENTS[2]);
+        final List<UserAgentPatternProfile> both = profiler.getProfiles();
+        assertEquals(both.size(), single.size());
+
+        final Set<String> rows = new HashSet<>();
+        long invocations = 0;
+        for (final UserAgentPatternProfile profile : both) {
+            assertTrue(rows.add(profile.getKind() + "/" +
+                    profile.getPosition() + "/" + profile.getPattern()));
+            invocations += profile.getInvocationCount();
+        }
+        long singleInvocations = 0;
+        for (final UserAgentPatternProfile profile : single) {
+            singleInvocations += profile.getInvocationCount();
+        }
+        assertEquals(invocations, 2 * singleInvocations);
+    }
+}
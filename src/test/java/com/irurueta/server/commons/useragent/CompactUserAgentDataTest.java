@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CompactUserAgentDataTest {
+
+    @Test
+    public void testFromAndToUserAgentData() {
+        final UserAgentData data = new UserAgentData("user-agent-string",
+                DeviceCategory.SMARTPHONE, "Smartphone", "Chrome Mobile",
+                OperatingSystemFamily.ANDROID, "Android", "Android 12",
+                "Google, Inc.", "12", UserAgentType.MOBILE_BROWSER,
+                "99.0.4844.51");
+
+        final CompactUserAgentData compact =
+                CompactUserAgentData.fromUserAgentData(data);
+        assertEquals(compact.getDeviceCategory(), DeviceCategory.SMARTPHONE);
+        assertEquals(compact.getDeviceCategoryName(), "Smartphone");
+        assertEquals(compact.getFamily(), "Chrome Mobile");
+        assertEquals(compact.getOsFamily(), OperatingSystemFamily.ANDROID);
+        assertEquals(compact.getOsFamilyName(), "Android");
+        assertEquals(compact.getOsName(), "Android 12");
+        assertEquals(compact.getOsProducer(), "Google, Inc.");
+        assertEquals(compact.getOsVersion(), "12");
+        assertEquals(compact.getUserAgentType(), UserAgentType.MOBILE_BROWSER);
+        assertEquals(compact.getUserAgentVersion(), "99.0.4844.51");
+        assertEquals(compact.isDesktop(), data.isDesktop());
+        assertEquals(compact.isMobile(), data.isMobile());
+        assertEquals(compact.isTablet(), data.isTablet());
+        assertEquals(compact.isSmartTV(), data.isSmartTV());
+
+        final UserAgentData data2 = compact.toUserAgentData(
+                "user-agent-string");
+        assertEquals(data2.getUserAgent(), "user-agent-string");
+        assertEquals(data2.getDeviceCategory(), data.getDeviceCategory());
+        assertEquals(data2.getDeviceCategoryName(),
+                data.getDeviceCategoryName());
+        assertEquals(data2.getFamily(), data.getFamily());
+        assertEquals(data2.getOsFamily(), data.getOsFamily());
+        assertEquals(data2.getOsFamilyName(), data.getOsFamilyName());
+        assertEquals(data2.getOsName(), data.getOsName());
+        assertEquals(data2.getOsProducer(), data.getOsProducer());
+        assertEquals(data2.getOsVersion(), data.getOsVersion());
+        assertEquals(data2.getUserAgentType(), data.getUserAgentType());
+        assertEquals(data2.getUserAgentVersion(), data.getUserAgentVersion());
+    }
+
+    @Test
+    public void testNullValues() {
+        final CompactUserAgentData compact =
+                CompactUserAgentData.fromUserAgentData(new UserAgentData(null,
+                        null, null, null, null, null, null, null, null, null,
+                        null));
+        assertNull(compact.getDeviceCategory());
+        assertNull(compact.getDeviceCategoryName());
+        assertNull(compact.getFamily());
+        assertNull(compact.getOsFamily());
+        assertNull(compact.getOsFamilyName());
+        assertNull(compact.getOsName());
+        assertNull(compact.getOsProducer());
+        assertNull(compact.getOsVersion());
+        assertNull(compact.getUserAgentType());
+        assertNull(compact.getUserAgentVersion());
+        assertTrue(compact.isDesktop());
+        assertFalse(compact.isMobile());
+        assertFalse(compact.isTablet());
+        assertFalse(compact.isSmartTV());
+    }
+
+    @Test
+    public void testDeviceFlags() {
+        for (final UserAgentType type : UserAgentType.values()) {
+            for (final DeviceCategory category : DeviceCategory.values()) {
+                final UserAgentData data = new UserAgentData(null, category,
+                        null, null, null, null, null, null, null, type, null);
+                final CompactUserAgentData compact =
+                        CompactUserAgentData.fromUserAgentData(data);
+                assertEquals(compact.getDeviceCategory(), category);
+                assertEquals(compact.getUserAgentType(), type);
+                assertEquals(compact.isDesktop(), data.isDesktop());
+                assertEquals(compact.isMobile(), data.isMobile());
+                assertEquals(compact.isTablet(), data.isTablet());
+                assertEquals(compact.isSmartTV(), data.isSmartTV());
+            }
+        }
+        for (final OperatingSystemFamily family :
+                OperatingSystemFamily.values()) {
+            final CompactUserAgentData compact =
+                    CompactUserAgentData.fromUserAgentData(new UserAgentData(
+                            null, null, null, null, family, null, null, null,
+                            null, null, null));
+            assertEquals(compact.getOsFamily(), family);
+        }
+    }
+
+    @Test
+    public void testPackVersion() {
+        assertTrue(CompactUserAgentData.packVersion("99") >= 0);
+        assertTrue(CompactUserAgentData.packVersion("99.0") >= 0);
+        assertTrue(CompactUserAgentData.packVersion("0.1.16383.255") >= 0);
+
+        assertEquals(CompactUserAgentData.packVersion(null), -1);
+        assertEquals(CompactUserAgentData.packVersion(""), -1);
+        assertEquals(CompactUserAgentData.packVersion("1.2.3.4.5"), -1);
+        assertEquals(CompactUserAgentData.packVersion("1..2"), -1);
+        assertEquals(CompactUserAgentData.packVersion("1.2."), -1);
+        assertEquals(CompactUserAgentData.packVersion(".1"), -1);
+        assertEquals(CompactUserAgentData.packVersion("1.02"), -1);
+        assertEquals(CompactUserAgentData.packVersion("1.0b"), -1);
+        assertEquals(CompactUserAgentData.packVersion("512.0"), -1);
+        assertEquals(CompactUserAgentData.packVersion("1.2.16384"), -1);
+    }
+
+    @Test
+    public void testVersions() {
+        final String[] versions = {
+                "99", "99.0", "15.4", "91.0.1", "99.0.4844.51", "0",
+                "0.1.16383.255", "537.36", "1.02", "1.2.3.4.5", "11.0b", "",
+                "-"
+        };
+        for (final String version : versions) {
+            final CompactUserAgentData compact =
+                    CompactUserAgentData.fromUserAgentData(new UserAgentData(
+                            null, null, null, null, null, null, null, null,
+                            null, null, version));
+            assertEquals(compact.getUserAgentVersion(), version);
+        }
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        final UserAgentData data = new UserAgentData("user-agent-string",
+                DeviceCategory.PERSONAL_COMPUTER, "Personal computer",
+                "Firefox", OperatingSystemFamily.LINUX, "Linux", "Linux",
+                "", "", UserAgentType.BROWSER, "91.0");
+        final CompactUserAgentData compact1 =
+                CompactUserAgentData.fromUserAgentData(data);
+        final CompactUserAgentData compact2 =
+                CompactUserAgentData.fromUserAgentData(new UserAgentData(data));
+
+        // user agent is not part of compact data
+        data.setUserAgent("other-user-agent-string");
+        final CompactUserAgentData compact3 =
+                CompactUserAgentData.fromUserAgentData(data);
+        data.setUserAgentVersion("92.0");
+        final CompactUserAgentData compact4 =
+                CompactUserAgentData.fromUserAgentData(data);
+        data.setFamily("Chrome");
+        final CompactUserAgentData compact5 =
+                CompactUserAgentData.fromUserAgentData(data);
+
+        assertEquals(compact1, compact1);
+        assertEquals(compact1, compact2);
+        assertEquals(compact1.hashCode(), compact2.hashCode());
+        assertEquals(compact1, compact3);
+        assertNotEquals(compact1, compact4);
+        assertNotEquals(compact4, compact5);
+        assertNotEquals(compact1, new Object());
+        assertNotEquals(compact1, null);
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentUserAgentCacheTest {
+
+    private static final String PREFIX = "Mozilla/5.0 (Windows NT 10.0; " +
+            "Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/";
+
+    @Test
+    public void testConstructor() {
+        ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        assertEquals(cache.size(), 0);
+        assertTrue(cache.getReadBufferCount() >= Math.min(
+                Runtime.getRuntime().availableProcessors(),
+                ConcurrentUserAgentCache.MAX_READ_BUFFERS));
+
+        cache = new ConcurrentUserAgentCache(10, 1, TimeUnit.HOURS, 5);
+        assertEquals(cache.getReadBufferCount(), 8);
+        cache = new ConcurrentUserAgentCache(10, 1, TimeUnit.HOURS, 1000);
+        assertEquals(cache.getReadBufferCount(),
+                ConcurrentUserAgentCache.MAX_READ_BUFFERS);
+
+        // Force IllegalArgumentException
+        try {
+            new ConcurrentUserAgentCache(0, 1, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ConcurrentUserAgentCache(10, 0, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ConcurrentUserAgentCache(10, 1, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new ConcurrentUserAgentCache(10, 1, TimeUnit.HOURS, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPut() {
+        final ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(
+                10, 1, TimeUnit.HOURS);
+        assertNull(cache.getIfPresent(PREFIX + "99.0"));
+
+        cache.put(PREFIX + "99.0", createData(PREFIX + "99.0"));
+        assertEquals(cache.size(), 1);
+
+        final UserAgentData first = cache.getIfPresent(PREFIX + "99.0");
+        assertEquals(first.getUserAgent(), PREFIX + "99.0");
+        assertEquals(first.getFamily(), "family");
+
+        // cached instances are never exposed
+        first.setFamily("modified");
+        final UserAgentData second = cache.getIfPresent(PREFIX + "99.0");
+        assertNotSame(second, first);
+        assertEquals(second.getFamily(), "family");
+
+        // replacing an entry keeps a single one
+        final UserAgentData data = createData(PREFIX + "99.0");
+        data.setFamily("other");
+        cache.put(PREFIX + "99.0", data);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getIfPresent(PREFIX + "99.0").getFamily(),
+                "other");
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent(PREFIX + "99.0"));
+    }
+
+    @Test
+    public void testExpiration() {
+        final ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(
+                10, 1, TimeUnit.NANOSECONDS);
+        cache.put(PREFIX + "99.0", createData(PREFIX + "99.0"));
+        assertNull(cache.getIfPresent(PREFIX + "99.0"));
+    }
+
+    @Test
+    public void testEviction() {
+        final ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(
+                10, 1, TimeUnit.HOURS, 1);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(cache.isFull());
+            cache.put(PREFIX + i, createData(PREFIX + i));
+        }
+        assertEquals(cache.size(), 10);
+        assertTrue(cache.isFull());
+
+        // recently accessed entry survives eviction, as buffered accesses
+        // are replayed before updating the cache
+        assertNotNull(cache.getIfPresent(PREFIX + "0"));
+        cache.put(PREFIX + "10", createData(PREFIX + "10"));
+        assertEquals(cache.size(), 10);
+        assertNotNull(cache.getIfPresent(PREFIX + "0"));
+        assertNull(cache.getIfPresent(PREFIX + "1"));
+        assertNotNull(cache.getIfPresent(PREFIX + "10"));
+
+        // full buffers are replayed on reads
+        for (int i = 0; i < 2 * ConcurrentUserAgentCache.READ_BUFFER_SIZE;
+             i++) {
+            assertNotNull(cache.getIfPresent(PREFIX + "2"));
+        }
+        for (int i = 100; i < 109; i++) {
+            cache.put(PREFIX + i, createData(PREFIX + i));
+        }
+        assertEquals(cache.size(), 10);
+        assertNotNull(cache.getIfPresent(PREFIX + "2"));
+    }
+
+    @Test
+    public void testRandomOperations() {
+        final ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(
+                100, 1, TimeUnit.HOURS);
+        final Map<String, String> families = new HashMap<>();
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(500, 0L);
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            final String userAgent = userAgents.get(random.nextInt(
+                    userAgents.size()));
+            if (random.nextBoolean()) {
+                final UserAgentData data = createData(userAgent);
+                data.setFamily("family" + i);
+                cache.put(userAgent, data);
+                families.put(userAgent, "family" + i);
+            } else {
+                final UserAgentData cached = cache.getIfPresent(userAgent);
+                if (cached != null) {
+                    assertEquals(cached.getUserAgent(), userAgent);
+                    assertEquals(cached.getFamily(), families.get(userAgent));
+                }
+            }
+            assertTrue(cache.size() <= 100);
+        }
+
+        int found = 0;
+        for (final String userAgent : families.keySet()) {
+            if (cache.getIfPresent(userAgent) != null) {
+                found++;
+            }
+        }
+        assertEquals(found, cache.size());
+    }
+
+    @Test
+    public void testConcurrentOperations() throws InterruptedException {
+        final ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(
+                100, 1, TimeUnit.HOURS, 4);
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(300, 0L);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final long seed = t;
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Random random = new Random(seed);
+                        for (int i = 0; i < 20000; i++) {
+                            final String userAgent = userAgents.get(
+                                    random.nextInt(userAgents.size()));
+                            final UserAgentData cached =
+                                    cache.getIfPresent(userAgent);
+                            if (cached == null) {
+                                cache.put(userAgent, createData(userAgent));
+                            } else {
+                                assertEquals(cached.getUserAgent(),
+                                        userAgent);
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(failure.get());
+        assertTrue(cache.size() <= 100);
+    }
+
+    @Test
+    public void testInvalidateAllWhileReading() throws InterruptedException {
+        final ConcurrentUserAgentCache cache = new ConcurrentUserAgentCache(
+                50, 1, TimeUnit.HOURS, 4);
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(100, 0L);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (running.get()) {
+                            for (final String userAgent : userAgents) {
+                                final UserAgentData cached =
+                                        cache.getIfPresent(userAgent);
+                                if (cached != null) {
+                                    assertEquals(cached.getUserAgent(),
+                                            userAgent);
+                                }
+                            }
+                        }
+                    } catch (final Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                for (int j = 0; j < 60; j++) {
+                    final String userAgent = userAgents.get(
+                            (i + j) % userAgents.size());
+                    cache.put(userAgent, createData(userAgent));
+                }
+                cache.invalidateAll();
+            }
+        } finally {
+            running.set(false);
+            for (final Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertNull(failure.get());
+
+        // nodes cleared while being read are never linked again
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getLinkedSize(), 0);
+        for (final String userAgent : userAgents) {
+            cache.put(userAgent, createData(userAgent));
+            assertNotNull(cache.getIfPresent(userAgent));
+        }
+        assertEquals(cache.size(), 50);
+        assertEquals(cache.getLinkedSize(), 50);
+    }
+
+    private static UserAgentData createData(final String userAgent) {
+        return new UserAgentData(userAgent, DeviceCategory.PERSONAL_COMPUTER,
+                "categoryName", "family", OperatingSystemFamily.WINDOWS,
+                "osFamilyName", "osName", "osProducer", "osVersion",
+                UserAgentType.BROWSER, "uaVersion");
+    }
+}
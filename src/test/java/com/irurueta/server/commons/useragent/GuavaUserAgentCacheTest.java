@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class GuavaUserAgentCacheTest {
+
+    @Test
+    public void testConstructor() {
+        final GuavaUserAgentCache cache = new GuavaUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        assertEquals(cache.size(), 0);
+        assertEquals(new GuavaUserAgentCache(10, 1, TimeUnit.HOURS, 64).
+                size(), 0);
+
+        // Force IllegalArgumentException
+        try {
+            new GuavaUserAgentCache(0, 1, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new GuavaUserAgentCache(10, 0, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new GuavaUserAgentCache(10, 1, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new GuavaUserAgentCache(10, 1, TimeUnit.HOURS, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPut() {
+        final GuavaUserAgentCache cache = new GuavaUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        final UserAgentData data = new UserAgentData("user-agent-string",
+                DeviceCategory.PERSONAL_COMPUTER, "categoryName", "family",
+                OperatingSystemFamily.WINDOWS, "osFamilyName", "osName",
+                "osProducer", "osVersion", UserAgentType.BROWSER, "uaVersion");
+
+        assertNull(cache.getIfPresent("user-agent-string"));
+
+        cache.put("user-agent-string", data);
+        assertEquals(cache.size(), 1);
+
+        // cached instance is never returned
+        final UserAgentData cached = cache.getIfPresent("user-agent-string");
+        assertNotSame(cached, data);
+        assertEquals(cached.getUserAgent(), "user-agent-string");
+        assertEquals(cached.getDeviceCategory(),
+                DeviceCategory.PERSONAL_COMPUTER);
+        assertEquals(cached.getFamily(), "family");
+        assertEquals(cached.getUserAgentType(), UserAgentType.BROWSER);
+        assertNull(cache.getIfPresent("other-user-agent-string"));
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent("user-agent-string"));
+    }
+
+    @Test
+    public void testMaxSize() {
+        final GuavaUserAgentCache cache = new GuavaUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        assertFalse(cache.isFull());
+        for (int i = 0; i < 100; i++) {
+            final String userAgent = "user-agent-string" + i;
+            cache.put(userAgent, new UserAgentData(userAgent, null, null,
+                    null, null, null, null, null, null, null, null));
+        }
+        assertTrue(cache.size() <= 10);
+        assertTrue(cache.isFull());
+
+        cache.invalidateAll();
+        assertFalse(cache.isFull());
+    }
+}
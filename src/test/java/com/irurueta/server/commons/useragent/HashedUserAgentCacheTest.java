@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HashedUserAgentCacheTest {
+
+    @Test
+    public void testConstructor() {
+        HashedUserAgentCache cache = new HashedUserAgentCache(10, 1,
+                TimeUnit.HOURS, true);
+        assertEquals(cache.size(), 0);
+        assertTrue(cache.isVerified());
+        assertEquals(cache.getCollisionCount(), 0);
+
+        cache = new HashedUserAgentCache(10, 1, TimeUnit.HOURS, false);
+        assertFalse(cache.isVerified());
+
+        // Force IllegalArgumentException
+        try {
+            new HashedUserAgentCache(0, 1, TimeUnit.HOURS, true);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new HashedUserAgentCache(10, 0, TimeUnit.HOURS, true);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new HashedUserAgentCache(10, 1, null, true);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPutVerified() {
+        final HashedUserAgentCache cache = new HashedUserAgentCache(10, 1,
+                TimeUnit.HOURS, true);
+        final UserAgentData data = createData("user-agent-string");
+
+        assertNull(cache.getIfPresent("user-agent-string"));
+
+        cache.put("user-agent-string", data);
+        assertEquals(cache.size(), 1);
+
+        final UserAgentData cached = cache.getIfPresent("user-agent-string");
+        assertNotSame(cached, data);
+        assertEquals(cached.getUserAgent(), "user-agent-string");
+        assertEquals(cached.getDeviceCategory(),
+                DeviceCategory.PERSONAL_COMPUTER);
+        assertEquals(cached.getFamily(), "family");
+        assertEquals(cached.getUserAgentType(), UserAgentType.BROWSER);
+        assertNull(cache.getIfPresent("other-user-agent-string"));
+        assertEquals(cache.getCollisionCount(), 0);
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent("user-agent-string"));
+    }
+
+    @Test
+    public void testGetIfPresentAndPutNotVerified() {
+        final HashedUserAgentCache cache = new HashedUserAgentCache(10, 1,
+                TimeUnit.HOURS, false);
+        final UserAgentData data = createData("user-agent-string");
+
+        cache.put("user-agent-string", data);
+        assertEquals(cache.size(), 1);
+
+        // provided instance is not modified, and user agent is restored on hits
+        assertEquals(data.getUserAgent(), "user-agent-string");
+        final UserAgentData cached = cache.getIfPresent("user-agent-string");
+        assertNotSame(cached, data);
+        assertEquals(cached.getUserAgent(), "user-agent-string");
+        assertEquals(cached.getDeviceCategory(),
+                DeviceCategory.PERSONAL_COMPUTER);
+        assertEquals(cached.getFamily(), "family");
+        assertEquals(cached.getUserAgentType(), UserAgentType.BROWSER);
+        assertNull(cache.getIfPresent("other-user-agent-string"));
+    }
+
+    @Test
+    public void testCollisions() {
+        // all user agents collide into the same key
+        final HashedUserAgentCache verified = new CollidingCache(true);
+        verified.put("user-agent-string", createData("user-agent-string"));
+        assertNull(verified.getIfPresent("other-user-agent-string"));
+        assertEquals(verified.getCollisionCount(), 1);
+        assertEquals(verified.getIfPresent("user-agent-string").getFamily(),
+                "family");
+
+        // colliding user agent replaces cached data
+        final UserAgentData other = createData("other-user-agent-string");
+        other.setFamily("other-family");
+        verified.put("other-user-agent-string", other);
+        assertEquals(verified.size(), 1);
+        assertNull(verified.getIfPresent("user-agent-string"));
+        assertEquals(verified.getCollisionCount(), 2);
+
+        // without verification, data of colliding user agent is returned
+        final HashedUserAgentCache notVerified = new CollidingCache(false);
+        notVerified.put("user-agent-string", createData("user-agent-string"));
+        final UserAgentData cached = notVerified.getIfPresent(
+                "other-user-agent-string");
+        assertEquals(cached.getUserAgent(), "other-user-agent-string");
+        assertEquals(cached.getFamily(), "family");
+        assertEquals(notVerified.getCollisionCount(), 0);
+    }
+
+    @Test
+    public void testVerificationHashAndLength() {
+        // keys and verification hashes collide, so only lengths tell apart
+        final HashedUserAgentCache cache = new CollidingCache(true) {
+            @Override
+            long verificationHash(final String userAgent) {
+                return 0L;
+            }
+        };
+        final UserAgentData data = createData("user-agent-string");
+        cache.put("user-agent-string", data);
+
+        // user agent strings are not kept, even when verified
+        assertEquals(data.getUserAgent(), "user-agent-string");
+        assertEquals(cache.getIfPresent("user-agent-string").getUserAgent(),
+                "user-agent-string");
+        assertNull(cache.getIfPresent("user-agent-strinG2"));
+        assertEquals(cache.getCollisionCount(), 1);
+
+        // same length but different verification hash is a collision
+        final HashedUserAgentCache colliding = new CollidingCache(true);
+        colliding.put("user-agent-string", createData("user-agent-string"));
+        assertNull(colliding.getIfPresent("user-agent-strinG"));
+        assertEquals(colliding.getCollisionCount(), 1);
+        assertNotNull(colliding.getIfPresent("user-agent-string"));
+        assertEquals(colliding.getCollisionCount(), 1);
+    }
+
+    @Test
+    public void testMaxSize() {
+        final HashedUserAgentCache cache = new HashedUserAgentCache(10, 1,
+                TimeUnit.HOURS, true);
+        assertFalse(cache.isFull());
+        for (int i = 0; i < 100; i++) {
+            final String userAgent = "user-agent-string" + i;
+            cache.put(userAgent, createData(userAgent));
+        }
+        assertTrue(cache.size() <= 10);
+        assertTrue(cache.isFull());
+
+        cache.invalidateAll();
+        assertFalse(cache.isFull());
+    }
+
+    private static UserAgentData createData(final String userAgent) {
+        return new UserAgentData(userAgent, DeviceCategory.PERSONAL_COMPUTER,
+                "categoryName", "family", OperatingSystemFamily.WINDOWS,
+                "osFamilyName", "osName", "osProducer", "osVersion",
+                UserAgentType.BROWSER, "uaVersion");
+    }
+
+    private static class CollidingCache extends HashedUserAgentCache {
+
+        CollidingCache(final boolean verified) {
+            super(10, 1, TimeUnit.HOURS, verified);
+        }
+
+        @Override
+        long hash(final String userAgent) {
+            return 0L;
+        }
+    }
+}
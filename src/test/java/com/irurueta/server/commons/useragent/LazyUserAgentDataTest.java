@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LazyUserAgentDataTest {
+
+    private static final String CHROME =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+            "(KHTML, like Gecko) Chrome/52.0.2743.116 Safari/537.36";
+
+    @Test
+    public void testResolved() {
+        final UserAgentData data = new UserAgentData(CHROME, null, null,
+                "Chrome", null, null, null, null, null, null, "52");
+        final LazyUserAgentData lazy = new LazyUserAgentData(CHROME, data);
+
+        assertEquals(lazy.getUserAgent(), CHROME);
+        assertTrue(lazy.isResolved());
+        assertSame(lazy.get(), data);
+    }
+
+    @Test
+    public void testLazy() throws UserAgentException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final LazyUserAgentData lazy = new LazyUserAgentData(detector,
+                CHROME);
+
+        assertEquals(lazy.getUserAgent(), CHROME);
+        assertFalse(lazy.isResolved());
+
+        final UserAgentData data = lazy.get();
+        assertTrue(lazy.isResolved());
+        assertEquals(data.getFamily(), detector.detect(CHROME).getFamily());
+        assertEquals(data.getUserAgentVersion(),
+                detector.detect(CHROME).getUserAgentVersion());
+        assertSame(lazy.get(), data);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testConstructorNullDetector() {
+        new LazyUserAgentData(null, CHROME);
+    }
+}
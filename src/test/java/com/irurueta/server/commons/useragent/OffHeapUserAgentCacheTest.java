@@ -0,0 +1,295 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OffHeapUserAgentCacheTest {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; " +
+            "Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/99.0.4844.51 Safari/537.36";
+
+    @Test
+    public void testConstructor() {
+        OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                1024 * 1024, 1, TimeUnit.HOURS);
+        assertEquals(cache.getMaxBytes(), 1024 * 1024);
+        assertEquals(cache.getSegmentCount(),
+                OffHeapUserAgentCache.MAX_SEGMENTS);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getRejectedCount(), 0);
+
+        cache = new OffHeapUserAgentCache(
+                OffHeapUserAgentCache.MIN_SEGMENT_BYTES, 1, TimeUnit.HOURS);
+        assertEquals(cache.getSegmentCount(), 1);
+
+        cache = new OffHeapUserAgentCache(
+                3 * OffHeapUserAgentCache.MIN_SEGMENT_BYTES, 1, TimeUnit.HOURS);
+        assertEquals(cache.getSegmentCount(), 2);
+
+        // Force IllegalArgumentException
+        try {
+            new OffHeapUserAgentCache(OffHeapUserAgentCache.MIN_SEGMENT_BYTES -
+                    1, 1, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new OffHeapUserAgentCache(Long.MAX_VALUE, 1, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new OffHeapUserAgentCache(1024 * 1024, 0, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new OffHeapUserAgentCache(1024 * 1024, 1, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPut() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                1024 * 1024, 1, TimeUnit.HOURS);
+        final UserAgentData data = createData(USER_AGENT);
+
+        assertNull(cache.getIfPresent(USER_AGENT));
+
+        cache.put(USER_AGENT, data);
+        assertEquals(cache.size(), 1);
+
+        final UserAgentData cached = cache.getIfPresent(USER_AGENT);
+        assertNotSame(cached, data);
+        assertEquals(cached.getUserAgent(), USER_AGENT);
+        assertEquals(cached.getDeviceCategory(),
+                DeviceCategory.PERSONAL_COMPUTER);
+        assertEquals(cached.getDeviceCategoryName(), "categoryName");
+        assertEquals(cached.getFamily(), "family");
+        assertEquals(cached.getOsFamily(), OperatingSystemFamily.WINDOWS);
+        assertEquals(cached.getOsFamilyName(), "osFamilyName");
+        assertEquals(cached.getOsName(), "osName");
+        assertEquals(cached.getOsProducer(), "osProducer");
+        assertEquals(cached.getOsVersion(), "osVersion");
+        assertEquals(cached.getUserAgentType(), UserAgentType.BROWSER);
+        assertEquals(cached.getUserAgentVersion(), "uaVersion");
+
+        assertNull(cache.getIfPresent(USER_AGENT + " "));
+        assertNull(cache.getIfPresent(USER_AGENT.substring(1)));
+
+        // replacing data keeps a single entry
+        final UserAgentData other = createData(USER_AGENT);
+        other.setFamily("other-family");
+        cache.put(USER_AGENT, other);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getIfPresent(USER_AGENT).getFamily(),
+                "other-family");
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent(USER_AGENT));
+
+        // memory is reused after invalidation
+        cache.put(USER_AGENT, data);
+        assertEquals(cache.getIfPresent(USER_AGENT).getFamily(), "family");
+    }
+
+    @Test
+    public void testNullValuesAndWideCharacters() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                1024 * 1024, 1, TimeUnit.HOURS);
+        final String userAgent = USER_AGENT + " 中文";
+        cache.put(userAgent, new UserAgentData(userAgent, null, null, null,
+                null, null, null, null, null, null, null));
+
+        final UserAgentData cached = cache.getIfPresent(userAgent);
+        assertEquals(cached.getUserAgent(), userAgent);
+        assertNull(cached.getDeviceCategory());
+        assertNull(cached.getFamily());
+        assertNull(cached.getOsFamily());
+        assertNull(cached.getUserAgentType());
+        assertNull(cached.getUserAgentVersion());
+        assertNull(cache.getIfPresent(USER_AGENT + " 中字"));
+    }
+
+    @Test
+    public void testVersionsAreNotKeptOnDictionary() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                1024 * 1024, 1, TimeUnit.HOURS);
+        final int count = OffHeapUserAgentCache.DICTIONARY_CAPACITY + 10;
+        for (int i = 0; i < count; i++) {
+            final UserAgentData data = createData(USER_AGENT + i);
+            data.setOsVersion("10." + i);
+            data.setUserAgentVersion("52.0." + i);
+            cache.put(USER_AGENT + i, data);
+        }
+
+        // distinct versions never fill the dictionary
+        assertEquals(cache.getRejectedCount(), 0);
+        assertEquals(cache.getDictionarySize(), 5);
+        final int last = count - 1;
+        final UserAgentData cached = cache.getIfPresent(USER_AGENT + last);
+        assertEquals(cached.getUserAgent(), USER_AGENT + last);
+        assertEquals(cached.getOsName(), "osName");
+        assertEquals(cached.getOsProducer(), "osProducer");
+        assertEquals(cached.getOsVersion(), "10." + last);
+        assertEquals(cached.getUserAgentVersion(), "52.0." + last);
+
+        // versions having wide characters
+        final UserAgentData data = createData(USER_AGENT);
+        data.setOsVersion("版本");
+        data.setUserAgentVersion(null);
+        cache.put(USER_AGENT, data);
+        assertEquals(cache.getIfPresent(USER_AGENT).getOsVersion(), "版本");
+        assertNull(cache.getIfPresent(USER_AGENT).getUserAgentVersion());
+        assertEquals(cache.getIfPresent(USER_AGENT).getFamily(), "family");
+    }
+
+    @Test
+    public void testInvalidateAllRebuildsDictionary() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                1024 * 1024, 1, TimeUnit.HOURS);
+        for (int i = 0; i < 100; i++) {
+            final UserAgentData data = createData(USER_AGENT + i);
+            data.setFamily("family" + i);
+            cache.put(USER_AGENT + i, data);
+        }
+        assertEquals(cache.getDictionarySize(), 104);
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getDictionarySize(), 0);
+        assertNull(cache.getIfPresent(USER_AGENT + 0));
+
+        cache.put(USER_AGENT, createData(USER_AGENT));
+        assertEquals(cache.getDictionarySize(), 5);
+        assertEquals(cache.getIfPresent(USER_AGENT).getFamily(), "family");
+    }
+
+    @Test
+    public void testExpiration() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                1024 * 1024, 1, TimeUnit.NANOSECONDS);
+        cache.put(USER_AGENT, createData(USER_AGENT));
+        assertNull(cache.getIfPresent(USER_AGENT));
+    }
+
+    @Test
+    public void testRejected() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                OffHeapUserAgentCache.MIN_SEGMENT_BYTES, 1, TimeUnit.HOURS);
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < OffHeapUserAgentCache.MIN_SEGMENT_BYTES) {
+            builder.append(USER_AGENT);
+        }
+        final String userAgent = builder.toString();
+        cache.put(userAgent, createData(userAgent));
+
+        assertEquals(cache.getRejectedCount(), 1);
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent(userAgent));
+    }
+
+    @Test
+    public void testEviction() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                OffHeapUserAgentCache.MIN_SEGMENT_BYTES, 1, TimeUnit.HOURS);
+
+        // cache is bounded by memory rather than by number of entries
+        for (int i = 0; i < 10; i++) {
+            cache.put(USER_AGENT + i, createData(USER_AGENT + i));
+        }
+        assertFalse(cache.isFull());
+
+        for (int i = 10; i < 1000; i++) {
+            cache.put(USER_AGENT + i, createData(USER_AGENT + i));
+        }
+        assertTrue(cache.isFull());
+
+        // records are about 200 bytes
+        final long size = cache.size();
+        assertTrue(size > 0);
+        assertTrue(size < OffHeapUserAgentCache.MIN_SEGMENT_BYTES / 150);
+
+        // most recent user agents are kept, oldest ones are evicted
+        assertNotNull(cache.getIfPresent(USER_AGENT + 999));
+        assertNull(cache.getIfPresent(USER_AGENT + 0));
+        int found = 0;
+        for (int i = 0; i < 1000; i++) {
+            if (cache.getIfPresent(USER_AGENT + i) != null) {
+                found++;
+            }
+        }
+        assertEquals(found, size);
+
+        cache.invalidateAll();
+        assertFalse(cache.isFull());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        final OffHeapUserAgentCache cache = new OffHeapUserAgentCache(
+                64 * 1024, 1, TimeUnit.HOURS);
+        final Map<String, String> families = new HashMap<>();
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(2000, 0L);
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            final String userAgent = userAgents.get(random.nextInt(
+                    userAgents.size()));
+            if (random.nextBoolean()) {
+                final UserAgentData data = createData(userAgent);
+                data.setFamily("family" + random.nextInt(100));
+                cache.put(userAgent, data);
+                families.put(userAgent, data.getFamily());
+            } else {
+                final UserAgentData cached = cache.getIfPresent(userAgent);
+                if (cached != null) {
+                    assertEquals(cached.getUserAgent(), userAgent);
+                    assertEquals(cached.getFamily(), families.get(userAgent));
+                }
+            }
+        }
+
+        int found = 0;
+        for (final String userAgent : families.keySet()) {
+            if (cache.getIfPresent(userAgent) != null) {
+                found++;
+            }
+        }
+        assertTrue(found > 0);
+        assertEquals(found, cache.size());
+    }
+
+    private static UserAgentData createData(final String userAgent) {
+        return new UserAgentData(userAgent, DeviceCategory.PERSONAL_COMPUTER,
+                "categoryName", "family", OperatingSystemFamily.WINDOWS,
+                "osFamilyName", "osName", "osProducer", "osVersion",
+                UserAgentType.BROWSER, "uaVersion");
+    }
+}
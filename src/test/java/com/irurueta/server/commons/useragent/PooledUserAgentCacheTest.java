@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PooledUserAgentCacheTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentResultPool pool = new UserAgentResultPool(10);
+        final PooledUserAgentCache cache = new PooledUserAgentCache(10, 1,
+                TimeUnit.HOURS, pool);
+        assertSame(cache.getPool(), pool);
+        assertEquals(cache.size(), 0);
+
+        // Force IllegalArgumentException
+        try {
+            new PooledUserAgentCache(0, 1, TimeUnit.HOURS, pool);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new PooledUserAgentCache(10, 0, TimeUnit.HOURS, pool);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new PooledUserAgentCache(10, 1, null, pool);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new PooledUserAgentCache(10, 1, TimeUnit.HOURS, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPut() {
+        final UserAgentResultPool pool = new UserAgentResultPool(1);
+        final PooledUserAgentCache cache = new PooledUserAgentCache(10, 1,
+                TimeUnit.HOURS, pool);
+
+        assertNull(cache.getIfPresent("chrome-1"));
+        assertEquals(cache.getResultId("chrome-1"),
+                UserAgentResultPool.NO_ID);
+
+        cache.put("chrome-1", createData("chrome-1", "Chrome"));
+        final UserAgentData chrome2 = createData("chrome-2", "Chrome");
+        chrome2.setOsVersion("11.0");
+        chrome2.setUserAgentVersion("100.0");
+        cache.put("chrome-2", chrome2);
+        assertEquals(cache.size(), 2);
+        assertEquals(pool.size(), 1);
+        assertEquals(cache.getResultId("chrome-1"), 0);
+        assertEquals(cache.getResultId("chrome-2"), 0);
+
+        final UserAgentData cached = cache.getIfPresent("chrome-2");
+        assertEquals(cached.getUserAgent(), "chrome-2");
+        assertEquals(cached.getFamily(), "Chrome");
+        assertEquals(cached.getDeviceCategory(),
+                DeviceCategory.PERSONAL_COMPUTER);
+
+        // results differing only on versions share identifier, but each
+        // entry keeps its versions
+        assertEquals(cached.getOsVersion(), "11.0");
+        assertEquals(cached.getUserAgentVersion(), "100.0");
+        assertEquals(cache.getIfPresent("chrome-1").getUserAgentVersion(),
+                "99.0");
+
+        // results that cannot be pooled are not cached
+        cache.put("firefox", createData("firefox", "Firefox"));
+        assertEquals(cache.size(), 2);
+        assertNull(cache.getIfPresent("firefox"));
+        assertEquals(pool.getRejectedCount(), 1);
+
+        // pooled results remain valid
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent("chrome-1"));
+        assertEquals(pool.get(0).getFamily(), "Chrome");
+    }
+
+    @Test
+    public void testIsFull() {
+        final PooledUserAgentCache cache = new PooledUserAgentCache(2, 1,
+                TimeUnit.HOURS, new UserAgentResultPool(1));
+        assertFalse(cache.isFull());
+        cache.put("chrome-1", createData("chrome-1", "Chrome"));
+        assertFalse(cache.isFull());
+        cache.put("chrome-2", createData("chrome-2", "Chrome"));
+        assertTrue(cache.isFull());
+
+        cache.invalidateAll();
+        assertFalse(cache.isFull());
+    }
+
+    private static UserAgentData createData(final String userAgent,
+            final String family) {
+        return new UserAgentData(userAgent, DeviceCategory.PERSONAL_COMPUTER,
+                "Personal computer", family, OperatingSystemFamily.WINDOWS,
+                "Windows", "Windows 10", "Microsoft Corporation.", "10.0",
+                UserAgentType.BROWSER, "99.0");
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TrieUserAgentCacheTest {
+
+    private static final String PREFIX = "Mozilla/5.0 (Windows NT 10.0; " +
+            "Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/";
+
+    @Test
+    public void testConstructor() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getNodeCount(), 0);
+
+        // Force IllegalArgumentException
+        try {
+            new TrieUserAgentCache(0, 1, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new TrieUserAgentCache(10, 0, TimeUnit.HOURS);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new TrieUserAgentCache(10, 1, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPut() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        final UserAgentData data = createData(PREFIX + "99.0");
+
+        assertNull(cache.getIfPresent(PREFIX + "99.0"));
+
+        cache.put(PREFIX + "99.0", data);
+        assertEquals(cache.size(), 1);
+
+        // provided instance is not modified, and user agent is restored on hits
+        assertEquals(data.getUserAgent(), PREFIX + "99.0");
+        final UserAgentData cached = cache.getIfPresent(PREFIX + "99.0");
+        assertNotSame(cached, data);
+        assertEquals(cached.getUserAgent(), PREFIX + "99.0");
+        assertEquals(cached.getFamily(), "family");
+        assertEquals(cached.getUserAgentType(), UserAgentType.BROWSER);
+
+        assertNull(cache.getIfPresent(PREFIX));
+        assertNull(cache.getIfPresent(PREFIX + "99"));
+        assertNull(cache.getIfPresent(PREFIX + "99.01"));
+        assertNull(cache.getIfPresent(PREFIX + "98.0"));
+        assertNull(cache.getIfPresent(""));
+
+        // replacing data keeps a single entry
+        final UserAgentData other = createData(PREFIX + "99.0");
+        other.setFamily("other-family");
+        cache.put(PREFIX + "99.0", other);
+        assertEquals(cache.size(), 1);
+        assertEquals(cache.getIfPresent(PREFIX + "99.0").getFamily(),
+                "other-family");
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getNodeCount(), 0);
+        assertNull(cache.getIfPresent(PREFIX + "99.0"));
+    }
+
+    @Test
+    public void testSharedPrefixes() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        cache.put(PREFIX + "99.0", createData(PREFIX + "99.0"));
+        cache.put(PREFIX + "98.0", createData(PREFIX + "98.0"));
+        cache.put(PREFIX + "98.0 Safari", createData(PREFIX + "98.0 Safari"));
+        cache.put(PREFIX, createData(PREFIX));
+
+        // common prefix, "9", "9.0", "8.0" and " Safari"
+        assertEquals(cache.getNodeCount(), 5);
+        assertEquals(cache.size(), 4);
+        assertEquals(cache.getIfPresent(PREFIX).getUserAgent(), PREFIX);
+        assertEquals(cache.getIfPresent(PREFIX + "99.0").getUserAgent(),
+                PREFIX + "99.0");
+        assertEquals(cache.getIfPresent(PREFIX + "98.0").getUserAgent(),
+                PREFIX + "98.0");
+        assertEquals(cache.getIfPresent(PREFIX + "98.0 Safari").
+                getUserAgent(), PREFIX + "98.0 Safari");
+        assertNull(cache.getIfPresent(PREFIX + "9"));
+    }
+
+    @Test
+    public void testUnsupportedUserAgent() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        assertTrue(TrieUserAgentCache.isSupported(PREFIX + "é"));
+        assertFalse(TrieUserAgentCache.isSupported(PREFIX + "中"));
+
+        cache.put(PREFIX + "中", createData(PREFIX + "中"));
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent(PREFIX + "中"));
+
+        cache.put(PREFIX + "é", createData(PREFIX + "é"));
+        assertNotNull(cache.getIfPresent(PREFIX + "é"));
+        assertNull(cache.getIfPresent(PREFIX + "ǩ"));
+    }
+
+    @Test
+    public void testExpiration() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(10, 1,
+                TimeUnit.NANOSECONDS);
+        cache.put(PREFIX + "99.0", createData(PREFIX + "99.0"));
+        assertNull(cache.getIfPresent(PREFIX + "99.0"));
+    }
+
+    @Test
+    public void testEviction() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(10, 1,
+                TimeUnit.HOURS);
+        for (int i = 0; i < 10; i++) {
+            assertFalse(cache.isFull());
+            cache.put(PREFIX + i, createData(PREFIX + i));
+        }
+        assertEquals(cache.size(), 10);
+        assertTrue(cache.isFull());
+
+        // recently accessed entry survives eviction
+        assertNotNull(cache.getIfPresent(PREFIX + "0"));
+        cache.put(PREFIX + "10", createData(PREFIX + "10"));
+        assertEquals(cache.size(), 10);
+        assertNotNull(cache.getIfPresent(PREFIX + "0"));
+        assertNull(cache.getIfPresent(PREFIX + "1"));
+        assertNotNull(cache.getIfPresent(PREFIX + "10"));
+
+        for (int i = 100; i < 1000; i++) {
+            cache.put(PREFIX + i, createData(PREFIX + i));
+        }
+        assertEquals(cache.size(), 10);
+
+        // trie is simplified as entries are evicted
+        assertTrue(cache.getNodeCount() <= 2 * cache.size());
+    }
+
+    @Test
+    public void testRandomOperations() {
+        final TrieUserAgentCache cache = new TrieUserAgentCache(100, 1,
+                TimeUnit.HOURS);
+        final Map<String, String> families = new HashMap<>();
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(500, 0L);
+        final Random random = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            String userAgent = userAgents.get(random.nextInt(
+                    userAgents.size()));
+            if (random.nextBoolean()) {
+                // also use prefixes of generated user agents
+                userAgent = userAgent.substring(0, random.nextInt(
+                        userAgent.length() + 1));
+            }
+            if (random.nextBoolean()) {
+                final UserAgentData data = createData(userAgent);
+                data.setFamily("family" + i);
+                cache.put(userAgent, data);
+                families.put(userAgent, "family" + i);
+            } else {
+                final UserAgentData cached = cache.getIfPresent(userAgent);
+                if (cached != null) {
+                    assertEquals(cached.getUserAgent(), userAgent);
+                    assertEquals(cached.getFamily(), families.get(userAgent));
+                }
+            }
+            assertTrue(cache.size() <= 100);
+        }
+
+        int found = 0;
+        for (final String userAgent : families.keySet()) {
+            if (cache.getIfPresent(userAgent) != null) {
+                found++;
+            }
+        }
+        assertEquals(found, cache.size());
+    }
+
+    private static UserAgentData createData(final String userAgent) {
+        return new UserAgentData(userAgent, DeviceCategory.PERSONAL_COMPUTER,
+                "categoryName", "family", OperatingSystemFamily.WINDOWS,
+                "osFamilyName", "osName", "osProducer", "osVersion",
+                UserAgentType.BROWSER, "uaVersion");
+    }
+}
@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmark comparing throughput and latency of cache implementations when
+ * concurrently read by a growing number of threads, up to the number of
+ * available processors.
+ * Caches are filled before being measured, and threads then look up
+ * synthetic traffic following a Zipf distribution, caching user agents not
+ * found, so that mostly hits with occasional updates are measured, as it
+ * happens on a detector once warmed up.
+ * Latency percentiles are computed on a sample of lookups.
+ * Usage:
+ * <pre>
+ * java com.irurueta.server.commons.useragent.UserAgentCacheConcurrencyBenchmark
+ *     [--threads n]... [--entries n] [--operations n] [--seed n]
+ *     [--type guava|hashed|trie|off_heap|pooled|concurrent]...
+ * </pre>
+ */
+public final class UserAgentCacheConcurrencyBenchmark {
+
+    /**
+     * Default number of distinct user agents in traffic.
+     */
+    public static final int DEFAULT_ENTRIES = 10000;
+
+    /**
+     * Default number of lookups made by each thread.
+     */
+    public static final int DEFAULT_OPERATIONS = 1000000;
+
+    /**
+     * Default seed of generated traffic.
+     */
+    public static final long DEFAULT_SEED = 0;
+
+    /**
+     * Cache types measured by default, being the first one the reference.
+     */
+    private static final UserAgentCacheType[] DEFAULT_TYPES = {
+            UserAgentCacheType.GUAVA, UserAgentCacheType.CONCURRENT
+    };
+
+    /**
+     * Number of lookups between two latency samples. Must be a power of two.
+     */
+    private static final int SAMPLING_INTERVAL = 64;
+
+    /**
+     * Data cached for all user agents.
+     */
+    private static final UserAgentData TEMPLATE = new UserAgentData(null,
+            DeviceCategory.PERSONAL_COMPUTER, "Personal computer", "Chrome",
+            OperatingSystemFamily.WINDOWS, "Windows", "Windows 10",
+            "Microsoft Corporation.", "10.0", UserAgentType.BROWSER,
+            "99.0.4844.51");
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: " +
+            "UserAgentCacheConcurrencyBenchmark [--threads n]... " +
+            "[--entries n] [--operations n] [--seed n] " +
+            "[--type guava|hashed|trie|off_heap|pooled|concurrent]...";
+
+    /**
+     * Constructor.
+     */
+    private UserAgentCacheConcurrencyBenchmark() { }
+
+    /**
+     * Entry point of the benchmark.
+     * @param args command line arguments.
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args command line arguments.
+     * @param out stream where results are printed.
+     * @param err stream where errors are printed.
+     * @return exit code, using the same values as
+     * {@link UserAgentEnrichmentTool}.
+     */
+    public static int run(final String[] args, final PrintStream out,
+            final PrintStream err) {
+        int entries = DEFAULT_ENTRIES;
+        int operations = DEFAULT_OPERATIONS;
+        long seed = DEFAULT_SEED;
+        final List<Integer> threads = new ArrayList<>();
+        final List<UserAgentCacheType> types = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--threads":
+                        threads.add(parsePositive(requireValue(args, ++i,
+                                arg), arg));
+                        break;
+                    case "--entries":
+                        entries = parsePositive(requireValue(args, ++i, arg),
+                                arg);
+                        break;
+                    case "--operations":
+                        operations = parsePositive(requireValue(args, ++i,
+                                arg), arg);
+                        break;
+                    case "--seed":
+                        seed = parseLong(requireValue(args, ++i, arg), arg);
+                        break;
+                    case "--type":
+                        types.add(UserAgentCacheType.fromName(requireValue(
+                                args, ++i, arg)));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unknown option: " + arg);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return UserAgentEnrichmentTool.EXIT_USAGE;
+        }
+        final int processors = Runtime.getRuntime().availableProcessors();
+        if (threads.isEmpty()) {
+            threads.addAll(UserAgentThroughputBenchmark.defaultThreads(
+                    processors));
+        }
+        if (types.isEmpty()) {
+            types.addAll(Arrays.asList(DEFAULT_TYPES));
+        }
+
+        final List<String> traffic = generate(entries, operations, seed);
+        out.println(String.format(Locale.ENGLISH,
+                "%d available processors, %d distinct user agents, " +
+                "%d lookups per thread", processors, entries, operations));
+        out.println(String.format(Locale.ENGLISH,
+                "%-10s %-8s %14s %10s %10s %10s %8s", "type", "threads",
+                "ops/s", "p50 ns", "p99 ns", "p99.9 ns", "ratio"));
+        try {
+            for (final int count : threads) {
+                double reference = Double.NaN;
+                for (final UserAgentCacheType type : types) {
+                    final Result result = measure(type, count, entries,
+                            traffic);
+                    if (Double.isNaN(reference)) {
+                        reference = result.mThroughput;
+                    }
+                    out.println(String.format(Locale.ENGLISH,
+                            "%-10s %-8d %14.0f %10d %10d %10d %8.2f", type,
+                            count, result.mThroughput,
+                            result.percentile(0.5), result.percentile(0.99),
+                            result.percentile(0.999),
+                            result.mThroughput / reference));
+                }
+            }
+        } catch (final ConfigurationException e) {
+            err.println("Benchmark failed: " + e.getMessage());
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Benchmark interrupted");
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+        return UserAgentEnrichmentTool.EXIT_SUCCESS;
+    }
+
+    /**
+     * Generates traffic of provided number of lookups among provided number
+     * of distinct user agents, following a Zipf distribution.
+     * @param entries number of distinct user agents.
+     * @param operations number of lookups.
+     * @param seed seed of generated traffic.
+     * @return generated traffic.
+     */
+    public static List<String> generate(final int entries,
+            final int operations, final long seed) {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(seed);
+        generator.setPopulationSize(entries);
+        generator.setUniqueRate(0.0);
+        return generator.generate(operations);
+    }
+
+    /**
+     * Measures provided cache implementation when provided number of threads
+     * concurrently look up provided traffic, each one starting at a distinct
+     * offset. Caches are sized to keep all distinct user agents.
+     * @param type implementation of the cache.
+     * @param threads number of concurrent threads.
+     * @param entries number of distinct user agents.
+     * @param traffic user agents looked up by each thread.
+     * @return measured result.
+     * @throws ConfigurationException if cache cannot be configured.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    static Result measure(final UserAgentCacheType type, final int threads,
+            final int entries, final List<String> traffic)
+            throws ConfigurationException, InterruptedException {
+        final Properties properties = new Properties();
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_SIZE_PROPERTY, Integer.toString(entries));
+        final UserAgentConfiguration cfg = new UserAgentConfigurationImpl(
+                properties);
+        final UserAgentCache cache = UserAgentDetector.createCache(type, cfg,
+                new UserAgentResultPool(cfg.getUserAgentResultPoolSize()));
+        for (final String userAgent : traffic) {
+            if (cache.getIfPresent(userAgent) == null) {
+                cache.put(userAgent, new UserAgentData(TEMPLATE));
+            }
+        }
+
+        final int size = traffic.size();
+        final long[][] latencies = new long[threads][];
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch end = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            final int offset = (int) ((long) t * size / threads);
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    final long[] samples =
+                            new long[size / SAMPLING_INTERVAL + 1];
+                    int count = 0;
+                    try {
+                        start.await();
+                        for (int i = 0; i < size; i++) {
+                            final String userAgent = traffic.get(
+                                    (offset + i) % size);
+                            if ((i & (SAMPLING_INTERVAL - 1)) == 0) {
+                                final long before = System.nanoTime();
+                                lookup(cache, userAgent);
+                                samples[count++] = System.nanoTime() - before;
+                            } else {
+                                lookup(cache, userAgent);
+                            }
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        latencies[index] = Arrays.copyOf(samples, count);
+                        end.countDown();
+                    }
+                }
+            }, "user-agent-cache-concurrency-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        end.await();
+        final long elapsed = System.nanoTime() - startNanos;
+        cache.invalidateAll();
+
+        int total = 0;
+        for (final long[] samples : latencies) {
+            total += samples.length;
+        }
+        final long[] merged = new long[total];
+        int position = 0;
+        for (final long[] samples : latencies) {
+            System.arraycopy(samples, 0, merged, position, samples.length);
+            position += samples.length;
+        }
+        Arrays.sort(merged);
+        return new Result((double) threads * size * NANOS_PER_SECOND /
+                Math.max(elapsed, 1), merged);
+    }
+
+    /**
+     * Looks up provided user agent, caching it if not found.
+     * @param cache cache being measured.
+     * @param userAgent user agent to look for.
+     */
+    private static void lookup(final UserAgentCache cache,
+            final String userAgent) {
+        if (cache.getIfPresent(userAgent) == null) {
+            cache.put(userAgent, new UserAgentData(TEMPLATE));
+        }
+    }
+
+    /**
+     * Returns the value following an option.
+     * @param args command line arguments.
+     * @param index position of value.
+     * @param option option requiring the value.
+     * @return value of option.
+     * @throws IllegalArgumentException if value is missing.
+     */
+    private static String requireValue(final String[] args, final int index,
+            final String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a positive integer value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a positive integer.
+     */
+    private static int parsePositive(final String value, final String option) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return result;
+    }
+
+    /**
+     * Parses a long value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a valid number.
+     */
+    private static long parseLong(final String value, final String option) {
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+    }
+
+    /**
+     * Result of measuring a cache implementation.
+     */
+    static class Result {
+
+        /**
+         * Number of lookups per second.
+         */
+        private final double mThroughput;
+
+        /**
+         * Sorted latencies of sampled lookups, expressed in nanoseconds.
+         */
+        private final long[] mLatencies;
+
+        /**
+         * Constructor.
+         * @param throughput number of lookups per second.
+         * @param latencies sorted latencies of sampled lookups.
+         */
+        Result(final double throughput, final long[] latencies) {
+            mThroughput = throughput;
+            mLatencies = latencies;
+        }
+
+        /**
+         * Returns number of lookups per second.
+         * @return number of lookups per second.
+         */
+        double getThroughput() {
+            return mThroughput;
+        }
+
+        /**
+         * Returns provided percentile of latencies.
+         * @param fraction percentile expressed as a fraction between 0.0 and
+         * 1.0.
+         * @return latency expressed in nanoseconds, or 0 if no lookup was
+         * sampled.
+         */
+        long percentile(final double fraction) {
+            if (mLatencies.length == 0) {
+                return 0;
+            }
+            final int index = (int) Math.ceil(fraction * mLatencies.length) -
+                    1;
+            return mLatencies[Math.max(0, Math.min(index,
+                    mLatencies.length - 1))];
+        }
+    }
+}
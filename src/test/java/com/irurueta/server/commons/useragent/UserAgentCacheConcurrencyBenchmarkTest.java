@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserAgentCacheConcurrencyBenchmarkTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testGenerate() {
+        final List<String> traffic = UserAgentCacheConcurrencyBenchmark.
+                generate(100, 5000, 0L);
+        assertEquals(traffic.size(), 5000);
+        assertTrue(new HashSet<>(traffic).size() <= 100);
+        assertEquals(UserAgentCacheConcurrencyBenchmark.generate(100, 5000,
+                0L), traffic);
+    }
+
+    @Test
+    public void testMeasure() throws ConfigurationException,
+            InterruptedException {
+        final List<String> traffic = UserAgentCacheConcurrencyBenchmark.
+                generate(100, 5000, 0L);
+        for (final UserAgentCacheType type : new UserAgentCacheType[]{
+                UserAgentCacheType.GUAVA, UserAgentCacheType.CONCURRENT}) {
+            final UserAgentCacheConcurrencyBenchmark.Result result =
+                    UserAgentCacheConcurrencyBenchmark.measure(type, 2, 100,
+                            traffic);
+            assertTrue(result.getThroughput() > 0.0);
+            assertTrue(result.percentile(0.5) > 0);
+            assertTrue(result.percentile(0.5) <= result.percentile(0.99));
+            assertTrue(result.percentile(0.99) <= result.percentile(0.999));
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        final UserAgentCacheConcurrencyBenchmark.Result result =
+                new UserAgentCacheConcurrencyBenchmark.Result(1.0,
+                        new long[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10});
+        assertEquals(result.percentile(0.0), 1);
+        assertEquals(result.percentile(0.5), 5);
+        assertEquals(result.percentile(0.99), 10);
+        assertEquals(result.percentile(1.0), 10);
+        assertEquals(new UserAgentCacheConcurrencyBenchmark.Result(1.0,
+                new long[0]).percentile(0.5), 0);
+    }
+
+    @Test
+    public void testRun() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int exitCode = UserAgentCacheConcurrencyBenchmark.run(
+                new String[]{"--entries", "50", "--operations", "1000",
+                        "--seed", "1", "--threads", "2"},
+                new PrintStream(out, true), new PrintStream(err, true));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+        final String[] lines = new String(out.toByteArray(), UTF8).split("\n");
+        assertEquals(lines.length, 4);
+        assertTrue(lines[0].endsWith("1000 lookups per thread"));
+        assertTrue(lines[2].startsWith("GUAVA"));
+        assertTrue(lines[2].endsWith("1.00"));
+        assertTrue(lines[3].startsWith("CONCURRENT"));
+    }
+
+    @Test
+    public void testRunWithInvalidArguments() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+        assertEquals(UserAgentCacheConcurrencyBenchmark.run(
+                new String[]{"--operations", "0"}, out,
+                new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(UserAgentCacheConcurrencyBenchmark.run(
+                new String[]{"--type", "unknown"}, out,
+                new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(UserAgentCacheConcurrencyBenchmark.run(
+                new String[]{"--seed"}, out, new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertTrue(new String(err.toByteArray(), UTF8).contains("Usage"));
+    }
+}
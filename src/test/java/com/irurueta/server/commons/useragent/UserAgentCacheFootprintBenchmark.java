@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Benchmark comparing heap retained per entry by each implementation of the
+ * cache of detected user agents.
+ * Each cache is filled with distinct synthetic user agents, each one being a
+ * new string as it happens when user agents are read from requests, and
+ * retained heap is measured after forcing garbage collection. Memory of
+ * off-heap caches is not part of the heap, hence it is not measured.
+ * Usage:
+ * <pre>
+ * java com.irurueta.server.commons.useragent.UserAgentCacheFootprintBenchmark
+ *     [--entries n] [--seed n] [--type guava|hashed|trie|off_heap|pooled]...
+ * </pre>
+ */
+public final class UserAgentCacheFootprintBenchmark {
+
+    /**
+     * Default number of cached user agents.
+     */
+    public static final int DEFAULT_ENTRIES = 100000;
+
+    /**
+     * Default seed of generated user agents.
+     */
+    public static final long DEFAULT_SEED = 0;
+
+    /**
+     * Data cached for all user agents. Copies are cached, so that each entry
+     * retains its own instance.
+     */
+    private static final UserAgentData TEMPLATE = new UserAgentData(null,
+            DeviceCategory.PERSONAL_COMPUTER, "Personal computer", "Chrome",
+            OperatingSystemFamily.WINDOWS, "Windows", "Windows 10",
+            "Microsoft Corporation.", "10.0", UserAgentType.BROWSER,
+            "99.0.4844.51");
+
+    /**
+     * Memory reserved per user agent by off-heap caches, expressed in bytes.
+     */
+    private static final long OFF_HEAP_BYTES_PER_ENTRY = 1024;
+
+    /**
+     * Number of garbage collections forced before measuring heap.
+     */
+    private static final int GC_RUNS = 5;
+
+    /**
+     * Time to wait after each garbage collection, expressed in milliseconds.
+     */
+    private static final long GC_WAIT_MILLIS = 50;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: " +
+            "UserAgentCacheFootprintBenchmark [--entries n] [--seed n] " +
+            "[--type guava|hashed|trie|off_heap|pooled]...";
+
+    /**
+     * Constructor.
+     */
+    private UserAgentCacheFootprintBenchmark() { }
+
+    /**
+     * Entry point of the benchmark.
+     * @param args command line arguments.
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args command line arguments.
+     * @param out stream where results are printed.
+     * @param err stream where errors are printed.
+     * @return exit code, using the same values as
+     * {@link UserAgentEnrichmentTool}.
+     */
+    public static int run(final String[] args, final PrintStream out,
+            final PrintStream err) {
+        int entries = DEFAULT_ENTRIES;
+        long seed = DEFAULT_SEED;
+        final List<UserAgentCacheType> types = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--entries":
+                        entries = parsePositive(requireValue(args, ++i, arg),
+                                arg);
+                        break;
+                    case "--seed":
+                        seed = parseLong(requireValue(args, ++i, arg), arg);
+                        break;
+                    case "--type":
+                        types.add(UserAgentCacheType.fromName(requireValue(
+                                args, ++i, arg)));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unknown option: " + arg);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return UserAgentEnrichmentTool.EXIT_USAGE;
+        }
+        if (types.isEmpty()) {
+            types.addAll(Arrays.asList(UserAgentCacheType.values()));
+        }
+
+        final List<String> userAgents = generate(entries, seed);
+        long totalLength = 0;
+        for (final String userAgent : userAgents) {
+            totalLength += userAgent.length();
+        }
+        out.println(String.format(Locale.ENGLISH,
+                "%d distinct user agents, %.1f characters on average",
+                entries, (double) totalLength / entries));
+        out.println(String.format(Locale.ENGLISH, "%-10s %16s %10s",
+                "type", "bytes/entry", "ratio"));
+        try {
+            double reference = Double.NaN;
+            for (final UserAgentCacheType type : types) {
+                final double bytes = measure(type, userAgents);
+                if (Double.isNaN(reference)) {
+                    reference = bytes;
+                }
+                out.println(String.format(Locale.ENGLISH,
+                        "%-10s %16.1f %10.2f", type, bytes,
+                        bytes / reference));
+            }
+        } catch (final ConfigurationException e) {
+            err.println("Benchmark failed: " + e.getMessage());
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Benchmark interrupted");
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+        return UserAgentEnrichmentTool.EXIT_SUCCESS;
+    }
+
+    /**
+     * Generates provided number of distinct user agents.
+     * @param entries number of user agents.
+     * @param seed seed of generated user agents.
+     * @return distinct user agents.
+     */
+    public static List<String> generate(final int entries, final long seed) {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(seed);
+        // uniform sampling of a larger population quickly yields distinct
+        // user agents
+        generator.setPopulationSize(2 * entries);
+        generator.setZipfExponent(0.0);
+        final Set<String> result = new LinkedHashSet<>();
+        while (result.size() < entries) {
+            result.add(generator.next());
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * Measures heap retained per entry by provided cache implementation once
+     * filled with provided user agents, using default settings for any other
+     * configuration.
+     * @param type implementation of the cache.
+     * @param userAgents distinct user agents to be cached.
+     * @return retained bytes per entry.
+     * @throws ConfigurationException if cache cannot be configured.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public static double measure(final UserAgentCacheType type,
+            final List<String> userAgents) throws ConfigurationException,
+            InterruptedException {
+        final Properties properties = new Properties();
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_SIZE_PROPERTY,
+                Integer.toString(userAgents.size()));
+        // off-heap caches are large enough to keep all user agents
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY,
+                Long.toString(OFF_HEAP_BYTES_PER_ENTRY * userAgents.size()));
+        final UserAgentConfiguration cfg = new UserAgentConfigurationImpl(
+                properties);
+
+        final long before = usedHeap();
+        final UserAgentCache cache = UserAgentDetector.createCache(type, cfg,
+                new UserAgentResultPool(cfg.getUserAgentResultPoolSize()));
+        for (final String userAgent : userAgents) {
+            final String copy = new String(userAgent.toCharArray());
+            final UserAgentData data = new UserAgentData(TEMPLATE);
+            data.setUserAgent(copy);
+            cache.put(copy, data);
+        }
+        final long after = usedHeap();
+
+        // keeps cache reachable until heap is measured
+        final long size = cache.size();
+        cache.invalidateAll();
+        return (double) (after - before) / Math.max(size, 1);
+    }
+
+    /**
+     * Returns used heap once garbage has been collected.
+     * @return used heap expressed in bytes.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    private static long usedHeap() throws InterruptedException {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_RUNS; i++) {
+            System.gc();
+            Thread.sleep(GC_WAIT_MILLIS);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Returns the value following an option.
+     * @param args command line arguments.
+     * @param index position of value.
+     * @param option option requiring the value.
+     * @return value of option.
+     * @throws IllegalArgumentException if value is missing.
+     */
+    private static String requireValue(final String[] args, final int index,
+            final String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a positive integer value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a positive integer.
+     */
+    private static int parsePositive(final String value, final String option) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return result;
+    }
+
+    /**
+     * Parses a long value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a valid number.
+     */
+    private static long parseLong(final String value, final String option) {
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+    }
+}
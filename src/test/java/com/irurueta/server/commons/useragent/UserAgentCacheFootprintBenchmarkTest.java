@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserAgentCacheFootprintBenchmarkTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testGenerate() {
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(1000, 0L);
+        assertEquals(userAgents.size(), 1000);
+        assertEquals(new HashSet<>(userAgents).size(), 1000);
+        assertEquals(UserAgentCacheFootprintBenchmark.generate(1000, 0L),
+                userAgents);
+    }
+
+    @Test
+    public void testMeasure() throws ConfigurationException,
+            InterruptedException {
+        final List<String> userAgents = UserAgentCacheFootprintBenchmark.
+                generate(20000, 0L);
+        final double guava = UserAgentCacheFootprintBenchmark.measure(
+                UserAgentCacheType.GUAVA, userAgents);
+        final double trie = UserAgentCacheFootprintBenchmark.measure(
+                UserAgentCacheType.TRIE, userAgents);
+
+        // every entry keeps at least its data
+        assertTrue(guava > 56.0);
+        assertTrue(trie > 56.0);
+        assertTrue(trie < guava);
+    }
+
+    @Test
+    public void testRun() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int exitCode = UserAgentCacheFootprintBenchmark.run(
+                new String[]{"--entries", "100", "--seed", "1", "--type",
+                        "guava", "--type", "trie"},
+                new PrintStream(out, true), new PrintStream(err, true));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+        final String[] lines = new String(out.toByteArray(), UTF8).split("\n");
+        assertEquals(lines.length, 4);
+        assertTrue(lines[0].startsWith("100 distinct user agents"));
+        assertTrue(lines[2].startsWith("GUAVA"));
+        assertTrue(lines[2].endsWith("1.00"));
+        assertTrue(lines[3].startsWith("TRIE"));
+    }
+
+    @Test
+    public void testRunWithInvalidArguments() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+        assertEquals(UserAgentCacheFootprintBenchmark.run(
+                new String[]{"--entries", "0"}, out,
+                new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(UserAgentCacheFootprintBenchmark.run(
+                new String[]{"--type", "unknown"}, out,
+                new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(UserAgentCacheFootprintBenchmark.run(
+                new String[]{"--seed"}, out, new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertTrue(new String(err.toByteArray(), UTF8).contains("Usage"));
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentCacheTypeTest {
+
+    @Test
+    public void testFromName() {
+        assertEquals(UserAgentCacheType.fromName("guava"),
+                UserAgentCacheType.GUAVA);
+        assertEquals(UserAgentCacheType.fromName("HASHED"),
+                UserAgentCacheType.HASHED);
+        assertEquals(UserAgentCacheType.fromName("Trie"),
+                UserAgentCacheType.TRIE);
+        assertEquals(UserAgentCacheType.fromName("off_heap"),
+                UserAgentCacheType.OFF_HEAP);
+        assertEquals(UserAgentCacheType.fromName("POOLED"),
+                UserAgentCacheType.POOLED);
+        assertEquals(UserAgentCacheType.fromName("concurrent"),
+                UserAgentCacheType.CONCURRENT);
+
+        try {
+            UserAgentCacheType.fromName("other");
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            UserAgentCacheType.fromName(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+}
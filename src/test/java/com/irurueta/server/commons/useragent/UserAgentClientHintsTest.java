@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UserAgentClientHintsTest {
+
+    private static final String USER_AGENT =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) Chrome/110.0.0.0 Safari/537.36";
+
+    private static final String BRANDS =
+            "\"Chromium\";v=\"110\", \"Not A(Brand\";v=\"24\", " +
+                    "\"Google Chrome\";v=\"110\"";
+
+    @Test
+    public void testFromHeaders() {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("user-agent", USER_AGENT);
+        assertNull(UserAgentClientHints.fromHeaders(headers));
+
+        headers.put("sec-ch-ua", "\"Not A(Brand\";v=\"24\"");
+        assertNull(UserAgentClientHints.fromHeaders(headers));
+
+        headers.put("sec-ch-ua", BRANDS);
+        headers.put("SEC-CH-UA-MOBILE", "?0");
+        headers.put("Sec-CH-UA-Platform", "\"Windows\"");
+        final UserAgentClientHints hints =
+                UserAgentClientHints.fromHeaders(headers);
+        assertNotNull(hints);
+        assertEquals(hints.getUserAgent(), USER_AGENT);
+        assertEquals(hints.getBrand(), "Google Chrome");
+        assertEquals(hints.getVersion(), "110");
+        assertFalse(hints.isMobile());
+        assertEquals(hints.getPlatform(), "Windows");
+        assertEquals(hints.getPlatformVersion(), "");
+
+        headers.put(UserAgentClientHints.SEC_CH_UA_PLATFORM_VERSION_HEADER,
+                "\"15.0.0\"");
+        headers.put(UserAgentClientHints.SEC_CH_UA_FULL_VERSION_LIST_HEADER,
+                "\"Chromium\";v=\"110.0.5481.100\", " +
+                        "\"Not A(Brand\";v=\"24.0.0.0\", " +
+                        "\"Google Chrome\";v=\"110.0.5481.100\"");
+        final UserAgentClientHints full =
+                UserAgentClientHints.fromHeaders(headers);
+        assertEquals(full.getVersion(), "110.0.5481.100");
+        assertEquals(full.getPlatformVersion(), "15.0.0");
+        assertNotEquals(full.getKey(), hints.getKey());
+
+        // user agent is not part of key
+        headers.put(UserAgentClientHints.USER_AGENT_HEADER, "other");
+        assertEquals(UserAgentClientHints.fromHeaders(headers).getKey(),
+                full.getKey());
+
+        try {
+            UserAgentClientHints.fromHeaders(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    @Test
+    public void testParseBrands() {
+        final List<String[]> brands = UserAgentClientHints.parseBrands(
+                BRANDS);
+        assertEquals(brands.size(), 3);
+        assertArrayEquals(brands.get(0), new String[]{"Chromium", "110"});
+        assertArrayEquals(brands.get(1), new String[]{"Not A(Brand", "24"});
+        assertArrayEquals(brands.get(2),
+                new String[]{"Google Chrome", "110"});
+
+        // separators within quotes and escaped quotes
+        final List<String[]> escaped = UserAgentClientHints.parseBrands(
+                "\"A, \\\"B\\\";\";v=\"1\", , \"C\"");
+        assertEquals(escaped.size(), 2);
+        assertArrayEquals(escaped.get(0), new String[]{"A, \"B\";", "1"});
+        assertArrayEquals(escaped.get(1), new String[]{"C", ""});
+    }
+
+    @Test
+    public void testToUserAgentData() {
+        final UserAgentData desktop = build(BRANDS, "?0", "\"Windows\"")
+                .toUserAgentData();
+        assertEquals(desktop.getUserAgent(), USER_AGENT);
+        assertEquals(desktop.getFamily(), "Chrome");
+        assertEquals(desktop.getUserAgentVersion(), "110");
+        assertEquals(desktop.getUserAgentType(), UserAgentType.BROWSER);
+        assertEquals(desktop.getOsFamily(), OperatingSystemFamily.WINDOWS);
+        assertEquals(desktop.getOsName(), "Windows");
+        assertEquals(desktop.getDeviceCategory(),
+                DeviceCategory.PERSONAL_COMPUTER);
+        assertTrue(desktop.isDesktop());
+
+        final UserAgentData mobile = build(BRANDS, "?1", "\"Android\"")
+                .toUserAgentData();
+        assertEquals(mobile.getFamily(), "Chrome Mobile");
+        assertEquals(mobile.getUserAgentType(), UserAgentType.MOBILE_BROWSER);
+        assertEquals(mobile.getOsFamily(), OperatingSystemFamily.ANDROID);
+        assertEquals(mobile.getDeviceCategory(), DeviceCategory.SMARTPHONE);
+        assertTrue(mobile.isMobile());
+
+        final UserAgentData tablet = build(BRANDS, "?0", "\"Android\"")
+                .toUserAgentData();
+        assertEquals(tablet.getDeviceCategory(), DeviceCategory.TABLET);
+        assertTrue(tablet.isTablet());
+
+        final UserAgentData edge = build("\"Not?A_Brand\";v=\"8\", " +
+                "\"Chromium\";v=\"108\", \"Microsoft Edge\";v=\"108\"", null,
+                "\"macOS\"").toUserAgentData();
+        assertEquals(edge.getFamily(), "Edge");
+        assertEquals(edge.getOsFamily(), OperatingSystemFamily.OS_X);
+
+        final UserAgentData chromium = build("\"Chromium\";v=\"110\"", null,
+                "\"Chrome OS\"").toUserAgentData();
+        assertEquals(chromium.getFamily(), "Chromium");
+        assertEquals(chromium.getOsName(), "Chrome OS");
+        assertEquals(chromium.getOsFamily(), OperatingSystemFamily.LINUX);
+
+        final UserAgentData unknown = build(BRANDS, null, null)
+                .toUserAgentData();
+        assertEquals(unknown.getOsFamily(), OperatingSystemFamily.UNKNOWN);
+        assertEquals(unknown.getOsVersion(), "");
+    }
+
+    private static UserAgentClientHints build(final String brands,
+            final String mobile, final String platform) {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put(UserAgentClientHints.USER_AGENT_HEADER, USER_AGENT);
+        headers.put(UserAgentClientHints.SEC_CH_UA_HEADER, brands);
+        if (mobile != null) {
+            headers.put(UserAgentClientHints.SEC_CH_UA_MOBILE_HEADER, mobile);
+        }
+        if (platform != null) {
+            headers.put(UserAgentClientHints.SEC_CH_UA_PLATFORM_HEADER,
+                    platform);
+        }
+        return UserAgentClientHints.fromHeaders(headers);
+    }
+}
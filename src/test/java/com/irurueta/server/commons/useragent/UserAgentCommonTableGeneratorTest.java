@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UserAgentCommonTableGeneratorTest {
+
+    @Test
+    public void testMain() throws IOException {
+        final File input = File.createTempFile("common-user-agents", ".txt");
+        final File output = File.createTempFile("common-user-agents", ".bin");
+        try {
+            try (OutputStream out = new FileOutputStream(input)) {
+                out.write(("# comment\n" +
+                        "Mozilla/5.0 (X11; Linux x86_64; rv:63.0) " +
+                        "Gecko/20100101 Firefox/63.0\n" +
+                        "\n" +
+                        "curl/7.35.0\n" +
+                        "curl/7.35.0\n").getBytes(StandardCharsets.UTF_8));
+            }
+
+            final Set<String> userAgents =
+                    UserAgentCommonTableGenerator.readUserAgents(input);
+            assertEquals(userAgents.size(), 2);
+
+            UserAgentCommonTableGenerator.main(new String[]{
+                    input.getPath(), output.getPath()});
+
+            final UserAgentCommonTable table;
+            try (InputStream in = new FileInputStream(output)) {
+                table = UserAgentCommonTable.read(in);
+            }
+            assertEquals(table.size(), 2);
+            assertEquals(table.get("curl/7.35.0").getUserAgentType(),
+                    UserAgentType.LIBRARY);
+            assertEquals(table.get("Mozilla/5.0 (X11; Linux x86_64; " +
+                    "rv:63.0) Gecko/20100101 Firefox/63.0").getFamily(),
+                    "Firefox");
+        } finally {
+            assertTrue(input.delete());
+            assertTrue(output.delete());
+        }
+    }
+
+    @Test
+    public void testGenerateSkipsLongUserAgents() {
+        final char[] chars = new char[UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_MAX_LENGTH + 1];
+        Arrays.fill(chars, 'a');
+        final UserAgentCommonTable table = UserAgentCommonTableGenerator.
+                generate(Arrays.asList("curl/7.35.0", new String(chars)));
+        assertEquals(table.size(), 1);
+    }
+}
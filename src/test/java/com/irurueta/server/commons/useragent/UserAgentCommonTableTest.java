@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserAgentCommonTableTest {
+
+    @Test
+    public void testBuildAndGet() {
+        final List<UserAgentData> records = buildRecords(5000);
+        final UserAgentCommonTable table = UserAgentCommonTable.build("v1",
+                records);
+
+        assertEquals(table.getDataVersion(), "v1");
+        assertEquals(table.size(), 5000);
+        for (final UserAgentData record : records) {
+            assertEqualData(table.get(record.getUserAgent()), record);
+        }
+
+        assertNull(table.get("Unknown/1.0"));
+        assertNull(table.get(null));
+
+        // Force IllegalArgumentException
+        try {
+            UserAgentCommonTable.build(null, records);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            UserAgentCommonTable.build("v1", Arrays.asList(records.get(0),
+                    records.get(0)));
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        final UserAgentCommonTable table = UserAgentCommonTable.build("v1",
+                Collections.<UserAgentData>emptyList());
+        assertEquals(table.size(), 0);
+        assertNull(table.get("Agent/1"));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        final List<UserAgentData> records = buildRecords(100);
+        final UserAgentCommonTable table = UserAgentCommonTable.build("v2",
+                records);
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.write(out);
+
+        final UserAgentCommonTable table2 = UserAgentCommonTable.read(
+                new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(table2.getDataVersion(), "v2");
+        assertEquals(table2.size(), 100);
+        for (final UserAgentData record : records) {
+            assertEqualData(table2.get(record.getUserAgent()), record);
+        }
+
+        // Force IOException (invalid content)
+        try {
+            UserAgentCommonTable.read(new ByteArrayInputStream(
+                    "garbage".getBytes("UTF-8")));
+            fail("IOException expected but not thrown");
+        } catch (final IOException ignore) {
+        }
+    }
+
+    @Test
+    public void testLoad() {
+        final UserAgentCommonTable table = UserAgentCommonTable.load();
+        assertNotNull(table);
+        assertTrue(table.size() > 0);
+
+        final UserAgentData data = table.get(
+                "Mozilla/5.0 (compatible; Googlebot/2.1; " +
+                        "+http://www.google.com/bot.html)");
+        assertNotNull(data);
+        assertEquals(data.getUserAgentType(), UserAgentType.ROBOT);
+    }
+
+    private static List<UserAgentData> buildRecords(final int n) {
+        final List<UserAgentData> records = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            records.add(new UserAgentData("Agent/" + i,
+                    DeviceCategory.values()[i % DeviceCategory.values().length],
+                    "Device " + (i % 3), "Family " + (i % 7),
+                    i % 11 == 0 ? null : OperatingSystemFamily.LINUX,
+                    "Linux", "OS " + (i % 5), null, "1." + (i % 4),
+                    UserAgentType.BROWSER, Integer.toString(i)));
+        }
+        return records;
+    }
+
+    private static void assertEqualData(final UserAgentData data,
+            final UserAgentData expected) {
+        assertNotNull(data);
+        assertEquals(data.getUserAgent(), expected.getUserAgent());
+        assertEquals(data.getDeviceCategory(), expected.getDeviceCategory());
+        assertEquals(data.getDeviceCategoryName(),
+                expected.getDeviceCategoryName());
+        assertEquals(data.getFamily(), expected.getFamily());
+        assertEquals(data.getOsFamily(), expected.getOsFamily());
+        assertEquals(data.getOsFamilyName(), expected.getOsFamilyName());
+        assertEquals(data.getOsName(), expected.getOsName());
+        assertEquals(data.getOsProducer(), expected.getOsProducer());
+        assertEquals(data.getOsVersion(), expected.getOsVersion());
+        assertEquals(data.getUserAgentType(), expected.getUserAgentType());
+        assertEquals(data.getUserAgentVersion(),
+                expected.getUserAgentVersion());
+    }
+}
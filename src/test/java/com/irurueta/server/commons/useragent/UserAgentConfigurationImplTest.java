@@ -36,6 +36,47 @@ public class UserAgentConfigurationImplTest {
         assertEquals(cfg.getUserAgentCacheExpirationTimeHours(),
                 UserAgentConfigurationFactory.
                         DEFAULT_USER_AGENT_CACHE_EXPIRATION_TIME_HOURS);
+        assertEquals(cfg.isUserAgentCacheAdmissionEnabled(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_CACHE_ADMISSION_ENABLED);
+        assertEquals(cfg.getUserAgentCacheAdmissionMinFrequency(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY);
+        assertEquals(cfg.getUserAgentMaxLength(),
+                UserAgentConfigurationFactory.DEFAULT_USER_AGENT_MAX_LENGTH);
+        assertEquals(cfg.getUserAgentParseMaxSteps(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_PARSE_MAX_STEPS);
+        assertEquals(cfg.isUserAgentCommonTableEnabled(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_COMMON_TABLE_ENABLED);
+        assertEquals(cfg.getUserAgentNegativeCacheSize(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_NEGATIVE_CACHE_SIZE);
+        assertEquals(cfg.getUserAgentNegativeCacheExpirationTimeMinutes(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES);
+        assertEquals(cfg.isUserAgentPatternProfilingEnabled(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_PATTERN_PROFILING_ENABLED);
+        assertEquals(cfg.getUserAgentParserMode(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_PARSER_MODE);
+        assertEquals(cfg.getUserAgentCacheType(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_CACHE_TYPE);
+        assertEquals(cfg.isUserAgentCacheHashVerificationEnabled(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED);
+        assertEquals(cfg.getUserAgentCacheMaxBytes(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_CACHE_MAX_BYTES);
+        assertEquals(cfg.getUserAgentResultPoolSize(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_RESULT_POOL_SIZE);
+        assertEquals(cfg.getUserAgentParserReplicas(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_PARSER_REPLICAS);
     }
 
     @Test
@@ -48,6 +89,21 @@ public class UserAgentConfigurationImplTest {
         assertFalse(cfg.isUserAgentDetectionEnabled());
         assertEquals(cfg.getUserAgentCacheSize(), 200);
         assertEquals(cfg.getUserAgentCacheExpirationTimeHours(), 4);
+        assertTrue(cfg.isUserAgentCacheAdmissionEnabled());
+        assertEquals(cfg.getUserAgentCacheAdmissionMinFrequency(), 3);
+        assertEquals(cfg.getUserAgentMaxLength(), 512);
+        assertEquals(cfg.getUserAgentParseMaxSteps(), 1000000L);
+        assertFalse(cfg.isUserAgentCommonTableEnabled());
+        assertEquals(cfg.getUserAgentNegativeCacheSize(), 0);
+        assertEquals(cfg.getUserAgentNegativeCacheExpirationTimeMinutes(), 5);
+        assertTrue(cfg.isUserAgentPatternProfilingEnabled());
+        assertEquals(cfg.getUserAgentParserMode(),
+                UserAgentParserMode.RESOURCE_MODULE);
+        assertEquals(cfg.getUserAgentCacheType(), UserAgentCacheType.HASHED);
+        assertFalse(cfg.isUserAgentCacheHashVerificationEnabled());
+        assertEquals(cfg.getUserAgentCacheMaxBytes(), 1048576L);
+        assertEquals(cfg.getUserAgentResultPoolSize(), 1000);
+        assertEquals(cfg.getUserAgentParserReplicas(), 8);
 
         // Force ConfigurationException (wrong cache size value)
         props = new Properties();
@@ -93,6 +149,128 @@ public class UserAgentConfigurationImplTest {
         } catch (final ConfigurationException ignore) {
         }
         assertNull(cfg);
+
+        // Force ConfigurationException (wrong admission minimum frequency)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY, "wrong");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (out of range admission minimum
+        // frequency)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY, "16");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (zero maximum length)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_MAX_LENGTH_PROPERTY, "0");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (negative parse maximum steps)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSE_MAX_STEPS_PROPERTY, "-1");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (negative negative cache size)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY, "-1");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (zero negative cache expiration time)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY, "0");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (unknown parser mode)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY, "unknown");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (wrong cache type value)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY, "unknown");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (wrong cache maximum bytes value)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY, "1024");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (wrong result pool size value)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_RESULT_POOL_SIZE_PROPERTY, "0");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
+
+        // Force ConfigurationException (negative parser replicas)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY, "-1");
+        try {
+            cfg = new UserAgentConfigurationImpl(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+        assertNull(cfg);
     }
 
     @Test
@@ -108,6 +286,21 @@ public class UserAgentConfigurationImplTest {
         assertFalse(cfg.isUserAgentDetectionEnabled());
         assertEquals(cfg.getUserAgentCacheSize(), 200);
         assertEquals(cfg.getUserAgentCacheExpirationTimeHours(), 4);
+        assertTrue(cfg.isUserAgentCacheAdmissionEnabled());
+        assertEquals(cfg.getUserAgentCacheAdmissionMinFrequency(), 3);
+        assertEquals(cfg.getUserAgentMaxLength(), 512);
+        assertEquals(cfg.getUserAgentParseMaxSteps(), 1000000L);
+        assertFalse(cfg.isUserAgentCommonTableEnabled());
+        assertEquals(cfg.getUserAgentNegativeCacheSize(), 0);
+        assertEquals(cfg.getUserAgentNegativeCacheExpirationTimeMinutes(), 5);
+        assertTrue(cfg.isUserAgentPatternProfilingEnabled());
+        assertEquals(cfg.getUserAgentParserMode(),
+                UserAgentParserMode.RESOURCE_MODULE);
+        assertEquals(cfg.getUserAgentCacheType(), UserAgentCacheType.HASHED);
+        assertFalse(cfg.isUserAgentCacheHashVerificationEnabled());
+        assertEquals(cfg.getUserAgentCacheMaxBytes(), 1048576L);
+        assertEquals(cfg.getUserAgentResultPoolSize(), 1000);
+        assertEquals(cfg.getUserAgentParserReplicas(), 8);
 
         // Force ConfigurationException (wrong cache size value)
         props = new Properties();
@@ -149,6 +342,75 @@ public class UserAgentConfigurationImplTest {
         } catch (final ConfigurationException ignore) {
         }
 
+        // Force ConfigurationException (wrong maximum length)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_MAX_LENGTH_PROPERTY, "wrong");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+
+        // Force ConfigurationException (zero parse maximum steps)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSE_MAX_STEPS_PROPERTY, "0");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+
+        // Force ConfigurationException (unknown parser mode)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY, "unknown");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+
+        // Force ConfigurationException (wrong cache type value)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY, "unknown");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+
+        // Force ConfigurationException (wrong cache maximum bytes value)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY, "1024");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+
+        // Force ConfigurationException (wrong result pool size value)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_RESULT_POOL_SIZE_PROPERTY, "0");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
+
+        // Force ConfigurationException (negative parser replicas)
+        props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY, "-1");
+        try {
+            cfg.fromProperties(props);
+            fail("ConfigurationException expected but not thrown");
+        } catch (final ConfigurationException ignore) {
+        }
     }
 
     @Test
@@ -170,6 +432,61 @@ public class UserAgentConfigurationImplTest {
                 USER_AGENT_CACHE_EXPIRATION_TIME_HOURS_PROPERTY), props2.
                 getProperty(UserAgentConfigurationFactory.
                         USER_AGENT_CACHE_EXPIRATION_TIME_HOURS_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY), props2.
+                getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY), props2.
+                getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_MAX_LENGTH_PROPERTY), props2.getProperty(
+                UserAgentConfigurationFactory.USER_AGENT_MAX_LENGTH_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSE_MAX_STEPS_PROPERTY), props2.getProperty(
+                UserAgentConfigurationFactory.
+                        USER_AGENT_PARSE_MAX_STEPS_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY), props2.getProperty(
+                UserAgentConfigurationFactory.
+                        USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY), props2.getProperty(
+                UserAgentConfigurationFactory.
+                        USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_PARSER_MODE_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_CACHE_TYPE_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_CACHE_MAX_BYTES_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_RESULT_POOL_SIZE_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_RESULT_POOL_SIZE_PROPERTY));
+        assertEquals(props.getProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY),
+                props2.getProperty(UserAgentConfigurationFactory.
+                        USER_AGENT_PARSER_REPLICAS_PROPERTY));
     }
 
     private Properties buildProperties() {
@@ -181,6 +498,38 @@ public class UserAgentConfigurationImplTest {
                 USER_AGENT_CACHE_SIZE_PROPERTY, "200");
         props.setProperty(UserAgentConfigurationFactory.
                 USER_AGENT_CACHE_EXPIRATION_TIME_HOURS_PROPERTY, "4");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY,
+                Boolean.TRUE.toString());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY_PROPERTY, "3");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_MAX_LENGTH_PROPERTY, "512");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSE_MAX_STEPS_PROPERTY, "1000000");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY,
+                Boolean.FALSE.toString());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY, "0");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_EXPIRATION_TIME_MINUTES_PROPERTY, "5");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY,
+                Boolean.TRUE.toString());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY,
+                UserAgentParserMode.RESOURCE_MODULE.name());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY, UserAgentCacheType.HASHED.name());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY, Boolean.FALSE.toString());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY, "1048576");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_RESULT_POOL_SIZE_PROPERTY, "1000");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY, "8");
         return props;
     }
 }
@@ -42,6 +42,34 @@ public class UserAgentDataTest {
         assertEquals(uaData.getUserAgentVersion(), "uaVersion");
     }
 
+    @Test
+    public void testCopyConstructor() {
+        final UserAgentData uaData = new UserAgentData("user-agent-string",
+                DeviceCategory.GAME_CONSOLE, "categoryName", "family",
+                OperatingSystemFamily.AIX, "osFamilyName", "osName",
+                "osProducer", "osVersion", UserAgentType.BROWSER, "uaVersion");
+
+        final UserAgentData copy = new UserAgentData(uaData);
+
+        // check correctness
+        assertNotSame(copy, uaData);
+        assertEquals(copy.getUserAgent(), "user-agent-string");
+        assertEquals(copy.getDeviceCategory(), DeviceCategory.GAME_CONSOLE);
+        assertEquals(copy.getDeviceCategoryName(), "categoryName");
+        assertEquals(copy.getFamily(), "family");
+        assertEquals(copy.getOsFamily(), OperatingSystemFamily.AIX);
+        assertEquals(copy.getOsFamilyName(), "osFamilyName");
+        assertEquals(copy.getOsName(), "osName");
+        assertEquals(copy.getOsProducer(), "osProducer");
+        assertEquals(copy.getOsVersion(), "osVersion");
+        assertEquals(copy.getUserAgentType(), UserAgentType.BROWSER);
+        assertEquals(copy.getUserAgentVersion(), "uaVersion");
+
+        // modifying copy does not modify original instance
+        copy.setFamily("other");
+        assertEquals(uaData.getFamily(), "family");
+    }
+
     @Test
     public void testGetSetUserAgent() {
         final UserAgentData uaData = new UserAgentData(null, null, null,
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDetectionFilterTest {
+
+    private static final String CHROME =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+            "(KHTML, like Gecko) Chrome/52.0.2743.116 Safari/537.36";
+
+    @Before
+    public void setUp() throws ConfigurationException {
+        // previous tests might have left another configuration
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        factory.configure(new Properties());
+    }
+
+    @After
+    public void tearDown() throws ConfigurationException {
+        UserAgentConfigurationFactory.getInstance().reset();
+    }
+
+    @Test
+    public void testInit() throws ServletException {
+        UserAgentDetectionFilter filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(new HashMap<String, String>()));
+
+        assertEquals(filter.getAttributeName(),
+                UserAgentDetectionFilter.DEFAULT_ATTRIBUTE_NAME);
+        assertEquals(filter.getSamplingRate(), 1.0, 0.0);
+        assertTrue(filter.getIncludePatterns().isEmpty());
+        assertTrue(filter.getExcludePatterns().isEmpty());
+
+        final Map<String, String> params = new HashMap<>();
+        params.put(UserAgentDetectionFilter.ATTRIBUTE_NAME_PARAM, " ua ");
+        params.put(UserAgentDetectionFilter.SAMPLING_RATE_PARAM, "0.25");
+        params.put(UserAgentDetectionFilter.INCLUDE_PATTERNS_PARAM,
+                "/app/*, /index.html");
+        params.put(UserAgentDetectionFilter.EXCLUDE_PATTERNS_PARAM,
+                "*.css,,*.js");
+        filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(params));
+
+        assertEquals(filter.getAttributeName(), "ua");
+        assertEquals(filter.getSamplingRate(), 0.25, 0.0);
+        assertEquals(filter.getIncludePatterns(),
+                Arrays.asList("/app/*", "/index.html"));
+        assertEquals(filter.getExcludePatterns(),
+                Arrays.asList("*.css", "*.js"));
+    }
+
+    @Test
+    public void testInitInvalidSamplingRate() {
+        for (final String rate : new String[]{"abc", "-0.1", "1.5"}) {
+            final Map<String, String> params = new HashMap<>();
+            params.put(UserAgentDetectionFilter.SAMPLING_RATE_PARAM, rate);
+            try {
+                new UserAgentDetectionFilter().init(createConfig(params));
+                fail("ServletException expected but not thrown");
+            } catch (final ServletException ignore) { }
+        }
+    }
+
+    @Test
+    public void testMatches() {
+        assertTrue(UserAgentDetectionFilter.matches("/a", "/a"));
+        assertFalse(UserAgentDetectionFilter.matches("/a", "/a/b"));
+        assertTrue(UserAgentDetectionFilter.matches("/a/*", "/a"));
+        assertTrue(UserAgentDetectionFilter.matches("/a/*", "/a/b/c"));
+        assertFalse(UserAgentDetectionFilter.matches("/a/*", "/ab"));
+        assertTrue(UserAgentDetectionFilter.matches("/*", "/x"));
+        assertTrue(UserAgentDetectionFilter.matches("*.css", "/s/x.css"));
+        assertFalse(UserAgentDetectionFilter.matches("*.css", "/s/x.js"));
+    }
+
+    @Test
+    public void testDoFilter() throws Exception {
+        final Map<String, String> params = new HashMap<>();
+        params.put(UserAgentDetectionFilter.EXCLUDE_PATTERNS_PARAM,
+                "/static/*");
+        final UserAgentDetectionFilter filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(params));
+
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final CountingChain chain = new CountingChain();
+
+        // detected request
+        Map<String, Object> attributes = new HashMap<>();
+        filter.doFilter(createRequest("/ctx", "/ctx/page", CHROME,
+                attributes), null, chain);
+        assertEquals(chain.mCount, 1);
+        final LazyUserAgentData lazy = (LazyUserAgentData) attributes.get(
+                UserAgentDetectionFilter.DEFAULT_ATTRIBUTE_NAME);
+        assertNotNull(lazy);
+        assertEquals(lazy.getUserAgent(), CHROME);
+        assertEquals(lazy.get().getFamily(),
+                detector.detect(CHROME).getFamily());
+
+        // once cached, data is solved without deferring detection
+        attributes = new HashMap<>();
+        final ServletRequest request = createRequest("/ctx", "/ctx/page",
+                CHROME, attributes);
+        filter.doFilter(request, null, chain);
+        assertEquals(chain.mCount, 2);
+        assertTrue(((LazyUserAgentData) attributes.get(
+                UserAgentDetectionFilter.DEFAULT_ATTRIBUTE_NAME)).
+                isResolved());
+        assertEquals(UserAgentDetectionFilter.getUserAgentData(request).
+                getFamily(), detector.detect(CHROME).getFamily());
+
+        // detector is kept while it is enabled
+        assertSame(filter.getDetector(), detector);
+
+        // excluded request
+        attributes = new HashMap<>();
+        filter.doFilter(createRequest("/ctx", "/ctx/static/a.css", CHROME,
+                attributes), null, chain);
+        assertEquals(chain.mCount, 3);
+        assertTrue(attributes.isEmpty());
+
+        // request without user agent
+        attributes = new HashMap<>();
+        final ServletRequest noUserAgent = createRequest("", "/page", null,
+                attributes);
+        filter.doFilter(noUserAgent, null, chain);
+        assertEquals(chain.mCount, 4);
+        assertTrue(attributes.isEmpty());
+        assertNull(UserAgentDetectionFilter.getUserAgentData(noUserAgent));
+
+        filter.destroy();
+    }
+
+    @Test
+    public void testExcludedRequestsDoNotObtainDetector() throws Exception {
+        final Map<String, String> params = new HashMap<>();
+        params.put(UserAgentDetectionFilter.EXCLUDE_PATTERNS_PARAM,
+                "/static/*");
+        final UserAgentDetectionFilter filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(params));
+
+        // closing the detector makes next detected request obtain a new one
+        final UserAgentDetector detector = filter.getDetector();
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        factory.configure(new Properties());
+        assertFalse(detector.isEnabled());
+
+        final CountingChain chain = new CountingChain();
+        Map<String, Object> attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/static/a.css", CHROME,
+                attributes), null, chain);
+        assertTrue(attributes.isEmpty());
+
+        // excluded request did not replace closed detector
+        final Field field = UserAgentDetectionFilter.class.getDeclaredField(
+                "mDetector");
+        field.setAccessible(true);
+        assertSame(field.get(filter), detector);
+
+        attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/page", CHROME, attributes), null,
+                chain);
+        assertEquals(attributes.size(), 1);
+        assertNotSame(field.get(filter), detector);
+        assertSame(field.get(filter), UserAgentDetector.getInstance());
+    }
+
+    @Test
+    public void testDoFilterAfterReconfiguration() throws Exception {
+        final UserAgentDetectionFilter filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(new HashMap<String, String>()));
+
+        final CountingChain chain = new CountingChain();
+        Map<String, Object> attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/page", CHROME, attributes), null,
+                chain);
+        assertEquals(attributes.size(), 1);
+
+        // detection disabled once filter is initialized
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_DETECTION_ENABLED_PROPERTY, "false");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        factory.configure(props);
+
+        attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/page", CHROME, attributes), null,
+                chain);
+        assertEquals(chain.mCount, 2);
+        assertTrue(attributes.isEmpty());
+
+        // detection enabled again, using a new detector
+        factory.reset();
+        factory.configure(new Properties());
+
+        attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/page", CHROME, attributes), null,
+                chain);
+        assertEquals(chain.mCount, 3);
+        assertEquals(UserAgentDetectionFilter.getUserAgentData(
+                createRequest("", "/page", CHROME, attributes)).getFamily(),
+                "Chrome");
+    }
+
+    @Test
+    public void testDoFilterNotSampled() throws Exception {
+        final Map<String, String> params = new HashMap<>();
+        params.put(UserAgentDetectionFilter.SAMPLING_RATE_PARAM, "0");
+        final UserAgentDetectionFilter filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(params));
+
+        final CountingChain chain = new CountingChain();
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < 10; i++) {
+            filter.doFilter(createRequest("", "/page", CHROME, attributes),
+                    null, chain);
+        }
+        assertEquals(chain.mCount, 10);
+        assertTrue(attributes.isEmpty());
+    }
+
+    @Test
+    public void testDoFilterNotIncluded() throws Exception {
+        final Map<String, String> params = new HashMap<>();
+        params.put(UserAgentDetectionFilter.INCLUDE_PATTERNS_PARAM, "/app/*");
+        final UserAgentDetectionFilter filter = new UserAgentDetectionFilter();
+        filter.init(createConfig(params));
+
+        final CountingChain chain = new CountingChain();
+        Map<String, Object> attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/other", CHROME, attributes),
+                null, chain);
+        assertTrue(attributes.isEmpty());
+
+        attributes = new HashMap<>();
+        filter.doFilter(createRequest("", "/app/x", CHROME, attributes),
+                null, chain);
+        assertEquals(attributes.size(), 1);
+        assertEquals(chain.mCount, 2);
+    }
+
+    private static FilterConfig createConfig(
+            final Map<String, String> params) {
+        return (FilterConfig) Proxy.newProxyInstance(
+                FilterConfig.class.getClassLoader(),
+                new Class<?>[]{FilterConfig.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy,
+                            final Method method, final Object[] args) {
+                        if ("getInitParameter".equals(method.getName())) {
+                            return params.get((String) args[0]);
+                        }
+                        return null;
+                    }
+                });
+    }
+
+    private static ServletRequest createRequest(final String contextPath,
+            final String uri, final String userAgent,
+            final Map<String, Object> attributes) {
+        return (ServletRequest) Proxy.newProxyInstance(
+                HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(final Object proxy,
+                            final Method method, final Object[] args) {
+                        switch (method.getName()) {
+                            case "getContextPath":
+                                return contextPath;
+                            case "getRequestURI":
+                                return uri;
+                            case "getHeader":
+                                return "User-Agent".equalsIgnoreCase(
+                                        (String) args[0]) ? userAgent : null;
+                            case "getAttribute":
+                                return attributes.get((String) args[0]);
+                            case "setAttribute":
+                                attributes.put((String) args[0], args[1]);
+                                return null;
+                            default:
+                                return null;
+                        }
+                    }
+                });
+    }
+
+    private static class CountingChain implements FilterChain {
+
+        private int mCount;
+
+        @Override
+        public void doFilter(final ServletRequest request,
+                final ServletResponse response) {
+            mCount++;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDetectionProcessorTest {
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (X11; U; Linux x86_64; en-US) AppleWebKit/532.9 " +
+                    "(KHTML, like Gecko) Chrome/5.0.309.0 Safari/532.9",
+            "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.0; T312461)",
+            "Wget/1.8.1",
+            "Mozilla/5.0 (iPad; U; CPU OS 3_2 like Mac OS X; en-us) " +
+                    "AppleWebKit/531.21.10 (KHTML, like Gecko) " +
+                    "Version/4.0.4 Mobile/7B367 Safari/531.21.10",
+            "Opera/9.52 (Windows NT 5.1; U; en)"
+    };
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private ExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        UserAgentDetector.reset();
+        mExecutor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        UserAgentDetector.reset();
+    }
+
+    @Test
+    public void testConstructor() {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+
+        UserAgentDetectionProcessor processor =
+                new UserAgentDetectionProcessor(detector, mExecutor);
+        assertEquals(processor.getBufferSize(),
+                UserAgentDetectionProcessor.DEFAULT_BUFFER_SIZE);
+        assertEquals(processor.getMaxBatchSize(),
+                UserAgentDetectionProcessor.DEFAULT_MAX_BATCH_SIZE);
+        assertEquals(processor.getMaxConcurrentBatches(),
+                Runtime.getRuntime().availableProcessors());
+
+        processor = new UserAgentDetectionProcessor(detector, mExecutor, 10, 2,
+                3);
+        assertEquals(processor.getBufferSize(), 10);
+        assertEquals(processor.getMaxBatchSize(), 2);
+        assertEquals(processor.getMaxConcurrentBatches(), 3);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentDetectionProcessor(null, mExecutor);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentDetectionProcessor(detector, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentDetectionProcessor(detector, mExecutor, 0, 1, 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentDetectionProcessor(detector, mExecutor, 1, 0, 1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentDetectionProcessor(detector, mExecutor, 1, 1, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testProcessPreservesOrder() throws InterruptedException {
+        final List<String> userAgents = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            userAgents.add(USER_AGENTS[i % USER_AGENTS.length] +
+                    (i % 3 == 0 ? " " + i : ""));
+        }
+
+        final UserAgentDetectionProcessor processor =
+                new UserAgentDetectionProcessor(
+                        UserAgentDetector.getInstance(), mExecutor, 16, 4, 2);
+        final ListPublisher publisher = new ListPublisher(userAgents);
+        final TestSubscriber subscriber = new TestSubscriber(3);
+
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        assertTrue(subscriber.await());
+        assertNull(subscriber.mError);
+        assertTrue(subscriber.mCompleted);
+        assertEquals(subscriber.mReceived.size(), userAgents.size());
+        for (int i = 0; i < userAgents.size(); i++) {
+            assertEquals(subscriber.mReceived.get(i).getUserAgent(),
+                    userAgents.get(i));
+        }
+        // upstream is never asked for more than the buffer size at once
+        assertTrue(publisher.mMaxOutstanding <= 16);
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        final List<String> userAgents = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            userAgents.add(USER_AGENTS[i % USER_AGENTS.length] + " " + i);
+        }
+
+        final UserAgentDetectionProcessor processor =
+                new UserAgentDetectionProcessor(
+                        UserAgentDetector.getInstance(), mExecutor, 8, 2, 2);
+        final ListPublisher publisher = new ListPublisher(userAgents);
+        final TestSubscriber subscriber = new TestSubscriber(0);
+
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        // without downstream demand only the buffer is requested
+        Thread.sleep(200);
+        assertEquals(publisher.mRequested, 8);
+        assertTrue(subscriber.mReceived.isEmpty());
+
+        subscriber.mSubscription.request(5);
+        subscriber.awaitCount(5);
+        Thread.sleep(200);
+        assertEquals(subscriber.mReceived.size(), 5);
+        assertTrue(publisher.mRequested <= 8 + 5);
+
+        subscriber.mSubscription.cancel();
+        assertTrue(publisher.mCancelled);
+    }
+
+    @Test
+    public void testInvalidRequest() throws InterruptedException {
+        final UserAgentDetectionProcessor processor =
+                new UserAgentDetectionProcessor(
+                        UserAgentDetector.getInstance(), mExecutor);
+        final ListPublisher publisher = new ListPublisher(
+                Collections.singletonList(USER_AGENTS[0]));
+        final TestSubscriber subscriber = new TestSubscriber(0);
+
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+        subscriber.mSubscription.request(0);
+
+        assertTrue(subscriber.await());
+        assertTrue(subscriber.mError instanceof IllegalArgumentException);
+        assertTrue(publisher.mCancelled);
+    }
+
+    @Test
+    public void testDetectionDisabled() throws InterruptedException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final UserAgentDetectionProcessor processor =
+                new UserAgentDetectionProcessor(detector, mExecutor);
+        detector.close();
+
+        final ListPublisher publisher = new ListPublisher(
+                Collections.singletonList(USER_AGENTS[0]));
+        final TestSubscriber subscriber = new TestSubscriber(1);
+
+        processor.subscribe(subscriber);
+        publisher.subscribe(processor);
+
+        assertTrue(subscriber.await());
+        assertTrue(subscriber.mError instanceof
+                UserAgentDetectionDisabledException);
+    }
+
+    @Test
+    public void testSingleSubscriber() throws InterruptedException {
+        final UserAgentDetectionProcessor processor =
+                new UserAgentDetectionProcessor(
+                        UserAgentDetector.getInstance(), mExecutor);
+        processor.subscribe(new TestSubscriber(1));
+
+        final TestSubscriber second = new TestSubscriber(1);
+        processor.subscribe(second);
+
+        assertTrue(second.await());
+        assertTrue(second.mError instanceof IllegalStateException);
+    }
+
+    private static class ListPublisher implements Publisher<String> {
+
+        private final List<String> mItems;
+
+        private int mIndex;
+
+        private long mRequested;
+
+        private long mOutstanding;
+
+        private long mMaxOutstanding;
+
+        private boolean mEmitting;
+
+        private volatile boolean mCancelled;
+
+        ListPublisher(final List<String> items) {
+            mItems = items;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super String> subscriber) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(final long n) {
+                    synchronized (ListPublisher.this) {
+                        mRequested += n;
+                        mOutstanding += n;
+                        mMaxOutstanding = Math.max(mMaxOutstanding,
+                                mOutstanding);
+                        if (mEmitting) {
+                            return;
+                        }
+                        mEmitting = true;
+                    }
+                    while (true) {
+                        final String item;
+                        synchronized (ListPublisher.this) {
+                            if (mCancelled || mOutstanding == 0 ||
+                                    mIndex >= mItems.size()) {
+                                mEmitting = false;
+                                break;
+                            }
+                            item = mItems.get(mIndex++);
+                            mOutstanding--;
+                        }
+                        subscriber.onNext(item);
+                    }
+                    synchronized (ListPublisher.this) {
+                        if (mCancelled || mIndex < mItems.size()) {
+                            return;
+                        }
+                        mCancelled = true;
+                    }
+                    subscriber.onComplete();
+                }
+
+                @Override
+                public void cancel() {
+                    mCancelled = true;
+                }
+            });
+        }
+    }
+
+    private static class TestSubscriber implements Subscriber<UserAgentData> {
+
+        private final long mBatch;
+
+        private final List<UserAgentData> mReceived =
+                Collections.synchronizedList(new ArrayList<UserAgentData>());
+
+        private final CountDownLatch mDone = new CountDownLatch(1);
+
+        private volatile Subscription mSubscription;
+
+        private volatile Throwable mError;
+
+        private volatile boolean mCompleted;
+
+        TestSubscriber(final long batch) {
+            mBatch = batch;
+        }
+
+        boolean await() throws InterruptedException {
+            return mDone.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        void awaitCount(final int count) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() +
+                    TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS);
+            while (mReceived.size() < count &&
+                    System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+
+        @Override
+        public void onSubscribe(final Subscription subscription) {
+            mSubscription = subscription;
+            if (mBatch > 0) {
+                subscription.request(mBatch);
+            }
+        }
+
+        @Override
+        public void onNext(final UserAgentData data) {
+            mReceived.add(data);
+            if (mBatch > 0 && mReceived.size() % mBatch == 0) {
+                mSubscription.request(mBatch);
+            }
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+            mError = throwable;
+            mDone.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            mCompleted = true;
+            mDone.countDown();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDetectionRecorderTest {
+
+    private static final String EVENT_NAME =
+            "com.irurueta.server.commons.useragent.Detection";
+
+    private static final String USER_AGENT =
+            "Mozilla/5.0 (X11; Linux x86_64; rv:63.0) Gecko/20100101 " +
+                    "Firefox/63.0 Test/1.0";
+
+    @Before
+    public void setUp() {
+        UserAgentDetector.reset();
+    }
+
+    @After
+    public void tearDown() {
+        UserAgentDetector.reset();
+    }
+
+    @Test
+    public void testCreate() {
+        assertTrue(UserAgentDetectionRecorder.create() instanceof
+                JfrUserAgentDetectionRecorder);
+        assertNull(UserAgentDetectionRecorder.NO_OP.begin());
+    }
+
+    @Test
+    public void testEventsAreRecorded() throws IOException,
+            UserAgentException, ConfigurationException {
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY, "false");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+
+        final Path file = Files.createTempFile("user-agent", ".jfr");
+        try (Recording recording = new Recording()) {
+            factory.configure(props);
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+
+            recording.enable(EVENT_NAME).withThreshold(Duration.ZERO);
+            recording.start();
+
+            // a miss, a hit and a failure
+            detector.detect(USER_AGENT);
+            detector.detect(USER_AGENT);
+            try {
+                detector.detect(null);
+                fail("UserAgentException expected but not thrown");
+            } catch (final UserAgentException ignore) {
+            }
+
+            recording.stop();
+            recording.dump(file);
+
+            final List<RecordedEvent> events = new ArrayList<>();
+            for (final RecordedEvent event : RecordingFile.readAllEvents(
+                    file)) {
+                if (EVENT_NAME.equals(event.getEventType().getName())) {
+                    events.add(event);
+                }
+            }
+            assertEquals(events.size(), 3);
+
+            final RecordedEvent miss = events.get(0);
+            assertFalse(miss.getBoolean("hit"));
+            assertTrue(miss.getLong("parseDuration") > 0);
+            assertEquals(miss.getInt("userAgentLength"), USER_AGENT.length());
+            assertEquals(miss.getString("deviceCategory"),
+                    DeviceCategory.PERSONAL_COMPUTER.name());
+            assertEquals(miss.getString("userAgentType"),
+                    UserAgentType.BROWSER.name());
+            assertNull(miss.getString("failureCause"));
+
+            final RecordedEvent hit = events.get(1);
+            assertTrue(hit.getBoolean("hit"));
+            assertEquals(hit.getLong("parseDuration"), 0);
+            assertEquals(hit.getString("userAgentType"),
+                    UserAgentType.BROWSER.name());
+
+            final RecordedEvent failure = events.get(2);
+            assertEquals(failure.getInt("userAgentLength"), 0);
+            assertNull(failure.getString("userAgentType"));
+            assertTrue(failure.getString("failureCause").contains(
+                    NullPointerException.class.getName()));
+        } finally {
+            factory.reset();
+            Files.delete(file);
+        }
+    }
+}
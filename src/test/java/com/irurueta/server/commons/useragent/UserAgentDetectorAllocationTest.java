@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the amount of memory allocated by the detection hot path, so that
+ * allocation regressions fail the build as functional regressions do.
+ * Allocations are measured using the per-thread allocation counters of the
+ * JVM, averaged over many detections after warming up so that code is
+ * compiled. Tests are skipped on JVMs not supporting these counters.
+ * Budgets:
+ * <ul>
+ * <li>Cache hits, either before or after data is reloaded: a single
+ * {@link UserAgentData} copy plus a small bookkeeping node of the cache
+ * eviction queue.</li>
+ * <li>Common table hits: a single {@link UserAgentData} instance.</li>
+ * <li>Cache misses: parsing allocates a regular expression matcher for each
+ * evaluated pattern, which amounts to roughly 110 KiB per user agent of the
+ * synthetic traffic produced by {@link UserAgentTrafficGenerator}. Budget
+ * leaves some room for differences among JVM versions.</li>
+ * </ul>
+ */
+public class UserAgentDetectorAllocationTest {
+
+    /**
+     * Maximum bytes allocated on average by a cache hit.
+     */
+    private static final long CACHE_HIT_BUDGET = 128;
+
+    /**
+     * Maximum bytes allocated on average by a common table hit.
+     */
+    private static final long COMMON_TABLE_HIT_BUDGET = 96;
+
+    /**
+     * Maximum bytes allocated on average by a cache miss.
+     */
+    private static final long CACHE_MISS_BUDGET = 192 * 1024;
+
+    private static final int WARMUP = 20000;
+
+    private static final int ITERATIONS = 20000;
+
+    private static final int MISS_WARMUP = 200;
+
+    private static final int MISS_ITERATIONS = 200;
+
+    private static final String CHROME =
+            "Mozilla/5.0 (X11; U; Linux x86_64; en-US) AppleWebKit/532.9 " +
+                    "(KHTML, like Gecko) Chrome/5.0.309.0 Safari/532.9";
+
+    private com.sun.management.ThreadMXBean mThreadBean;
+
+    /**
+     * Keeps detected data reachable so that allocations are not optimized
+     * away.
+     */
+    private UserAgentData mSink;
+
+    @Before
+    public void setUp() {
+        UserAgentDetector.reset();
+
+        final java.lang.management.ThreadMXBean bean =
+                ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        mThreadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(mThreadBean.isThreadAllocatedMemorySupported());
+        mThreadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        UserAgentDetector.reset();
+    }
+
+    @Test
+    public void testCacheHitAllocation() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            detector.detect(CHROME);
+
+            for (int i = 0; i < WARMUP; i++) {
+                mSink = detector.detect(CHROME);
+            }
+
+            final long before = allocatedBytes();
+            for (int i = 0; i < ITERATIONS; i++) {
+                mSink = detector.detect(CHROME);
+            }
+            final long perCall = (allocatedBytes() - before) / ITERATIONS;
+
+            assertEquals(detector.getStats().getMissCount(), 1);
+            assertTrue("Cache hit allocated " + perCall + " bytes",
+                    perCall <= CACHE_HIT_BUDGET);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCacheHitAllocationAfterReload() throws Exception {
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY,
+                UserAgentParserMode.RESOURCE_MODULE.name());
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            detector.detect(CHROME);
+            detector.reload().get();
+            assertEquals(detector.getDataGeneration(), 1);
+            detector.detect(CHROME);
+
+            for (int i = 0; i < WARMUP; i++) {
+                mSink = detector.detect(CHROME);
+            }
+
+            final long before = allocatedBytes();
+            for (int i = 0; i < ITERATIONS; i++) {
+                mSink = detector.detect(CHROME);
+            }
+            final long perCall = (allocatedBytes() - before) / ITERATIONS;
+
+            assertEquals(detector.getStats().getMissCount(), 2);
+            assertEquals(mSink.getUserAgent(), CHROME);
+            assertTrue("Cache hit after reload allocated " + perCall +
+                    " bytes", perCall <= CACHE_HIT_BUDGET);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testDetectIfCachedAllocation() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            detector.detect(CHROME);
+
+            for (int i = 0; i < WARMUP; i++) {
+                mSink = detector.detectIfCached(CHROME);
+            }
+
+            final long before = allocatedBytes();
+            for (int i = 0; i < ITERATIONS; i++) {
+                mSink = detector.detectIfCached(CHROME);
+            }
+            final long perCall = (allocatedBytes() - before) / ITERATIONS;
+
+            assertNotNull(mSink);
+            assertTrue("Cache hit allocated " + perCall + " bytes",
+                    perCall <= CACHE_HIT_BUDGET);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCommonTableHitAllocation() throws UserAgentException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        Assume.assumeTrue(detector.getCommonTableSize() > 0);
+        detector.detect(CHROME);
+        Assume.assumeTrue(detector.getCommonTableHitCount() > 0);
+
+        for (int i = 0; i < WARMUP; i++) {
+            mSink = detector.detect(CHROME);
+        }
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mSink = detector.detect(CHROME);
+        }
+        final long perCall = (allocatedBytes() - before) / ITERATIONS;
+
+        assertEquals(detector.getStats().getMissCount(), 0);
+        assertTrue("Common table hit allocated " + perCall + " bytes",
+                perCall <= COMMON_TABLE_HIT_BUDGET);
+    }
+
+    @Test
+    public void testCacheMissAllocation() throws UserAgentException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+        generator.setUniqueRate(1.0);
+        final List<String> userAgents = generator.generate(
+                MISS_WARMUP + MISS_ITERATIONS);
+
+        for (int i = 0; i < MISS_WARMUP; i++) {
+            mSink = detector.detect(userAgents.get(i));
+        }
+
+        final long before = allocatedBytes();
+        for (int i = MISS_WARMUP; i < userAgents.size(); i++) {
+            mSink = detector.detect(userAgents.get(i));
+        }
+        final long perCall = (allocatedBytes() - before) / MISS_ITERATIONS;
+
+        assertEquals(detector.getStats().getMissCount(),
+                MISS_WARMUP + MISS_ITERATIONS);
+        assertTrue("Cache miss allocated " + perCall + " bytes",
+                perCall <= CACHE_MISS_BUDGET);
+    }
+
+    private long allocatedBytes() {
+        return mThreadBean.getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    private static Properties buildCommonTableDisabledProperties() {
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY, "false");
+        return props;
+    }
+}
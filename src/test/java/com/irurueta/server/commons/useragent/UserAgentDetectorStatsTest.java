@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDetectorStatsTest {
+
+    private static final double ABSOLUTE_ERROR = 1e-9;
+
+    @Test
+    public void testConstructorAndGetters() {
+        final UserAgentDetectorStats stats = new UserAgentDetectorStats(3, 1,
+                1, 400, 2);
+
+        assertEquals(stats.getHitCount(), 3);
+        assertEquals(stats.getMissCount(), 1);
+        assertEquals(stats.getFailureCount(), 1);
+        assertEquals(stats.getTotalParseTimeNanos(), 400);
+        assertEquals(stats.getRejectedCount(), 2);
+        assertEquals(stats.getRequestCount(), 4);
+        assertEquals(stats.getHitRate(), 0.75, ABSOLUTE_ERROR);
+        assertEquals(stats.getMissRate(), 0.25, ABSOLUTE_ERROR);
+        assertEquals(stats.getAverageParseTimeNanos(), 400.0, ABSOLUTE_ERROR);
+        assertNotNull(stats.toString());
+
+        // empty statistics
+        final UserAgentDetectorStats empty = new UserAgentDetectorStats(0, 0,
+                0, 0, 0);
+        assertEquals(empty.getHitRate(), 1.0, ABSOLUTE_ERROR);
+        assertEquals(empty.getMissRate(), 0.0, ABSOLUTE_ERROR);
+        assertEquals(empty.getAverageParseTimeNanos(), 0.0, ABSOLUTE_ERROR);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentDetectorStats(-1, 0, 0, 0, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentDetectorStats(0, 0, 0, 0, -1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testMinus() {
+        final UserAgentDetectorStats before = new UserAgentDetectorStats(1, 2,
+                0, 100, 1);
+        final UserAgentDetectorStats after = new UserAgentDetectorStats(5, 3,
+                1, 250, 4);
+
+        final UserAgentDetectorStats diff = after.minus(before);
+        assertEquals(diff.getHitCount(), 4);
+        assertEquals(diff.getMissCount(), 1);
+        assertEquals(diff.getFailureCount(), 1);
+        assertEquals(diff.getTotalParseTimeNanos(), 150);
+        assertEquals(diff.getRejectedCount(), 3);
+
+        // negative differences are clamped
+        final UserAgentDetectorStats clamped = before.minus(after);
+        assertEquals(clamped.getHitCount(), 0);
+        assertEquals(clamped.getMissCount(), 0);
+        assertEquals(clamped.getFailureCount(), 0);
+        assertEquals(clamped.getTotalParseTimeNanos(), 0);
+        assertEquals(clamped.getRejectedCount(), 0);
+    }
+}
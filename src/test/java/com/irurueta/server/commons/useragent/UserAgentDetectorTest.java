@@ -18,8 +18,17 @@ package com.irurueta.server.commons.useragent;
 import com.irurueta.server.commons.configuration.ConfigurationException;
 import net.sf.uadetector.ReadableDeviceCategory;
 import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.reflect.Field;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.*;
 
 public class UserAgentDetectorTest {
@@ -241,6 +250,12 @@ public class UserAgentDetectorTest {
             "Mozilla/5.0 (Windows NT 6.3; Trident/7.0; rv:11.0) like Gecko"
     };
 
+    @Before
+    public void setUp() {
+        // previous tests might have closed the singleton instance
+        UserAgentDetector.reset();
+    }
+
     @After
     public void tearDown() {
         UserAgentDetector.reset();
@@ -2202,4 +2217,867 @@ public class UserAgentDetectorTest {
         assertFalse(uaData.isTablet());
         assertFalse(uaData.isSmartTV());
     }
+
+    @Test
+    public void testGetStats() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+
+            final UserAgentDetectorStats before = detector.getStats();
+
+            detector.detect(chrome[0]);
+            detector.detect(chrome[0]);
+            detector.detect(chrome[1]);
+
+            final UserAgentDetectorStats stats =
+                    detector.getStats().minus(before);
+
+            assertEquals(stats.getRequestCount(), 3);
+            assertEquals(stats.getHitCount() + stats.getMissCount(), 3);
+            assertTrue(stats.getHitCount() >= 1);
+            assertEquals(stats.getFailureCount(), 0);
+            assertTrue(stats.getTotalParseTimeNanos() >= 0);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testDetectIfCached() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+
+            assertNull(detector.detectIfCached(firefox3[0]));
+
+            final UserAgentData data = detector.detect(firefox3[0]);
+            final UserAgentData cached = detector.detectIfCached(firefox3[0]);
+
+            assertNotNull(cached);
+            assertEquals(cached.getUserAgent(), data.getUserAgent());
+            assertEquals(cached.getFamily(), data.getFamily());
+            assertEquals(cached.getOsName(), data.getOsName());
+            assertEquals(cached.getUserAgentVersion(),
+                    data.getUserAgentVersion());
+
+            detector.close();
+
+            // Force UserAgentDetectionDisabledException
+            try {
+                detector.detectIfCached(firefox3[0]);
+                fail("UserAgentDetectionDisabledException expected but not " +
+                        "thrown");
+            } catch (final UserAgentDetectionDisabledException ignore) {
+            }
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCachedDataIsNotShared() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+
+            final UserAgentData first = detector.detect(firefox3[0]);
+            final String family = first.getFamily();
+            first.setFamily("modified");
+
+            final UserAgentData second = detector.detect(firefox3[0]);
+            final UserAgentData third = detector.detectIfCached(firefox3[0]);
+
+            assertNotSame(second, third);
+            assertEquals(second.getFamily(), family);
+            assertEquals(third.getFamily(), family);
+            assertEquals(detector.getStats().getHitCount(), 2);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCacheAdmission() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_SIZE_PROPERTY, "2");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY, "true");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY, "false");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertTrue(detector.isCacheAdmissionEnabled());
+            assertEquals(detector.getCacheAdmissionMinFrequency(),
+                    UserAgentConfigurationFactory.
+                            DEFAULT_USER_AGENT_CACHE_ADMISSION_MIN_FREQUENCY);
+
+            // hot user agents fill the cache
+            detector.detect(chrome[0]);
+            detector.detect(chrome[1]);
+
+            final UserAgentDetectorStats before = detector.getStats();
+
+            // a scan of unique user agents interleaved with hot ones
+            for (int i = 0; i < 50; i++) {
+                detector.detect("Scanner/" + i);
+                detector.detect(chrome[i % 2]);
+            }
+
+            final UserAgentDetectorStats stats =
+                    detector.getStats().minus(before);
+
+            // unique user agents are never admitted, so hot ones keep hitting
+            assertEquals(stats.getHitCount(), 50);
+            assertEquals(stats.getMissCount(), 50);
+            assertEquals(stats.getRejectedCount(), 50);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCacheAdmissionOffHeap() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY,
+                UserAgentCacheType.OFF_HEAP.name());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY, "1048576");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_SIZE_PROPERTY, "2");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_ADMISSION_ENABLED_PROPERTY, "true");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertTrue(detector.isCacheAdmissionEnabled());
+
+            // off-heap cache is bounded in bytes, so the number of entries
+            // does not prevent admission while memory is available
+            for (int i = 0; i < 10; i++) {
+                detector.detect("Scanner/" + i);
+            }
+            assertEquals(detector.getStats().getRejectedCount(), 0);
+            for (int i = 0; i < 10; i++) {
+                assertNotNull(detector.detectIfCached("Scanner/" + i));
+            }
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testParseBounds() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_MAX_LENGTH_PROPERTY, "64");
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSE_MAX_STEPS_PROPERTY, "100");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getMaxLength(), 64);
+            assertEquals(detector.getParseMaxSteps(), 100L);
+
+            // budget is exhausted, so user agent is reported as unknown
+            final UserAgentData data = detector.detect(chrome[0]);
+            assertEquals(data.getUserAgent(), chrome[0]);
+            assertEquals(data.getUserAgentType(), UserAgentType.UNKNOWN);
+            assertEquals(detector.getParseBudgetExceededCount(), 1);
+
+            // unknown result is cached, so it is not parsed again
+            detector.detect(chrome[0]);
+            assertEquals(detector.getParseBudgetExceededCount(), 1);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testParserMode() throws UserAgentException,
+            ConfigurationException {
+        assertEquals(UserAgentDetector.getInstance().getParserMode(),
+                UserAgentConfigurationFactory.DEFAULT_USER_AGENT_PARSER_MODE);
+
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY,
+                UserAgentParserMode.RESOURCE_MODULE.name());
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getParserMode(),
+                    UserAgentParserMode.RESOURCE_MODULE);
+
+            final UserAgentData data = detector.detect(chrome[0]);
+            assertEquals(data.getUserAgentType(), UserAgentType.BROWSER);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCacheType() throws UserAgentException,
+            ConfigurationException {
+        assertEquals(UserAgentDetector.getInstance().getCacheType(),
+                UserAgentConfigurationFactory.DEFAULT_USER_AGENT_CACHE_TYPE);
+
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY,
+                UserAgentCacheType.HASHED.name());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_HASH_VERIFICATION_ENABLED_PROPERTY,
+                Boolean.FALSE.toString());
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getCacheType(), UserAgentCacheType.HASHED);
+
+            final UserAgentData first = detector.detect(chrome[0]);
+            first.setFamily("modified");
+
+            final UserAgentData second = detector.detect(chrome[0]);
+            final UserAgentData third = detector.detectIfCached(chrome[0]);
+            assertEquals(second.getUserAgent(), chrome[0]);
+            assertEquals(second.getUserAgentType(), UserAgentType.BROWSER);
+            assertNotEquals(second.getFamily(), "modified");
+            assertEquals(third.getUserAgent(), chrome[0]);
+            assertEquals(detector.getStats().getHitCount(), 2);
+            assertNull(detector.detectIfCached(firefox3[0]));
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testTrieCache() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY,
+                UserAgentCacheType.TRIE.name());
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getCacheType(), UserAgentCacheType.TRIE);
+
+            final UserAgentData first = detector.detect(chrome[0]);
+            final UserAgentData second = detector.detect(chrome[1]);
+            assertEquals(detector.detect(chrome[0]).getFamily(),
+                    first.getFamily());
+            assertEquals(detector.detectIfCached(chrome[1]).getUserAgent(),
+                    second.getUserAgent());
+            assertEquals(detector.getStats().getHitCount(), 2);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testOffHeapCache() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY,
+                UserAgentCacheType.OFF_HEAP.name());
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_MAX_BYTES_PROPERTY, "1048576");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getCacheType(), UserAgentCacheType.OFF_HEAP);
+
+            final UserAgentData first = detector.detect(chrome[0]);
+            final UserAgentData second = detector.detect(chrome[1]);
+            assertEquals(detector.detect(chrome[0]).getFamily(),
+                    first.getFamily());
+            assertEquals(detector.detectIfCached(chrome[1]).getUserAgent(),
+                    second.getUserAgent());
+            assertEquals(detector.getStats().getHitCount(), 2);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testDetectResultId() throws UserAgentException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final UserAgentResultPool pool = detector.getResultPool();
+        assertEquals(pool.getCapacity(), UserAgentConfigurationFactory.
+                DEFAULT_USER_AGENT_RESULT_POOL_SIZE);
+
+        final int id = detector.detectResultId(chrome[0]);
+        final UserAgentData data = detector.detect(chrome[0]);
+        assertEquals(detector.detectResultId(chrome[0]), id);
+
+        // versions are not part of pooled results
+        final UserAgentData versionless = new UserAgentData(data);
+        versionless.setOsVersion(null);
+        versionless.setUserAgentVersion(null);
+        assertEquals(pool.get(id), CompactUserAgentData.fromUserAgentData(
+                versionless));
+        assertEquals(pool.toUserAgentData(id, chrome[0]).getFamily(),
+                data.getFamily());
+    }
+
+    @Test
+    public void testPooledCache() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_CACHE_TYPE_PROPERTY,
+                UserAgentCacheType.POOLED.name());
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getCacheType(), UserAgentCacheType.POOLED);
+
+            final int id = detector.detectResultId(chrome[0]);
+            assertEquals(detector.getStats().getMissCount(), 1);
+
+            // cached identifier is returned
+            assertEquals(detector.detectResultId(chrome[0]), id);
+            assertEquals(detector.getStats().getHitCount(), 1);
+
+            final UserAgentData data = detector.detect(chrome[0]);
+            assertEquals(data.getUserAgent(), chrome[0]);
+            assertEquals(data.getUserAgentType(), UserAgentType.BROWSER);
+            assertNotNull(data.getUserAgentVersion());
+            assertEquals(detector.getStats().getHitCount(), 2);
+            assertEquals(detector.detectIfCached(chrome[0]).getFamily(),
+                    data.getFamily());
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testCommonTable() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        assertTrue(detector.isCommonTableEnabled());
+        assertTrue(detector.getCommonTableSize() > 0);
+
+        final UserAgentDetectorStats before = detector.getStats();
+        final long hitsBefore = detector.getCommonTableHitCount();
+
+        // common user agents are neither parsed nor cached
+        final UserAgentData data = detector.detect(chrome[0]);
+        assertNotNull(detector.detectIfCached(chrome[0]));
+        assertEquals(detector.getCommonTableHitCount() - hitsBefore, 2);
+        assertEquals(detector.getStats().minus(before).getRequestCount(), 0);
+
+        // results are the same as the ones obtained by parsing
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+
+            final UserAgentDetector parsingDetector =
+                    UserAgentDetector.getInstance();
+            assertFalse(parsingDetector.isCommonTableEnabled());
+            assertEquals(parsingDetector.getCommonTableSize(), 0);
+
+            final UserAgentData parsed = parsingDetector.detect(chrome[0]);
+            assertEquals(data.getUserAgent(), parsed.getUserAgent());
+            assertEquals(data.getDeviceCategory(), parsed.getDeviceCategory());
+            assertEquals(data.getDeviceCategoryName(),
+                    parsed.getDeviceCategoryName());
+            assertEquals(data.getFamily(), parsed.getFamily());
+            assertEquals(data.getOsFamily(), parsed.getOsFamily());
+            assertEquals(data.getOsFamilyName(), parsed.getOsFamilyName());
+            assertEquals(data.getOsName(), parsed.getOsName());
+            assertEquals(data.getOsProducer(), parsed.getOsProducer());
+            assertEquals(data.getOsVersion(), parsed.getOsVersion());
+            assertEquals(data.getUserAgentType(), parsed.getUserAgentType());
+            assertEquals(data.getUserAgentVersion(),
+                    parsed.getUserAgentVersion());
+            assertEquals(parsingDetector.getStats().getMissCount(), 1);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testNegativeCache() throws UserAgentException,
+            ConfigurationException {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        assertEquals(detector.getNegativeCacheSize(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_NEGATIVE_CACHE_SIZE);
+        assertEquals(detector.getNegativeCacheHitCount(), 0);
+
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_NEGATIVE_CACHE_SIZE_PROPERTY, "0");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector2 =
+                    UserAgentDetector.getInstance();
+            assertEquals(detector2.getNegativeCacheSize(), 0);
+            assertEquals(detector2.getNegativeCacheHitCount(), 0);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testPatternProfiler() throws UserAgentException,
+            ConfigurationException {
+        assertNull(UserAgentDetector.getInstance().getPatternProfiler());
+
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PATTERN_PROFILING_ENABLED_PROPERTY, "true");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            final UserAgentPatternProfiler profiler =
+                    detector.getPatternProfiler();
+            assertNotNull(profiler);
+
+            // only misses are profiled
+            detector.detect(chrome[0]);
+            final List<UserAgentPatternProfile> profiles =
+                    profiler.getProfiles();
+            assertFalse(profiles.isEmpty());
+
+            detector.detect(chrome[0]);
+            assertEquals(countInvocations(profiler.getProfiles()),
+                    countInvocations(profiles));
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testDetectFieldsUsesNegativeCache() throws Exception {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(buildCommonTableDisabledProperties());
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            final Field field = UserAgentDetector.class.getDeclaredField(
+                    "mNegativeCache");
+            field.setAccessible(true);
+            final IllegalStateException failure = new IllegalStateException();
+            ((UserAgentNegativeCache) field.get(detector)).put(chrome[1],
+                    failure);
+
+            // projected detections fail immediately without parsing
+            try {
+                detector.detect(chrome[1], EnumSet.of(UserAgentField.FAMILY));
+                fail("UserAgentException expected but not thrown");
+            } catch (final UserAgentException e) {
+                assertSame(e.getCause(), failure);
+            }
+            assertEquals(detector.getNegativeCacheHitCount(), 1);
+            assertEquals(detector.getStats().getMissCount(), 0);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testDetectFields() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = buildCommonTableDisabledProperties();
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            final UserAgentData projected = detector.detect(chrome[0],
+                    EnumSet.of(UserAgentField.USER_AGENT_TYPE,
+                            UserAgentField.DEVICE_CATEGORY));
+            assertEquals(projected.getUserAgent(), chrome[0]);
+            assertEquals(projected.getUserAgentType(), UserAgentType.BROWSER);
+            assertEquals(projected.getDeviceCategory(),
+                    DeviceCategory.PERSONAL_COMPUTER);
+            assertTrue(projected.isDesktop());
+            assertNull(projected.getFamily());
+            assertNull(projected.getOsFamily());
+            assertNull(projected.getOsName());
+            assertNull(projected.getOsVersion());
+            assertNull(projected.getUserAgentVersion());
+            assertEquals(detector.getStats().getMissCount(), 1);
+
+            // projected data is cached separately from complete data
+            assertNull(detector.detectIfCached(chrome[0]));
+            final UserAgentData cached = detector.detect(chrome[0],
+                    EnumSet.of(UserAgentField.USER_AGENT_TYPE,
+                            UserAgentField.DEVICE_CATEGORY));
+            assertNotSame(cached, projected);
+            assertEquals(cached.getUserAgentType(), UserAgentType.BROWSER);
+            assertEquals(detector.getStats().getHitCount(), 1);
+
+            // other projections are parsed again
+            final UserAgentData family = detector.detect(chrome[0],
+                    EnumSet.of(UserAgentField.FAMILY));
+            assertEquals(family.getFamily(), "Chrome");
+            assertNull(family.getUserAgentType());
+            assertEquals(detector.getStats().getMissCount(), 2);
+
+            // each projection keeps its own cached data
+            assertNull(detector.detect(chrome[0], EnumSet.of(
+                    UserAgentField.USER_AGENT_TYPE,
+                    UserAgentField.DEVICE_CATEGORY)).getFamily());
+            assertNull(detector.detect(chrome[0], EnumSet.of(
+                    UserAgentField.FAMILY)).getUserAgentType());
+            assertEquals(detector.getStats().getMissCount(), 2);
+            assertEquals(detector.getStats().getHitCount(), 3);
+
+            // complete data is returned once fully detected
+            final UserAgentData full = detector.detect(chrome[0]);
+            final UserAgentData superset = detector.detect(chrome[0],
+                    EnumSet.of(UserAgentField.FAMILY));
+            assertEquals(superset.getUserAgentVersion(),
+                    full.getUserAgentVersion());
+            assertEquals(superset.getOsName(), full.getOsName());
+
+            // requesting all fields is equivalent to complete detection
+            assertEquals(detector.detect(chrome[1],
+                    EnumSet.allOf(UserAgentField.class)).getUserAgentVersion(),
+                    detector.detect(chrome[1]).getUserAgentVersion());
+
+            try {
+                detector.detect(chrome[0], null);
+                fail("IllegalArgumentException expected but not thrown");
+            } catch (final IllegalArgumentException ignore) { }
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testIsRobot() throws UserAgentException,
+            ConfigurationException {
+        final String robot = "Mozilla/5.0 (compatible; Googlebot/2.1; " +
+                "+http://www.google.com/bot.html)";
+        final Properties props = buildCommonTableDisabledProperties();
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertTrue(detector.isRobot(robot));
+            assertFalse(detector.isRobot(chrome[0]));
+
+            // robots are checked without parsing
+            assertEquals(detector.getStats().getMissCount(), 0);
+            assertNull(detector.detectIfCached(robot));
+
+            // cached data is used when available
+            assertEquals(detector.detect(robot).getUserAgentType(),
+                    UserAgentType.ROBOT);
+            assertTrue(detector.isRobot(robot));
+            assertEquals(detector.detect(chrome[0]).getUserAgentType(),
+                    UserAgentType.BROWSER);
+            assertFalse(detector.isRobot(chrome[0]));
+            assertEquals(detector.getStats().getHitCount(), 2);
+            assertEquals(detector.getStats().getMissCount(), 2);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testDetectFromHeaders() throws UserAgentException,
+            ConfigurationException {
+        final Properties props = buildCommonTableDisabledProperties();
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+
+            // falls back to user agent when client hints are not present
+            final Map<String, String> headers = new HashMap<>();
+            headers.put("user-agent", chrome[0]);
+            assertEquals(detector.detectFromHeaders(headers).getFamily(),
+                    detector.detect(chrome[0]).getFamily());
+            assertEquals(detector.getStats().getHitCount(), 1);
+
+            headers.put("Sec-CH-UA", "\"Chromium\";v=\"110\", " +
+                    "\"Not A(Brand\";v=\"24\", " +
+                    "\"Google Chrome\";v=\"110\"");
+            headers.put("Sec-CH-UA-Mobile", "?1");
+            headers.put("Sec-CH-UA-Platform", "\"Android\"");
+            final UserAgentData data = detector.detectFromHeaders(headers);
+            assertEquals(data.getUserAgent(), chrome[0]);
+            assertEquals(data.getFamily(), "Chrome Mobile");
+            assertEquals(data.getUserAgentVersion(), "110");
+            assertTrue(data.isMobile());
+            assertEquals(detector.getStats().getMissCount(), 2);
+
+            // derived data is cached by hints, keeping each user agent
+            headers.put("user-agent", chrome[1]);
+            final UserAgentData cached = detector.detectFromHeaders(headers);
+            assertNotSame(cached, data);
+            assertEquals(cached.getUserAgent(), chrome[1]);
+            assertEquals(cached.getFamily(), "Chrome Mobile");
+            assertEquals(detector.getStats().getHitCount(), 2);
+
+            try {
+                detector.detectFromHeaders(new HashMap<String, String>());
+                fail("UserAgentException expected but not thrown");
+            } catch (final UserAgentException ignore) { }
+            try {
+                detector.detectFromHeaders(null);
+                fail("IllegalArgumentException expected but not thrown");
+            } catch (final IllegalArgumentException ignore) { }
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY,
+                UserAgentParserMode.RESOURCE_MODULE.name());
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getDataGeneration(), 0);
+            final String version = detector.getDataVersion();
+            assertNotNull(version);
+
+            final String family = detector.detect(chrome[0]).getFamily();
+            assertNotNull(detector.detectIfCached(chrome[0]));
+            assertEquals(detector.getStats().getMissCount(), 1);
+
+            final Future<String> future = detector.reload();
+            assertEquals(future.get(), version);
+            assertEquals(detector.getDataGeneration(), 1);
+            assertEquals(detector.getDataVersion(), version);
+
+            // entries cached using previous data are no longer used
+            assertNull(detector.detectIfCached(chrome[0]));
+            assertEquals(detector.detect(chrome[0]).getFamily(), family);
+            assertEquals(detector.getStats().getMissCount(), 2);
+            assertEquals(detector.detectIfCached(chrome[0]).getFamily(),
+                    family);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testReloadThenHitForEachCacheType() throws Exception {
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        for (final UserAgentCacheType type : UserAgentCacheType.values()) {
+            final Properties props = buildCommonTableDisabledProperties();
+            props.setProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_PARSER_MODE_PROPERTY,
+                    UserAgentParserMode.RESOURCE_MODULE.name());
+            props.setProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_CACHE_TYPE_PROPERTY, type.name());
+            factory.reset();
+            try {
+                factory.configure(props);
+
+                final UserAgentDetector detector =
+                        UserAgentDetector.getInstance();
+                assertEquals(detector.getCacheType(), type);
+                final String family = detector.detect(chrome[0]).getFamily();
+                final UserAgentData projected = detector.detect(chrome[1],
+                        EnumSet.of(UserAgentField.FAMILY));
+                detector.reload().get();
+                assertEquals(detector.getDataGeneration(), 1);
+
+                // first detection after reload misses, next one hits
+                assertEquals(detector.detect(chrome[0]).getFamily(), family);
+                final long hits = detector.getStats().getHitCount();
+                final UserAgentData data = detector.detect(chrome[0]);
+                assertEquals(detector.getStats().getHitCount(), hits + 1);
+                assertEquals(data.getUserAgent(), chrome[0]);
+                assertEquals(data.getFamily(), family);
+                assertEquals(detector.detectIfCached(chrome[0]).getUserAgent(),
+                        chrome[0]);
+
+                // projected data is also detected again and then cached
+                detector.detect(chrome[1], EnumSet.of(UserAgentField.FAMILY));
+                final long projectedHits = detector.getStats().getHitCount();
+                assertEquals(detector.detect(chrome[1],
+                        EnumSet.of(UserAgentField.FAMILY)).getFamily(),
+                        projected.getFamily());
+                assertEquals(detector.getStats().getHitCount(),
+                        projectedHits + 1);
+            } finally {
+                factory.reset();
+            }
+        }
+    }
+
+    @Test(expected = UserAgentDetectionDisabledException.class)
+    public void testReloadWhenDisabled() throws Exception {
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_DETECTION_ENABLED_PROPERTY, "false");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+            UserAgentDetector.getInstance().reload();
+        } finally {
+            factory.reset();
+        }
+    }
+
+    @Test
+    public void testParserReplicas() throws Exception {
+        assertEquals(UserAgentDetector.getInstance().getParserReplicas(), 1);
+
+        final Properties props = buildCommonTableDisabledProperties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY, "4");
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(props);
+
+            UserAgentDetector detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getParserReplicas(), 4);
+            for (final String userAgent : chrome) {
+                assertEquals(detector.detect(userAgent).getFamily(),
+                        "Chrome");
+            }
+
+            // caches scale with available processors
+            final UserAgentConfiguration cfg =
+                    new UserAgentConfigurationImpl(props);
+            assertTrue(UserAgentDetector.getConcurrencyLevel(cfg) >=
+                    Runtime.getRuntime().availableProcessors());
+            assertTrue(UserAgentDetector.getConcurrencyLevel(cfg) >= 4);
+
+            // replicas are kept on reload
+            detector.reload().get();
+            assertEquals(detector.getParserReplicas(), 4);
+            assertEquals(detector.detect(chrome[0]).getFamily(), "Chrome");
+
+            // aborted parses of all replicas are counted, even once reloaded
+            props.setProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_PARSE_MAX_STEPS_PROPERTY, "100");
+            factory.reset();
+            factory.configure(props);
+            detector = UserAgentDetector.getInstance();
+            for (final String userAgent : chrome) {
+                detector.detect(userAgent);
+            }
+            assertEquals(detector.getParseBudgetExceededCount(),
+                    chrome.length);
+            detector.reload().get();
+            assertEquals(detector.getParseBudgetExceededCount(),
+                    chrome.length);
+            props.remove(UserAgentConfigurationFactory.
+                    USER_AGENT_PARSE_MAX_STEPS_PROPERTY);
+
+            // one replica per available processor
+            props.setProperty(UserAgentConfigurationFactory.
+                    USER_AGENT_PARSER_REPLICAS_PROPERTY, "0");
+            factory.reset();
+            factory.configure(props);
+            detector = UserAgentDetector.getInstance();
+            assertEquals(detector.getParserReplicas(),
+                    Runtime.getRuntime().availableProcessors());
+        } finally {
+            factory.reset();
+        }
+    }
+
+    private static long countInvocations(
+            final List<UserAgentPatternProfile> profiles) {
+        long count = 0;
+        for (final UserAgentPatternProfile profile : profiles) {
+            count += profile.getInvocationCount();
+        }
+        return count;
+    }
+
+    private Properties buildCommonTableDisabledProperties() {
+        final Properties props = new Properties();
+        props.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_COMMON_TABLE_ENABLED_PROPERTY, "false");
+        return props;
+    }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDeviceClassTest {
+
+    @Test
+    public void testFromData() {
+        assertEquals(UserAgentDeviceClass.fromData(build(
+                UserAgentType.BROWSER, DeviceCategory.PERSONAL_COMPUTER)),
+                UserAgentDeviceClass.DESKTOP);
+        assertEquals(UserAgentDeviceClass.fromData(build(
+                UserAgentType.MOBILE_BROWSER, DeviceCategory.SMARTPHONE)),
+                UserAgentDeviceClass.MOBILE);
+        assertEquals(UserAgentDeviceClass.fromData(build(
+                UserAgentType.MOBILE_BROWSER, DeviceCategory.TABLET)),
+                UserAgentDeviceClass.TABLET);
+        assertEquals(UserAgentDeviceClass.fromData(build(
+                UserAgentType.BROWSER, DeviceCategory.SMART_TV)),
+                UserAgentDeviceClass.SMART_TV);
+        assertEquals(UserAgentDeviceClass.fromData(build(
+                UserAgentType.ROBOT, DeviceCategory.SMARTPHONE)),
+                UserAgentDeviceClass.DESKTOP);
+
+        try {
+            UserAgentDeviceClass.fromData(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    private static UserAgentData build(final UserAgentType type,
+            final DeviceCategory category) {
+        return new UserAgentData("ua", category, null, null, null, null, null,
+                null, null, type, null);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UserAgentDeviceClassifierTest {
+
+    private static final String DESKTOP =
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) Chrome/70.0.3538.77 Safari/537.36";
+
+    private static final String MOBILE =
+            "Mozilla/5.0 (iPhone; CPU iPhone OS 12_0 like Mac OS X) " +
+                    "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/12.0 " +
+                    "Mobile/15E148 Safari/604.1";
+
+    private static final String TABLET =
+            "Mozilla/5.0 (iPad; CPU OS 12_0 like Mac OS X) " +
+                    "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/12.0 " +
+                    "Mobile/15E148 Safari/604.1";
+
+    private static final String SMART_TV =
+            "Mozilla/5.0 (Linux; Tizen 2.3) AppleWebKit/538.1 " +
+                    "(KHTML, like Gecko) Version/2.3 TV Safari/538.1 " +
+                    "SMART-TV";
+
+    private static final String CONSOLE =
+            "Mozilla/5.0 (Windows Phone 10.0; Android 4.2.1; Xbox; " +
+                    "Xbox One) AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/42.0.2311.135 Mobile Safari/537.36 Edge/13.10586";
+
+    private static final double MIN_AGREEMENT = 0.99;
+
+    @Test
+    public void testClassify() {
+        assertEquals(UserAgentDeviceClassifier.classify(DESKTOP),
+                UserAgentDeviceClass.DESKTOP);
+        assertEquals(UserAgentDeviceClassifier.classify(MOBILE),
+                UserAgentDeviceClass.MOBILE);
+        assertEquals(UserAgentDeviceClassifier.classify(TABLET),
+                UserAgentDeviceClass.TABLET);
+        assertEquals(UserAgentDeviceClassifier.classify(SMART_TV),
+                UserAgentDeviceClass.SMART_TV);
+        assertEquals(UserAgentDeviceClassifier.classify(CONSOLE),
+                UserAgentDeviceClass.DESKTOP);
+
+        // keywords are case insensitive
+        assertEquals(UserAgentDeviceClassifier.classify(
+                MOBILE.toUpperCase()), UserAgentDeviceClass.MOBILE);
+        assertEquals(UserAgentDeviceClassifier.classify(
+                TABLET.toLowerCase()), UserAgentDeviceClass.TABLET);
+
+        // keywords are matched even when overlapping a partial match
+        assertEquals(UserAgentDeviceClassifier.classify("ipaipad"),
+                UserAgentDeviceClass.TABLET);
+        assertEquals(UserAgentDeviceClassifier.classify(
+                "\u00e9mobile\u00e9"), UserAgentDeviceClass.MOBILE);
+
+        assertEquals(UserAgentDeviceClassifier.classify(null),
+                UserAgentDeviceClass.DESKTOP);
+        assertEquals(UserAgentDeviceClassifier.classify(""),
+                UserAgentDeviceClass.DESKTOP);
+        assertEquals(UserAgentDeviceClassifier.classify("curl/7.35.0"),
+                UserAgentDeviceClass.DESKTOP);
+    }
+
+    @Test
+    public void testIsDeviceClass() {
+        assertTrue(UserAgentDeviceClassifier.isDesktop(DESKTOP));
+        assertFalse(UserAgentDeviceClassifier.isMobile(DESKTOP));
+        assertTrue(UserAgentDeviceClassifier.isMobile(MOBILE));
+        assertFalse(UserAgentDeviceClassifier.isTablet(MOBILE));
+        assertTrue(UserAgentDeviceClassifier.isTablet(TABLET));
+        assertFalse(UserAgentDeviceClassifier.isSmartTV(TABLET));
+        assertTrue(UserAgentDeviceClassifier.isSmartTV(SMART_TV));
+        assertFalse(UserAgentDeviceClassifier.isDesktop(SMART_TV));
+    }
+
+    @Test
+    public void testScan() {
+        assertEquals(UserAgentDeviceClassifier.scan(null), 0);
+        assertEquals(UserAgentDeviceClassifier.scan(DESKTOP), 0);
+        assertEquals(UserAgentDeviceClassifier.scan(TABLET),
+                UserAgentDeviceClassifier.TABLET |
+                        UserAgentDeviceClassifier.MOBILE);
+        assertEquals(UserAgentDeviceClassifier.scan(CONSOLE) &
+                UserAgentDeviceClassifier.NOT_BROWSER,
+                UserAgentDeviceClassifier.NOT_BROWSER);
+    }
+
+    @Test
+    public void testAgreesWithDetector() throws UserAgentException {
+        final Set<String> corpus = new LinkedHashSet<>();
+        corpus.add(DESKTOP);
+        corpus.add(MOBILE);
+        corpus.add(TABLET);
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+        generator.setUniqueRate(0.5);
+        corpus.addAll(generator.generate(5000));
+
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        int agreements = 0;
+        for (final String userAgent : corpus) {
+            if (UserAgentDeviceClassifier.classify(userAgent) ==
+                    UserAgentDeviceClass.fromData(
+                            detector.detect(userAgent))) {
+                agreements++;
+            }
+        }
+        assertTrue((double) agreements / corpus.size() >= MIN_AGREEMENT);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentEnrichmentResultTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentEnrichmentResult result =
+                new UserAgentEnrichmentResult();
+
+        assertEquals(result.getRecords().length(), 0);
+        assertTrue(result.getCounts().isEmpty());
+        assertEquals(result.getLineCount(), 0);
+        assertEquals(result.getDetectedCount(), 0);
+        assertEquals(result.getFailedCount(), 0);
+        assertEquals(result.getSkippedCount(), 0);
+    }
+
+    @Test
+    public void testMerge() {
+        final UserAgentEnrichmentResult result1 =
+                new UserAgentEnrichmentResult();
+        result1.getRecords().append("a\n");
+        result1.recordDetected();
+        result1.addCount("key1", 1);
+
+        final UserAgentEnrichmentResult result2 =
+                new UserAgentEnrichmentResult();
+        result2.getRecords().append("b\n");
+        result2.recordDetected();
+        result2.recordFailed();
+        result2.recordSkipped();
+        result2.addCount("key1", 2);
+        result2.addCount("key2", 1);
+
+        assertSame(result1.merge(result2), result1);
+
+        assertEquals(result1.getRecords().toString(), "a\nb\n");
+        assertEquals(result1.getLineCount(), 4);
+        assertEquals(result1.getDetectedCount(), 2);
+        assertEquals(result1.getFailedCount(), 1);
+        assertEquals(result1.getSkippedCount(), 1);
+        assertEquals(result1.getCounts().get("key1").longValue(), 3);
+        assertEquals(result1.getCounts().get("key2").longValue(), 1);
+    }
+
+    @Test
+    public void testAppendCounts() {
+        final UserAgentEnrichmentResult result =
+                new UserAgentEnrichmentResult();
+        result.addCount("b", 1);
+        result.addCount("c", 5);
+        result.addCount("a", 1);
+
+        final StringBuilder builder = new StringBuilder();
+        result.appendCounts(builder, UserAgentOutputFormat.CSV);
+
+        assertEquals(builder.toString(), "user_agent_type,device_category," +
+                "family,os_family,count\nc,5\na,1\nb,1\n");
+    }
+}
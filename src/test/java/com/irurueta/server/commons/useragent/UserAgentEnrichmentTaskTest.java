@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class UserAgentEnrichmentTaskTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (X11; U; Linux x86_64; en-US) AppleWebKit/532.9 " +
+                    "(KHTML, like Gecko) Chrome/5.0.309.0 Safari/532.9",
+            "Mozilla/4.0 (compatible; MSIE 6.0; Windows NT 5.0; T312461)",
+            "Wget/1.8.1",
+            "",
+            "Mozilla/5.0 (iPad; U; CPU OS 3_2 like Mac OS X; en-us) " +
+                    "AppleWebKit/531.21.10 (KHTML, like Gecko) " +
+                    "Version/4.0.4 Mobile/7B367 Safari/531.21.10"
+    };
+
+    @Before
+    public void setUp() {
+        UserAgentDetector.reset();
+    }
+
+    @After
+    public void tearDown() {
+        UserAgentDetector.reset();
+    }
+
+    @Test
+    public void testComputeMatchesSequentialProcessing() throws IOException,
+            UserAgentDetectionDisabledException {
+        final List<String> lines = new ArrayList<>();
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            final String line = USER_AGENTS[i % USER_AGENTS.length];
+            lines.add(line);
+            builder.append(line).append('\n');
+        }
+
+        final UserAgentEnricher enricher = new UserAgentEnricher(
+                UserAgentDetector.getInstance(),
+                UserAgentInputFormat.USER_AGENT, UserAgentOutputFormat.CSV,
+                false);
+        final UserAgentEnrichmentResult expected = enricher.process(lines);
+
+        final File file = File.createTempFile("task", ".log");
+        try {
+            Files.write(file.toPath(), builder.toString().getBytes(UTF8));
+
+            final ForkJoinPool pool = new ForkJoinPool(4);
+            try (final RandomAccessFile randomAccessFile =
+                         new RandomAccessFile(file, "r")) {
+                final FileChannel channel = randomAccessFile.getChannel();
+                final List<UserAgentLogFileRange> ranges =
+                        new UserAgentLogFileSplitter(500).split(channel);
+                assertTrue(ranges.size() > 1);
+
+                final UserAgentEnrichmentResult result = pool.invoke(
+                        new UserAgentEnrichmentTask(enricher, channel,
+                                ranges));
+
+                assertEquals(result.getRecords().toString(),
+                        expected.getRecords().toString());
+                assertEquals(result.getLineCount(), 200);
+                assertEquals(result.getDetectedCount(),
+                        expected.getDetectedCount());
+                assertEquals(result.getSkippedCount(), 40);
+
+                // no ranges
+                final UserAgentEnrichmentResult empty = pool.invoke(
+                        new UserAgentEnrichmentTask(enricher, channel,
+                                new ArrayList<UserAgentLogFileRange>()));
+                assertEquals(empty.getLineCount(), 0);
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testConstructor() throws IOException {
+        final UserAgentEnricher enricher = new UserAgentEnricher(
+                UserAgentDetector.getInstance(),
+                UserAgentInputFormat.USER_AGENT, UserAgentOutputFormat.CSV,
+                true);
+        final List<UserAgentLogFileRange> ranges = Arrays.asList(
+                new UserAgentLogFileRange(0, 1));
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentEnrichmentTask(null, null, ranges);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentEnrichmentTask(enricher, null, ranges);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class UserAgentEnrichmentToolTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String CHROME =
+            "Mozilla/5.0 (X11; U; Linux x86_64; en-US) AppleWebKit/532.9 " +
+                    "(KHTML, like Gecko) Chrome/5.0.309.0 Safari/532.9";
+
+    private static final String WGET = "Wget/1.8.1";
+
+    @Before
+    public void setUp() {
+        // previous tests might have closed the singleton instance
+        UserAgentDetector.reset();
+    }
+
+    @After
+    public void tearDown() {
+        UserAgentDetector.reset();
+    }
+
+    @Test
+    public void testRunFromStandardInput() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        final int exitCode = new UserAgentEnrichmentTool().run(
+                new String[]{"--threads", "2", "--batch-size", "1"},
+                new ByteArrayInputStream((CHROME + "\n\n" + WGET + "\n" +
+                        CHROME + "\n").getBytes(UTF8)), out,
+                new PrintStream(err));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+
+        final String[] lines = new String(out.toByteArray(), UTF8).split("\n");
+        assertEquals(lines.length, 4);
+        assertTrue(lines[0].startsWith("user_agent,"));
+        assertTrue(lines[1].startsWith("\"" + CHROME + "\",PERSONAL_COMPUTER"));
+        assertTrue(lines[2].startsWith(WGET + ","));
+        assertTrue(lines[3].startsWith("\"" + CHROME + "\",PERSONAL_COMPUTER"));
+
+        final String stats = new String(err.toByteArray(), UTF8);
+        assertTrue(stats.contains("Processed 4 lines (3 detected, 0 failed, " +
+                "1 skipped)"));
+        assertTrue(stats.contains("Cache hit ratio"));
+    }
+
+    @Test
+    public void testRunGzipAccessLogCounts() throws IOException {
+        final File input = File.createTempFile("access", ".log.gz");
+        final File output = File.createTempFile("counts", ".tsv");
+        try {
+            try (OutputStream stream = new GZIPOutputStream(
+                    new FileOutputStream(input))) {
+                for (int i = 0; i < 10; i++) {
+                    stream.write(logLine(i % 2 == 0 ? CHROME : WGET).getBytes(
+                            UTF8));
+                }
+            }
+
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            final int exitCode = new UserAgentEnrichmentTool().run(
+                    new String[]{"--input", "log", "--output", "tsv",
+                            "--counts", "--out", output.getAbsolutePath(),
+                            input.getAbsolutePath()},
+                    new ByteArrayInputStream(new byte[0]),
+                    new ByteArrayOutputStream(), new PrintStream(err));
+
+            assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+
+            final String[] lines = new String(Files.readAllBytes(
+                    output.toPath()), UTF8).split("\n");
+            assertEquals(lines.length, 3);
+            assertEquals(lines[0], "user_agent_type\tdevice_category\t" +
+                    "family\tos_family\tcount");
+            assertTrue(lines[1].endsWith("\t5"));
+            assertTrue(lines[2].endsWith("\t5"));
+        } finally {
+            assertTrue(input.delete());
+            assertTrue(output.delete());
+        }
+    }
+
+    @Test
+    public void testRunSplitFileMatchesStandardInput() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            builder.append(i % 3 == 0 ? WGET : CHROME).append('\n');
+        }
+        final byte[] bytes = builder.toString().getBytes(UTF8);
+
+        final File input = File.createTempFile("agents", ".txt");
+        try {
+            Files.write(input.toPath(), bytes);
+
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            assertEquals(new UserAgentEnrichmentTool().run(new String[0],
+                    new ByteArrayInputStream(bytes), expected,
+                    new PrintStream(new ByteArrayOutputStream())),
+                    UserAgentEnrichmentTool.EXIT_SUCCESS);
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            assertEquals(new UserAgentEnrichmentTool().run(
+                    new String[]{"--threads", "3", "--range-size", "100",
+                            input.getAbsolutePath()},
+                    new ByteArrayInputStream(new byte[0]), out,
+                    new PrintStream(err)),
+                    UserAgentEnrichmentTool.EXIT_SUCCESS);
+
+            assertEquals(new String(out.toByteArray(), UTF8),
+                    new String(expected.toByteArray(), UTF8));
+            assertTrue(new String(err.toByteArray(), UTF8).contains(
+                    "Processed 50 lines (50 detected, 0 failed, 0 skipped)"));
+        } finally {
+            assertTrue(input.delete());
+        }
+    }
+
+    @Test
+    public void testRunInvalidArguments() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        assertEquals(new UserAgentEnrichmentTool().run(
+                new String[]{"--threads", "0"},
+                new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(new UserAgentEnrichmentTool().run(
+                new String[]{"--unknown"},
+                new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(new UserAgentEnrichmentTool().run(
+                new String[]{"--input"},
+                new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertTrue(new String(err.toByteArray(), UTF8).contains("Usage"));
+    }
+
+    @Test
+    public void testRunMissingFile() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        assertEquals(new UserAgentEnrichmentTool().run(
+                new String[]{"/non/existing/file.log"},
+                new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(), new PrintStream(err)),
+                UserAgentEnrichmentTool.EXIT_FAILURE);
+    }
+
+    private static String logLine(final String userAgent) {
+        return "127.0.0.1 - - [10/Oct/2016:13:55:36 -0700] " +
+                "\"GET / HTTP/1.1\" 200 2326 \"-\" \"" + userAgent + "\"\n";
+    }
+}
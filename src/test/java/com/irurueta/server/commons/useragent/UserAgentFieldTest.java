@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class UserAgentFieldTest {
+
+    @Test
+    public void testMask() {
+        int mask = 0;
+        for (final UserAgentField field : UserAgentField.values()) {
+            assertEquals(Integer.bitCount(field.getMask()), 1);
+            assertEquals(mask & field.getMask(), 0);
+            assertFalse(field.isContainedIn(mask));
+            mask |= field.getMask();
+            assertTrue(field.isContainedIn(mask));
+        }
+        assertEquals(mask, UserAgentField.ALL_MASK);
+    }
+
+    @Test
+    public void testToMask() {
+        assertEquals(UserAgentField.toMask(
+                EnumSet.noneOf(UserAgentField.class)), 0);
+        assertEquals(UserAgentField.toMask(
+                EnumSet.allOf(UserAgentField.class)), UserAgentField.ALL_MASK);
+        assertEquals(UserAgentField.toMask(EnumSet.of(
+                UserAgentField.FAMILY, UserAgentField.USER_AGENT_TYPE)),
+                UserAgentField.FAMILY.getMask() |
+                        UserAgentField.USER_AGENT_TYPE.getMask());
+
+        try {
+            UserAgentField.toMask(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+}
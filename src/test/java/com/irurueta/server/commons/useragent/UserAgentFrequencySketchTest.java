@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentFrequencySketchTest {
+
+    @Test
+    public void testConstructor() {
+        assertEquals(new UserAgentFrequencySketch(1).getSampleSize(), 640);
+        assertEquals(new UserAgentFrequencySketch(100).getSampleSize(), 1000);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentFrequencySketch(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testIncrementAndFrequency() {
+        final UserAgentFrequencySketch sketch =
+                new UserAgentFrequencySketch(1000);
+
+        assertEquals(sketch.frequency("Wget/1.8.1"), 0);
+
+        sketch.increment("Wget/1.8.1");
+        assertEquals(sketch.frequency("Wget/1.8.1"), 1);
+
+        sketch.increment("Wget/1.8.1");
+        sketch.increment("Wget/1.8.1");
+        assertEquals(sketch.frequency("Wget/1.8.1"), 3);
+
+        // counters saturate
+        for (int i = 0; i < 100; i++) {
+            sketch.increment("Wget/1.8.1");
+        }
+        assertEquals(sketch.frequency("Wget/1.8.1"),
+                UserAgentFrequencySketch.MAX_FREQUENCY);
+
+        // frequency is never underestimated
+        for (int i = 0; i < 500; i++) {
+            sketch.increment("Agent/" + i);
+        }
+        for (int i = 0; i < 500; i++) {
+            assertTrue(sketch.frequency("Agent/" + i) >= 1);
+        }
+    }
+
+    @Test
+    public void testReset() {
+        final UserAgentFrequencySketch sketch = new UserAgentFrequencySketch(1);
+
+        for (int i = 0; i < 8; i++) {
+            sketch.increment("Wget/1.8.1");
+        }
+        assertEquals(sketch.frequency("Wget/1.8.1"), 8);
+
+        sketch.reset();
+        assertEquals(sketch.frequency("Wget/1.8.1"), 4);
+
+        // counters are aged once sample size is reached
+        for (int i = 0; i < sketch.getSampleSize(); i++) {
+            sketch.increment("Agent/" + i);
+        }
+        assertTrue(sketch.frequency("Wget/1.8.1") < 4);
+    }
+}
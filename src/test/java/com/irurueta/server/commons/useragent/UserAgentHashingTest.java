@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UserAgentHashingTest {
+
+    @Test
+    public void testHash64() {
+        final String userAgent = "Mozilla/5.0 (X11; Linux x86_64)";
+        assertEquals(UserAgentHashing.hash64(userAgent),
+                UserAgentHashing.hash64(new StringBuilder(userAgent)));
+        assertNotEquals(UserAgentHashing.hash64(userAgent),
+                UserAgentHashing.hash64(userAgent + " "));
+        assertNotEquals(UserAgentHashing.hash64(""),
+                UserAgentHashing.hash64("\0"));
+
+        final Set<Long> hashes = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            hashes.add(UserAgentHashing.hash64("Agent/" + i));
+        }
+        assertEquals(hashes.size(), 10000);
+    }
+
+    @Test
+    public void testStableHash64() {
+        final String userAgent = "Mozilla/5.0 (X11; Linux x86_64)";
+        assertEquals(UserAgentHashing.stableHash64(userAgent),
+                UserAgentHashing.stableHash64(new StringBuilder(userAgent)));
+        assertNotEquals(UserAgentHashing.stableHash64(userAgent),
+                UserAgentHashing.stableHash64(userAgent + " "));
+
+        // hashes are stable across executions
+        assertEquals(UserAgentHashing.stableHash64(""),
+                UserAgentHashing.mix64(0xcbf29ce484222325L));
+    }
+
+    @Test
+    public void testSipHash24() {
+        // reference vectors using key 00 01 ... 0f, where messages are
+        // consecutive bytes starting at 00 encoded as UTF-16LE characters
+        final long k0 = 0x0706050403020100L;
+        final long k1 = 0x0f0e0d0c0b0a0908L;
+        assertEquals(UserAgentHashing.sipHash24("", k0, k1),
+                0x726fdb47dd0e0e31L);
+        assertEquals(UserAgentHashing.sipHash24("\u0100", k0, k1),
+                0x0d6c8009d9a94f5aL);
+        assertEquals(UserAgentHashing.sipHash24(
+                "\u0100\u0302\u0504\u0706", k0, k1), 0x93f5f5799a932462L);
+        assertEquals(UserAgentHashing.sipHash24(
+                "\u0100\u0302\u0504\u0706\u0908\u0b0a\u0d0c", k0, k1),
+                0xf723ca908e7af2eeL);
+        assertEquals(UserAgentHashing.sipHash24(
+                "\u0100\u0302\u0504\u0706\u0908\u0b0a\u0d0c\u0f0e", k0,
+                k1), 0x3f2acc7f57c29bdbL);
+
+        // distinct keys produce distinct hashes
+        assertNotEquals(UserAgentHashing.sipHash24("Agent/1.0", k0, k1),
+                UserAgentHashing.sipHash24("Agent/1.0", k0, k1 + 1));
+    }
+
+    @Test
+    public void testVerificationHash64() {
+        final String userAgent = "Mozilla/5.0 (X11; Linux x86_64)";
+        assertEquals(UserAgentHashing.verificationHash64(userAgent),
+                UserAgentHashing.verificationHash64(
+                        new StringBuilder(userAgent)));
+        assertNotEquals(UserAgentHashing.verificationHash64(userAgent),
+                UserAgentHashing.verificationHash64(userAgent + " "));
+        assertNotEquals(UserAgentHashing.verificationHash64(userAgent),
+                UserAgentHashing.hash64(userAgent));
+
+        // verification hashes are unique on their own
+        final Set<Long> hashes = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            hashes.add(UserAgentHashing.verificationHash64("Agent/" + i));
+        }
+        assertEquals(hashes.size(), 10000);
+
+        // low bits of both hashes are not correlated
+        int equalLowBits = 0;
+        for (int i = 0; i < 10000; i++) {
+            final String value = "Agent/" + i;
+            if ((UserAgentHashing.hash64(value) & 0xff) ==
+                    (UserAgentHashing.verificationHash64(value) & 0xff)) {
+                equalLowBits++;
+            }
+        }
+        assertTrue(equalLowBits < 100);
+    }
+
+    @Test
+    public void testRehashAndReduce() {
+        final long hash = UserAgentHashing.hash64("Agent/1.0");
+        assertNotEquals(UserAgentHashing.rehash(hash, 0),
+                UserAgentHashing.rehash(hash, 1));
+
+        final int[] counts = new int[10];
+        for (int i = 0; i < 10000; i++) {
+            final int value = UserAgentHashing.reduce(UserAgentHashing.hash64(
+                    "Agent/" + i), counts.length);
+            assertTrue(value >= 0 && value < counts.length);
+            counts[value]++;
+        }
+        for (final int count : counts) {
+            assertTrue(count > 800 && count < 1200);
+        }
+
+        assertEquals(UserAgentHashing.reduce(-1L, 10), 9);
+        assertEquals(UserAgentHashing.reduce(0L, 10), 0);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentInputFormatTest {
+
+    @Test
+    public void testExtractUserAgent() {
+        final UserAgentInputFormat format = UserAgentInputFormat.USER_AGENT;
+
+        assertEquals(format.extractUserAgent("  Wget/1.8.1 "), "Wget/1.8.1");
+        assertNull(format.extractUserAgent("   "));
+        assertNull(format.extractUserAgent(null));
+    }
+
+    @Test
+    public void testExtractUserAgentFromAccessLog() {
+        final UserAgentInputFormat format = UserAgentInputFormat.ACCESS_LOG;
+
+        assertEquals(format.extractUserAgent("127.0.0.1 - - " +
+                "[10/Oct/2016:13:55:36 -0700] \"GET / HTTP/1.1\" 200 2326 " +
+                "\"http://www.example.com/\" \"Wget/1.8.1\""), "Wget/1.8.1");
+        assertEquals(format.extractUserAgent("127.0.0.1 - - " +
+                "[10/Oct/2016:13:55:36 -0700] \"GET / HTTP/1.1\" 200 2326 " +
+                "\"-\" \"Agent \\\"quoted\\\" name\""),
+                "Agent \"quoted\" name");
+        assertNull(format.extractUserAgent("127.0.0.1 - - " +
+                "[10/Oct/2016:13:55:36 -0700] \"GET / HTTP/1.1\" 200 2326 " +
+                "\"-\" \"-\""));
+        assertNull(format.extractUserAgent("no quoted fields"));
+        assertNull(format.extractUserAgent(null));
+    }
+
+    @Test
+    public void testFromName() {
+        assertEquals(UserAgentInputFormat.fromName("ua"),
+                UserAgentInputFormat.USER_AGENT);
+        assertEquals(UserAgentInputFormat.fromName("USER_AGENT"),
+                UserAgentInputFormat.USER_AGENT);
+        assertEquals(UserAgentInputFormat.fromName("log"),
+                UserAgentInputFormat.ACCESS_LOG);
+        assertEquals(UserAgentInputFormat.fromName("access_log"),
+                UserAgentInputFormat.ACCESS_LOG);
+
+        // Force IllegalArgumentException
+        try {
+            UserAgentInputFormat.fromName("unknown");
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentLogFileRangeTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentLogFileRange range = new UserAgentLogFileRange(10, 25);
+
+        assertEquals(range.getStart(), 10);
+        assertEquals(range.getEnd(), 25);
+        assertEquals(range.getLength(), 15);
+        assertEquals(range.toString(), "[10, 25)");
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentLogFileRange(-1, 25);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentLogFileRange(10, 9);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        final UserAgentLogFileRange range1 = new UserAgentLogFileRange(0, 5);
+        final UserAgentLogFileRange range2 = new UserAgentLogFileRange(0, 5);
+        final UserAgentLogFileRange range3 = new UserAgentLogFileRange(5, 10);
+
+        assertEquals(range1, range1);
+        assertEquals(range1, range2);
+        assertEquals(range1.hashCode(), range2.hashCode());
+        assertNotEquals(range1, range3);
+        assertNotEquals(range1, new Object());
+    }
+}
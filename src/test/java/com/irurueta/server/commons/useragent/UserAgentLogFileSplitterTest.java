@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserAgentLogFileSplitterTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testConstructor() {
+        assertEquals(new UserAgentLogFileSplitter().getRangeSize(),
+                UserAgentLogFileSplitter.DEFAULT_RANGE_SIZE);
+        assertEquals(new UserAgentLogFileSplitter(10).getRangeSize(), 10);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentLogFileSplitter(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testSplit() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            // lines of different lengths including multi-byte characters
+            builder.append("line ").append(i).append(" ñ€");
+            for (int j = 0; j < i % 7; j++) {
+                builder.append('x');
+            }
+            builder.append('\n');
+        }
+        builder.append("last line without line break");
+        final byte[] bytes = builder.toString().getBytes(UTF8);
+
+        final File file = File.createTempFile("split", ".log");
+        try {
+            Files.write(file.toPath(), bytes);
+
+            for (final long rangeSize : new long[]{1, 17, 100, 1000,
+                    bytes.length, 10L * bytes.length}) {
+                final List<UserAgentLogFileRange> ranges =
+                        new UserAgentLogFileSplitter(rangeSize).split(file);
+
+                assertFalse(ranges.isEmpty());
+                assertEquals(ranges.get(0).getStart(), 0);
+                assertEquals(ranges.get(ranges.size() - 1).getEnd(),
+                        bytes.length);
+                for (int i = 0; i < ranges.size(); i++) {
+                    final UserAgentLogFileRange range = ranges.get(i);
+                    assertTrue(range.getLength() > 0);
+                    if (i > 0) {
+                        // ranges are consecutive and start at a new line
+                        assertEquals(range.getStart(),
+                                ranges.get(i - 1).getEnd());
+                        assertEquals(bytes[(int) range.getStart() - 1], '\n');
+                    }
+                }
+            }
+
+            // ranges are never smaller than requested size except the last
+            final List<UserAgentLogFileRange> ranges =
+                    new UserAgentLogFileSplitter(100).split(file);
+            for (int i = 0; i < ranges.size() - 1; i++) {
+                assertTrue(ranges.get(i).getLength() >= 100);
+            }
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testSplitEmptyFile() throws IOException {
+        final File file = File.createTempFile("empty", ".log");
+        try {
+            assertTrue(new UserAgentLogFileSplitter(10).split(file).isEmpty());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class UserAgentNegativeCacheTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentNegativeCache cache = new UserAgentNegativeCache(10, 1,
+                TimeUnit.MINUTES);
+        assertEquals(cache.getMaxSize(), 10);
+        assertEquals(cache.size(), 0);
+        assertEquals(cache.getHitCount(), 0);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentNegativeCache(0, 1, TimeUnit.MINUTES);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentNegativeCache(10, 0, TimeUnit.MINUTES);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+        try {
+            new UserAgentNegativeCache(10, 1, null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testGetIfPresentAndPut() {
+        final UserAgentNegativeCache cache = new UserAgentNegativeCache(10, 1,
+                TimeUnit.MINUTES);
+        final RuntimeException failure = new IllegalStateException();
+
+        assertNull(cache.getIfPresent("garbage"));
+        assertEquals(cache.getHitCount(), 0);
+
+        cache.put("garbage", failure);
+        assertEquals(cache.size(), 1);
+        assertSame(cache.getIfPresent("garbage"), failure);
+        assertSame(cache.getIfPresent("garbage"), failure);
+        assertNull(cache.getIfPresent("garbage2"));
+        assertEquals(cache.getHitCount(), 2);
+
+        cache.invalidateAll();
+        assertEquals(cache.size(), 0);
+        assertNull(cache.getIfPresent("garbage"));
+    }
+
+    @Test
+    public void testMaxSize() {
+        final UserAgentNegativeCache cache = new UserAgentNegativeCache(10, 1,
+                TimeUnit.MINUTES);
+        for (int i = 0; i < 100; i++) {
+            cache.put("garbage" + i, new IllegalStateException());
+        }
+        assertTrue(cache.size() <= 10);
+    }
+
+    @Test
+    public void testExpiration() throws InterruptedException {
+        final UserAgentNegativeCache cache = new UserAgentNegativeCache(10, 50,
+                TimeUnit.MILLISECONDS);
+        cache.put("garbage", new IllegalStateException());
+        Thread.sleep(100);
+        assertNull(cache.getIfPresent("garbage"));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentOutputFormatTest {
+
+    @Test
+    public void testAppendRecordHeader() {
+        final StringBuilder builder = new StringBuilder();
+        UserAgentOutputFormat.TSV.appendRecordHeader(builder);
+
+        final String header = builder.toString();
+        assertTrue(header.startsWith("user_agent\tdevice_category\t"));
+        assertTrue(header.endsWith("smart_tv\n"));
+        assertEquals(header.split("\t").length,
+                UserAgentOutputFormat.RECORD_COLUMNS.length);
+    }
+
+    @Test
+    public void testAppendRecord() {
+        final UserAgentData data = new UserAgentData("Agent, \"1\"",
+                DeviceCategory.PERSONAL_COMPUTER, null, "Family",
+                OperatingSystemFamily.LINUX, null, null, null, null,
+                UserAgentType.BROWSER, null);
+
+        final StringBuilder builder = new StringBuilder();
+        UserAgentOutputFormat.CSV.appendRecord(builder, data.getUserAgent(),
+                data);
+        assertTrue(builder.toString().startsWith(
+                "\"Agent, \"\"1\"\"\",PERSONAL_COMPUTER,,Family,LINUX,"));
+        assertTrue(builder.toString().endsWith("\n"));
+
+        builder.setLength(0);
+        UserAgentOutputFormat.TSV.appendRecord(builder, "a\tb", null);
+        assertEquals(builder.toString(), "a b\n");
+    }
+
+    @Test
+    public void testCounts() {
+        final UserAgentData data = new UserAgentData(null,
+                DeviceCategory.SMARTPHONE, null, "Mobile Safari",
+                OperatingSystemFamily.IOS, null, null, null, null,
+                UserAgentType.MOBILE_BROWSER, null);
+
+        final String key = UserAgentOutputFormat.CSV.buildCountKey(data);
+        assertEquals(key, "MOBILE_BROWSER,SMARTPHONE,Mobile Safari,IOS");
+
+        final StringBuilder builder = new StringBuilder();
+        UserAgentOutputFormat.CSV.appendCount(builder, key, 5);
+        assertEquals(builder.toString(),
+                "MOBILE_BROWSER,SMARTPHONE,Mobile Safari,IOS,5\n");
+    }
+
+    @Test
+    public void testFromName() {
+        assertEquals(UserAgentOutputFormat.fromName("csv"),
+                UserAgentOutputFormat.CSV);
+        assertEquals(UserAgentOutputFormat.fromName("TSV"),
+                UserAgentOutputFormat.TSV);
+
+        // Force IllegalArgumentException
+        try {
+            UserAgentOutputFormat.fromName("xml");
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+}
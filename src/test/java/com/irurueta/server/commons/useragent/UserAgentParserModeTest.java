@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentParserModeTest {
+
+    @Test
+    public void testFromName() {
+        assertEquals(UserAgentParserMode.fromName("resource_module"),
+                UserAgentParserMode.RESOURCE_MODULE);
+        assertEquals(UserAgentParserMode.fromName("CACHING_AND_UPDATING"),
+                UserAgentParserMode.CACHING_AND_UPDATING);
+        assertEquals(UserAgentParserMode.fromName("Online_Updating"),
+                UserAgentParserMode.ONLINE_UPDATING);
+
+        try {
+            UserAgentParserMode.fromName("other");
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            UserAgentParserMode.fromName(null);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentPatternProfileTest {
+
+    @Test
+    public void testConstructorAndGetters() {
+        final UserAgentPatternProfile profile = new UserAgentPatternProfile(
+                UserAgentPatternProfile.Kind.BROWSER, 3, "Firefox/(\\d+)",
+                "Firefox", 10, 4, 1000, 500);
+
+        assertEquals(profile.getKind(), UserAgentPatternProfile.Kind.BROWSER);
+        assertEquals(profile.getPosition(), 3);
+        assertEquals(profile.getPattern(), "Firefox/(\\d+)");
+        assertEquals(profile.getTarget(), "Firefox");
+        assertEquals(profile.getInvocationCount(), 10);
+        assertEquals(profile.getMatchCount(), 4);
+        assertEquals(profile.getTotalTimeNanos(), 1000);
+        assertEquals(profile.getTotalSteps(), 500);
+        assertEquals(profile.getAverageTimeNanos(), 100.0, 0.0);
+
+        final UserAgentPatternProfile empty = new UserAgentPatternProfile(
+                UserAgentPatternProfile.Kind.DEVICE, 0, "x", "Tablet", 0, 0,
+                0, 0);
+        assertEquals(empty.getAverageTimeNanos(), 0.0, 0.0);
+    }
+}
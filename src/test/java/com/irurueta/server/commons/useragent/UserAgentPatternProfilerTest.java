@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserAgentPatternProfilerTest {
+
+    @Test
+    public void testRecordAndGetProfiles() {
+        final UserAgentPatternProfiler profiler =
+                new UserAgentPatternProfiler();
+        assertTrue(profiler.getProfiles().isEmpty());
+
+        profiler.counter(UserAgentPatternProfile.Kind.BROWSER, 1,
+                "cheap", "Cheap").record(true, 10, 5);
+        profiler.counter(UserAgentPatternProfile.Kind.DEVICE, 2,
+                "expensive", "Expensive").record(false, 1000, 500);
+        profiler.counter(UserAgentPatternProfile.Kind.DEVICE, 2,
+                "expensive", "Expensive").record(true, 3000, 700);
+
+        final List<UserAgentPatternProfile> profiles =
+                profiler.getProfiles();
+        assertEquals(profiles.size(), 2);
+
+        // ranked by descending total time
+        assertEquals(profiles.get(0).getPattern(), "expensive");
+        assertEquals(profiles.get(0).getKind(),
+                UserAgentPatternProfile.Kind.DEVICE);
+        assertEquals(profiles.get(0).getPosition(), 2);
+        assertEquals(profiles.get(0).getTarget(), "Expensive");
+        assertEquals(profiles.get(0).getInvocationCount(), 2);
+        assertEquals(profiles.get(0).getMatchCount(), 1);
+        assertEquals(profiles.get(0).getTotalTimeNanos(), 4000);
+        assertEquals(profiles.get(0).getTotalSteps(), 1200);
+        assertEquals(profiles.get(1).getPattern(), "cheap");
+
+        // patterns are identified by value
+        assertSame(profiler.counter(UserAgentPatternProfile.Kind.BROWSER, 1,
+                new String("cheap"), "Cheap"), profiler.counter(
+                UserAgentPatternProfile.Kind.BROWSER, 1, "cheap", "Cheap"));
+        assertNotSame(profiler.counter(UserAgentPatternProfile.Kind.BROWSER,
+                2, "cheap", "Cheap"), profiler.counter(
+                UserAgentPatternProfile.Kind.BROWSER, 1, "cheap", "Cheap"));
+
+        profiler.reset();
+        assertTrue(profiler.getProfiles().isEmpty());
+    }
+
+    @Test
+    public void testAppendReport() throws IOException {
+        final UserAgentPatternProfiler profiler =
+                new UserAgentPatternProfiler();
+        for (int i = 0; i < 5; i++) {
+            profiler.counter(UserAgentPatternProfile.Kind.OPERATING_SYSTEM,
+                    i, "pattern" + i, "target" + i).record(false, i * 100, i);
+        }
+
+        final StringBuilder builder = new StringBuilder();
+        profiler.appendReport(builder, 3);
+
+        final String[] lines = builder.toString().split("\\r?\\n");
+        assertEquals(lines.length, 4);
+        assertTrue(lines[0].contains("invocations"));
+        assertTrue(lines[1].contains("target4 / pattern4"));
+        assertTrue(lines[1].contains("40.00%"));
+        assertTrue(lines[3].contains("target2 / pattern2"));
+    }
+}
@@ -0,0 +1,580 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test harness that replays a stream of user agents against
+ * {@link UserAgentDetector#detect(String)} at a fixed arrival rate.
+ * Each request is scheduled to start at a fixed time since the beginning of
+ * the replay, no matter how long previous requests took, and its latency is
+ * measured since that scheduled time. This way, when the detector stalls
+ * (i.e. due to cache misses or garbage collection), requests that would have
+ * arrived in the meantime account for the time they would have been waiting,
+ * rather than being silently delayed and hiding the stall (a problem known
+ * as coordinated omission).
+ * Streams can be synthetic, produced by {@link UserAgentTrafficGenerator},
+ * or read from files containing user agents or access logs.
+ * Usage:
+ * <pre>
+ * java com.irurueta.server.commons.useragent.UserAgentReplayHarness
+ *     [--rate n] [--requests n] [--warmup n] [--threads n] [--seed n]
+ *     [--population n] [--zipf x] [--unique-rate x] [--bot-share x]
+ *     [--median-length n] [--input ua|log] [file]
+ * </pre>
+ * When a file (or "-" for standard input) is provided, its user agents are
+ * replayed, cyclically if more requests than lines are requested. Otherwise
+ * a synthetic stream is generated.
+ */
+public class UserAgentReplayHarness {
+
+    /**
+     * Default intended arrival rate expressed in requests per second.
+     */
+    public static final double DEFAULT_RATE = 10000.0;
+
+    /**
+     * Default number of measured requests.
+     */
+    public static final int DEFAULT_REQUESTS = 100000;
+
+    /**
+     * Default number of requests executed before measuring to warm up the
+     * JVM and the cache.
+     */
+    public static final int DEFAULT_WARMUP = 20000;
+
+    /**
+     * Default seed of synthetic streams.
+     */
+    public static final long DEFAULT_SEED = 1L;
+
+    /**
+     * Remaining time below which workers spin instead of parking while
+     * waiting for the scheduled start of a request, as parking is not
+     * accurate enough for short waits.
+     */
+    private static final long SPIN_THRESHOLD_NANOS = 50000L;
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: UserAgentReplayHarness " +
+            "[--rate n] [--requests n] [--warmup n] [--threads n] " +
+            "[--seed n] [--population n] [--zipf x] [--unique-rate x] " +
+            "[--bot-share x] [--median-length n] [--input ua|log] [file]";
+
+    /**
+     * Detector being load tested.
+     */
+    private final UserAgentDetector mDetector;
+
+    /**
+     * Intended arrival rate expressed in requests per second.
+     */
+    private final double mRate;
+
+    /**
+     * Number of threads issuing requests.
+     */
+    private final int mThreads;
+
+    /**
+     * Constructor.
+     * @param detector detector being load tested.
+     * @param rate intended arrival rate expressed in requests per second.
+     * @param threads number of threads issuing requests. Enough threads must
+     * be provided so that requests can be issued concurrently when the
+     * detector stalls.
+     * @throws IllegalArgumentException if detector is null, or rate or
+     * threads are not positive.
+     */
+    public UserAgentReplayHarness(final UserAgentDetector detector,
+            final double rate, final int threads) {
+        if (detector == null || !(rate > 0.0) || threads <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mDetector = detector;
+        mRate = rate;
+        mThreads = threads;
+    }
+
+    /**
+     * Returns detector being load tested.
+     * @return detector being load tested.
+     */
+    public UserAgentDetector getDetector() {
+        return mDetector;
+    }
+
+    /**
+     * Returns intended arrival rate expressed in requests per second.
+     * @return intended arrival rate.
+     */
+    public double getRate() {
+        return mRate;
+    }
+
+    /**
+     * Returns number of threads issuing requests.
+     * @return number of threads issuing requests.
+     */
+    public int getThreads() {
+        return mThreads;
+    }
+
+    /**
+     * Entry point of the harness.
+     * @param args command line arguments.
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args, System.in, System.out, System.err));
+    }
+
+    /**
+     * Runs the harness from the command line.
+     * @param args command line arguments.
+     * @param in stream used as standard input.
+     * @param out stream where report is printed.
+     * @param err stream where errors are printed.
+     * @return exit code, using the same values as
+     * {@link UserAgentEnrichmentTool}.
+     */
+    public static int run(final String[] args, final InputStream in,
+            final PrintStream out, final PrintStream err) {
+        final Options options;
+        try {
+            options = new Options(args);
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return UserAgentEnrichmentTool.EXIT_USAGE;
+        }
+
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        if (!detector.isEnabled()) {
+            err.println("User agent detection is disabled");
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+
+        try {
+            final List<String> userAgents = options.loadUserAgents(in);
+            if (userAgents.isEmpty()) {
+                err.println("No user agents to replay");
+                return UserAgentEnrichmentTool.EXIT_FAILURE;
+            }
+
+            final UserAgentReplayHarness harness = new UserAgentReplayHarness(
+                    detector, options.mRate, options.mThreads);
+            harness.warmUp(userAgents.subList(0, options.mWarmup));
+            final UserAgentReplayResult result = harness.replay(
+                    userAgents.subList(options.mWarmup, userAgents.size()));
+            result.appendReport(out);
+        } catch (final IOException | ExecutionException e) {
+            err.println("Replay failed: " + e.getMessage());
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Replay interrupted");
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+        return UserAgentEnrichmentTool.EXIT_SUCCESS;
+    }
+
+    /**
+     * Detects provided user agents as fast as possible without measuring
+     * them, so that the JVM and the cache are warmed up before replaying.
+     * @param userAgents user agents to be detected.
+     */
+    public void warmUp(final List<String> userAgents) {
+        for (final String userAgent : userAgents) {
+            try {
+                mDetector.detect(userAgent);
+            } catch (final UserAgentException ignore) {
+                // failures are measured when replaying
+            }
+        }
+    }
+
+    /**
+     * Replays provided user agents at the intended arrival rate.
+     * @param userAgents user agents to be replayed in order.
+     * @return result containing latency percentiles and throughput.
+     * @throws ExecutionException if a worker thread fails.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public UserAgentReplayResult replay(final List<String> userAgents)
+            throws ExecutionException, InterruptedException {
+        final int count = userAgents.size();
+        final long[] latencies = new long[count];
+        final long[] serviceTimes = new long[count];
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong lastEnd = new AtomicLong();
+        final double intervalNanos = NANOS_PER_SECOND / mRate;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                mThreads);
+        final long start = System.nanoTime();
+        try {
+            final List<Future<Void>> futures = new ArrayList<>(mThreads);
+            for (int i = 0; i < mThreads; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        int index;
+                        while ((index = next.getAndIncrement()) < count) {
+                            final long intended = start +
+                                    (long) (index * intervalNanos);
+                            waitUntil(intended);
+
+                            final long begin = System.nanoTime();
+                            try {
+                                mDetector.detect(userAgents.get(index));
+                            } catch (final UserAgentException e) {
+                                failures.incrementAndGet();
+                            }
+                            final long end = System.nanoTime();
+
+                            latencies[index] = end - intended;
+                            serviceTimes[index] = end - begin;
+                            updateMax(lastEnd, end);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new UserAgentReplayResult(mRate, latencies, serviceTimes,
+                failures.get(), count > 0 ? lastEnd.get() - start : 0);
+    }
+
+    /**
+     * Waits until provided time, parking while far from it and spinning
+     * when close to it.
+     * @param deadline time to wait for, as returned by
+     * {@link System#nanoTime()}.
+     */
+    private static void waitUntil(final long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Sets provided value if it is larger than the current one.
+     * @param max holder of maximum value.
+     * @param value candidate value.
+     */
+    private static void updateMax(final AtomicLong max, final long value) {
+        long current;
+        while ((current = max.get()) - value < 0) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Command line options.
+     */
+    static class Options {
+
+        /**
+         * Intended arrival rate expressed in requests per second.
+         */
+        private double mRate = DEFAULT_RATE;
+
+        /**
+         * Number of measured requests.
+         */
+        private int mRequests = DEFAULT_REQUESTS;
+
+        /**
+         * Number of warm up requests.
+         */
+        private int mWarmup = DEFAULT_WARMUP;
+
+        /**
+         * Number of threads issuing requests.
+         */
+        private int mThreads = Runtime.getRuntime().availableProcessors();
+
+        /**
+         * Format of input lines.
+         */
+        private UserAgentInputFormat mInputFormat =
+                UserAgentInputFormat.USER_AGENT;
+
+        /**
+         * Input file or null to replay a synthetic stream.
+         */
+        private String mInputFile;
+
+        /**
+         * Generator of synthetic streams.
+         */
+        private final UserAgentTrafficGenerator mGenerator;
+
+        /**
+         * Constructor.
+         * @param args command line arguments.
+         * @throws IllegalArgumentException if any argument is not valid.
+         */
+        Options(final String[] args) {
+            long seed = DEFAULT_SEED;
+            for (int i = 0; i < args.length; i++) {
+                if ("--seed".equals(args[i])) {
+                    final String value = requireValue(args, ++i, "--seed");
+                    try {
+                        seed = Long.parseLong(value);
+                    } catch (final NumberFormatException e) {
+                        throw new IllegalArgumentException(
+                                "Invalid value for --seed: " + value, e);
+                    }
+                }
+            }
+            mGenerator = new UserAgentTrafficGenerator(seed);
+
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--rate":
+                        mRate = parseNumber(requireValue(args, ++i, arg), arg,
+                                false);
+                        break;
+                    case "--requests":
+                        mRequests = (int) parseNumber(requireValue(args, ++i,
+                                arg), arg, false);
+                        break;
+                    case "--warmup":
+                        mWarmup = (int) parseNumber(requireValue(args, ++i,
+                                arg), arg, true);
+                        break;
+                    case "--threads":
+                        mThreads = (int) parseNumber(requireValue(args, ++i,
+                                arg), arg, false);
+                        break;
+                    case "--seed":
+                        i++;
+                        break;
+                    case "--population":
+                        mGenerator.setPopulationSize((int) parseNumber(
+                                requireValue(args, ++i, arg), arg, false));
+                        break;
+                    case "--zipf":
+                        mGenerator.setZipfExponent(parseNumber(requireValue(
+                                args, ++i, arg), arg, true));
+                        break;
+                    case "--unique-rate":
+                        mGenerator.setUniqueRate(parseFraction(requireValue(
+                                args, ++i, arg), arg));
+                        break;
+                    case "--bot-share":
+                        mGenerator.setBotShare(parseFraction(requireValue(
+                                args, ++i, arg), arg));
+                        break;
+                    case "--median-length":
+                        mGenerator.setMedianLength((int) parseNumber(
+                                requireValue(args, ++i, arg), arg, false));
+                        break;
+                    case "--input":
+                        mInputFormat = UserAgentInputFormat.fromName(
+                                requireValue(args, ++i, arg));
+                        break;
+                    default:
+                        if (arg.startsWith("--")) {
+                            throw new IllegalArgumentException(
+                                    "Unknown option: " + arg);
+                        }
+                        if (mInputFile != null) {
+                            throw new IllegalArgumentException(
+                                    "Only one input file can be replayed");
+                        }
+                        mInputFile = arg;
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Loads user agents to be replayed, including warm up requests
+         * first.
+         * @param in stream used as standard input.
+         * @return user agents to be replayed.
+         * @throws IOException if an I/O error occurs.
+         */
+        List<String> loadUserAgents(final InputStream in) throws IOException {
+            final int total = mWarmup + mRequests;
+            if (mInputFile == null) {
+                return mGenerator.generate(total);
+            }
+
+            final List<String> lines = new ArrayList<>();
+            try (final BufferedReader reader =
+                         UserAgentEnrichmentTool.openReader(mInputFile, in)) {
+                String line;
+                while ((line = reader.readLine()) != null &&
+                        lines.size() < total) {
+                    final String userAgent = mInputFormat.extractUserAgent(
+                            line);
+                    if (userAgent != null) {
+                        lines.add(userAgent);
+                    }
+                }
+            }
+
+            if (lines.isEmpty()) {
+                return lines;
+            }
+            final List<String> result = new ArrayList<>(total);
+            for (int i = 0; i < total; i++) {
+                result.add(lines.get(i % lines.size()));
+            }
+            return result;
+        }
+
+        /**
+         * Returns intended arrival rate.
+         * @return intended arrival rate.
+         */
+        double getRate() {
+            return mRate;
+        }
+
+        /**
+         * Returns number of measured requests.
+         * @return number of measured requests.
+         */
+        int getRequests() {
+            return mRequests;
+        }
+
+        /**
+         * Returns number of warm up requests.
+         * @return number of warm up requests.
+         */
+        int getWarmup() {
+            return mWarmup;
+        }
+
+        /**
+         * Returns number of threads issuing requests.
+         * @return number of threads.
+         */
+        int getThreads() {
+            return mThreads;
+        }
+
+        /**
+         * Returns generator of synthetic streams.
+         * @return generator of synthetic streams.
+         */
+        UserAgentTrafficGenerator getGenerator() {
+            return mGenerator;
+        }
+
+        /**
+         * Returns the value following an option.
+         * @param args command line arguments.
+         * @param index position of value.
+         * @param option option requiring the value.
+         * @return value of option.
+         * @throws IllegalArgumentException if value is missing.
+         */
+        private static String requireValue(final String[] args,
+                final int index, final String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " +
+                        option);
+            }
+            return args[index];
+        }
+
+        /**
+         * Parses a numeric value.
+         * @param value value to be parsed.
+         * @param option option whose value is parsed.
+         * @param zeroAllowed true if zero is a valid value.
+         * @return parsed value.
+         * @throws IllegalArgumentException if value is not a number, or is
+         * negative or zero when not allowed.
+         */
+        private static double parseNumber(final String value,
+                final String option, final boolean zeroAllowed) {
+            final double result;
+            try {
+                result = Double.parseDouble(value);
+            } catch (final NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " +
+                        option + ": " + value, e);
+            }
+            if (result < 0.0 || (!zeroAllowed && result == 0.0) ||
+                    Double.isNaN(result) || Double.isInfinite(result)) {
+                throw new IllegalArgumentException(option + " must be " +
+                        (zeroAllowed ? "non-negative" : "positive"));
+            }
+            return result;
+        }
+
+        /**
+         * Parses a fraction between 0 and 1.
+         * @param value value to be parsed.
+         * @param option option whose value is parsed.
+         * @return parsed value.
+         * @throws IllegalArgumentException if value is not between 0 and 1.
+         */
+        private static double parseFraction(final String value,
+                final String option) {
+            final double result = parseNumber(value, option, true);
+            if (result > 1.0) {
+                throw new IllegalArgumentException(option +
+                        " must be between 0 and 1");
+            }
+            return result;
+        }
+    }
+}
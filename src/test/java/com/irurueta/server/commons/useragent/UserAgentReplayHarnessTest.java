@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class UserAgentReplayHarnessTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final String CHROME =
+            "Mozilla/5.0 (X11; U; Linux x86_64; en-US) AppleWebKit/532.9 " +
+                    "(KHTML, like Gecko) Chrome/5.0.309.0 Safari/532.9";
+
+    private static final String WGET = "Wget/1.8.1";
+
+    @Before
+    public void setUp() {
+        UserAgentDetector.reset();
+    }
+
+    @After
+    public void tearDown() {
+        UserAgentDetector.reset();
+    }
+
+    @Test
+    public void testConstructor() {
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final UserAgentReplayHarness harness = new UserAgentReplayHarness(
+                detector, 100.0, 2);
+
+        assertSame(harness.getDetector(), detector);
+        assertEquals(harness.getRate(), 100.0, 0.0);
+        assertEquals(harness.getThreads(), 2);
+
+        try {
+            new UserAgentReplayHarness(null, 100.0, 2);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            new UserAgentReplayHarness(detector, 0.0, 2);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            new UserAgentReplayHarness(detector, Double.NaN, 2);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            new UserAgentReplayHarness(detector, 100.0, 0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    @Test
+    public void testReplayAtFixedRate() throws ExecutionException,
+            InterruptedException {
+        final UserAgentReplayHarness harness = new UserAgentReplayHarness(
+                UserAgentDetector.getInstance(), 200.0, 2);
+        final List<String> userAgents = Arrays.asList(CHROME, WGET, CHROME,
+                WGET, CHROME, WGET, CHROME, WGET, CHROME, WGET);
+        harness.warmUp(userAgents);
+
+        final UserAgentReplayResult result = harness.replay(userAgents);
+
+        assertEquals(result.getCount(), 10);
+        assertEquals(result.getFailureCount(), 0L);
+        assertEquals(result.getIntendedRate(), 200.0, 0.0);
+        // last request is scheduled 45 ms after the first one, hence
+        // throughput cannot exceed intended rate by much
+        assertTrue(result.getElapsedNanos() >= 45000000L);
+        assertTrue(result.getThroughput() <= 10 / 0.045);
+        assertTrue(result.getLatencyPercentile(50.0) <=
+                result.getLatencyPercentile(99.0));
+        assertTrue(result.getServiceTimePercentile(100.0) <=
+                result.getMaxLatency());
+    }
+
+    @Test
+    public void testReplayAccountsForCoordinatedOmission()
+            throws ExecutionException, InterruptedException {
+        // all requests are scheduled within 1 ms but a single thread cannot
+        // start them on time, so waiting time is included in latencies
+        final UserAgentReplayHarness harness = new UserAgentReplayHarness(
+                UserAgentDetector.getInstance(), 1000000.0, 1);
+        final List<String> userAgents = Collections.nCopies(1000, CHROME);
+        harness.warmUp(userAgents);
+
+        final UserAgentReplayResult result = harness.replay(userAgents);
+
+        assertEquals(result.getCount(), 1000);
+        assertTrue(result.getMaxLatency() >=
+                result.getServiceTimePercentile(100.0));
+        assertTrue(result.getLatencyPercentile(99.0) >
+                result.getServiceTimePercentile(99.0));
+    }
+
+    @Test
+    public void testReplayCountsFailures() throws ExecutionException,
+            InterruptedException {
+        final UserAgentReplayHarness harness = new UserAgentReplayHarness(
+                UserAgentDetector.getInstance(), 10000.0, 1);
+
+        final UserAgentReplayResult result = harness.replay(Arrays.asList(
+                CHROME, null));
+
+        assertEquals(result.getCount(), 2);
+        assertEquals(result.getFailureCount(), 1L);
+    }
+
+    @Test
+    public void testRunSynthetic() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        final int exitCode = UserAgentReplayHarness.run(new String[]{
+                "--rate", "5000", "--requests", "200", "--warmup", "50",
+                "--threads", "2", "--seed", "3", "--population", "50",
+                "--zipf", "1.2", "--unique-rate", "0.1", "--bot-share",
+                "0.2", "--median-length", "150"},
+                new ByteArrayInputStream(new byte[0]), new PrintStream(out),
+                new PrintStream(err));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+        final String report = new String(out.toByteArray(), UTF8);
+        assertTrue(report.contains("Replayed 200 requests"));
+        assertTrue(report.contains("intended 5000.0 requests/s"));
+    }
+
+    @Test
+    public void testRunFromStandardInput() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+        final int exitCode = UserAgentReplayHarness.run(new String[]{
+                "--requests", "30", "--warmup", "0", "--threads", "1", "-"},
+                new ByteArrayInputStream((CHROME + "\n\n" + WGET + "\n").
+                        getBytes(UTF8)), new PrintStream(out),
+                new PrintStream(err));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+        assertTrue(new String(out.toByteArray(), UTF8).contains(
+                "Replayed 30 requests (0 failed)"));
+    }
+
+    @Test
+    public void testRunWithInvalidArguments() {
+        final String[][] invalid = {
+                {"--rate", "0"}, {"--requests", "abc"}, {"--threads"},
+                {"--unique-rate", "2"}, {"--seed", "x"}, {"--unknown"},
+                {"a", "b"}
+        };
+        for (final String[] args : invalid) {
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            final int exitCode = UserAgentReplayHarness.run(args,
+                    new ByteArrayInputStream(new byte[0]),
+                    new PrintStream(new ByteArrayOutputStream()),
+                    new PrintStream(err));
+
+            assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_USAGE);
+            assertTrue(new String(err.toByteArray(), UTF8).contains(
+                    "Usage: UserAgentReplayHarness"));
+        }
+    }
+
+    @Test
+    public void testOptions() {
+        final UserAgentReplayHarness.Options options =
+                new UserAgentReplayHarness.Options(new String[]{
+                        "--rate", "10", "--requests", "5", "--warmup", "1",
+                        "--threads", "3", "--zipf", "0.5"});
+
+        assertEquals(options.getRate(), 10.0, 0.0);
+        assertEquals(options.getRequests(), 5);
+        assertEquals(options.getWarmup(), 1);
+        assertEquals(options.getThreads(), 3);
+        assertEquals(options.getGenerator().getZipfExponent(), 0.5, 0.0);
+    }
+}
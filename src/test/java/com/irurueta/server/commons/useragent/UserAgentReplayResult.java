@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Contains the outcome of replaying a stream of user agents at a fixed
+ * arrival rate using {@link UserAgentReplayHarness}.
+ * Latencies are measured from the time at which each request was scheduled
+ * to start instead of the time at which it actually started, so that delays
+ * caused by previous slow requests are accounted for (i.e. latencies are
+ * corrected for coordinated omission). Service times measured from the
+ * actual start of each request are also kept, since comparing both reveals
+ * how much queueing the detector causes at the intended rate.
+ */
+public class UserAgentReplayResult {
+
+    /**
+     * Percentiles included in reports.
+     */
+    private static final double[] REPORT_PERCENTILES = {
+            50.0, 90.0, 99.0, 99.9, 99.99
+    };
+
+    /**
+     * Nanoseconds per second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Nanoseconds per microsecond.
+     */
+    private static final double NANOS_PER_MICROSECOND = 1e3;
+
+    /**
+     * Intended arrival rate expressed in requests per second.
+     */
+    private final double mIntendedRate;
+
+    /**
+     * Sorted latencies of requests measured from their intended start time
+     * and expressed in nanoseconds.
+     */
+    private final long[] mLatencies;
+
+    /**
+     * Sorted service times of requests measured from their actual start time
+     * and expressed in nanoseconds.
+     */
+    private final long[] mServiceTimes;
+
+    /**
+     * Number of requests whose detection failed.
+     */
+    private final long mFailureCount;
+
+    /**
+     * Elapsed time since first request was scheduled until last request
+     * completed, expressed in nanoseconds.
+     */
+    private final long mElapsedNanos;
+
+    /**
+     * Constructor.
+     * @param intendedRate intended arrival rate expressed in requests per
+     * second.
+     * @param latencies latencies of requests measured from their intended
+     * start time and expressed in nanoseconds. Array is sorted in place.
+     * @param serviceTimes service times of requests measured from their actual
+     * start time and expressed in nanoseconds. Array is sorted in place.
+     * @param failureCount number of requests whose detection failed.
+     * @param elapsedNanos elapsed time since first request was scheduled until
+     * last request completed, expressed in nanoseconds.
+     */
+    UserAgentReplayResult(final double intendedRate, final long[] latencies,
+            final long[] serviceTimes, final long failureCount,
+            final long elapsedNanos) {
+        Arrays.sort(latencies);
+        Arrays.sort(serviceTimes);
+        mIntendedRate = intendedRate;
+        mLatencies = latencies;
+        mServiceTimes = serviceTimes;
+        mFailureCount = failureCount;
+        mElapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Returns intended arrival rate expressed in requests per second.
+     * @return intended arrival rate.
+     */
+    public double getIntendedRate() {
+        return mIntendedRate;
+    }
+
+    /**
+     * Returns number of replayed requests.
+     * @return number of replayed requests.
+     */
+    public int getCount() {
+        return mLatencies.length;
+    }
+
+    /**
+     * Returns number of requests whose detection failed.
+     * @return number of failed requests.
+     */
+    public long getFailureCount() {
+        return mFailureCount;
+    }
+
+    /**
+     * Returns elapsed time since first request was scheduled until last
+     * request completed, expressed in nanoseconds.
+     * @return elapsed time in nanoseconds.
+     */
+    public long getElapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Returns achieved throughput expressed in requests per second. When the
+     * detector cannot keep up with the intended rate, throughput is lower
+     * than the intended rate.
+     * @return achieved throughput.
+     */
+    public double getThroughput() {
+        return mElapsedNanos > 0 ?
+                mLatencies.length * NANOS_PER_SECOND / mElapsedNanos : 0.0;
+    }
+
+    /**
+     * Returns latency at provided percentile measured from the intended start
+     * time of requests.
+     * @param percentile percentile between 0 and 100.
+     * @return latency in nanoseconds or 0 if no request was replayed.
+     * @throws IllegalArgumentException if percentile is not between 0 and
+     * 100.
+     */
+    public long getLatencyPercentile(final double percentile) {
+        return percentile(mLatencies, percentile);
+    }
+
+    /**
+     * Returns service time at provided percentile measured from the actual
+     * start time of requests.
+     * @param percentile percentile between 0 and 100.
+     * @return service time in nanoseconds or 0 if no request was replayed.
+     * @throws IllegalArgumentException if percentile is not between 0 and
+     * 100.
+     */
+    public long getServiceTimePercentile(final double percentile) {
+        return percentile(mServiceTimes, percentile);
+    }
+
+    /**
+     * Returns maximum latency measured from the intended start time of
+     * requests.
+     * @return maximum latency in nanoseconds or 0 if no request was replayed.
+     */
+    public long getMaxLatency() {
+        return mLatencies.length > 0 ? mLatencies[mLatencies.length - 1] : 0;
+    }
+
+    /**
+     * Appends a human readable report of this result.
+     * @param out destination where report is appended.
+     * @throws IOException if an I/O error occurs.
+     */
+    public void appendReport(final Appendable out) throws IOException {
+        final double seconds = mElapsedNanos / NANOS_PER_SECOND;
+        out.append(String.format(Locale.ENGLISH,
+                "Replayed %d requests (%d failed) in %.3f s%n",
+                mLatencies.length, mFailureCount, seconds));
+        out.append(String.format(Locale.ENGLISH,
+                "Throughput: %.1f requests/s (intended %.1f requests/s)%n",
+                getThroughput(), mIntendedRate));
+        out.append(String.format(Locale.ENGLISH, "%10s %15s %15s%n",
+                "percentile", "latency (us)", "service (us)"));
+        for (final double percentile : REPORT_PERCENTILES) {
+            appendRow(out, String.format(Locale.ENGLISH, "%.2f", percentile),
+                    getLatencyPercentile(percentile),
+                    getServiceTimePercentile(percentile));
+        }
+        appendRow(out, "max", getMaxLatency(),
+                getServiceTimePercentile(100.0));
+    }
+
+    /**
+     * Appends a row of the percentile table.
+     * @param out destination where row is appended.
+     * @param label label of the row.
+     * @param latency latency in nanoseconds.
+     * @param serviceTime service time in nanoseconds.
+     * @throws IOException if an I/O error occurs.
+     */
+    private static void appendRow(final Appendable out, final String label,
+            final long latency, final long serviceTime) throws IOException {
+        out.append(String.format(Locale.ENGLISH, "%10s %15.1f %15.1f%n",
+                label, latency / NANOS_PER_MICROSECOND,
+                serviceTime / NANOS_PER_MICROSECOND));
+    }
+
+    /**
+     * Returns value at provided percentile of a sorted array using the
+     * nearest rank method.
+     * @param sorted sorted values.
+     * @param percentile percentile between 0 and 100.
+     * @return value at percentile or 0 if array is empty.
+     * @throws IllegalArgumentException if percentile is not between 0 and
+     * 100.
+     */
+    private static long percentile(final long[] sorted,
+            final double percentile) {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException();
+        }
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(percentile * sorted.length / 100.0);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class UserAgentReplayResultTest {
+
+    @Test
+    public void testGetters() {
+        final UserAgentReplayResult result = new UserAgentReplayResult(100.0,
+                new long[]{50, 10, 40, 30, 20}, new long[]{5, 1, 4, 3, 2}, 2L,
+                2000000000L);
+
+        assertEquals(result.getIntendedRate(), 100.0, 0.0);
+        assertEquals(result.getCount(), 5);
+        assertEquals(result.getFailureCount(), 2L);
+        assertEquals(result.getElapsedNanos(), 2000000000L);
+        assertEquals(result.getThroughput(), 2.5, 1e-9);
+        assertEquals(result.getMaxLatency(), 50L);
+    }
+
+    @Test
+    public void testPercentiles() {
+        final long[] latencies = new long[1000];
+        final long[] serviceTimes = new long[1000];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = 1000 - i;
+            serviceTimes[i] = i + 1;
+        }
+        final UserAgentReplayResult result = new UserAgentReplayResult(1.0,
+                latencies, serviceTimes, 0L, 1L);
+
+        assertEquals(result.getLatencyPercentile(0.0), 1L);
+        assertEquals(result.getLatencyPercentile(50.0), 500L);
+        assertEquals(result.getLatencyPercentile(99.0), 990L);
+        assertEquals(result.getLatencyPercentile(99.9), 999L);
+        assertEquals(result.getLatencyPercentile(100.0), 1000L);
+        assertEquals(result.getServiceTimePercentile(90.0), 900L);
+
+        try {
+            result.getLatencyPercentile(-1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            result.getServiceTimePercentile(101.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    @Test
+    public void testEmpty() {
+        final UserAgentReplayResult result = new UserAgentReplayResult(1.0,
+                new long[0], new long[0], 0L, 0L);
+
+        assertEquals(result.getCount(), 0);
+        assertEquals(result.getThroughput(), 0.0, 0.0);
+        assertEquals(result.getLatencyPercentile(99.0), 0L);
+        assertEquals(result.getMaxLatency(), 0L);
+    }
+
+    @Test
+    public void testAppendReport() throws IOException {
+        final UserAgentReplayResult result = new UserAgentReplayResult(10.0,
+                new long[]{1000, 2000}, new long[]{500, 1000}, 1L,
+                1000000000L);
+
+        final StringBuilder builder = new StringBuilder();
+        result.appendReport(builder);
+        final String report = builder.toString();
+
+        assertTrue(report.contains("Replayed 2 requests (1 failed)"));
+        assertTrue(report.contains("Throughput: 2.0 requests/s " +
+                "(intended 10.0 requests/s)"));
+        assertTrue(report.contains("99.90"));
+        assertTrue(report.contains("max"));
+        assertTrue(report.contains("2.0"));
+    }
+}
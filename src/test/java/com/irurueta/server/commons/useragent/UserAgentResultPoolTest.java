@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentResultPoolTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentResultPool pool = new UserAgentResultPool(10);
+        assertEquals(pool.getCapacity(), 10);
+        assertEquals(pool.size(), 0);
+        assertEquals(pool.getRejectedCount(), 0);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentResultPool(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testInternAndGet() {
+        final UserAgentResultPool pool = new UserAgentResultPool(2);
+        final UserAgentData chrome1 = createData("chrome-1", "Chrome");
+        final UserAgentData chrome2 = createData("chrome-2", "Chrome");
+        final UserAgentData firefox = createData("firefox", "Firefox");
+
+        // distinct user agents having identical results share identifier
+        final int chromeId = pool.intern(chrome1);
+        assertEquals(chromeId, 0);
+        assertEquals(pool.intern(chrome2), chromeId);
+        final int firefoxId = pool.intern(firefox);
+        assertEquals(firefoxId, 1);
+        assertEquals(pool.size(), 2);
+
+        // versions are not part of results
+        final UserAgentData chrome3 = createData("chrome-3", "Chrome");
+        chrome3.setOsVersion("11.0");
+        chrome3.setUserAgentVersion("100.0");
+        assertEquals(pool.intern(chrome3), chromeId);
+        final UserAgentData versionless = createData("chrome-2", "Chrome");
+        versionless.setOsVersion(null);
+        versionless.setUserAgentVersion(null);
+        assertEquals(pool.get(chromeId),
+                CompactUserAgentData.fromUserAgentData(versionless));
+        assertEquals(pool.get(firefoxId).getFamily(), "Firefox");
+        assertNull(pool.get(-1));
+        assertNull(pool.get(2));
+
+        final UserAgentData data = pool.toUserAgentData(chromeId, "chrome-3");
+        assertEquals(data.getUserAgent(), "chrome-3");
+        assertEquals(data.getFamily(), "Chrome");
+        assertEquals(data.getUserAgentType(), UserAgentType.BROWSER);
+        assertNull(data.getOsVersion());
+        assertNull(data.getUserAgentVersion());
+        assertNull(pool.toUserAgentData(UserAgentResultPool.NO_ID,
+                "chrome-3"));
+
+        // pool is full
+        assertEquals(pool.intern(createData("safari", "Safari")),
+                UserAgentResultPool.NO_ID);
+        assertEquals(pool.intern(firefox), firefoxId);
+        assertEquals(pool.size(), 2);
+        assertEquals(pool.getRejectedCount(), 1);
+    }
+
+    private static UserAgentData createData(final String userAgent,
+            final String family) {
+        return new UserAgentData(userAgent, DeviceCategory.PERSONAL_COMPUTER,
+                "Personal computer", family, OperatingSystemFamily.WINDOWS,
+                "Windows", "Windows 10", "Microsoft Corporation.", "10.0",
+                UserAgentType.BROWSER, "99.0");
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Benchmark measuring startup cost of {@link UserAgentDetector} for each
+ * parser mode.
+ * Class loading and static initialization only happen once per JVM, hence
+ * each measurement is taken on a fresh child JVM that creates the detector,
+ * detects a single user agent, reports elapsed times and number of loaded
+ * classes on its standard output and exits. Median values of several
+ * repetitions are reported for each mode.
+ * Usage:
+ * <pre>
+ * java com.irurueta.server.commons.useragent.UserAgentStartupBenchmark
+ *     [--repetitions n] [--mode resource_module|caching_and_updating|
+ *     online_updating]... [--baseline]
+ * </pre>
+ * When --baseline is provided, results are printed as properties that can be
+ * stored as the baseline checked by integration tests.
+ */
+public final class UserAgentStartupBenchmark {
+
+    /**
+     * Default number of measurements taken for each mode.
+     */
+    public static final int DEFAULT_REPETITIONS = 3;
+
+    /**
+     * Suffix of baseline properties containing time to first detection,
+     * expressed in milliseconds. Properties are prefixed by mode name.
+     */
+    public static final String TIME_TO_FIRST_DETECT_SUFFIX =
+            ".timeToFirstDetectMillis";
+
+    /**
+     * Suffix of baseline properties containing number of loaded classes.
+     * Properties are prefixed by mode name.
+     */
+    public static final String LOADED_CLASSES_SUFFIX = ".loadedClasses";
+
+    /**
+     * User agent detected once the detector is created. It is not contained
+     * in the table of common user agents, so that it is actually parsed.
+     */
+    static final String PROBE_USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; " +
+            "Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) " +
+            "Chrome/99.0.4844.51 Safari/537.36 StartupProbe/1.0";
+
+    /**
+     * Option used to launch child JVMs.
+     */
+    private static final String CHILD_OPTION = "--child";
+
+    /**
+     * Charset used to read output of child JVMs.
+     */
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLISECOND = 1e6;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: UserAgentStartupBenchmark " +
+            "[--repetitions n] [--mode resource_module|caching_and_updating|" +
+            "online_updating]... [--baseline]";
+
+    /**
+     * Constructor.
+     */
+    private UserAgentStartupBenchmark() { }
+
+    /**
+     * Entry point of the benchmark.
+     * @param args command line arguments.
+     */
+    public static void main(final String[] args) {
+        // exit explicitly, as parsers updating data in background might keep
+        // non daemon threads alive
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args command line arguments.
+     * @param out stream where results are printed.
+     * @param err stream where errors are printed.
+     * @return exit code, using the same values as
+     * {@link UserAgentEnrichmentTool}.
+     */
+    public static int run(final String[] args, final PrintStream out,
+            final PrintStream err) {
+        int repetitions = DEFAULT_REPETITIONS;
+        boolean baseline = false;
+        final List<UserAgentParserMode> modes = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case CHILD_OPTION:
+                        return runChild(UserAgentParserMode.fromName(
+                                requireValue(args, ++i, arg)), out, err);
+                    case "--repetitions":
+                        repetitions = parsePositive(requireValue(args, ++i,
+                                arg), arg);
+                        break;
+                    case "--mode":
+                        modes.add(UserAgentParserMode.fromName(requireValue(
+                                args, ++i, arg)));
+                        break;
+                    case "--baseline":
+                        baseline = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unknown option: " + arg);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return UserAgentEnrichmentTool.EXIT_USAGE;
+        }
+        if (modes.isEmpty()) {
+            modes.addAll(Arrays.asList(UserAgentParserMode.values()));
+        }
+
+        final List<UserAgentStartupSample> results;
+        try {
+            results = benchmark(modes, repetitions);
+        } catch (final IOException e) {
+            err.println("Benchmark failed: " + e.getMessage());
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Benchmark interrupted");
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+
+        if (baseline) {
+            try {
+                toBaseline(results).store(out,
+                        "User agent detector startup baseline");
+            } catch (final IOException e) {
+                err.println("Baseline could not be written: " +
+                        e.getMessage());
+                return UserAgentEnrichmentTool.EXIT_FAILURE;
+            }
+        } else {
+            out.println(String.format(Locale.ENGLISH,
+                    "%-20s %12s %12s %12s %8s", "mode", "init (ms)",
+                    "first (ms)", "total (ms)", "classes"));
+            for (final UserAgentStartupSample result : results) {
+                out.println(result);
+            }
+        }
+        return UserAgentEnrichmentTool.EXIT_SUCCESS;
+    }
+
+    /**
+     * Measures startup cost of provided modes on fresh child JVMs.
+     * @param modes parser modes to be measured.
+     * @param repetitions number of measurements taken for each mode.
+     * @return median sample of each mode, in the same order as provided
+     * modes.
+     * @throws IOException if a child JVM cannot be launched or fails.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public static List<UserAgentStartupSample> benchmark(
+            final List<UserAgentParserMode> modes, final int repetitions)
+            throws IOException, InterruptedException {
+        final List<UserAgentStartupSample> result = new ArrayList<>();
+        for (final UserAgentParserMode mode : modes) {
+            final List<UserAgentStartupSample> samples = new ArrayList<>();
+            for (int i = 0; i < repetitions; i++) {
+                samples.add(fork(mode));
+            }
+            result.add(median(samples));
+        }
+        return result;
+    }
+
+    /**
+     * Measures startup cost of provided mode on a fresh child JVM using the
+     * same Java runtime and class path as the current one.
+     * @param mode parser mode to be measured.
+     * @return measured sample.
+     * @throws IOException if child JVM cannot be launched or fails.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public static UserAgentStartupSample fork(final UserAgentParserMode mode)
+            throws IOException, InterruptedException {
+        final String java = System.getProperty("java.home") + File.separator +
+                "bin" + File.separator + "java";
+        final ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+                System.getProperty("java.class.path"),
+                UserAgentStartupBenchmark.class.getName(), CHILD_OPTION,
+                mode.name());
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+
+        UserAgentStartupSample sample = null;
+        final StringBuilder output = new StringBuilder();
+        try (final BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), CHARSET))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final UserAgentStartupSample parsed =
+                        UserAgentStartupSample.fromLine(line);
+                if (parsed != null) {
+                    sample = parsed;
+                } else {
+                    output.append(line).append('\n');
+                }
+            }
+        } finally {
+            process.getOutputStream().close();
+        }
+
+        final int exitCode = process.waitFor();
+        if (exitCode != UserAgentEnrichmentTool.EXIT_SUCCESS ||
+                sample == null) {
+            throw new IOException("Startup measurement of " + mode +
+                    " failed with exit code " + exitCode + ":\n" + output);
+        }
+        return sample;
+    }
+
+    /**
+     * Measures startup cost of provided mode on the current JVM. Results are
+     * only meaningful on a fresh JVM where no detector has been created yet.
+     * @param mode parser mode to be measured.
+     * @return measured sample.
+     * @throws ConfigurationException if detector cannot be configured.
+     * @throws UserAgentException if detection fails.
+     */
+    public static UserAgentStartupSample measure(
+            final UserAgentParserMode mode) throws ConfigurationException,
+            UserAgentException {
+        final ClassLoadingMXBean classLoading =
+                ManagementFactory.getClassLoadingMXBean();
+        final Properties properties = new Properties();
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY, mode.name());
+
+        final long classesBefore = classLoading.getTotalLoadedClassCount();
+        final long start = System.nanoTime();
+        UserAgentConfigurationFactory.getInstance().configure(properties);
+        final UserAgentDetector detector = UserAgentDetector.getInstance();
+        final long initialized = System.nanoTime();
+        detector.detect(PROBE_USER_AGENT);
+        final long detected = System.nanoTime();
+        final long classesAfter = classLoading.getTotalLoadedClassCount();
+
+        return new UserAgentStartupSample(mode, initialized - start,
+                detected - initialized, classesAfter - classesBefore);
+    }
+
+    /**
+     * Computes median of each metric of provided samples.
+     * @param samples samples of a single mode.
+     * @return sample containing median values.
+     * @throws IllegalArgumentException if no samples are provided.
+     */
+    static UserAgentStartupSample median(
+            final List<UserAgentStartupSample> samples) {
+        if (samples.isEmpty()) {
+            throw new IllegalArgumentException();
+        }
+        final int n = samples.size();
+        final long[] initialization = new long[n];
+        final long[] firstDetect = new long[n];
+        final long[] classes = new long[n];
+        for (int i = 0; i < n; i++) {
+            final UserAgentStartupSample sample = samples.get(i);
+            initialization[i] = sample.getInitializationNanos();
+            firstDetect[i] = sample.getFirstDetectNanos();
+            classes[i] = sample.getLoadedClasses();
+        }
+        return new UserAgentStartupSample(samples.get(0).getMode(),
+                median(initialization), median(firstDetect), median(classes));
+    }
+
+    /**
+     * Converts provided samples into baseline properties.
+     * @param samples samples of each mode.
+     * @return baseline properties.
+     */
+    static Properties toBaseline(final List<UserAgentStartupSample> samples) {
+        final Properties properties = new Properties();
+        for (final UserAgentStartupSample sample : samples) {
+            properties.setProperty(sample.getMode().name() +
+                    TIME_TO_FIRST_DETECT_SUFFIX, String.format(Locale.ENGLISH,
+                    "%.0f", Math.ceil(sample.getTimeToFirstDetectNanos() /
+                            NANOS_PER_MILLISECOND)));
+            properties.setProperty(sample.getMode().name() +
+                    LOADED_CLASSES_SUFFIX, Long.toString(
+                            sample.getLoadedClasses()));
+        }
+        return properties;
+    }
+
+    /**
+     * Measures provided mode on this JVM and prints the sample.
+     * @param mode parser mode to be measured.
+     * @param out stream where sample is printed.
+     * @param err stream where errors are printed.
+     * @return exit code.
+     */
+    private static int runChild(final UserAgentParserMode mode,
+            final PrintStream out, final PrintStream err) {
+        try {
+            out.println(measure(mode).toLine());
+            return UserAgentEnrichmentTool.EXIT_SUCCESS;
+        } catch (final ConfigurationException | UserAgentException e) {
+            err.println("Startup measurement failed: " + e);
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+    }
+
+    /**
+     * Computes median of provided values.
+     * @param values values. Array is sorted in place.
+     * @return median value.
+     */
+    private static long median(final long[] values) {
+        Arrays.sort(values);
+        final int n = values.length;
+        return n % 2 == 1 ? values[n / 2] :
+                (values[n / 2 - 1] + values[n / 2]) / 2;
+    }
+
+    /**
+     * Returns the value following an option.
+     * @param args command line arguments.
+     * @param index position of value.
+     * @param option option requiring the value.
+     * @return value of option.
+     * @throws IllegalArgumentException if value is missing.
+     */
+    private static String requireValue(final String[] args, final int index,
+            final String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a positive integer value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a positive integer.
+     */
+    private static int parsePositive(final String value, final String option) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class UserAgentStartupBenchmarkTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testFork() throws IOException, InterruptedException {
+        final UserAgentStartupSample sample = UserAgentStartupBenchmark.fork(
+                UserAgentParserMode.RESOURCE_MODULE);
+
+        assertEquals(sample.getMode(), UserAgentParserMode.RESOURCE_MODULE);
+        assertTrue(sample.getInitializationNanos() > 0);
+        assertTrue(sample.getFirstDetectNanos() > 0);
+        assertTrue(sample.getLoadedClasses() > 0);
+    }
+
+    @Test
+    public void testMedian() {
+        final List<UserAgentStartupSample> samples = Arrays.asList(
+                new UserAgentStartupSample(UserAgentParserMode.RESOURCE_MODULE,
+                        30L, 1L, 100L),
+                new UserAgentStartupSample(UserAgentParserMode.RESOURCE_MODULE,
+                        10L, 3L, 300L),
+                new UserAgentStartupSample(UserAgentParserMode.RESOURCE_MODULE,
+                        20L, 2L, 200L));
+
+        final UserAgentStartupSample median = UserAgentStartupBenchmark.median(
+                samples);
+
+        assertEquals(median.getMode(), UserAgentParserMode.RESOURCE_MODULE);
+        assertEquals(median.getInitializationNanos(), 20L);
+        assertEquals(median.getFirstDetectNanos(), 2L);
+        assertEquals(median.getLoadedClasses(), 200L);
+
+        final UserAgentStartupSample even = UserAgentStartupBenchmark.median(
+                samples.subList(0, 2));
+        assertEquals(even.getInitializationNanos(), 20L);
+
+        try {
+            UserAgentStartupBenchmark.median(
+                    Collections.<UserAgentStartupSample>emptyList());
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    @Test
+    public void testToBaseline() {
+        final Properties baseline = UserAgentStartupBenchmark.toBaseline(
+                Collections.singletonList(new UserAgentStartupSample(
+                        UserAgentParserMode.ONLINE_UPDATING, 1200000L,
+                        100000L, 42L)));
+
+        assertEquals(baseline.getProperty("ONLINE_UPDATING" +
+                UserAgentStartupBenchmark.TIME_TO_FIRST_DETECT_SUFFIX), "2");
+        assertEquals(baseline.getProperty("ONLINE_UPDATING" +
+                UserAgentStartupBenchmark.LOADED_CLASSES_SUFFIX), "42");
+    }
+
+    @Test
+    public void testRunWithInvalidArguments() {
+        final String[][] invalid = {
+                {"--repetitions", "0"}, {"--mode", "other"}, {"--mode"},
+                {"--unknown"}
+        };
+        for (final String[] args : invalid) {
+            final ByteArrayOutputStream err = new ByteArrayOutputStream();
+            final int exitCode = UserAgentStartupBenchmark.run(args,
+                    new PrintStream(new ByteArrayOutputStream()),
+                    new PrintStream(err));
+
+            assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_USAGE);
+            assertTrue(new String(err.toByteArray(), UTF8).contains(
+                    "Usage: UserAgentStartupBenchmark"));
+        }
+    }
+
+    @Test
+    public void testRun() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int exitCode = UserAgentStartupBenchmark.run(new String[]{
+                "--repetitions", "1", "--mode", "resource_module",
+                "--baseline"}, new PrintStream(out),
+                new PrintStream(new ByteArrayOutputStream()));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+        final String baseline = new String(out.toByteArray(), UTF8);
+        assertTrue(baseline.contains("RESOURCE_MODULE" +
+                UserAgentStartupBenchmark.TIME_TO_FIRST_DETECT_SUFFIX));
+        assertFalse(baseline.contains("ONLINE_UPDATING"));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+/**
+ * Integration test run by failsafe that flags regressions of the startup
+ * cost of {@link UserAgentDetector} against a stored baseline.
+ * Measurements depend on wall-clock time, so the check is skipped unless
+ * enabled with the "useragent.startup.check" system property, which is set
+ * by the startup-check profile. Modes downloading the database on startup
+ * are not checked.
+ */
+public class UserAgentStartupIT {
+
+    private static final String BASELINE_RESOURCE =
+            "user-agent-startup-baseline.properties";
+
+    private static final String SYSTEM_PROPERTY_PREFIX = "useragent.startup.";
+
+    private static final String ENABLED_PROPERTY =
+            SYSTEM_PROPERTY_PREFIX + "check";
+
+    private static final List<UserAgentParserMode> CHECKED_MODES =
+            Arrays.asList(UserAgentParserMode.RESOURCE_MODULE,
+                    UserAgentParserMode.CACHING_AND_UPDATING);
+
+    private static final String TIME_TOLERANCE = "timeTolerance";
+
+    private static final String CLASS_TOLERANCE = "classTolerance";
+
+    private static final double NANOS_PER_MILLISECOND = 1e6;
+
+    @Test
+    public void testStartupDoesNotRegress() throws IOException,
+            InterruptedException {
+        Assume.assumeTrue(Boolean.getBoolean(ENABLED_PROPERTY));
+
+        final Properties baseline = loadBaseline();
+        final double timeTolerance = tolerance(baseline, TIME_TOLERANCE);
+        final double classTolerance = tolerance(baseline, CLASS_TOLERANCE);
+
+        final List<UserAgentStartupSample> results =
+                UserAgentStartupBenchmark.benchmark(CHECKED_MODES,
+                        UserAgentStartupBenchmark.DEFAULT_REPETITIONS);
+
+        final StringBuilder regressions = new StringBuilder();
+        for (final UserAgentStartupSample result : results) {
+            final String mode = result.getMode().name();
+            final double baselineMillis = Double.parseDouble(
+                    baseline.getProperty(mode + UserAgentStartupBenchmark.
+                            TIME_TO_FIRST_DETECT_SUFFIX));
+            final long baselineClasses = Long.parseLong(baseline.getProperty(
+                    mode + UserAgentStartupBenchmark.LOADED_CLASSES_SUFFIX));
+
+            final double millis = result.getTimeToFirstDetectNanos() /
+                    NANOS_PER_MILLISECOND;
+            if (millis > baselineMillis * timeTolerance) {
+                regressions.append(mode).append(": time to first detect ").
+                        append(millis).append(" ms, baseline ").
+                        append(baselineMillis).append(" ms\n");
+            }
+            if (result.getLoadedClasses() > baselineClasses * classTolerance) {
+                regressions.append(mode).append(": loaded classes ").
+                        append(result.getLoadedClasses()).
+                        append(", baseline ").append(baselineClasses).
+                        append('\n');
+            }
+        }
+
+        assertTrue("Startup regressions:\n" + regressions,
+                regressions.length() == 0);
+    }
+
+    private static Properties loadBaseline() throws IOException {
+        final Properties baseline = new Properties();
+        try (final InputStream stream = UserAgentStartupIT.class.
+                getResourceAsStream(BASELINE_RESOURCE)) {
+            assertNotNull(stream);
+            baseline.load(stream);
+        }
+        return baseline;
+    }
+
+    private static double tolerance(final Properties baseline,
+            final String name) {
+        return Double.parseDouble(System.getProperty(
+                SYSTEM_PROPERTY_PREFIX + name, baseline.getProperty(name)));
+    }
+}
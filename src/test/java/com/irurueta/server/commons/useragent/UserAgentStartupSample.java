@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.Locale;
+
+/**
+ * Startup cost of {@link UserAgentDetector} measured on a fresh JVM for a
+ * given parser mode by {@link UserAgentStartupBenchmark}.
+ * Samples can be converted into a single line of text, so that they can be
+ * reported by child JVMs through their standard output.
+ */
+public class UserAgentStartupSample {
+
+    /**
+     * Prefix of lines containing samples.
+     */
+    static final String LINE_PREFIX = "startup-sample";
+
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final double NANOS_PER_MILLISECOND = 1e6;
+
+    /**
+     * Parser mode being measured.
+     */
+    private final UserAgentParserMode mMode;
+
+    /**
+     * Time spent loading configuration and creating the detector, expressed
+     * in nanoseconds.
+     */
+    private final long mInitializationNanos;
+
+    /**
+     * Time spent detecting the first user agent once the detector is
+     * created, expressed in nanoseconds.
+     */
+    private final long mFirstDetectNanos;
+
+    /**
+     * Number of classes loaded while creating the detector and detecting the
+     * first user agent.
+     */
+    private final long mLoadedClasses;
+
+    /**
+     * Constructor.
+     * @param mode parser mode being measured.
+     * @param initializationNanos time spent loading configuration and
+     * creating the detector, expressed in nanoseconds.
+     * @param firstDetectNanos time spent detecting the first user agent,
+     * expressed in nanoseconds.
+     * @param loadedClasses number of classes loaded while creating the
+     * detector and detecting the first user agent.
+     * @throws IllegalArgumentException if mode is null.
+     */
+    public UserAgentStartupSample(final UserAgentParserMode mode,
+            final long initializationNanos, final long firstDetectNanos,
+            final long loadedClasses) {
+        if (mode == null) {
+            throw new IllegalArgumentException();
+        }
+        mMode = mode;
+        mInitializationNanos = initializationNanos;
+        mFirstDetectNanos = firstDetectNanos;
+        mLoadedClasses = loadedClasses;
+    }
+
+    /**
+     * Returns parser mode being measured.
+     * @return parser mode being measured.
+     */
+    public UserAgentParserMode getMode() {
+        return mMode;
+    }
+
+    /**
+     * Returns time spent loading configuration and creating the detector,
+     * expressed in nanoseconds.
+     * @return initialization time in nanoseconds.
+     */
+    public long getInitializationNanos() {
+        return mInitializationNanos;
+    }
+
+    /**
+     * Returns time spent detecting the first user agent once the detector is
+     * created, expressed in nanoseconds.
+     * @return first detection time in nanoseconds.
+     */
+    public long getFirstDetectNanos() {
+        return mFirstDetectNanos;
+    }
+
+    /**
+     * Returns time since the detector started being created until the first
+     * user agent was detected, expressed in nanoseconds.
+     * @return time to first detection in nanoseconds.
+     */
+    public long getTimeToFirstDetectNanos() {
+        return mInitializationNanos + mFirstDetectNanos;
+    }
+
+    /**
+     * Returns number of classes loaded while creating the detector and
+     * detecting the first user agent.
+     * @return number of loaded classes.
+     */
+    public long getLoadedClasses() {
+        return mLoadedClasses;
+    }
+
+    /**
+     * Converts this sample into a single line of text.
+     * @return line of text.
+     */
+    public String toLine() {
+        return LINE_PREFIX + " " + mMode.name() + " " + mInitializationNanos +
+                " " + mFirstDetectNanos + " " + mLoadedClasses;
+    }
+
+    /**
+     * Parses a sample from a line of text obtained using {@link #toLine()}.
+     * @param line line of text.
+     * @return parsed sample or null if line does not contain a sample.
+     */
+    public static UserAgentStartupSample fromLine(final String line) {
+        if (line == null || !line.startsWith(LINE_PREFIX + " ")) {
+            return null;
+        }
+        final String[] tokens = line.trim().split(" ");
+        if (tokens.length != 5) {
+            return null;
+        }
+        try {
+            return new UserAgentStartupSample(
+                    UserAgentParserMode.fromName(tokens[1]),
+                    Long.parseLong(tokens[2]), Long.parseLong(tokens[3]),
+                    Long.parseLong(tokens[4]));
+        } catch (final IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a human readable representation of this sample.
+     * @return human readable representation.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ENGLISH, "%-20s %12.1f %12.1f %12.1f %8d",
+                mMode.name(), mInitializationNanos / NANOS_PER_MILLISECOND,
+                mFirstDetectNanos / NANOS_PER_MILLISECOND,
+                getTimeToFirstDetectNanos() / NANOS_PER_MILLISECOND,
+                mLoadedClasses);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentStartupSampleTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentStartupSample sample = new UserAgentStartupSample(
+                UserAgentParserMode.RESOURCE_MODULE, 3000000L, 1000000L, 50L);
+
+        assertEquals(sample.getMode(), UserAgentParserMode.RESOURCE_MODULE);
+        assertEquals(sample.getInitializationNanos(), 3000000L);
+        assertEquals(sample.getFirstDetectNanos(), 1000000L);
+        assertEquals(sample.getTimeToFirstDetectNanos(), 4000000L);
+        assertEquals(sample.getLoadedClasses(), 50L);
+
+        try {
+            new UserAgentStartupSample(null, 0L, 0L, 0L);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    @Test
+    public void testToAndFromLine() {
+        final UserAgentStartupSample sample = new UserAgentStartupSample(
+                UserAgentParserMode.ONLINE_UPDATING, 3L, 2L, 1L);
+
+        final UserAgentStartupSample parsed = UserAgentStartupSample.fromLine(
+                sample.toLine());
+
+        assertEquals(parsed.getMode(), UserAgentParserMode.ONLINE_UPDATING);
+        assertEquals(parsed.getInitializationNanos(), 3L);
+        assertEquals(parsed.getFirstDetectNanos(), 2L);
+        assertEquals(parsed.getLoadedClasses(), 1L);
+
+        assertNull(UserAgentStartupSample.fromLine(null));
+        assertNull(UserAgentStartupSample.fromLine("INFO: something"));
+        assertNull(UserAgentStartupSample.fromLine(
+                "startup-sample RESOURCE_MODULE 1 2"));
+        assertNull(UserAgentStartupSample.fromLine(
+                "startup-sample UNKNOWN 1 2 3"));
+        assertNull(UserAgentStartupSample.fromLine(
+                "startup-sample RESOURCE_MODULE 1 x 3"));
+    }
+
+    @Test
+    public void testToString() {
+        final UserAgentStartupSample sample = new UserAgentStartupSample(
+                UserAgentParserMode.CACHING_AND_UPDATING, 1500000L, 500000L,
+                10L);
+
+        final String text = sample.toString();
+        assertTrue(text.startsWith("CACHING_AND_UPDATING"));
+        assertTrue(text.contains("1.5"));
+        assertTrue(text.contains("2.0"));
+        assertTrue(text.endsWith("10"));
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserAgentStringDictionaryTest {
+
+    @Test
+    public void testConstructor() {
+        final UserAgentStringDictionary dictionary =
+                new UserAgentStringDictionary(10);
+        assertEquals(dictionary.getCapacity(), 10);
+        assertEquals(dictionary.size(), 0);
+
+        // Force IllegalArgumentException
+        try {
+            new UserAgentStringDictionary(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void testIdOfAndGet() {
+        final UserAgentStringDictionary dictionary =
+                new UserAgentStringDictionary(2);
+
+        assertEquals(dictionary.idOf(null), UserAgentStringDictionary.NULL_ID);
+        assertNull(dictionary.get(UserAgentStringDictionary.NULL_ID));
+
+        final int chrome = dictionary.idOf("Chrome");
+        final int firefox = dictionary.idOf("Firefox");
+        assertEquals(chrome, 0);
+        assertEquals(firefox, 1);
+        assertEquals(dictionary.idOf(new String("Chrome")), chrome);
+        assertEquals(dictionary.get(chrome), "Chrome");
+        assertEquals(dictionary.get(firefox), "Firefox");
+        assertEquals(dictionary.size(), 2);
+
+        // dictionary is full
+        assertEquals(dictionary.idOf("Safari"),
+                UserAgentStringDictionary.FULL);
+        assertEquals(dictionary.idOf("Firefox"), firefox);
+        assertEquals(dictionary.size(), 2);
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmark comparing detection throughput of a detector using a single
+ * shared parser against a detector striping user agents among independent
+ * parser replicas, as the number of threads grows up to the number of
+ * available processors.
+ * All threads detect the same synthetic traffic, starting at distinct
+ * offsets, so that both cache hits and parses of distinct user agents are
+ * contended.
+ * Usage:
+ * <pre>
+ * java com.irurueta.server.commons.useragent.UserAgentThroughputBenchmark
+ *     [--threads n]... [--replicas n] [--requests n] [--seed n]
+ * </pre>
+ */
+public final class UserAgentThroughputBenchmark {
+
+    /**
+     * Default number of detections made by each thread.
+     */
+    public static final int DEFAULT_REQUESTS = 200000;
+
+    /**
+     * Default number of replicas of the striped detector, which uses one
+     * replica per available processor.
+     */
+    public static final int DEFAULT_REPLICAS = 0;
+
+    /**
+     * Default seed of generated traffic.
+     */
+    public static final long DEFAULT_SEED = 0;
+
+    /**
+     * Number of nanoseconds in a second.
+     */
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    /**
+     * Usage message.
+     */
+    private static final String USAGE = "Usage: " +
+            "UserAgentThroughputBenchmark [--threads n]... [--replicas n] " +
+            "[--requests n] [--seed n]";
+
+    /**
+     * Constructor.
+     */
+    private UserAgentThroughputBenchmark() { }
+
+    /**
+     * Entry point of the benchmark.
+     * @param args command line arguments.
+     */
+    public static void main(final String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param args command line arguments.
+     * @param out stream where results are printed.
+     * @param err stream where errors are printed.
+     * @return exit code, using the same values as
+     * {@link UserAgentEnrichmentTool}.
+     */
+    public static int run(final String[] args, final PrintStream out,
+            final PrintStream err) {
+        int requests = DEFAULT_REQUESTS;
+        int replicas = DEFAULT_REPLICAS;
+        long seed = DEFAULT_SEED;
+        final List<Integer> threads = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                final String arg = args[i];
+                switch (arg) {
+                    case "--threads":
+                        threads.add(parsePositive(requireValue(args, ++i,
+                                arg), arg));
+                        break;
+                    case "--replicas":
+                        replicas = parsePositive(requireValue(args, ++i, arg),
+                                arg);
+                        break;
+                    case "--requests":
+                        requests = parsePositive(requireValue(args, ++i, arg),
+                                arg);
+                        break;
+                    case "--seed":
+                        seed = parseLong(requireValue(args, ++i, arg), arg);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unknown option: " + arg);
+                }
+            }
+        } catch (final IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return UserAgentEnrichmentTool.EXIT_USAGE;
+        }
+        final int processors = Runtime.getRuntime().availableProcessors();
+        if (threads.isEmpty()) {
+            threads.addAll(defaultThreads(processors));
+        }
+
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(seed);
+        final List<String> traffic = generator.generate(requests);
+        out.println(String.format(Locale.ENGLISH,
+                "%d available processors, %d requests per thread",
+                processors, requests));
+        out.println(String.format(Locale.ENGLISH, "%-8s %16s %16s %8s",
+                "threads", "shared ops/s", "striped ops/s", "ratio"));
+        try {
+            for (final int count : threads) {
+                final double shared = measure(1, count, traffic);
+                final double striped = measure(replicas, count, traffic);
+                out.println(String.format(Locale.ENGLISH,
+                        "%-8d %16.0f %16.0f %8.2f", count, shared, striped,
+                        striped / shared));
+            }
+        } catch (final ConfigurationException | UserAgentException e) {
+            err.println("Benchmark failed: " + e.getMessage());
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Benchmark interrupted");
+            return UserAgentEnrichmentTool.EXIT_FAILURE;
+        }
+        return UserAgentEnrichmentTool.EXIT_SUCCESS;
+    }
+
+    /**
+     * Returns default numbers of threads, being powers of two up to the
+     * number of available processors, and the number of available processors
+     * itself.
+     * @param processors number of available processors.
+     * @return numbers of threads.
+     */
+    static List<Integer> defaultThreads(final int processors) {
+        final List<Integer> result = new ArrayList<>();
+        for (int count = 1; count < processors; count *= 2) {
+            result.add(count);
+        }
+        result.add(processors);
+        return result;
+    }
+
+    /**
+     * Measures throughput of a detector using provided number of parser
+     * replicas when provided number of threads detect provided traffic.
+     * A new detector is configured for each measurement, so that all of them
+     * start with an empty cache. Configuration is reset once finished.
+     * @param replicas number of parser replicas, or 0 to use one per
+     * available processor.
+     * @param threads number of concurrent threads.
+     * @param traffic user agents detected by each thread.
+     * @return number of detections per second.
+     * @throws ConfigurationException if detector cannot be configured.
+     * @throws UserAgentException if detection fails.
+     * @throws InterruptedException if thread is interrupted.
+     */
+    public static double measure(final int replicas, final int threads,
+            final List<String> traffic) throws ConfigurationException,
+            UserAgentException, InterruptedException {
+        final Properties properties = new Properties();
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_MODE_PROPERTY,
+                UserAgentParserMode.RESOURCE_MODULE.name());
+        properties.setProperty(UserAgentConfigurationFactory.
+                USER_AGENT_PARSER_REPLICAS_PROPERTY,
+                Integer.toString(replicas));
+        final UserAgentConfigurationFactory factory =
+                UserAgentConfigurationFactory.getInstance();
+        factory.reset();
+        try {
+            factory.configure(properties);
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            if (!detector.isEnabled()) {
+                throw new UserAgentDetectionDisabledException();
+            }
+
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch end = new CountDownLatch(threads);
+            final AtomicReference<UserAgentException> failure =
+                    new AtomicReference<>();
+            final int size = traffic.size();
+            for (int t = 0; t < threads; t++) {
+                final int offset = (int) ((long) t * size / threads);
+                final Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int i = 0; i < size; i++) {
+                                detector.detect(traffic.get(
+                                        (offset + i) % size));
+                            }
+                        } catch (final UserAgentException e) {
+                            failure.compareAndSet(null, e);
+                        } catch (final InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            end.countDown();
+                        }
+                    }
+                }, "user-agent-throughput-" + t);
+                thread.setDaemon(true);
+                thread.start();
+            }
+
+            final long startNanos = System.nanoTime();
+            start.countDown();
+            end.await();
+            final long elapsed = System.nanoTime() - startNanos;
+            if (failure.get() != null) {
+                throw failure.get();
+            }
+            return (double) threads * size * NANOS_PER_SECOND /
+                    Math.max(elapsed, 1);
+        } finally {
+            factory.reset();
+        }
+    }
+
+    /**
+     * Returns the value following an option.
+     * @param args command line arguments.
+     * @param index position of value.
+     * @param option option requiring the value.
+     * @return value of option.
+     * @throws IllegalArgumentException if value is missing.
+     */
+    private static String requireValue(final String[] args, final int index,
+            final String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Parses a positive integer value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a positive integer.
+     */
+    private static int parsePositive(final String value, final String option) {
+        final int result;
+        try {
+            result = Integer.parseInt(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+        if (result <= 0) {
+            throw new IllegalArgumentException(option + " must be positive");
+        }
+        return result;
+    }
+
+    /**
+     * Parses a long value.
+     * @param value value to be parsed.
+     * @param option option whose value is parsed.
+     * @return parsed value.
+     * @throws IllegalArgumentException if value is not a valid number.
+     */
+    private static long parseLong(final String value, final String option) {
+        try {
+            return Long.parseLong(value);
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option +
+                    ": " + value, e);
+        }
+    }
+}
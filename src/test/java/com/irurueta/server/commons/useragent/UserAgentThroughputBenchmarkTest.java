@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import com.irurueta.server.commons.configuration.ConfigurationException;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserAgentThroughputBenchmarkTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testDefaultThreads() {
+        assertEquals(UserAgentThroughputBenchmark.defaultThreads(1),
+                Arrays.asList(1));
+        assertEquals(UserAgentThroughputBenchmark.defaultThreads(8),
+                Arrays.asList(1, 2, 4, 8));
+        assertEquals(UserAgentThroughputBenchmark.defaultThreads(12),
+                Arrays.asList(1, 2, 4, 8, 12));
+    }
+
+    @Test
+    public void testMeasure() throws ConfigurationException,
+            UserAgentException, InterruptedException {
+        final List<String> traffic = new UserAgentTrafficGenerator(0L).
+                generate(500);
+        assertTrue(UserAgentThroughputBenchmark.measure(1, 2, traffic) > 0.0);
+        assertTrue(UserAgentThroughputBenchmark.measure(4, 2, traffic) > 0.0);
+
+        // configuration is reset once measured
+        assertEquals(UserAgentDetector.getInstance().getParserReplicas(),
+                UserAgentConfigurationFactory.
+                        DEFAULT_USER_AGENT_PARSER_REPLICAS);
+    }
+
+    @Test
+    public void testRun() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final int exitCode = UserAgentThroughputBenchmark.run(
+                new String[]{"--requests", "200", "--seed", "1", "--threads",
+                        "1", "--threads", "2", "--replicas", "2"},
+                new PrintStream(out, true), new PrintStream(err, true));
+
+        assertEquals(exitCode, UserAgentEnrichmentTool.EXIT_SUCCESS);
+        final String[] lines = new String(out.toByteArray(), UTF8).split("\n");
+        assertEquals(lines.length, 4);
+        assertTrue(lines[0].endsWith("200 requests per thread"));
+        assertTrue(lines[2].startsWith("1 "));
+        assertTrue(lines[3].startsWith("2 "));
+    }
+
+    @Test
+    public void testRunWithInvalidArguments() {
+        final ByteArrayOutputStream err = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(new ByteArrayOutputStream());
+
+        assertEquals(UserAgentThroughputBenchmark.run(
+                new String[]{"--threads", "0"}, out,
+                new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(UserAgentThroughputBenchmark.run(
+                new String[]{"--unknown"}, out, new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertEquals(UserAgentThroughputBenchmark.run(
+                new String[]{"--seed"}, out, new PrintStream(err, true)),
+                UserAgentEnrichmentTool.EXIT_USAGE);
+        assertTrue(new String(err.toByteArray(), UTF8).contains("Usage"));
+    }
+}
@@ -0,0 +1,626 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates synthetic streams of user agents resembling production traffic,
+ * to be used when benchmarking or load testing detection.
+ * Browser and robot user agents are built from templates of widespread
+ * clients filled with random versions, platforms and device models, so that
+ * generated streams contain realistic strings rather than a handful of
+ * hard-coded samples.
+ * Popularity of user agents follows a Zipf distribution with tunable skew
+ * over a fixed population of distinct strings, while a configurable share of
+ * requests contains strings never seen before (i.e. randomized tokens
+ * appended by apps or fingerprinting-resistant clients), so that the amount
+ * of cache misses can be controlled.
+ * Lengths of generated browser user agents follow a log-normal distribution,
+ * and shorter strings than the sampled length are padded with tokens
+ * commonly appended by embedded browsers and apps.
+ * Streams are deterministic for a given seed and configuration.
+ * This class is not thread safe.
+ */
+public class UserAgentTrafficGenerator {
+
+    /**
+     * Default number of distinct user agents in the population.
+     */
+    public static final int DEFAULT_POPULATION_SIZE = 10000;
+
+    /**
+     * Default exponent of the Zipf distribution. Values close to 1 match the
+     * popularity of user agents found in web access logs.
+     */
+    public static final double DEFAULT_ZIPF_EXPONENT = 1.0;
+
+    /**
+     * Default fraction of requests containing a user agent never seen
+     * before.
+     */
+    public static final double DEFAULT_UNIQUE_RATE = 0.02;
+
+    /**
+     * Default fraction of requests made by robots.
+     */
+    public static final double DEFAULT_BOT_SHARE = 0.1;
+
+    /**
+     * Default median length of browser user agents.
+     */
+    public static final int DEFAULT_MEDIAN_LENGTH = 130;
+
+    /**
+     * Default standard deviation of the logarithm of browser user agent
+     * lengths.
+     */
+    public static final double DEFAULT_LENGTH_SIGMA = 0.3;
+
+    /**
+     * Maximum length of padded user agents.
+     */
+    static final int MAX_LENGTH = 1000;
+
+    /**
+     * Templates of browser user agents. Placeholders are replaced as follows:
+     * {W} Windows platform, {M} macOS version, {A} Android version,
+     * {D} Android device model, {I} iOS version, {V} major version,
+     * {B} build number, {P} patch number.
+     */
+    private static final String[] BROWSER_TEMPLATES = {
+            "Mozilla/5.0 ({W}) AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/{V}.0.{B}.{P} Safari/537.36",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X {M}) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) Chrome/{V}.0.{B}.{P} Safari/537.36",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) Chrome/{V}.0.{B}.{P} Safari/537.36",
+            "Mozilla/5.0 (Linux; Android {A}; {D}) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) Chrome/{V}.0.{B}.{P} Mobile " +
+                    "Safari/537.36",
+            "Mozilla/5.0 (Linux; Android {A}; {D}) AppleWebKit/537.36 " +
+                    "(KHTML, like Gecko) SamsungBrowser/{V}.0 Chrome/{B}.0.0.0 " +
+                    "Mobile Safari/537.36",
+            "Mozilla/5.0 ({W}; rv:{V}.0) Gecko/20100101 Firefox/{V}.0",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X {M}; rv:{V}.0) " +
+                    "Gecko/20100101 Firefox/{V}.0",
+            "Mozilla/5.0 (Android {A}; Mobile; rv:{V}.0) Gecko/{V}.0 " +
+                    "Firefox/{V}.0",
+            "Mozilla/5.0 (iPhone; CPU iPhone OS {I} like Mac OS X) " +
+                    "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/{V}.0 " +
+                    "Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (iPad; CPU OS {I} like Mac OS X) " +
+                    "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/{V}.0 " +
+                    "Mobile/15E148 Safari/604.1",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X {M}) " +
+                    "AppleWebKit/605.1.15 (KHTML, like Gecko) Version/{V}.0 " +
+                    "Safari/605.1.15",
+            "Mozilla/5.0 ({W}) AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/{V}.0.{B}.{P} Safari/537.36 Edg/{V}.0.{B}.{P}",
+            "Mozilla/5.0 ({W}; Trident/7.0; rv:11.0) like Gecko",
+            "Mozilla/5.0 ({W}) AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/{V}.0.{B}.{P} Safari/537.36 OPR/{B}.0.0.0"
+    };
+
+    /**
+     * Relative weights of browser templates, roughly matching their market
+     * share.
+     */
+    private static final int[] BROWSER_WEIGHTS = {
+            30, 8, 3, 20, 4, 5, 2, 1, 14, 3, 4, 4, 1, 1
+    };
+
+    /**
+     * Templates of robot user agents, using the same placeholders as browser
+     * templates.
+     */
+    private static final String[] ROBOT_TEMPLATES = {
+            "Mozilla/5.0 (compatible; Googlebot/2.1; " +
+                    "+http://www.google.com/bot.html)",
+            "Mozilla/5.0 (Linux; Android 6.0.1; Nexus 5X Build/MMB29P) " +
+                    "AppleWebKit/537.36 (KHTML, like Gecko) " +
+                    "Chrome/{V}.0.{B}.{P} Mobile Safari/537.36 " +
+                    "(compatible; Googlebot/2.1; " +
+                    "+http://www.google.com/bot.html)",
+            "Mozilla/5.0 (compatible; bingbot/2.0; " +
+                    "+http://www.bing.com/bingbot.htm)",
+            "Mozilla/5.0 (compatible; YandexBot/3.0; " +
+                    "+http://yandex.com/bots)",
+            "Mozilla/5.0 (compatible; Baiduspider/2.0; " +
+                    "+http://www.baidu.com/search/spider.html)",
+            "Mozilla/5.0 (compatible; AhrefsBot/7.0; " +
+                    "+http://ahrefs.com/robot/)",
+            "curl/7.{V}.{P}",
+            "python-requests/2.{V}.{P}",
+            "Java/1.8.0_{B}",
+            "Apache-HttpClient/4.5.{P} (Java/1.8.0_{B})"
+    };
+
+    /**
+     * Relative weights of robot templates.
+     */
+    private static final int[] ROBOT_WEIGHTS = {
+            25, 15, 15, 8, 5, 7, 10, 8, 4, 3
+    };
+
+    /**
+     * Windows platforms.
+     */
+    private static final String[] WINDOWS_PLATFORMS = {
+            "Windows NT 10.0; Win64; x64", "Windows NT 10.0; WOW64",
+            "Windows NT 6.3; Win64; x64", "Windows NT 6.1; Win64; x64",
+            "Windows NT 6.1"
+    };
+
+    /**
+     * Android device models.
+     */
+    private static final String[] ANDROID_DEVICES = {
+            "K", "SM-G991B", "SM-A515F", "SM-S908B", "Pixel 7", "Pixel 6a",
+            "Redmi Note 8 Pro", "M2101K6G", "moto g(30)", "CPH2219",
+            "VOG-L29", "SM-T870"
+    };
+
+    /**
+     * Tokens used to pad browser user agents up to the sampled length.
+     */
+    private static final String[] PADDING_TOKENS = {
+            " [FBAN/FBIOS;FBAV/{V}.0.0.{P};FBBV/{B}]",
+            " Instagram {V}.0.0.{P} Android",
+            " GSA/{V}.0.{B}",
+            " YaBrowser/{V}.1.{B}.{P}",
+            " Line/{V}.{P}.0",
+            " MicroMessenger/{V}.0.{P}",
+            " AppName/{V}.{P} (build {B})",
+            " .NET CLR 3.5.{B}",
+            " Media Center PC 6.0",
+            " OPX/{V}.0"
+    };
+
+    /**
+     * Generator of random numbers.
+     */
+    private final Random mRandom;
+
+    /**
+     * Number of distinct user agents in the population.
+     */
+    private int mPopulationSize = DEFAULT_POPULATION_SIZE;
+
+    /**
+     * Exponent of the Zipf distribution.
+     */
+    private double mZipfExponent = DEFAULT_ZIPF_EXPONENT;
+
+    /**
+     * Fraction of requests containing a user agent never seen before.
+     */
+    private double mUniqueRate = DEFAULT_UNIQUE_RATE;
+
+    /**
+     * Fraction of requests made by robots.
+     */
+    private double mBotShare = DEFAULT_BOT_SHARE;
+
+    /**
+     * Median length of browser user agents.
+     */
+    private int mMedianLength = DEFAULT_MEDIAN_LENGTH;
+
+    /**
+     * Standard deviation of the logarithm of browser user agent lengths.
+     */
+    private double mLengthSigma = DEFAULT_LENGTH_SIGMA;
+
+    /**
+     * Population of browser user agents sorted by rank, or null if not yet
+     * built.
+     */
+    private String[] mBrowsers;
+
+    /**
+     * Population of robot user agents sorted by rank, or null if not yet
+     * built.
+     */
+    private String[] mRobots;
+
+    /**
+     * Cumulative probabilities of browser ranks.
+     */
+    private double[] mBrowserCdf;
+
+    /**
+     * Cumulative probabilities of robot ranks.
+     */
+    private double[] mRobotCdf;
+
+    /**
+     * Number of unique user agents generated so far.
+     */
+    private long mUniqueCount;
+
+    /**
+     * Constructor.
+     * @param seed seed of the generator of random numbers.
+     */
+    public UserAgentTrafficGenerator(final long seed) {
+        mRandom = new Random(seed);
+    }
+
+    /**
+     * Returns number of distinct user agents in the population.
+     * @return number of distinct user agents.
+     */
+    public int getPopulationSize() {
+        return mPopulationSize;
+    }
+
+    /**
+     * Sets number of distinct user agents in the population.
+     * @param populationSize number of distinct user agents.
+     * @throws IllegalArgumentException if value is not positive.
+     */
+    public void setPopulationSize(final int populationSize) {
+        if (populationSize <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mPopulationSize = populationSize;
+        mBrowsers = null;
+    }
+
+    /**
+     * Returns exponent of the Zipf distribution. The larger the exponent, the
+     * more requests are concentrated on the most popular user agents.
+     * @return exponent of the Zipf distribution.
+     */
+    public double getZipfExponent() {
+        return mZipfExponent;
+    }
+
+    /**
+     * Sets exponent of the Zipf distribution. Zero yields a uniform
+     * distribution.
+     * @param zipfExponent exponent of the Zipf distribution.
+     * @throws IllegalArgumentException if value is negative.
+     */
+    public void setZipfExponent(final double zipfExponent) {
+        if (zipfExponent < 0.0) {
+            throw new IllegalArgumentException();
+        }
+        mZipfExponent = zipfExponent;
+        mBrowsers = null;
+    }
+
+    /**
+     * Returns fraction of requests containing a user agent never seen before.
+     * @return fraction of unique user agents.
+     */
+    public double getUniqueRate() {
+        return mUniqueRate;
+    }
+
+    /**
+     * Sets fraction of requests containing a user agent never seen before.
+     * @param uniqueRate fraction of unique user agents between 0 and 1.
+     * @throws IllegalArgumentException if value is not between 0 and 1.
+     */
+    public void setUniqueRate(final double uniqueRate) {
+        checkFraction(uniqueRate);
+        mUniqueRate = uniqueRate;
+    }
+
+    /**
+     * Returns fraction of requests made by robots.
+     * @return fraction of robot requests.
+     */
+    public double getBotShare() {
+        return mBotShare;
+    }
+
+    /**
+     * Sets fraction of requests made by robots.
+     * @param botShare fraction of robot requests between 0 and 1.
+     * @throws IllegalArgumentException if value is not between 0 and 1.
+     */
+    public void setBotShare(final double botShare) {
+        checkFraction(botShare);
+        mBotShare = botShare;
+        mBrowsers = null;
+    }
+
+    /**
+     * Returns median length of browser user agents.
+     * @return median length of browser user agents.
+     */
+    public int getMedianLength() {
+        return mMedianLength;
+    }
+
+    /**
+     * Sets median length of browser user agents. User agents generated from
+     * templates shorter than sampled length are padded with tokens, whereas
+     * longer ones are kept as they are.
+     * @param medianLength median length of browser user agents.
+     * @throws IllegalArgumentException if value is not positive.
+     */
+    public void setMedianLength(final int medianLength) {
+        if (medianLength <= 0) {
+            throw new IllegalArgumentException();
+        }
+        mMedianLength = medianLength;
+        mBrowsers = null;
+    }
+
+    /**
+     * Returns standard deviation of the logarithm of browser user agent
+     * lengths.
+     * @return standard deviation of the logarithm of lengths.
+     */
+    public double getLengthSigma() {
+        return mLengthSigma;
+    }
+
+    /**
+     * Sets standard deviation of the logarithm of browser user agent lengths.
+     * Zero makes all padded user agents have the median length.
+     * @param lengthSigma standard deviation of the logarithm of lengths.
+     * @throws IllegalArgumentException if value is negative.
+     */
+    public void setLengthSigma(final double lengthSigma) {
+        if (lengthSigma < 0.0) {
+            throw new IllegalArgumentException();
+        }
+        mLengthSigma = lengthSigma;
+        mBrowsers = null;
+    }
+
+    /**
+     * Returns next user agent of the stream.
+     * @return next user agent.
+     */
+    public String next() {
+        if (mBrowsers == null) {
+            buildPopulation();
+        }
+
+        final boolean robot = mRandom.nextDouble() < mBotShare;
+        if (mRandom.nextDouble() < mUniqueRate) {
+            return nextUnique(robot);
+        }
+        return robot ? mRobots[sample(mRobotCdf)] :
+                mBrowsers[sample(mBrowserCdf)];
+    }
+
+    /**
+     * Generates provided number of user agents.
+     * @param count number of user agents to be generated.
+     * @return list of generated user agents.
+     * @throws IllegalArgumentException if count is negative.
+     */
+    public List<String> generate(final int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException();
+        }
+        final List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(next());
+        }
+        return result;
+    }
+
+    /**
+     * Builds population of distinct browser and robot user agents along with
+     * the cumulative probabilities of their ranks.
+     */
+    private void buildPopulation() {
+        final int robotCount = Math.max(1,
+                (int) Math.round(mPopulationSize * mBotShare));
+        final int browserCount = Math.max(1, mPopulationSize - robotCount);
+
+        mBrowsers = buildDistinct(browserCount, BROWSER_TEMPLATES,
+                BROWSER_WEIGHTS, true);
+        mRobots = buildDistinct(robotCount, ROBOT_TEMPLATES, ROBOT_WEIGHTS,
+                false);
+        mBrowserCdf = zipfCdf(browserCount, mZipfExponent);
+        mRobotCdf = zipfCdf(robotCount, mZipfExponent);
+    }
+
+    /**
+     * Builds provided number of distinct user agents. Templates are allowed
+     * to produce duplicates a limited number of times, after which a
+     * distinguishing token is appended, as templates without placeholders
+     * can only produce a single string.
+     * @param count number of distinct user agents.
+     * @param templates templates to be used.
+     * @param weights relative weights of templates.
+     * @param padded true to pad user agents up to a sampled length.
+     * @return distinct user agents.
+     */
+    private String[] buildDistinct(final int count, final String[] templates,
+            final int[] weights, final boolean padded) {
+        final Set<String> generated = new HashSet<>(count * 2);
+        final String[] result = new String[count];
+        int i = 0;
+        while (i < count) {
+            String userAgent = build(templates[pickWeighted(weights)], padded);
+            if (!generated.add(userAgent)) {
+                userAgent = userAgent + " r/" + i;
+                if (!generated.add(userAgent)) {
+                    continue;
+                }
+            }
+            result[i++] = userAgent;
+        }
+        return result;
+    }
+
+    /**
+     * Generates a user agent never returned before.
+     * @param robot true if user agent belongs to a robot.
+     * @return unique user agent.
+     */
+    private String nextUnique(final boolean robot) {
+        final String userAgent = robot ?
+                build(ROBOT_TEMPLATES[pickWeighted(ROBOT_WEIGHTS)], false) :
+                build(BROWSER_TEMPLATES[pickWeighted(BROWSER_WEIGHTS)], true);
+        return userAgent + " uid/" + Long.toHexString(mUniqueCount++) +
+                Long.toHexString(mRandom.nextLong());
+    }
+
+    /**
+     * Builds a user agent from provided template.
+     * @param template template to be used.
+     * @param padded true to pad user agent up to a sampled length.
+     * @return built user agent.
+     */
+    private String build(final String template, final boolean padded) {
+        final StringBuilder builder = new StringBuilder(MAX_LENGTH);
+        fill(builder, template);
+        if (padded) {
+            final int length = sampleLength();
+            while (builder.length() < length) {
+                fill(builder, PADDING_TOKENS[mRandom.nextInt(
+                        PADDING_TOKENS.length)]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Appends provided template into builder replacing its placeholders by
+     * random values.
+     * @param builder builder where template is appended.
+     * @param template template to be appended.
+     */
+    private void fill(final StringBuilder builder, final String template) {
+        for (int i = 0; i < template.length(); i++) {
+            final char c = template.charAt(i);
+            if (c != '{' || i + 2 >= template.length() ||
+                    template.charAt(i + 2) != '}') {
+                builder.append(c);
+                continue;
+            }
+
+            switch (template.charAt(i + 1)) {
+                case 'W':
+                    builder.append(WINDOWS_PLATFORMS[mRandom.nextInt(
+                            WINDOWS_PLATFORMS.length)]);
+                    break;
+                case 'M':
+                    builder.append("10_").append(11 + mRandom.nextInt(5)).
+                            append('_').append(mRandom.nextInt(7));
+                    break;
+                case 'A':
+                    builder.append(8 + mRandom.nextInt(6));
+                    break;
+                case 'D':
+                    builder.append(ANDROID_DEVICES[mRandom.nextInt(
+                            ANDROID_DEVICES.length)]);
+                    break;
+                case 'I':
+                    builder.append(12 + mRandom.nextInt(6)).append('_').
+                            append(mRandom.nextInt(7));
+                    break;
+                case 'V':
+                    builder.append(60 + mRandom.nextInt(60));
+                    break;
+                case 'B':
+                    builder.append(1000 + mRandom.nextInt(5000));
+                    break;
+                case 'P':
+                default:
+                    builder.append(mRandom.nextInt(200));
+                    break;
+            }
+            i += 2;
+        }
+    }
+
+    /**
+     * Samples length of a browser user agent from a log-normal distribution.
+     * @return sampled length.
+     */
+    private int sampleLength() {
+        final double length = mMedianLength *
+                Math.exp(mLengthSigma * mRandom.nextGaussian());
+        return (int) Math.min(MAX_LENGTH, Math.round(length));
+    }
+
+    /**
+     * Picks a random index with probability proportional to its weight.
+     * @param weights relative weights.
+     * @return picked index.
+     */
+    private int pickWeighted(final int[] weights) {
+        int total = 0;
+        for (final int weight : weights) {
+            total += weight;
+        }
+        int value = mRandom.nextInt(total);
+        for (int i = 0; i < weights.length; i++) {
+            value -= weights[i];
+            if (value < 0) {
+                return i;
+            }
+        }
+        return weights.length - 1;
+    }
+
+    /**
+     * Samples a rank using provided cumulative probabilities.
+     * @param cdf cumulative probabilities of ranks.
+     * @return sampled rank starting at zero.
+     */
+    private int sample(final double[] cdf) {
+        final int index = Arrays.binarySearch(cdf, mRandom.nextDouble());
+        return Math.min(cdf.length - 1, index >= 0 ? index : -index - 1);
+    }
+
+    /**
+     * Computes cumulative probabilities of a Zipf distribution.
+     * @param n number of ranks.
+     * @param exponent exponent of the distribution.
+     * @return cumulative probabilities of ranks.
+     */
+    static double[] zipfCdf(final int n, final double exponent) {
+        final double[] cdf = new double[n];
+        double sum = 0.0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    /**
+     * Checks that provided value is a fraction between 0 and 1.
+     * @param value value to be checked.
+     * @throws IllegalArgumentException if value is not between 0 and 1.
+     */
+    private static void checkFraction(final double value) {
+        if (value < 0.0 || value > 1.0) {
+            throw new IllegalArgumentException();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 Alberto Irurueta Carro (alberto@irurueta.com)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.irurueta.server.commons.useragent;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UserAgentTrafficGeneratorTest {
+
+    private static final int COUNT = 20000;
+
+    @Test
+    public void testDefaults() {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+
+        assertEquals(generator.getPopulationSize(),
+                UserAgentTrafficGenerator.DEFAULT_POPULATION_SIZE);
+        assertEquals(generator.getZipfExponent(),
+                UserAgentTrafficGenerator.DEFAULT_ZIPF_EXPONENT, 0.0);
+        assertEquals(generator.getUniqueRate(),
+                UserAgentTrafficGenerator.DEFAULT_UNIQUE_RATE, 0.0);
+        assertEquals(generator.getBotShare(),
+                UserAgentTrafficGenerator.DEFAULT_BOT_SHARE, 0.0);
+        assertEquals(generator.getMedianLength(),
+                UserAgentTrafficGenerator.DEFAULT_MEDIAN_LENGTH);
+        assertEquals(generator.getLengthSigma(),
+                UserAgentTrafficGenerator.DEFAULT_LENGTH_SIGMA, 0.0);
+    }
+
+    @Test
+    public void testSetters() {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+
+        generator.setPopulationSize(10);
+        generator.setZipfExponent(0.0);
+        generator.setUniqueRate(1.0);
+        generator.setBotShare(0.0);
+        generator.setMedianLength(200);
+        generator.setLengthSigma(0.0);
+
+        assertEquals(generator.getPopulationSize(), 10);
+        assertEquals(generator.getZipfExponent(), 0.0, 0.0);
+        assertEquals(generator.getUniqueRate(), 1.0, 0.0);
+        assertEquals(generator.getBotShare(), 0.0, 0.0);
+        assertEquals(generator.getMedianLength(), 200);
+        assertEquals(generator.getLengthSigma(), 0.0, 0.0);
+
+        try {
+            generator.setPopulationSize(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            generator.setZipfExponent(-1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            generator.setUniqueRate(1.5);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            generator.setBotShare(-0.5);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            generator.setMedianLength(0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            generator.setLengthSigma(-1.0);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+        try {
+            generator.generate(-1);
+            fail("IllegalArgumentException expected but not thrown");
+        } catch (final IllegalArgumentException ignore) { }
+    }
+
+    @Test
+    public void testDeterministic() {
+        final List<String> first = new UserAgentTrafficGenerator(5L).generate(
+                1000);
+        final List<String> second = new UserAgentTrafficGenerator(5L).generate(
+                1000);
+        final List<String> other = new UserAgentTrafficGenerator(6L).generate(
+                1000);
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+    }
+
+    @Test
+    public void testZipfSkew() {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+        generator.setPopulationSize(1000);
+        generator.setUniqueRate(0.0);
+        generator.setBotShare(0.0);
+
+        final Map<String, Integer> counts = count(generator.generate(COUNT));
+        assertTrue(counts.size() <= 1000);
+
+        final Integer[] sorted = counts.values().toArray(
+                new Integer[counts.size()]);
+        Arrays.sort(sorted);
+        // most popular user agent of a Zipf distribution with exponent 1 and
+        // 1000 ranks gets about 13 % of requests
+        final double top = sorted[sorted.length - 1] / (double) COUNT;
+        assertTrue(top > 0.1 && top < 0.17);
+
+        // a uniform distribution spreads requests evenly
+        generator.setZipfExponent(0.0);
+        final Map<String, Integer> uniform = count(generator.generate(COUNT));
+        for (final Integer value : uniform.values()) {
+            assertTrue(value < 0.01 * COUNT);
+        }
+    }
+
+    @Test
+    public void testUniqueRate() {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+        generator.setPopulationSize(100);
+        generator.setUniqueRate(0.25);
+
+        final Map<String, Integer> counts = count(generator.generate(COUNT));
+        int unique = 0;
+        for (final Map.Entry<String, Integer> entry : counts.entrySet()) {
+            if (entry.getKey().contains(" uid/")) {
+                assertEquals((int) entry.getValue(), 1);
+                unique++;
+            }
+        }
+        assertEquals(unique / (double) COUNT, 0.25, 0.02);
+        assertTrue(counts.size() <= 100 + unique);
+    }
+
+    @Test
+    public void testBotShare() {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+        generator.setPopulationSize(500);
+        generator.setUniqueRate(0.0);
+        generator.setBotShare(0.3);
+
+        int bots = 0;
+        for (final String userAgent : generator.generate(COUNT)) {
+            if (isRobot(userAgent)) {
+                bots++;
+            }
+        }
+        assertEquals(bots / (double) COUNT, 0.3, 0.03);
+
+        generator.setBotShare(0.0);
+        for (final String userAgent : generator.generate(1000)) {
+            assertFalse(isRobot(userAgent));
+        }
+    }
+
+    @Test
+    public void testLengthDistribution() {
+        final UserAgentTrafficGenerator generator =
+                new UserAgentTrafficGenerator(1L);
+        generator.setBotShare(0.0);
+        generator.setUniqueRate(0.0);
+        generator.setMedianLength(300);
+        generator.setLengthSigma(0.0);
+
+        final Set<String> distinct = new HashSet<>(generator.generate(1000));
+        for (final String userAgent : distinct) {
+            // padding stops once the sampled length is exceeded
+            assertTrue(userAgent.length() >= 300);
+            assertTrue(userAgent.length() < 400);
+        }
+
+        generator.setMedianLength(150);
+        generator.setLengthSigma(0.5);
+        final int[] lengths = new int[COUNT];
+        int i = 0;
+        for (final String userAgent : generator.generate(COUNT)) {
+            lengths[i++] = userAgent.length();
+            assertTrue(userAgent.length() <=
+                    UserAgentTrafficGenerator.MAX_LENGTH + 100);
+        }
+        Arrays.sort(lengths);
+        assertTrue(lengths[COUNT / 10] < lengths[COUNT * 9 / 10]);
+    }
+
+    @Test
+    public void testGeneratedUserAgentsAreDetected() throws UserAgentException {
+        UserAgentDetector.reset();
+        try {
+            final UserAgentDetector detector = UserAgentDetector.getInstance();
+            final UserAgentTrafficGenerator generator =
+                    new UserAgentTrafficGenerator(1L);
+            generator.setBotShare(0.0);
+            int detected = 0;
+            final List<String> userAgents = generator.generate(200);
+            for (final String userAgent : userAgents) {
+                final UserAgentData data = detector.detect(userAgent);
+                if (data.getUserAgentType() != UserAgentType.UNKNOWN) {
+                    detected++;
+                }
+            }
+            assertTrue(detected > userAgents.size() * 0.9);
+        } finally {
+            UserAgentDetector.reset();
+        }
+    }
+
+    @Test
+    public void testZipfCdf() {
+        final double[] cdf = UserAgentTrafficGenerator.zipfCdf(4, 1.0);
+        final double sum = 1.0 + 1.0 / 2.0 + 1.0 / 3.0 + 1.0 / 4.0;
+
+        assertEquals(cdf.length, 4);
+        assertEquals(cdf[0], 1.0 / sum, 1e-12);
+        assertEquals(cdf[1], 1.5 / sum, 1e-12);
+        assertEquals(cdf[3], 1.0, 1e-12);
+    }
+
+    private static Map<String, Integer> count(final List<String> userAgents) {
+        final Map<String, Integer> counts = new HashMap<>();
+        for (final String userAgent : userAgents) {
+            final Integer previous = counts.get(userAgent);
+            counts.put(userAgent, previous != null ? previous + 1 : 1);
+        }
+        return counts;
+    }
+
+    private static boolean isRobot(final String userAgent) {
+        return userAgent.contains("bot") || userAgent.contains("spider") ||
+                userAgent.contains("Bot") || userAgent.startsWith("curl/") ||
+                userAgent.startsWith("python-requests/") ||
+                userAgent.startsWith("Java/") ||
+                userAgent.startsWith("Apache-HttpClient/");
+    }
+}